@@ -29,6 +29,8 @@ import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
 
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.audit.api.AuditReferenceResolution;
+import com.evolveum.midpoint.audit.api.AuditService;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
@@ -148,6 +150,8 @@ public class AuditEventRecordProvider extends BaseSortableDataProvider<AuditEven
             parameters.remove(SET_MAX_RESULTS_PARAMETER);
         }
         parameters.put(SET_MAX_RESULTS_PARAMETER, ((Long) count).intValue());
+        // only object references (OID, type, name) are displayed, so there's no need to fetch the objects
+        parameters.put(AuditService.PARAM_RESOLVE_REFERENCES, AuditReferenceResolution.NAMES_ONLY);
 
 
         List<AuditEventRecord> auditRecords;
@@ -24,6 +24,9 @@ import org.w3c.dom.Document;
 public interface MidpointConfiguration {
 	
 	public static final String SYSTEM_CONFIGURATION_SECTION = "midpoint.system";
+	public static final String MODEL_CONFIGURATION_SECTION = "midpoint.model";
+	public static final String PROVISIONING_CONFIGURATION_SECTION = "midpoint.provisioning";
+	public static final String NOTIFICATIONS_CONFIGURATION_SECTION = "midpoint.notifications";
 	
 	public String getMidpointHome();
 	
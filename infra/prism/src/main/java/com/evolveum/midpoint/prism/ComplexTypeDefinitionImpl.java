@@ -47,6 +47,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 
 	private static final long serialVersionUID = 2655797837209175037L;
 	@NotNull private final List<ItemDefinition> itemDefinitions = new ArrayList<>();
+	private transient volatile ItemDefinitionIndex itemDefinitionIndex;	// created lazily, reset on any change of itemDefinitions
 	private boolean referenceMarker;
 	private boolean containerMarker;
 	private boolean objectMarker;
@@ -86,6 +87,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 
 	public void add(ItemDefinition<?> definition) {
 		itemDefinitions.add(definition);
+		itemDefinitionIndex = null;
 	}
 
 	@Override
@@ -171,6 +173,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	public PrismPropertyDefinitionImpl createPropertyDefinition(QName name, QName typeName) {
 		PrismPropertyDefinitionImpl propDef = new PrismPropertyDefinitionImpl(name, typeName, prismContext);
 		itemDefinitions.add(propDef);
+		itemDefinitionIndex = null;
 		return propDef;
 	}
 
@@ -180,6 +183,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	public PrismPropertyDefinition createPropertyDefinition(QName name) {
 		PrismPropertyDefinition propDef = new PrismPropertyDefinitionImpl(name, null, prismContext);
 		itemDefinitions.add(propDef);
+		itemDefinitionIndex = null;
 		return propDef;
 	}
 
@@ -201,7 +205,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	// but beware, consider only local definitions!
 	@Override
 	public <T extends ItemDefinition> T findItemDefinition(@NotNull QName name, @NotNull Class<T> clazz, boolean caseInsensitive) {
-		for (ItemDefinition def : getDefinitions()) {
+		for (ItemDefinition def : getCandidateDefinitions(name, caseInsensitive)) {
 			if (def.isValidFor(name, clazz, caseInsensitive)) {
 				return (T) def;
 			}
@@ -241,7 +245,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 	// path starts with NamedItemPathSegment
 	public <ID extends ItemDefinition> ID findNamedItemDefinition(@NotNull QName firstName, @NotNull ItemPath rest, @NotNull Class<ID> clazz) {
 		ID found = null;
-		for (ItemDefinition def : getDefinitions()) {
+		for (ItemDefinition def : getCandidateDefinitions(firstName, false)) {
 			if (def.isValidFor(firstName, clazz, false)) {
 				if (found != null) {
 					throw new IllegalStateException("More definitions found for " + firstName + "/" + rest + " in " + this);
@@ -266,6 +270,70 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 		}
 		return null;
 	}
+
+	/**
+	 * Returns definitions that can be valid for a given name, in their original order.
+	 * For larger types these are looked up in the index, so we don't need to check all the definitions.
+	 */
+	private List<? extends ItemDefinition> getCandidateDefinitions(QName name, boolean caseInsensitive) {
+		if (caseInsensitive || itemDefinitions.size() < ItemDefinitionIndex.THRESHOLD) {
+			return getDefinitions();
+		}
+		ItemDefinitionIndex index = itemDefinitionIndex;
+		if (index == null) {
+			index = new ItemDefinitionIndex(itemDefinitions);
+			itemDefinitionIndex = index;
+		}
+		return index.getCandidates(name);
+	}
+
+	/**
+	 * Item definitions indexed by the local part of their names. (A definition is valid for a name only if local parts match.)
+	 * Reference definitions are valid also for their composite object element name, which can be set after the definition
+	 * is added to the type. So they are not indexed but returned among candidates for any name; there are only a few of them.
+	 */
+	private static class ItemDefinitionIndex {
+
+		private static final int THRESHOLD = 8;
+		private static final int[] NONE = new int[0];
+
+		private final ItemDefinition[] definitions;
+		private final Map<String, int[]> positionsByLocalName = new HashMap<>();
+		private final int[] referencePositions;
+
+		private ItemDefinitionIndex(List<ItemDefinition> itemDefinitions) {
+			definitions = itemDefinitions.toArray(new ItemDefinition[0]);
+			List<Integer> references = new ArrayList<>();
+			for (int i = 0; i < definitions.length; i++) {
+				if (definitions[i] instanceof PrismReferenceDefinition) {
+					references.add(i);
+				} else {
+					positionsByLocalName.merge(definitions[i].getName().getLocalPart(), new int[] { i },
+							(a, b) -> {
+								int[] rv = Arrays.copyOf(a, a.length + 1);
+								rv[a.length] = b[0];
+								return rv;
+							});
+				}
+			}
+			referencePositions = references.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		private List<ItemDefinition> getCandidates(QName name) {
+			int[] positions = positionsByLocalName.getOrDefault(name.getLocalPart(), NONE);
+			List<ItemDefinition> rv = new ArrayList<>(positions.length + referencePositions.length);
+			// merging two sorted arrays of positions, to keep the original order
+			int i = 0, j = 0;
+			while (i < positions.length || j < referencePositions.length) {
+				if (j == referencePositions.length || i < positions.length && positions[i] < referencePositions[j]) {
+					rv.add(definitions[positions[i++]]);
+				} else {
+					rv.add(definitions[referencePositions[j++]]);
+				}
+			}
+			return rv;
+		}
+	}
 	//endregion
 
 	/**
@@ -347,6 +415,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 				postCloneAction.accept(itemClone);
 			}
 		}
+		clone.itemDefinitionIndex = null;
 		onThisPath.remove(this.getTypeName());
 		return clone;
 	}
@@ -375,6 +444,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 				}
 				// Make sure this is set, not add. set will keep correct ordering
 				itemDefinitions.set(i, newDefinition);
+				itemDefinitionIndex = null;
 				return;
 			}
 		}
@@ -508,6 +578,7 @@ public class ComplexTypeDefinitionImpl extends TypeDefinitionImpl implements Com
 			ItemPath itemPath = new ItemPath(itemDef.getName());
 			if (!ItemPath.containsSuperpathOrEquivalent(paths, itemPath)) {
 				iterator.remove();
+				itemDefinitionIndex = null;
 			} else if (itemDef instanceof PrismContainerDefinition) {
 				PrismContainerDefinition<?> itemPcd = (PrismContainerDefinition<?>) itemDef;
 				if (itemPcd.getComplexTypeDefinition() != null) {
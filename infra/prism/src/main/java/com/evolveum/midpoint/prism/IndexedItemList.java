@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Items of a container value. Besides being a plain list (that is returned as a live object by
+ * {@link PrismContainerValue#getItems()}) it can provide candidate items for a given name.
+ *
+ * For small lists the candidates are simply all the items. For larger ones an index by the local part of item names
+ * is created on the first lookup. (An item can match a name only if local parts of the names are equal.)
+ * The index is dropped on any structural change of the list - including changes done via iterators or by clients
+ * of getItems() - as we watch modCount. Replacing items via set() and renaming contained items drop it as well.
+ */
+class IndexedItemList extends ArrayList<Item<?,?>> {
+
+	private static final int INDEX_THRESHOLD = 8;
+
+	// Immutable values can be read by more threads; so the index is published as a whole, via a volatile field.
+	private transient volatile Index index;
+
+	private static class Index {
+		private final int modCount;
+		private final Map<String, List<Item<?,?>>> itemsByLocalName;
+
+		private Index(int modCount, Map<String, List<Item<?,?>>> itemsByLocalName) {
+			this.modCount = modCount;
+			this.itemsByLocalName = itemsByLocalName;
+		}
+	}
+
+	IndexedItemList() {
+	}
+
+	IndexedItemList(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/**
+	 * Returns items that can match given name, in their original order. The caller has to do the matching itself.
+	 */
+	List<Item<?,?>> getCandidates(QName name) {
+		if (size() < INDEX_THRESHOLD || name == null) {
+			return this;
+		}
+		Index current = index;
+		if (current == null || current.modCount != modCount) {
+			current = new Index(modCount, createIndex());
+			index = current;
+		}
+		List<Item<?,?>> candidates = current.itemsByLocalName.get(name.getLocalPart());
+		return candidates != null ? candidates : Collections.emptyList();
+	}
+
+	private Map<String, List<Item<?,?>>> createIndex() {
+		Map<String, List<Item<?,?>>> rv = new HashMap<>();
+		for (Item<?,?> item : this) {
+			QName elementName = item.getElementName();
+			if (elementName != null) {
+				rv.computeIfAbsent(elementName.getLocalPart(), k -> new ArrayList<>(1)).add(item);
+			}
+		}
+		return rv;
+	}
+
+	void invalidateIndex() {
+		index = null;
+	}
+
+	@Override
+	public Item<?,?> set(int i, Item<?,?> item) {
+		index = null;
+		return super.set(i, item);
+	}
+}
@@ -139,6 +139,9 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
     public void setElementName(QName elementName) {
 		checkMutability();
         this.elementName = elementName;
+        if (parent instanceof PrismContainerValue) {
+        	((PrismContainerValue<?>) parent).itemNameChanged();
+        }
     }
 
     /**
@@ -420,11 +423,23 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
 
     public boolean addAll(Collection<V> newValues) throws SchemaException {
 		checkMutability();			// TODO consider weaker condition, like testing if there's a real change
+		// For large items the uniqueness is checked using an index; otherwise adding N values would be O(N^2).
+		PrismValueIndex<V> index = isUniquenessCheckedOnAdd() && PrismValueIndex.isWorthIndexing(values.size() + newValues.size()) ?
+				PrismValueIndex.create(values) : null;
     	boolean changed = false;
     	for (V val: newValues) {
-    		if (add(val)) {
+    		boolean added;
+    		if (index != null && val.getHashKey() != null) {
+    			added = !index.containsEquivalentValue(val) && add(val, false);
+		    } else {
+    			added = add(val);
+		    }
+		    if (added) {
     			changed = true;
-    		}
+    			if (index != null && !index.add(val)) {
+    				index = null;
+			    }
+		    }
     	}
     	return changed;
     }
@@ -452,6 +467,14 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
     	return values.add(newValue);
     }
 
+    /**
+     * Whether add(value) refuses values that are already present (ignoring metadata). Bulk operations (addAll, merge)
+     * do the same check using an index for large items - but only if the item does this check at all.
+     */
+    protected boolean isUniquenessCheckedOnAdd() {
+    	return true;
+    }
+
     public boolean removeAll(Collection<V> newValues) {
 		checkMutability();					// TODO consider if there is real change
     	boolean changed = false;
@@ -515,9 +538,22 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
      * Merge all the values of other item to this item.
      */
     public void merge(Item<V,D> otherItem) throws SchemaException {
+		PrismValueIndex<V> index = isUniquenessCheckedOnAdd() && PrismValueIndex.isWorthIndexing(values.size() + otherItem.size()) ?
+				PrismValueIndex.create(values) : null;
     	for (V otherValue: otherItem.getValues()) {
-    		if (!contains(otherValue)) {
-    			add((V) otherValue.clone());
+    		if (index != null && otherValue.getHashKey() != null) {
+    			// A value that is contained (even if ignoring metadata) would not be added anyway, see add(..).
+    			if (!index.containsEquivalentValue(otherValue)) {
+    				V clone = (V) otherValue.clone();
+    				if (add(clone, false) && !index.add(clone)) {
+    					index = null;
+				    }
+			    }
+		    } else if (!contains(otherValue)) {
+    			V clone = (V) otherValue.clone();
+    			if (add(clone) && index != null && !index.add(clone)) {
+    				index = null;
+			    }
     		}
     	}
     }
@@ -561,6 +597,16 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
     			delta.setDefinition(other.getDefinition().clone());
 		    }
     		// the other exists, this means that we need to compare the values one by one
+		    PrismValueIndex<V> otherIndex = PrismValueIndex.isWorthIndexing(other.size()) ?
+				    PrismValueIndex.create(other.getValues()) : null;
+		    if (otherIndex != null) {
+			    diffValuesIndexed(other, otherIndex, delta, deltas, ignoreMetadata, isLiteral);
+			    delta = fixupDelta(delta, other, ignoreMetadata);
+			    if (delta != null && !delta.isEmpty()) {
+				    ((Collection)deltas).add(delta);
+			    }
+			    return;
+		    }
     		Collection<PrismValue> outstandingOtherValues = new ArrayList<PrismValue>(other.getValues().size());
     		outstandingOtherValues.addAll(other.getValues());
     		for (PrismValue thisValue : getValues()) {
@@ -605,6 +651,39 @@ public abstract class Item<V extends PrismValue, D extends ItemDefinition> imple
     	}
     }
 
+	// The same as the matching in diffInternal, but each value is compared only to other values with the same hash key.
+	private void diffValuesIndexed(Item<V,D> other, PrismValueIndex<V> otherIndex, ItemDelta delta,
+			Collection<? extends ItemDelta> deltas, boolean ignoreMetadata, boolean isLiteral) {
+		Set<PrismValue> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (V thisValue : getValues()) {
+			PrismValue found = null;
+			for (V otherValue : otherIndex.getCandidates(thisValue)) {
+				if (matched.contains(otherValue)) {
+					continue;
+				}
+				if (thisValue.representsSameValue(otherValue, true)) {
+					// Matching IDs, look inside to figure out internal deltas
+					thisValue.diffMatchingRepresentation(otherValue, deltas, ignoreMetadata, isLiteral);
+					found = otherValue;
+					break;
+				} else if (thisValue.equalsComplex(otherValue, ignoreMetadata, isLiteral)) {
+					found = otherValue;
+					break;
+				}
+			}
+			if (found != null) {
+				matched.add(found);
+			} else {
+				delta.addValueToDelete(thisValue.clone());
+			}
+		}
+		for (V otherValue : other.getValues()) {
+			if (!matched.contains(otherValue)) {
+				delta.addValueToAdd(otherValue.clone());
+			}
+		}
+	}
+
 	protected ItemDelta<V,D> fixupDelta(ItemDelta<V,D> delta, Item<V,D> other,
 			boolean ignoreMetadata) {
 		return delta;
@@ -53,8 +53,9 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
     private static final Trace LOGGER = TraceManager.getTrace(PrismContainerValue.class);
 
 	// This is list. We need to maintain the order internally to provide consistent
-    // output in DOM and other ordering-sensitive representations
-	protected List<Item<?,?>> items = null;
+    // output in DOM and other ordering-sensitive representations.
+	// For larger values the list also indexes items by name; see IndexedItemList.
+	protected IndexedItemList items = null;
     private Long id;
 
 	private C containerable = null;
@@ -362,7 +363,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
         	item.applyDefinition((ID)determineItemDefinition(item.getElementName(), getComplexTypeDefinition()), false);
         }
         if (items == null) {
-        	items = new ArrayList<>();
+        	items = new IndexedItemList();
         }
         return items.add(item);
     }
@@ -740,7 +741,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
             return null;
         }
         Item<IV,ID> matching = null;
-        for (Item<?,?> item : items) {
+        for (Item<?,?> item : items.getCandidates(subName)) {
             if (QNameUtil.match(subName, item.getElementName())) {
                 if (matching != null) {
                     String containerName = getParent() != null ? DebugUtil.formatElementName(getParent().getElementName()) : "";
@@ -942,6 +943,13 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
     	return property.getRealValue(type);
     }
 
+	// Called when a name of contained item changes.
+	void itemNameChanged() {
+		if (items != null) {
+			items.invalidateIndex();
+		}
+	}
+
     @Override
 	public void recompute(PrismContext prismContext) {
 		// Nothing to do. The subitems should be already recomputed as they are added to this container.
@@ -1358,7 +1366,7 @@ public class PrismContainerValue<C extends Containerable> extends PrismValue imp
 				Item<?,?> clonedItem = item.cloneComplex(strategy);
 				clonedItem.setParent(clone);
 				if (clone.items == null) {
-					clone.items = new ArrayList<>(this.items.size());
+					clone.items = new IndexedItemList(this.items.size());
 				}
 				clone.items.add(clonedItem);
 			}
@@ -514,6 +514,21 @@ public class PrismPropertyValue<T> extends PrismValue implements DebugDumpable,
         }
 	}
 
+	// Only for immutable real values whose equals() is used by equalsComplex. Raw values have to be parsed to be compared.
+	@Override
+	public Object getHashKey() {
+		if (rawElement != null || value == null) {
+			return null;
+		} else if (value instanceof PolyString) {
+			return ((PolyString) value).getOrig();		// norm can be recomputed, orig cannot
+		} else if (value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof Enum || value instanceof QName) {
+			return value;
+		} else {
+			return null;
+		}
+	}
+
 	private boolean equalsRawElements(PrismPropertyValue<T> other) {
 		return this.rawElement.equals(other.rawElement);
 	}
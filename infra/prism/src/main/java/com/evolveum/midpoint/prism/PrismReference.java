@@ -117,6 +117,12 @@ public class PrismReference extends Item<PrismReferenceValue,PrismReferenceDefin
     	return getValues().add(value);
     }
 
+	// references are added without checking uniqueness, see above
+	@Override
+	protected boolean isUniquenessCheckedOnAdd() {
+		return false;
+	}
+
     public boolean merge(PrismReferenceValue value) {
     	String newOid = value.getOid();
     	// We need to tolerate null OIDs here. Because of JAXB.
@@ -498,6 +498,12 @@ public class PrismReferenceValue extends PrismValue implements DebugDumpable, Se
 		return result;
 	}
 
+	// Equal references have equal OIDs. (References without OID are compared one by one.)
+	@Override
+	public Object getHashKey() {
+		return getOid();
+	}
+
 	@Override
 	public boolean representsSameValue(PrismValue other, boolean lax) {
 		if (other instanceof PrismReferenceValue) {
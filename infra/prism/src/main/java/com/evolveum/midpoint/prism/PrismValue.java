@@ -352,6 +352,18 @@ public abstract class PrismValue implements IPrismValue {
 		return result;
 	}
 
+	/**
+	 * Returns a key that is the same for all values that are equal in the sense of equalsComplex, regardless of the
+	 * ignoreMetadata and isLiteral flags. Values with different keys are therefore surely different, so large collections
+	 * of values can be compared using hashing (see {@link PrismValueIndex}).
+	 *
+	 * Returns null if such a key cannot be cheaply determined. These values have to be compared one by one.
+	 */
+	@Nullable
+	public Object getHashKey() {
+		return null;
+	}
+
 	public boolean equalsComplex(PrismValue other, boolean ignoreMetadata, boolean isLiteral) {
 		// parent is not considered at all. it is not relevant.
 		// neither the immutable flag
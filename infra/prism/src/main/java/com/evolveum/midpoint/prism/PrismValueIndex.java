@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.prism;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Temporary index of a collection of prism values by their hash keys (see {@link PrismValue#getHashKey()}).
+ * Used when comparing large multivalued items (e.g. tens of thousands of roleMembershipRef values), so that each value
+ * is compared only to values with the same key instead of all of them.
+ *
+ * The index is not updated when the values or the collection change; it is meant to be used during a single operation.
+ * It can be created only if all the values have a hash key.
+ */
+public class PrismValueIndex<V extends PrismValue> {
+
+	/**
+	 * Below this number of values the pairwise comparison is cheap enough, so the index is not worth creating.
+	 */
+	public static final int THRESHOLD = 20;
+
+	@NotNull private final List<V> allValues;
+	@NotNull private final Map<Object, List<V>> valuesByKey = new HashMap<>();
+
+	private PrismValueIndex(int expectedSize) {
+		allValues = new ArrayList<>(expectedSize);
+	}
+
+	/**
+	 * Creates the index, or returns null if some of the values have no hash key.
+	 */
+	@Nullable
+	public static <V extends PrismValue> PrismValueIndex<V> create(@NotNull Collection<? extends V> values) {
+		PrismValueIndex<V> index = new PrismValueIndex<>(values.size());
+		for (V value : values) {
+			if (!index.add(value)) {
+				return null;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns true if it makes sense to index given number of values.
+	 */
+	public static boolean isWorthIndexing(int numberOfValues) {
+		return numberOfValues >= THRESHOLD;
+	}
+
+	/**
+	 * Adds a value to the index. Returns false if the value has no hash key. The index must not be used after that,
+	 * as it would not know about this value.
+	 */
+	public boolean add(@NotNull V value) {
+		Object key = value.getHashKey();
+		if (key == null) {
+			return false;
+		}
+		allValues.add(value);
+		valuesByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+		return true;
+	}
+
+	/**
+	 * Returns indexed values that can be equal to the given one, in the order they were added.
+	 * If the value has no hash key, all values are returned.
+	 */
+	@NotNull
+	public List<V> getCandidates(@NotNull PrismValue value) {
+		Object key = value.getHashKey();
+		if (key == null) {
+			return Collections.unmodifiableList(allValues);
+		}
+		List<V> candidates = valuesByKey.get(key);
+		return candidates != null ? Collections.unmodifiableList(candidates) : Collections.emptyList();
+	}
+
+	/**
+	 * The same as {@link Item#contains(PrismValue, boolean)} with ignoreMetadata = true.
+	 */
+	public boolean containsEquivalentValue(@NotNull PrismValue value) {
+		for (V candidate : getCandidates(value)) {
+			if (candidate.equals(value, true)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -920,11 +920,14 @@ public abstract class ItemDelta<V extends PrismValue,D extends ItemDefinition> i
     			}
     		} else {
 	    		ItemDelta<V,D> clone = clone();
+			    // for large items we look for the values using an index
+			    PrismValueIndex<V> currentIndex = comparator == null && PrismValueIndex.isWorthIndexing(currentItem.size()) ?
+					    PrismValueIndex.create(currentItem.getValues()) : null;
 	    		if (clone.valuesToDelete != null) {
 	    			Iterator<V> iterator = clone.valuesToDelete.iterator();
 	    			while (iterator.hasNext()) {
 	    				V valueToDelete = iterator.next();
-	    				if (!currentItem.containsEquivalentValue(valueToDelete, comparator)) {
+	    				if (!containsEquivalentValue(currentItem, currentIndex, valueToDelete, comparator)) {
 	    					iterator.remove();
 	    				}
 	    			}
@@ -936,7 +939,7 @@ public abstract class ItemDelta<V extends PrismValue,D extends ItemDefinition> i
 	    			Iterator<V> iterator = clone.valuesToAdd.iterator();
 	    			while (iterator.hasNext()) {
 	    				V valueToAdd = iterator.next();
-	    				if (currentItem.containsEquivalentValue(valueToAdd, comparator)) {
+	    				if (containsEquivalentValue(currentItem, currentIndex, valueToAdd, comparator)) {
 	    					iterator.remove();
 	    				}
 	    			}
@@ -949,6 +952,14 @@ public abstract class ItemDelta<V extends PrismValue,D extends ItemDefinition> i
     	}
     }
 
+	private boolean containsEquivalentValue(Item<V,D> item, PrismValueIndex<V> itemIndex, V value, Comparator<V> comparator) {
+		if (itemIndex != null) {
+			return itemIndex.containsEquivalentValue(value);
+		} else {
+			return item.containsEquivalentValue(value, comparator);
+		}
+	}
+
 	/**
 	 * Checks if the delta is redundant w.r.t. current state of the object.
 	 * I.e. if it changes the current object state.
@@ -34,7 +34,6 @@ import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
-import org.codehaus.staxmate.dom.DOMConverter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.Attr;
@@ -117,20 +116,18 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 			if (eventType != XMLStreamConstants.START_ELEMENT) {
 				throw new SystemException("StAX Malfunction?");
 			}
-			DOMConverter domConverter = new DOMConverter();
+			StaxXNodeReader reader = new StaxXNodeReader(this, stream);
 			Map<String, String> rootNamespaceDeclarations = new HashMap<>();
 
 			QName objectsMarker = schemaRegistry.getPrismContext().getObjectsElementName();
 			if (objectsMarker != null && !QNameUtil.match(stream.getName(), objectsMarker)) {
-				readSingleObjectIteratively(stream, rootNamespaceDeclarations, domConverter, handler);
-			}
-			for (int i = 0; i < stream.getNamespaceCount(); i++) {
-				rootNamespaceDeclarations.put(stream.getNamespacePrefix(i), stream.getNamespaceURI(i));
+				readSingleObjectIteratively(reader, rootNamespaceDeclarations, handler);
 			}
+			rootNamespaceDeclarations = reader.getNamespaceDeclarations(rootNamespaceDeclarations);
 			while (stream.hasNext()) {
 				eventType = stream.next();
 				if (eventType == XMLStreamConstants.START_ELEMENT) {
-					if (!readSingleObjectIteratively(stream, rootNamespaceDeclarations, domConverter, handler)) {
+					if (!readSingleObjectIteratively(reader, rootNamespaceDeclarations, handler)) {
 						return;
 					}
 				}
@@ -147,12 +144,10 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 		}
 	}
 
-	private boolean readSingleObjectIteratively(XMLStreamReader stream, Map<String, String> rootNamespaceDeclarations,
-			DOMConverter domConverter, RootXNodeHandler handler) throws XMLStreamException, SchemaException {
-		Document objectDoc = domConverter.buildDocument(stream);
-		Element objectElement = DOMUtil.getFirstChildElement(objectDoc);
-		DOMUtil.setNamespaceDeclarations(objectElement, rootNamespaceDeclarations);
-		RootXNode rootNode = read(objectElement);
+	// objects are read directly from the stream into XNodes, without creating a DOM tree for each of them
+	private boolean readSingleObjectIteratively(StaxXNodeReader reader, Map<String, String> rootNamespaceDeclarations,
+			RootXNodeHandler handler) throws XMLStreamException, SchemaException {
+		RootXNode rootNode = reader.readRoot(rootNamespaceDeclarations);
 		return handler.handleData(rootNode);
 	}
 
@@ -196,12 +191,12 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 				PrismConstants.A_MAX_OCCURS.getNamespaceURI(),
 				PrismConstants.A_MAX_OCCURS.getLocalPart());
 		if (!StringUtils.isBlank(maxOccursString)) {
-			int maxOccurs = parseMultiplicity(maxOccursString, element);
+			int maxOccurs = parseMultiplicity(maxOccursString, DOMUtil.getQName(element));
 			xnode.setMaxOccurs(maxOccurs);
 		}
 	}
 
-	private int parseMultiplicity(String maxOccursString, Element element) throws SchemaException {
+	int parseMultiplicity(String maxOccursString, QName elementName) throws SchemaException {
 		if (PrismConstants.MULTIPLICITY_UNBONUNDED.equals(maxOccursString)) {
 			return -1;
 		}
@@ -212,7 +207,7 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 			return Integer.valueOf(maxOccursString);
 		} else {
 			throw new SchemaException("Expected numeric value for " + PrismConstants.A_MAX_OCCURS.getLocalPart()
-					+ " attribute on " + DOMUtil.getQName(element) + " but got " + maxOccursString);
+					+ " attribute on " + elementName + " but got " + maxOccursString);
 		}
 	}
 
@@ -279,7 +274,30 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 	}
 
 	private boolean isList(Element element) throws SchemaException {
-		String isListAttribute = DOMUtil.getAttribute(element, new QName(DOMUtil.IS_LIST_ATTRIBUTE_NAME));
+		Boolean declared = isListByDeclaration(DOMUtil.getQName(element),
+				DOMUtil.getAttribute(element, new QName(DOMUtil.IS_LIST_ATTRIBUTE_NAME)), DOMUtil.resolveXsiType(element));
+		if (declared != null) {
+			return declared;
+		}
+
+		// checking the content
+		if (DOMUtil.hasApplicationAttributes(element)) {
+			return false;		// TODO - or should we fail in this case?
+		}
+		//System.out.println("Elements are compatible: " + DOMUtil.listChildElements(element) + ": " + rv);
+		List<QName> childElementNames = new ArrayList<>();
+		for (Element childElement : DOMUtil.listChildElements(element)) {
+			childElementNames.add(DOMUtil.getQName(childElement));
+		}
+		return elementsAreCompatible(childElementNames);
+	}
+
+	/**
+	 * Decides whether an element is a list, based on its name, "list" attribute and xsi:type. Returns null if that is
+	 * not sufficient, i.e. if the element is a list only if it has no application attributes and its child elements
+	 * are compatible (see {@link #elementsAreCompatible(List)}).
+	 */
+	Boolean isListByDeclaration(QName elementName, String isListAttribute, QName typeName) {
 		if (StringUtils.isNotEmpty(isListAttribute)) {
 			return Boolean.valueOf(isListAttribute);
 		}
@@ -289,7 +307,6 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 //		}
 
 		// checking parent element fitness
-		QName typeName = DOMUtil.resolveXsiType(element);
 		if (typeName != null) {
 			Collection<? extends ComplexTypeDefinition> definitions = schemaRegistry
 					.findTypeDefinitionsByType(typeName, ComplexTypeDefinition.class);
@@ -308,7 +325,7 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 			}
 		} else {	// typeName == null
 			Collection<? extends ComplexTypeDefinition> definitions =
-					schemaRegistry.findTypeDefinitionsByElementName(DOMUtil.getQName(element), ComplexTypeDefinition.class);
+					schemaRegistry.findTypeDefinitionsByElementName(elementName, ComplexTypeDefinition.class);
 			// TODO - or allMatch here? - allMatch would mean that if there's an extension (or resource item) with a name
 			// of e.g. formItems, pipeline, sequence, ... - it would not be recognizable as list=true anymore. That's why
 			// we will use anyMatch here.
@@ -318,19 +335,13 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 				return false;
 			}
 		}
-
-		// checking the content
-		if (DOMUtil.hasApplicationAttributes(element)) {
-			return false;		// TODO - or should we fail in this case?
-		}
-		//System.out.println("Elements are compatible: " + DOMUtil.listChildElements(element) + ": " + rv);
-		return elementsAreCompatible(DOMUtil.listChildElements(element));
+		return null;
 	}
 
-	private boolean elementsAreCompatible(List<Element> elements) {
+	boolean elementsAreCompatible(List<QName> elementNames) {
 		QName unified = null;
-		for (Element element : elements) {
-			QName root = getHierarchyRoot(DOMUtil.getQName(element));
+		for (QName elementName : elementNames) {
+			QName root = getHierarchyRoot(elementName);
 			if (unified == null) {
 				unified = root;
 			} else if (!QNameUtil.match(unified, root)) {
@@ -482,7 +493,7 @@ public class DomLexicalProcessor implements LexicalProcessor<String> {
 		}
 	}
 
-	private static <T> T processIllegalArgumentException(String value, QName typeName, IllegalArgumentException e, XNodeProcessorEvaluationMode mode) {
+	static <T> T processIllegalArgumentException(String value, QName typeName, IllegalArgumentException e, XNodeProcessorEvaluationMode mode) {
 		if (mode != XNodeProcessorEvaluationMode.COMPAT) {
 			throw e;
 		}
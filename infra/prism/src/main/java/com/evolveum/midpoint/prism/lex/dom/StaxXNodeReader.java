@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.lex.dom;
+
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.marshaller.ItemPathHolder;
+import com.evolveum.midpoint.prism.marshaller.XNodeProcessorEvaluationMode;
+import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.xml.XmlTypeConverter;
+import com.evolveum.midpoint.prism.xml.XsdTypeMapper;
+import com.evolveum.midpoint.prism.xnode.*;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.PrettyPrinter;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.prism.xml.ns._public.types_3.ItemPathType;
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.staxmate.dom.DOMConverter;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads elements from a StAX stream directly into XNodes, without building a DOM tree for them. Used when reading
+ * objects iteratively (e.g. when importing large files), where creating DOM for each object took most of the parsing time.
+ *
+ * The result is the same as if the element was converted to DOM and then read by {@link DomLexicalProcessor#read(Element)}:
+ * the same rules are used to decide between map, list and primitive nodes, and primitive values are parsed the same way
+ * (using the text content and namespace declarations visible at the element). Only xsd:schema elements are converted
+ * to DOM, as SchemaXNode needs them.
+ */
+class StaxXNodeReader {
+
+	private static final QName SCHEMA_ELEMENT_QNAME = DOMUtil.XSD_SCHEMA_ELEMENT;
+
+	@NotNull private final DomLexicalProcessor processor;
+	@NotNull private final XMLStreamReader stream;
+	private DOMConverter domConverter;			// created only if needed
+
+	StaxXNodeReader(@NotNull DomLexicalProcessor processor, @NotNull XMLStreamReader stream) {
+		this.processor = processor;
+		this.stream = stream;
+	}
+
+	/**
+	 * Reads the element the stream is positioned at (START_ELEMENT). After return the stream is positioned at the
+	 * corresponding END_ELEMENT.
+	 *
+	 * @param inheritedNamespaces Namespace declarations from outside of the element (e.g. from the "objects" element).
+	 */
+	@NotNull
+	RootXNode readRoot(Map<String, String> inheritedNamespaces) throws XMLStreamException, SchemaException {
+		ParsedElement element = readElement(inheritedNamespaces);
+		RootXNode xroot = new RootXNode(element.name);
+		element.setCommonMetadata(xroot);
+		xroot.setSubnode(element.node);
+		return xroot;
+	}
+
+	/**
+	 * Returns namespace declarations visible at the current element (prefix -> namespace, null prefix for the default one).
+	 * Unchanged parent map is returned if the element declares no namespaces.
+	 */
+	Map<String, String> getNamespaceDeclarations(Map<String, String> parentNamespaces) {
+		int count = stream.getNamespaceCount();
+		if (count == 0) {
+			return parentNamespaces;
+		}
+		Map<String, String> rv = new HashMap<>(parentNamespaces);
+		for (int i = 0; i < count; i++) {
+			String prefix = stream.getNamespacePrefix(i);
+			rv.put(StringUtils.isEmpty(prefix) ? null : prefix, stream.getNamespaceURI(i));
+		}
+		return rv;
+	}
+
+	private static class ParsedElement {
+		private final QName name;
+		private QName typeName;
+		private Integer maxOccurs;
+		private XNode node;			// null for nil elements
+		private boolean schema;
+
+		private ParsedElement(QName name) {
+			this.name = name;
+		}
+
+		// see DomLexicalProcessor.extractCommonMetadata
+		private void setCommonMetadata(XNode xnode) {
+			if (typeName != null) {
+				xnode.setTypeQName(typeName);
+				xnode.setExplicitTypeDeclaration(true);
+			}
+			if (maxOccurs != null) {
+				xnode.setMaxOccurs(maxOccurs);
+			}
+		}
+	}
+
+	private static class ApplicationAttribute {
+		private final QName name;
+		private final String value;
+
+		private ApplicationAttribute(QName name, String value) {
+			this.name = name;
+			this.value = value;
+		}
+	}
+
+	// see DomLexicalProcessor.parseElementContent
+	private ParsedElement readElement(Map<String, String> parentNamespaces) throws XMLStreamException, SchemaException {
+		ParsedElement element = new ParsedElement(stream.getName());
+		Map<String, String> namespaces = getNamespaceDeclarations(parentNamespaces);
+
+		String isListAttribute = null;
+		String xsiType = null;
+		String hackedXsiType = null;
+		String maxOccurs = null;
+		boolean nil = false;
+		List<ApplicationAttribute> applicationAttributes = new ArrayList<>();
+		for (int i = 0; i < stream.getAttributeCount(); i++) {
+			QName attributeName = stream.getAttributeName(i);
+			String value = stream.getAttributeValue(i);
+			String namespace = attributeName.getNamespaceURI();
+			if (StringUtils.isEmpty(namespace)) {
+				if (DOMUtil.HACKED_XSI_TYPE.equals(attributeName.getLocalPart())) {
+					hackedXsiType = value;
+				} else if (DOMUtil.IS_LIST_ATTRIBUTE_NAME.equals(attributeName.getLocalPart())) {
+					isListAttribute = value;
+				} else {
+					applicationAttributes.add(new ApplicationAttribute(attributeName, value));
+				}
+			} else if (XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespace)) {
+				if (DOMUtil.XSI_TYPE.getLocalPart().equals(attributeName.getLocalPart())) {
+					xsiType = value;
+				} else if (DOMUtil.XSI_NIL.getLocalPart().equals(attributeName.getLocalPart())) {
+					nil = Boolean.parseBoolean(value);
+				}
+			} else if (!XMLConstants.XML_NS_URI.equals(namespace) && !XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespace)) {
+				applicationAttributes.add(new ApplicationAttribute(attributeName, value));
+				if (QNameUtil.match(attributeName, PrismConstants.A_MAX_OCCURS)) {
+					maxOccurs = value;
+				}
+			}
+		}
+		if (StringUtils.isEmpty(xsiType)) {
+			xsiType = hackedXsiType;
+		}
+		QName typeName = StringUtils.isEmpty(xsiType) ? null : resolveQName(xsiType, namespaces);
+		element.typeName = typeName;
+		if (StringUtils.isNotBlank(maxOccurs)) {
+			element.maxOccurs = processor.parseMultiplicity(maxOccurs, element.name);
+		}
+
+		if (nil) {
+			skipElementContent();
+			return element;
+		}
+
+		Boolean listDeclared = null;			// valid only if we have child elements
+		boolean listCandidate = false;			// the same
+		List<ParsedElement> children = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		for (;;) {
+			int eventType = stream.next();
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
+				if (children.isEmpty()) {
+					listDeclared = processor.isListByDeclaration(element.name, isListAttribute, typeName);
+					listCandidate = listDeclared != null ? listDeclared : applicationAttributes.isEmpty();
+				}
+				// schema elements within lists are parsed as normal content, just like in parseElementList
+				if (!listCandidate && SCHEMA_ELEMENT_QNAME.equals(stream.getName())) {
+					children.add(readSchemaElement(namespaces));
+				} else {
+					children.add(readElement(namespaces));
+				}
+			} else if (eventType == XMLStreamConstants.END_ELEMENT) {
+				break;
+			} else if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA
+					|| eventType == XMLStreamConstants.SPACE || eventType == XMLStreamConstants.ENTITY_REFERENCE) {
+				if (children.isEmpty()) {
+					text.append(stream.getText());
+				}
+			}
+		}
+
+		XNode node;
+		if (!children.isEmpty() || !applicationAttributes.isEmpty()) {
+			if (children.isEmpty()) {
+				listDeclared = processor.isListByDeclaration(element.name, isListAttribute, typeName);
+			}
+			boolean list;
+			if (listDeclared != null) {
+				list = listDeclared;
+			} else if (!applicationAttributes.isEmpty()) {
+				list = false;
+			} else {
+				List<QName> childNames = new ArrayList<>(children.size());
+				for (ParsedElement child : children) {
+					childNames.add(child.name);
+				}
+				list = processor.elementsAreCompatible(childNames);
+			}
+			if (list) {
+				node = createList(element.name, children, applicationAttributes);
+			} else {
+				node = createMap(children, applicationAttributes, namespaces);
+			}
+		} else {
+			PrimitiveXNode<?> primitive = new PrimitiveXNode<>();
+			primitive.setValueParser(new TextValueParser<>(element.name, text.toString(), namespaces, false));
+			node = primitive;
+		}
+		element.setCommonMetadata(node);
+		element.node = node;
+		return element;
+	}
+
+	// see DomLexicalProcessor.parseElementContentToList (list items keep their element names)
+	private ListXNode createList(QName elementName, List<ParsedElement> children,
+			List<ApplicationAttribute> applicationAttributes) throws SchemaException {
+		if (!applicationAttributes.isEmpty()) {
+			throw new SchemaException("List should have no application attributes: " + elementName);
+		}
+		ListXNode xlist = new ListXNode();
+		for (ParsedElement child : children) {
+			if (child.node != null) {
+				child.node.setElementName(child.name);
+			}
+			xlist.add(child.node);
+		}
+		return xlist;
+	}
+
+	// see DomLexicalProcessor.parseElementContentToMap
+	private MapXNode createMap(List<ParsedElement> children, List<ApplicationAttribute> applicationAttributes,
+			Map<String, String> namespaces) throws SchemaException {
+		MapXNode xmap = new MapXNode();
+		for (ApplicationAttribute attribute : applicationAttributes) {
+			PrimitiveXNode<?> xnode = new PrimitiveXNode<>();
+			xnode.setValueParser(new TextValueParser<>(attribute.name, attribute.value, namespaces, true));
+			xnode.setAttribute(true);
+			xmap.put(attribute.name, xnode);
+		}
+		int groupStart = 0;
+		for (int i = 1; i <= children.size(); i++) {
+			if (i == children.size() || !QNameUtil.match(children.get(i).name, children.get(groupStart).name)) {
+				addGroupAsMapEntry(xmap, children.subList(groupStart, i));
+				groupStart = i;
+			}
+		}
+		return xmap;
+	}
+
+	// see DomLexicalProcessor.parseSubElementsGroupAsMapEntry
+	private void addGroupAsMapEntry(MapXNode xmap, List<ParsedElement> group) throws SchemaException {
+		ParsedElement first = group.get(0);
+		XNode xsub;
+		if (first.schema) {
+			if (group.size() == 1) {
+				xsub = first.node;
+			} else {
+				throw new SchemaException("Too many schema elements");
+			}
+		} else if (group.size() == 1) {
+			xsub = first.node;
+		} else {
+			ListXNode xlist = new ListXNode();
+			for (ParsedElement element : group) {
+				xlist.add(element.node);
+			}
+			xsub = xlist;
+		}
+		xmap.merge(first.name, xsub);
+	}
+
+	private ParsedElement readSchemaElement(Map<String, String> parentNamespaces) throws XMLStreamException {
+		ParsedElement element = new ParsedElement(stream.getName());
+		if (domConverter == null) {
+			domConverter = new DOMConverter();
+		}
+		Element schemaElement = DOMUtil.getFirstChildElement(domConverter.buildDocument(stream));
+		// the schema element has to be usable stand-alone, so it gets all the declarations visible here
+		for (Map.Entry<String, String> declaration : parentNamespaces.entrySet()) {
+			if (!DOMUtil.hasNamespaceDeclarationForPrefix(schemaElement, declaration.getKey())) {
+				DOMUtil.setNamespaceDeclaration(schemaElement, declaration.getKey(), declaration.getValue());
+			}
+		}
+		SchemaXNode xschema = new SchemaXNode();
+		xschema.setSchemaElement(schemaElement);
+		element.node = xschema;
+		element.schema = true;
+		return element;
+	}
+
+	private void skipElementContent() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int eventType = stream.next();
+			if (eventType == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (eventType == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	// the same as DOMUtil.resolveQName: a QName without prefix has no namespace, even if there is a default namespace
+	private static QName resolveQName(String qnameStringRepresentation, Map<String, String> namespaces) {
+		if (StringUtils.isBlank(qnameStringRepresentation)) {
+			return null;
+		}
+		String[] qnameArray = qnameStringRepresentation.split(":");
+		if (qnameArray.length > 2) {
+			throw new IllegalArgumentException("Unsupported format: more than one colon in Qname: "
+					+ qnameStringRepresentation);
+		}
+		if (qnameArray.length == 1 || qnameArray[1] == null || qnameArray[1].isEmpty()) {
+			return new QName(null, qnameArray[0]);
+		}
+		String namespacePrefix = qnameArray[0];
+		String namespace = namespaces.get(namespacePrefix);
+		if (namespace == null) {
+			QNameUtil.reportUndeclaredNamespacePrefix(namespacePrefix, qnameStringRepresentation);
+			namespacePrefix = QNameUtil.markPrefixAsUndeclared(namespacePrefix);
+		}
+		return new QName(namespace, qnameArray[1], namespacePrefix);
+	}
+
+	/**
+	 * Parses values of elements without child elements and of attributes, just like PrimitiveValueParser
+	 * and PrimitiveAttributeParser in DomLexicalProcessor do.
+	 */
+	private static class TextValueParser<T> implements ValueParser<T>, Serializable {
+
+		private final QName name;
+		private final String text;
+		private final Map<String, String> namespaces;
+		private final boolean attribute;
+
+		private TextValueParser(QName name, String text, Map<String, String> namespaces, boolean attribute) {
+			this.name = name;
+			this.text = text;
+			this.namespaces = namespaces;
+			this.attribute = attribute;
+		}
+
+		@Override
+		public T parse(QName typeName, XNodeProcessorEvaluationMode mode) throws SchemaException {
+			try {
+				if (attribute) {
+					if (DOMUtil.XSD_QNAME.equals(typeName)) {
+						return (T) resolveQName(text, namespaces);
+					} else if (XmlTypeConverter.canConvert(typeName)) {
+						return XmlTypeConverter.toJavaValue(text, typeName);
+					} else {
+						throw new SchemaException("Cannot convert attribute '" + name + "' to " + typeName);
+					}
+				}
+				if (ItemPathType.COMPLEX_TYPE.equals(typeName)) {
+					// default namespace is not used in paths; ItemPathHolder does not look for it under null prefix
+					return (T) new ItemPathType(new ItemPathHolder(text, namespaces).toItemPath());
+				} else if (DOMUtil.XSD_QNAME.equals(typeName)) {
+					return (T) resolveQName(text, namespaces);
+				} else if (XmlTypeConverter.canConvert(typeName)) {
+					return parseConvertibleValue(typeName);
+				} else if (DOMUtil.XSD_ANYTYPE.equals(typeName)) {
+					return (T) text;			// if parsing primitive as xsd:anyType, we can safely parse it as string
+				} else {
+					throw new SchemaException("Cannot convert element '" + name + "' to " + typeName);
+				}
+			} catch (IllegalArgumentException e) {
+				return DomLexicalProcessor.processIllegalArgumentException(text, typeName, e, mode);		// primitive way of ensuring compatibility mode
+			}
+		}
+
+		// see XmlTypeConverter.toJavaValue(Element, Class) for elements without child elements
+		private T parseConvertibleValue(QName typeName) {
+			Class<T> javaClass = XsdTypeMapper.getXsdToJavaMapping(typeName);
+			if (QName.class.equals(javaClass)) {
+				return (T) resolveQName(text, namespaces);
+			} else if (PolyString.class.isAssignableFrom(javaClass)) {
+				return (T) new PolyString(text);
+			}
+			T javaValue = XmlTypeConverter.toJavaValue(text, javaClass);
+			if (javaValue == null) {
+				throw new IllegalArgumentException("Unknown type for conversion: " + javaClass + "(element " + name + ")");
+			}
+			return javaValue;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return attribute ? StringUtils.isEmpty(text) : StringUtils.isBlank(text);
+		}
+
+		@Override
+		public String getStringValue() {
+			return text;
+		}
+
+		@Override
+		public Map<String, String> getPotentiallyRelevantNamespaces() {
+			return new HashMap<>(namespaces);
+		}
+
+		@Override
+		public String toString() {
+			return "ValueParser(StAX" + (attribute ? "a" : "e") + ", " + PrettyPrinter.prettyPrint(name) + ": " + text + ")";
+		}
+	}
+}
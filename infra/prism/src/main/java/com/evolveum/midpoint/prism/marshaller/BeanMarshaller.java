@@ -195,23 +195,18 @@ public class BeanMarshaller {
 			throw new IllegalArgumentException("Cannot determine namespace of "+beanClass);
 		}
 
-		List<String> propOrder = inspector.getPropOrder(beanClass);
-
-		for (String fieldName: propOrder) {
-			Method getter = inspector.findPropertyGetter(beanClass, fieldName);
-			if (getter == null) {
-				throw new IllegalStateException("No getter for field "+fieldName+" in "+beanClass);
-			}
-			Object getterResult = getValue(bean, getter, fieldName);
+		for (PrismBeanInspector.MarshalledProperty property : inspector.getMarshalledProperties(beanClass)) {
+			Method getter = property.getter;
+			Object getterResult = getValue(bean, property);
 
 			if (getterResult == null) {
 				continue;
 			}
 
-			Field field = inspector.findPropertyField(beanClass, fieldName);
-			boolean isAttribute = inspector.isAttribute(field, getter);
+			Field field = property.field;
+			boolean isAttribute = property.attribute;
 
-			QName elementName = inspector.findFieldElementQName(fieldName, beanClass, namespace);
+			QName elementName = property.elementName;
 			if (getterResult instanceof Collection<?>) {
 				Collection collection = (Collection) getterResult;
 				if (collection.isEmpty()) {
@@ -276,13 +271,21 @@ public class BeanMarshaller {
 	private Object getValue(Object bean, Method getter, String fieldOrPropertyName) {
 		Object getterResult;
 		try {
-			getterResult = getter.invoke(bean);
+			getterResult = inspector.invokeGetter(getter, bean);
 		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 			throw new SystemException("Cannot invoke method for field/property "+fieldOrPropertyName+" in "+bean.getClass()+": "+e.getMessage(), e);
 		}
 		return getterResult;
 	}
 
+	private Object getValue(Object bean, PrismBeanInspector.MarshalledProperty property) {
+		try {
+			return inspector.invokeGetter(property, bean);
+		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+			throw new SystemException("Cannot invoke method for field/property "+property.name+" in "+bean.getClass()+": "+e.getMessage(), e);
+		}
+	}
+
 	private XNode marshalEnum(Enum enumValue, SerializationContext ctx) {
 		Class<? extends Enum> enumClass = enumValue.getClass();
 		String enumStringValue = inspector.findEnumFieldValue(enumClass, enumValue.toString());
@@ -566,7 +566,7 @@ public class BeanUnmarshaller {
 
 		if (setter != null) {
 			try {
-				setter.invoke(bean, propValue);
+				inspector.invokeSetter(setter, bean, propValue);
 			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 				throw new SystemException("Cannot invoke setter "+setter+" on bean of type "+beanClass+": "+e.getMessage(), e);
 			}
@@ -574,7 +574,7 @@ public class BeanUnmarshaller {
 			Object getterReturn;
 			Collection<Object> col;
 			try {
-				getterReturn = getter.invoke(bean);
+				getterReturn = inspector.invokeGetter(getter, bean);
 			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 				throw new SystemException("Cannot invoke getter "+getter+" on bean of type "+beanClass+": "+e.getMessage(), e);
 			}
@@ -998,7 +998,7 @@ public class BeanUnmarshaller {
 		Collection<Object> col;
 		Object getterReturn;
 		try {
-			getterReturn = getter.invoke(bean);
+			getterReturn = inspector.invokeGetter(getter, bean);
 		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 			throw new SystemException("Cannot invoke getter "+getter+" on bean of type "+beanClass+": "+e.getMessage(), e);
 		}
@@ -1016,11 +1016,7 @@ public class BeanUnmarshaller {
 	}
 
     private Object instantiateObjectFactory(Class objectFactoryClass) {
-        try {
-            return objectFactoryClass.newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new IllegalArgumentException("Cannot instantiate object factory class "+objectFactoryClass.getName()+": "+e.getMessage(), e);
-        }
+        return inspector.getObjectFactory(objectFactoryClass);
     }
 
 	private Object unmarshalSinglePropValue(XNode xsubnode, String fieldName, Class paramType, boolean storeAsRawType,
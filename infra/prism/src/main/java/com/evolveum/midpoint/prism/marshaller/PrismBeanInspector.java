@@ -43,8 +43,11 @@ import javax.xml.bind.annotation.XmlSchemaType;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.namespace.QName;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Comparator.naturalOrder;
 import static java.util.Comparator.nullsLast;
@@ -63,17 +66,33 @@ public class PrismBeanInspector {
 
 	//region Caching mechanism (multiple dimensions)
 
+    // The caches are concurrent maps, so threads marshalling/unmarshalling beans do not serialize on them.
+    // Concurrent maps allow neither null keys nor null values, so nulls are stored as this placeholder.
+    private static final Object NULL = new Object();
+
+    @SuppressWarnings("unchecked")
+    private static <T> T mask(Object value) {
+        return (T) (value != null ? value : NULL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unmask(Object value) {
+        return value != NULL ? (T) value : null;
+    }
+
     @FunctionalInterface
     interface Getter1<V, P1> {
         V get(P1 param1);
     }
 
+    // We intentionally do not use computeIfAbsent here, as some getters recursively ask the same cache (e.g. for superclasses).
     private <V, P1> V find1(Map<P1,V> cache, P1 param1, Getter1<V, P1> getter) {
-        if (cache.containsKey(param1)) {
-            return cache.get(param1);
+        V cached = cache.get(mask(param1));
+        if (cached != null) {
+            return unmask(cached);
         } else {
             V value = getter.get(param1);
-            cache.put(param1, value);
+            cache.putIfAbsent(mask(param1), mask(value));
             return value;
         }
     }
@@ -84,7 +103,7 @@ public class PrismBeanInspector {
     }
 
     private <V, P1, P2> V find2(final Map<P1,Map<P2,V>> cache, final P1 param1, final P2 param2, final Getter2<V, P1, P2> getter) {
-	    Map<P2, V> cache2 = cache.computeIfAbsent(param1, k -> Collections.synchronizedMap(new HashMap<>()));
+	    Map<P2, V> cache2 = cache.computeIfAbsent(mask(param1), k -> new ConcurrentHashMap<>());
 	    return find1(cache2, param2, p -> getter.get(param1, p));
     }
 
@@ -94,80 +113,80 @@ public class PrismBeanInspector {
     }
 
     private <V, P1, P2, P3> V find3(final Map<P1,Map<P2,Map<P3,V>>> cache, final P1 param1, final P2 param2, final P3 param3, final Getter3<V, P1, P2, P3> getter) {
-	    Map<P2, Map<P3, V>> cache2 = cache.computeIfAbsent(param1, k -> Collections.synchronizedMap(new HashMap<>()));
+	    Map<P2, Map<P3, V>> cache2 = cache.computeIfAbsent(mask(param1), k -> new ConcurrentHashMap<>());
 	    return find2(cache2, param2, param3, (p, q) -> getter.get(param1, p, q));
     }
     //endregion
 
     //region Individual inspection methods - cached versions
 
-    private Map<Class<?>, String> _determineNamespace = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class<?>, String> _determineNamespace = new ConcurrentHashMap<>();
 
     String determineNamespace(Class<?> paramType) {
         return find1(_determineNamespace, paramType, this::determineNamespaceUncached);
     }
 
-    private Map<Class<?>, QName> _determineTypeForClass = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class<?>, QName> _determineTypeForClass = new ConcurrentHashMap<>();
 
     QName determineTypeForClass(Class<?> paramType) {
         return find1(_determineTypeForClass, paramType, this::determineTypeForClassUncached);
     }
 
-    private Map<Field,Map<Method,Boolean>> _isAttribute = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Field,Map<Method,Boolean>> _isAttribute = new ConcurrentHashMap<>();
 
     boolean isAttribute(Field field, Method getter) {
         return find2(_isAttribute, field, getter, this::isAttributeUncached);
     }
 
-    private Map<Class,Map<String,Method>> _findSetter = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,Method>> _findSetter = new ConcurrentHashMap<>();
 
     <T> Method findSetter(Class<T> beanClass, String fieldName) {
 	    //noinspection unchecked
 	    return find2(_findSetter, beanClass, fieldName, (c, f) -> findSetterUncached(c, f));
     }
 
-    private Map<Package,Class> _getObjectFactoryClassPackage = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Package,Class> _getObjectFactoryClassPackage = new ConcurrentHashMap<>();
     Class getObjectFactoryClass(Package aPackage) {
         return find1(_getObjectFactoryClassPackage, aPackage, p -> getObjectFactoryClassUncached(p));
     }
 
-    private Map<String,Class> _getObjectFactoryClassNamespace = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String,Class> _getObjectFactoryClassNamespace = new ConcurrentHashMap<>();
     Class getObjectFactoryClass(String namespaceUri) {
         return find1(_getObjectFactoryClassNamespace, namespaceUri, s -> getObjectFactoryClassUncached(s));
     }
 
-    private Map<Class<?>, List<String>> _getPropOrder = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class<?>, List<String>> _getPropOrder = new ConcurrentHashMap<>();
 
     List<String> getPropOrder(Class<?> beanClass) {
         return find1(_getPropOrder, beanClass, this::getPropOrderUncached);
     }
 
-    private Map<Class,Map<String,Method>> _findElementMethodInObjectFactory = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,Method>> _findElementMethodInObjectFactory = new ConcurrentHashMap<>();
 
     Method findElementMethodInObjectFactory(Class objectFactoryClass, String propName) {
         return find2(_findElementMethodInObjectFactory, objectFactoryClass, propName,
                 (c, p) -> findElementMethodInObjectFactoryUncached(c, p));
     }
 
-    private Map<Class,Map<Method,Field>> _lookupSubstitution = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<Method,Field>> _lookupSubstitution = new ConcurrentHashMap<>();
 
     <T> Field lookupSubstitution(Class<T> beanClass, Method elementMethod) {
         return find2(_lookupSubstitution, beanClass, elementMethod, this::lookupSubstitutionUncached);
     }
 
-    private Map<Class,Map<String,String>> _findEnumFieldName = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,String>> _findEnumFieldName = new ConcurrentHashMap<>();
 
     <T> String findEnumFieldName(Class<T> classType, String primValue) {
         return find2(_findEnumFieldName, classType, primValue, (c, v) -> findEnumFieldNameUncached(c, v));
     }
 
-    private Map<Class,Map<String,String>> _findEnumFieldValue = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,String>> _findEnumFieldValue = new ConcurrentHashMap<>();
 
     <T> String findEnumFieldValue(Class<T> classType, String toStringValue) {
         return find2(_findEnumFieldValue, classType, toStringValue, (c, v) -> findEnumFieldValueUncached(c, v));
     }
 
-    private Map<Field,Map<Class<?>,Map<String,QName>>> _findTypeName = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Field,Map<Class<?>,Map<String,QName>>> _findTypeName = new ConcurrentHashMap<>();
 
 	// Determines type for field/content combination. Field information is used only for simple XSD types.
 	QName findTypeName(Field field, Class<?> contentClass, String defaultNamespacePlaceholder) {
@@ -175,7 +194,7 @@ public class PrismBeanInspector {
                 this::findTypeNameUncached);
     }
 
-    private Map<String,Map<Class<?>,Map<String,QName>>> _findFieldElementQName = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String,Map<Class<?>,Map<String,QName>>> _findFieldElementQName = new ConcurrentHashMap<>();
 
     QName findFieldElementQName(String fieldName, Class<?> beanClass, String defaultNamespace) {
         return find3(_findFieldElementQName, fieldName, beanClass, defaultNamespace,
@@ -183,21 +202,153 @@ public class PrismBeanInspector {
 				        defaultNamespace1));
     }
 
-    private Map<Class,Map<String,Method>> _findPropertyGetter = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,Method>> _findPropertyGetter = new ConcurrentHashMap<>();
 
     public <T> Method findPropertyGetter(Class<T> beanClass, String propName) {
         return find2(_findPropertyGetter, beanClass, propName, this::findPropertyGetterUncached);
     }
 
-    private Map<Class,Map<String,Field>> _findPropertyField = Collections.synchronizedMap(new HashMap<>());
+    private final Map<Class,Map<String,Field>> _findPropertyField = new ConcurrentHashMap<>();
 
     public <T> Field findPropertyField(Class<T> beanClass, String propName) {
         return find2(_findPropertyField, beanClass, propName, this::findPropertyFieldUncached);
     }
     //endregion
 
+    //region Accessors - cached per class or method
+
+    /**
+     * Information needed to marshal one property of a bean. Computed once per bean class,
+     * so the marshaller does not need to ask the individual caches for each property of each bean.
+     */
+    static class MarshalledProperty {
+        @NotNull final String name;
+        @NotNull final Method getter;
+        final MethodHandle getterHandle;            // null if the getter couldn't be unreflected; reflection is used then
+        final Field field;
+        final boolean attribute;
+        @NotNull final QName elementName;
+
+        private MarshalledProperty(@NotNull String name, @NotNull Method getter, MethodHandle getterHandle, Field field,
+                boolean attribute, @NotNull QName elementName) {
+            this.name = name;
+            this.getter = getter;
+            this.getterHandle = getterHandle;
+            this.field = field;
+            this.attribute = attribute;
+            this.elementName = elementName;
+        }
+    }
+
+    private final Map<Class<?>, List<MarshalledProperty>> _getMarshalledProperties = new ConcurrentHashMap<>();
+
+    /**
+     * Returns properties of the bean class in the order in which they are to be marshalled (see {@link #getPropOrder(Class)}).
+     */
+    List<MarshalledProperty> getMarshalledProperties(Class<?> beanClass) {
+        return find1(_getMarshalledProperties, beanClass, this::getMarshalledPropertiesUncached);
+    }
+
+    private final Map<Method, MethodHandle> _findMethodHandle = new ConcurrentHashMap<>();
+
+    private MethodHandle findMethodHandle(Method method) {
+        return find1(_findMethodHandle, method, this::findMethodHandleUncached);
+    }
+
+    private final Map<Class<?>, Object> _getObjectFactory = new ConcurrentHashMap<>();
+
+    /**
+     * Returns an instance of the JAXB object factory class. Object factories are stateless, so the instance can be shared.
+     */
+    Object getObjectFactory(Class<?> objectFactoryClass) {
+        return find1(_getObjectFactory, objectFactoryClass, this::instantiateObjectFactory);
+    }
+
+    /*
+     * The accessors below report problems in the same way as Method.invoke: exceptions thrown by the accessor itself
+     * are wrapped in InvocationTargetException; a null bean, a bean of a wrong type or a value not acceptable by the setter
+     * result in NullPointerException or IllegalArgumentException. Such calls (and calls of methods that couldn't be unreflected)
+     * are therefore left to Method.invoke, so that they are not reported as failures of the accessor.
+     */
+
+    Object invokeGetter(Method getter, Object bean) throws IllegalAccessException, InvocationTargetException {
+        return invoke(findMethodHandle(getter), getter, bean);
+    }
+
+    Object invokeGetter(MarshalledProperty property, Object bean) throws IllegalAccessException, InvocationTargetException {
+        return invoke(property.getterHandle, property.getter, bean);
+    }
+
+    void invokeSetter(Method setter, Object bean, Object value) throws IllegalAccessException, InvocationTargetException {
+        MethodHandle handle = findMethodHandle(setter);
+        if (handle == null || !setter.getDeclaringClass().isInstance(bean) || !isAcceptable(setter.getParameterTypes()[0], value)) {
+            setter.invoke(bean, value);
+        } else {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    private Object invoke(MethodHandle getterHandle, Method getter, Object bean) throws IllegalAccessException, InvocationTargetException {
+        if (getterHandle == null || !getter.getDeclaringClass().isInstance(bean)) {
+            return getter.invoke(bean);
+        } else {
+            try {
+                return (Object) getterHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    // Values for primitive parameters are left to Method.invoke, as it does unboxing and widening conversions the handle wouldn't do.
+    private static boolean isAcceptable(Class<?> parameterType, Object value) {
+        return !parameterType.isPrimitive() && (value == null || parameterType.isInstance(value));
+    }
+    //endregion
+
     //region Uncached versions of the inspection methods
 
+    private List<MarshalledProperty> getMarshalledPropertiesUncached(Class<?> beanClass) {
+        String namespace = determineNamespace(beanClass);
+        if (namespace == null) {
+            throw new IllegalArgumentException("Cannot determine namespace of "+beanClass);
+        }
+        List<MarshalledProperty> properties = new ArrayList<>();
+        for (String fieldName : getPropOrder(beanClass)) {
+            Method getter = findPropertyGetter(beanClass, fieldName);
+            if (getter == null) {
+                throw new IllegalStateException("No getter for field "+fieldName+" in "+beanClass);
+            }
+            Field field = findPropertyField(beanClass, fieldName);
+            properties.add(new MarshalledProperty(fieldName, getter, findMethodHandle(getter), field,
+                    isAttribute(field, getter), findFieldElementQName(fieldName, beanClass, namespace)));
+        }
+        return Collections.unmodifiableList(properties);
+    }
+
+    // Getters have type (Object)Object and setters (Object,Object)void, so they can be invoked without knowing the bean class.
+    private MethodHandle findMethodHandleUncached(Method method) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+            return handle.asType(handle.type().generic().changeReturnType(
+                    method.getReturnType() == void.class ? void.class : Object.class));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private Object instantiateObjectFactory(Class<?> objectFactoryClass) {
+        try {
+            return objectFactoryClass.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot instantiate object factory class "+objectFactoryClass.getName()+": "+e.getMessage(), e);
+        }
+    }
+
     private <T> Field findPropertyFieldUncached(Class<T> classType, String propName) {
         Field field = findPropertyFieldExactUncached(classType, propName);
         if (field != null) {
@@ -36,7 +36,12 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 public class PrismUnmarshaller {
 
@@ -319,10 +324,14 @@ public class PrismUnmarshaller {
             if (itemDefinition != null && !itemDefinition.isMultiValue() && listNode.size() > 1) {
                 throw new SchemaException("Attempt to store multiple values in single-valued property " + itemName);
             }
+            List<PrismPropertyValue<T>> pvals = new ArrayList<>(listNode.size());
             for (XNode subNode : listNode) {
                 PrismPropertyValue<T> pval = parsePropertyValue(subNode, itemDefinition, pc);
-                addItemValueIfPossible(property, pval, pc);
+                if (pval != null) {
+                    pvals.add(pval);
+                }
             }
+            addItemValuesIfPossible(property, pvals, pc);
         } else if (node instanceof MapXNode || node instanceof PrimitiveXNode || node.isHeterogeneousList()) {
             PrismPropertyValue<T> pval = parsePropertyValue(node, itemDefinition, pc);
             if (pval != null) {
@@ -339,6 +348,24 @@ public class PrismUnmarshaller {
         return property;
     }
 
+	// Adding all values at once is much faster for large items (uniqueness is checked using an index).
+	// If that fails, values not added yet are added one by one, so that (in compat mode) a wrong value is reported
+	// and skipped on its own, and values after it are not lost.
+	private <V extends PrismValue, D extends ItemDefinition> void addItemValuesIfPossible(Item<V, D> item, List<V> values, ParsingContext pc) throws SchemaException {
+		try {
+			item.addAll(values);
+		} catch (SchemaException e) {
+			LOGGER.trace("Couldn't add all values to {} at once, adding them one by one: {}", item, e.getMessage());
+			Set<V> added = Collections.newSetFromMap(new IdentityHashMap<>());
+			added.addAll(item.getValues());
+			for (V value : values) {
+				if (!added.contains(value)) {
+					addItemValueIfPossible(item, value, pc);
+				}
+			}
+		}
+	}
+
 	private <V extends PrismValue, D extends ItemDefinition> void addItemValueIfPossible(Item<V, D> item, V value, ParsingContext pc) throws SchemaException {
 		if (value != null) {
 			try {
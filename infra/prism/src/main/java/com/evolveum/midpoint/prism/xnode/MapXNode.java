@@ -18,6 +18,8 @@ package com.evolveum.midpoint.prism.xnode;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,9 +40,15 @@ import org.jetbrains.annotations.NotNull;
 
 public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 
+	private static final int INDEX_THRESHOLD = 8;
+
 	// We want to maintain ordering, hence the List
 	private List<Entry> subnodes = new ArrayList<Entry>();
 
+	// Entries by local part of the key (QNameUtil.match requires equal local parts), created on the first lookup
+	// in a larger map. New entries are added to it; any removal drops it.
+	private transient volatile Map<String, List<Entry>> index;
+
 	public int size() {
 		return subnodes.size();
 	}
@@ -80,14 +88,14 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 
 	public XNode put(QName key, XNode value) {
 		XNode previous = removeEntry(key);
-		subnodes.add(new Entry(key, value));
+		addEntry(new Entry(key, value));
 		return previous;
 	}
 
 	public Entry putReturningEntry(QName key, XNode value) {
 		removeEntry(key);
 		Entry e = new Entry(key, value);
-		subnodes.add(e);
+		addEntry(e);
 		return e;
 	}
 
@@ -106,6 +114,7 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 
 	public void clear() {
 		subnodes.clear();
+		index = null;
 	}
 
 	public Set<QName> keySet() {
@@ -174,7 +183,24 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 
 			@Override
 			public Iterator<java.util.Map.Entry<QName, XNode>> iterator() {
-				return (Iterator)subnodes.iterator();
+				Iterator<Entry> iterator = subnodes.iterator();
+				return new Iterator<java.util.Map.Entry<QName, XNode>>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public java.util.Map.Entry<QName, XNode> next() {
+						return iterator.next();
+					}
+
+					@Override
+					public void remove() {
+						iterator.remove();
+						index = null;
+					}
+				};
 			}
 
 			@Override
@@ -320,7 +346,7 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 	}
 
 	private Entry findEntry(QName qname) {
-		for (Entry entry: subnodes) {
+		for (Entry entry: getCandidates(qname)) {
 			if (QNameUtil.match(qname,entry.getKey())) {
 				return entry;
 			}
@@ -328,6 +354,38 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 		return null;
 	}
 
+	// Returns entries that can match given key, in their original order.
+	private List<Entry> getCandidates(QName qname) {
+		if (subnodes.size() < INDEX_THRESHOLD || qname == null) {
+			return subnodes;
+		}
+		Map<String, List<Entry>> current = index;
+		if (current == null) {
+			current = new HashMap<>();
+			for (Entry entry : subnodes) {
+				addToIndex(current, entry);
+			}
+			index = current;
+		}
+		List<Entry> candidates = current.get(qname.getLocalPart());
+		return candidates != null ? candidates : Collections.emptyList();
+	}
+
+	private void addEntry(Entry entry) {
+		subnodes.add(entry);
+		Map<String, List<Entry>> current = index;
+		if (current != null) {
+			addToIndex(current, entry);
+		}
+	}
+
+	private static void addToIndex(Map<String, List<Entry>> index, Entry entry) {
+		// null keys are never indexed, as they can be matched only by a null key (that is looked up without the index)
+		if (entry.getKey() != null) {
+			index.computeIfAbsent(entry.getKey().getLocalPart(), k -> new ArrayList<>(1)).add(entry);
+		}
+	}
+
 	private Entry findEntry(XNode xnode) {
 		for (Entry entry: subnodes) {
 			if (entry.getValue().equals(xnode)) {
@@ -338,15 +396,19 @@ public class MapXNode extends XNode implements Map<QName,XNode>, Serializable {
 	}
 
 	private XNode removeEntry(QName key) {
+		Entry found = findEntry(key);
+		if (found == null) {
+			return null;
+		}
 		Iterator<Entry> iterator = subnodes.iterator();
 		while (iterator.hasNext()) {
-			Entry entry = iterator.next();
-			if (QNameUtil.match(key,entry.getKey())) {
+			if (iterator.next() == found) {
 				iterator.remove();
-				return entry.getValue();
+				index = null;
+				break;
 			}
 		}
-		return null;
+		return found.getValue();
 	}
 
 	public String dumpKeyNames() {
@@ -21,7 +21,9 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
@@ -375,6 +377,40 @@ public class TestDiff {
         delta.checkConsistence();
     }
 
+    /**
+     * Large multivalued property - the values are matched using an index.
+     */
+    @Test
+    public void testPropertyUserLargeDiffMulti() throws Exception {
+    	System.out.println("\n\n===[ testPropertyUserLargeDiffMulti ]===\n");
+
+    	// GIVEN
+    	PrismObjectDefinition<UserType> userDef = getUserTypeDefinition();
+
+		PrismObject<UserType> user1 = userDef.instantiate();
+		PrismProperty<String> additionalNamesProp1 = user1.findOrCreateProperty(UserType.F_ADDITIONAL_NAMES);
+		PrismObject<UserType> user2 = userDef.instantiate();
+		PrismProperty<String> additionalNamesProp2 = user2.findOrCreateProperty(UserType.F_ADDITIONAL_NAMES);
+		List<PrismPropertyValue<String>> values2 = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			additionalNamesProp1.addRealValue("name" + i);
+			values2.add(new PrismPropertyValue<>("name" + (i + 1)));
+		}
+		values2.add(new PrismPropertyValue<>("name1"));			// duplicate, should be ignored
+		additionalNamesProp2.addAll(values2);
+		assertEquals("Wrong number of values", 1000, additionalNamesProp2.size());
+
+		// WHEN
+		PropertyDelta<String> delta = additionalNamesProp1.diff(additionalNamesProp2);
+
+        // THEN
+        assertNotNull(delta);
+        System.out.println(delta.debugDump());
+        PrismAsserts.assertAdd(delta, "name1000");
+        PrismAsserts.assertDelete(delta, "name0");
+        delta.checkConsistence();
+    }
+
     @Test
     public void testPropertyUserSimpleDiffMultiAddStaticNull1() throws Exception {
     	System.out.println("\n\n===[ testPropertyUserSimpleDiffMultiAddStaticNull1 ]===\n");
@@ -18,9 +18,13 @@ package com.evolveum.midpoint.prism;
 import static org.testng.AssertJUnit.assertTrue;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.*;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 
 import java.io.IOException;
 
+import javax.xml.namespace.QName;
+
 import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
@@ -180,6 +184,35 @@ public class TestFind {
 		assertEquals("Wrong value2 description (path="+path+")", "Assignment 2", value2.findProperty(AssignmentType.F_DESCRIPTION).getRealValue());
 	}
 
+	@Test
+	public void testFindInLargeContainerValue() throws SchemaException {
+		final String TEST_NAME = "testFindInLargeContainerValue";
+		System.out.println("===[ "+TEST_NAME+" ]===");
+
+		// GIVEN
+		PrismContainerValue<?> value = new PrismContainerValue<>(PrismTestUtil.getPrismContext());
+		for (int i = 0; i < 50; i++) {
+			value.add(new PrismProperty<>(new QName(NS_FOO, "prop" + i)));
+		}
+		value.add(new PrismProperty<>(new QName(NS_FOO_TYPES, "other")));
+
+		// WHEN + THEN
+		assertNotNull("Qualified name not found", value.findProperty(new QName(NS_FOO, "prop20")));
+		assertNotNull("Unqualified name not found", value.findProperty(new QName("prop30")));
+		assertNull("Item with wrong namespace found", value.findProperty(new QName(NS_FOO, "other")));
+		assertNotNull("Item in other namespace not found", value.findProperty(new QName("other")));
+
+		// WHEN (modification via live list)
+		value.getItems().removeIf(item -> item.getElementName().getLocalPart().equals("prop20"));
+		value.findProperty(new QName(NS_FOO, "prop40")).setElementName(new QName(NS_FOO, "renamed"));
+
+		// THEN
+		assertNull("Removed item found", value.findProperty(new QName(NS_FOO, "prop20")));
+		assertNull("Renamed item found by its old name", value.findProperty(new QName(NS_FOO, "prop40")));
+		assertNotNull("Renamed item not found", value.findProperty(new QName(NS_FOO, "renamed")));
+		assertEquals("Wrong # of items", 50, value.getItems().size());
+	}
+
 	private <T> T findUser(ItemPath path) throws SchemaException, SAXException, IOException {
 		PrismObject<UserType> user = createUser();
 		return find(user, path);
@@ -15,11 +15,14 @@
  */
 package com.evolveum.midpoint.prism.lex;
 
+import static com.evolveum.midpoint.prism.PrismInternalTestUtil.RESOURCE_RUM_FILE_BASENAME;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.USER_JACK_FILE_BASENAME;
 import static com.evolveum.midpoint.prism.PrismInternalTestUtil.displayTestTitle;
 import static org.testng.AssertJUnit.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.evolveum.midpoint.prism.ParsingContext;
 import com.evolveum.midpoint.prism.lex.dom.DomLexicalProcessor;
@@ -34,6 +37,7 @@ import com.evolveum.midpoint.prism.xnode.MapXNode;
 import com.evolveum.midpoint.prism.xnode.PrimitiveXNode;
 import com.evolveum.midpoint.prism.xnode.RootXNode;
 import com.evolveum.midpoint.prism.xnode.XNode;
+import com.evolveum.midpoint.util.DebugUtil;
 
 /**
  * @author semancik
@@ -85,6 +89,36 @@ public class TestDomParser extends AbstractLexicalProcessorTest {
 
 	}
 
+	/**
+	 * Objects read iteratively (directly from StAX stream) should be the same as the ones read via DOM.
+	 */
+	@Test
+	public void testReadIterativelyLikeDom() throws Exception {
+		final String TEST_NAME = "testReadIterativelyLikeDom";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		DomLexicalProcessor parser = createParser();
+
+		for (String basename : new String[] { USER_JACK_FILE_BASENAME, RESOURCE_RUM_FILE_BASENAME }) {
+			// WHEN
+			List<RootXNode> nodes = new ArrayList<>();
+			parser.readObjectsIteratively(getFileSource(basename), ParsingContext.createDefault(),
+					node -> {
+						nodes.add(node);
+						return true;
+					});
+			RootXNode nodeFromDom = parser.read(getFileSource(basename), ParsingContext.createDefault());
+
+			// THEN
+			System.out.println("Parsed XNode (iteratively):");
+			System.out.println(DebugUtil.debugDump(nodes));
+
+			assertEquals("Wrong # of nodes read from " + basename, 1, nodes.size());
+			assertEquals("Nodes read from " + basename + " are different", nodeFromDom, nodes.get(0));
+		}
+	}
+
 	private void validateSchemaCompliance(String xmlString, PrismContext prismContext)  throws SAXException, IOException {
 //		Document xmlDocument = DOMUtil.parseDocument(xmlString);
 //		Schema javaxSchema = prismContext.getSchemaRegistry().getJavaxSchema();
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.prism.marshaller;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import com.evolveum.midpoint.prism.PrismInternalTestUtil;
+import com.evolveum.midpoint.prism.foo.AccountConstructionType;
+import com.evolveum.midpoint.prism.util.PrismTestUtil;
+import com.evolveum.midpoint.util.exception.SchemaException;
+
+/**
+ * Tests bean accessors (method handles with reflection as a fallback) and concurrent use of the inspection caches.
+ */
+public class TestPrismBeanInspector {
+
+	private static final int THREADS = 8;
+	private static final int ITERATIONS = 500;
+
+	private PrismBeanInspector inspector;
+
+	@BeforeSuite
+	public void setupDebug() throws SchemaException, SAXException, IOException {
+		PrismTestUtil.resetPrismContext(new PrismInternalTestUtil());
+	}
+
+	@BeforeMethod
+	public void setUp() {
+		inspector = new PrismBeanInspector(PrismTestUtil.getPrismContext());
+	}
+
+	@Test
+	public void test100GetterAndSetter() throws Exception {
+		Bean bean = new Bean();
+
+		// WHEN
+		inspector.invokeSetter(Bean.class.getMethod("setName", String.class), bean, "jack");
+		inspector.invokeSetter(Bean.class.getMethod("setCount", int.class), bean, 42);
+
+		// THEN
+		assertEquals("Wrong name", "jack", inspector.invokeGetter(Bean.class.getMethod("getName"), bean));
+		assertEquals("Wrong count", 42, inspector.invokeGetter(Bean.class.getMethod("getCount"), bean));
+		inspector.invokeSetter(Bean.class.getMethod("setName", String.class), bean, null);
+		assertNull("Name was not cleared", inspector.invokeGetter(Bean.class.getMethod("getName"), bean));
+	}
+
+	/**
+	 * Methods of classes that are not public cannot be looked up by the public lookup; they are invoked by reflection.
+	 */
+	@Test
+	public void test110NonPublicClass() throws Exception {
+		HiddenBean bean = new HiddenBean();
+
+		// WHEN
+		inspector.invokeSetter(HiddenBean.class.getMethod("setName", String.class), bean, "jack");
+
+		// THEN
+		assertEquals("Wrong name", "jack", inspector.invokeGetter(HiddenBean.class.getMethod("getName"), bean));
+	}
+
+	/**
+	 * Failures must be reported exactly as they were when the accessors were invoked by reflection.
+	 */
+	@Test
+	public void test200ExceptionContract() throws Exception {
+		Method getName = Bean.class.getMethod("getName");
+		Method setName = Bean.class.getMethod("setName", String.class);
+		Method setCount = Bean.class.getMethod("setCount", int.class);
+		Bean failingBean = new Bean();
+		failingBean.failing = true;
+
+		assertSameFailure(() -> getName.invoke(failingBean), () -> inspector.invokeGetter(getName, failingBean));
+		assertSameFailure(() -> setName.invoke(new Bean(), Bean.FAILING_NAME),
+				() -> inspector.invokeSetter(setName, new Bean(), Bean.FAILING_NAME));
+		assertSameFailure(() -> getName.invoke(new Object()), () -> inspector.invokeGetter(getName, new Object()));
+		assertSameFailure(() -> getName.invoke(null), () -> inspector.invokeGetter(getName, null));
+		assertSameFailure(() -> setName.invoke(new Bean(), 42), () -> inspector.invokeSetter(setName, new Bean(), 42));
+		assertSameFailure(() -> setCount.invoke(new Bean(), (Object) null),
+				() -> inspector.invokeSetter(setCount, new Bean(), null));
+		assertSameFailure(() -> setCount.invoke(new Bean(), "42"), () -> inspector.invokeSetter(setCount, new Bean(), "42"));
+	}
+
+	/**
+	 * The caches are used by many threads at once. All of them must get the same (cached) answers, including null ones.
+	 */
+	@Test
+	public void test300ConcurrentCaches() throws Exception {
+		Class<AccountConstructionType> beanClass = AccountConstructionType.class;
+		AccountConstructionType bean = new AccountConstructionType();
+		bean.setHowto("concurrently");
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		Queue<Object[]> answers = new ConcurrentLinkedQueue<>();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+		// WHEN
+		for (int t = 0; t < THREADS; t++) {
+			executor.submit(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < ITERATIONS; i++) {
+						Method getter = inspector.findPropertyGetter(beanClass, "howto");
+						answers.add(new Object[] {
+								inspector.getPropOrder(beanClass),
+								getter,
+								inspector.findPropertyField(beanClass, "howto"),
+								inspector.findPropertyField(beanClass, "nonExistingProperty"),
+								inspector.getMarshalledProperties(beanClass),
+								inspector.invokeGetter(getter, bean)
+						});
+					}
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertTrue("Threads did not finish", executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		// THEN
+		assertTrue("Failures: " + failures, failures.isEmpty());
+		assertEquals("Wrong # of answers", THREADS * ITERATIONS, answers.size());
+		List<String> propOrder = inspector.getPropOrder(beanClass);
+		Method getter = inspector.findPropertyGetter(beanClass, "howto");
+		Field field = inspector.findPropertyField(beanClass, "howto");
+		List<PrismBeanInspector.MarshalledProperty> properties = inspector.getMarshalledProperties(beanClass);
+		assertNotNull("No getter", getter);
+		assertNotNull("No field", field);
+		assertEquals("Wrong prop order", propOrder.size(), properties.size());
+		for (Object[] answer : answers) {
+			assertSame("Different prop order", propOrder, answer[0]);
+			assertSame("Different getter", getter, answer[1]);
+			assertSame("Different field", field, answer[2]);
+			assertNull("Non-existing field found", answer[3]);
+			assertSame("Different marshalled properties", properties, answer[4]);
+			assertEquals("Wrong value", "concurrently", answer[5]);
+		}
+	}
+
+	private void assertSameFailure(Invocation byReflection, Invocation byInspector) {
+		Throwable expected = getFailure(byReflection);
+		Throwable real = getFailure(byInspector);
+		assertNotNull("Reflection did not fail", expected);
+		assertNotNull("Inspector did not fail (expected " + expected + ")", real);
+		assertEquals("Wrong exception", expected.getClass(), real.getClass());
+		if (expected instanceof InvocationTargetException) {
+			Throwable expectedCause = expected.getCause();
+			Throwable realCause = real.getCause();
+			assertEquals("Wrong cause", expectedCause.getClass(), realCause.getClass());
+			assertEquals("Wrong cause message", expectedCause.getMessage(), realCause.getMessage());
+		}
+	}
+
+	private Throwable getFailure(Invocation invocation) {
+		try {
+			invocation.invoke();
+			return null;
+		} catch (Throwable t) {
+			return t;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Invocation {
+		void invoke() throws Throwable;
+	}
+
+	public static class Bean {
+
+		static final String FAILING_NAME = "fail";
+
+		private String name;
+		private int count;
+		private boolean failing;
+
+		public String getName() {
+			if (failing) {
+				throw new IllegalStateException("Simulated getter failure");
+			}
+			return name;
+		}
+
+		public void setName(String name) {
+			if (FAILING_NAME.equals(name)) {
+				throw new IllegalStateException("Simulated setter failure");
+			}
+			this.name = name;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public void setCount(int count) {
+			this.count = count;
+		}
+	}
+
+	static class HiddenBean {
+
+		private String name;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
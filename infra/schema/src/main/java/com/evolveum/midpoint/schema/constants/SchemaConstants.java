@@ -361,6 +361,10 @@ public abstract class SchemaConstants {
 	public static final QName MODEL_EXTENSION_ITERATION_METHOD = new QName(NS_MODEL_EXTENSION, "iterationMethod");
 	public static final QName MODEL_EXTENSION_OBJECT_DELTA = new QName(NS_MODEL_EXTENSION, "objectDelta");
 	public static final QName MODEL_EXTENSION_WORKER_THREADS = new QName(NS_MODEL_EXTENSION, "workerThreads");
+	public static final QName MODEL_EXTENSION_WORKER_TASKS = new QName(NS_MODEL_EXTENSION, "workerTasks");
+	public static final QName MODEL_EXTENSION_PARTITION_FILTER = new QName(NS_MODEL_EXTENSION, "partitionFilter");
+	public static final QName MODEL_EXTENSION_PARTITION_INDEX = new QName(NS_MODEL_EXTENSION, "partitionIndex");
+	public static final QName MODEL_EXTENSION_PARTITION_COUNT = new QName(NS_MODEL_EXTENSION, "partitionCount");
 	public static final QName MODEL_EXTENSION_OPTION_RAW = new QName(NS_MODEL_EXTENSION, "optionRaw");
 	public static final QName MODEL_EXTENSION_EXECUTE_OPTIONS = new QName(NS_MODEL_EXTENSION, "executeOptions");
 
@@ -28,6 +28,11 @@ public enum InternalCounters {
 	
 	RESOURCE_REPOSITORY_MODIFY_COUNT("resourceRepositoryModifyCount", "resource repository modify count", InternalOperationClasses.REPOSITORY_OPERATIONS),
 
+	/**
+	 * Resources copied from the resource cache because the caller did not ask for a read-only instance.
+	 */
+	RESOURCE_CACHE_CLONE_COUNT("resourceCacheCloneCount", "resource cache clone count", null),
+
 	CONNECTOR_INSTANCE_INITIALIZATION_COUNT("connectorInstanceInitializationCount", "connector instance initialization count", InternalOperationClasses.CONNECTOR_OPERATIONS),
 
 	CONNECTOR_SCHEMA_PARSE_COUNT("connectorSchemaParseCount", "connector schema parse count", InternalOperationClasses.CONNECTOR_OPERATIONS),
@@ -48,6 +53,11 @@ public enum InternalCounters {
 
 	SHADOW_CHANGE_OPERATION_COUNT("shadowChangeOperationCount", "shadow change operation count", null),
 
+	/**
+	 * Repository queries looking up shadows for a batch of resource objects found by a search.
+	 */
+	SHADOW_LOOKUP_BATCH_COUNT("shadowLookupBatchCount", "shadow lookup batch count", null),
+
 	/**
 	 * All provisioning operations that reach out to the resources.
 	 */
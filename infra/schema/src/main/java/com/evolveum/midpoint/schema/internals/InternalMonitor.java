@@ -17,6 +17,7 @@ package com.evolveum.midpoint.schema.internals;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 import com.evolveum.midpoint.prism.Objectable;
@@ -43,11 +44,13 @@ public class InternalMonitor implements PrismMonitor, DebugDumpable {
 
 	private static final String CLONE_START_TIMESTAMP_KEY = InternalMonitor.class.getName()+".cloneStartTimestamp";
 
-	private static Map<InternalCounters,Long> counterMap = new HashMap<>();
+	private static Map<InternalCounters,Long> counterMap = new ConcurrentHashMap<>();
 	private static Map<InternalOperationClasses,Boolean> traceMap = new HashMap<>();
 
 	private static CachingStatistics resourceCacheStats = new CachingStatistics();
 	private static CachingStatistics connectorCacheStats = new CachingStatistics();
+	private static CachingStatistics globalObjectCacheStats = new CachingStatistics();
+	private static CachingStatistics globalQueryCacheStats = new CachingStatistics();
 
 	private static boolean cloneTimingEnabled = false;
 	private static long prismObjectCloneDurationNanos = 0;
@@ -70,14 +73,8 @@ public class InternalMonitor implements PrismMonitor, DebugDumpable {
 		}
 	}
 
-	private static synchronized long recordCountInternal(InternalCounters counter) {
-		Long count = counterMap.get(counter);
-		if (count == null) {
-			count = 0L;
-		}
-		count++;
-		counterMap.put(counter, count);
-		return count;
+	private static long recordCountInternal(InternalCounters counter) {
+		return counterMap.merge(counter, 1L, Long::sum);
 	}
 
 	public static boolean isTrace(InternalOperationClasses operationClass) {
@@ -145,6 +142,14 @@ public class InternalMonitor implements PrismMonitor, DebugDumpable {
 		return connectorCacheStats;
 	}
 
+	public static CachingStatistics getGlobalObjectCacheStats() {
+		return globalObjectCacheStats;
+	}
+
+	public static CachingStatistics getGlobalQueryCacheStats() {
+		return globalQueryCacheStats;
+	}
+
 	public static void recordConnectorOperation(String name) {
 		long count = recordCountInternal(InternalCounters.CONNECTOR_OPERATION_COUNT);
 		if (isTrace(InternalCounters.CONNECTOR_OPERATION_COUNT)) {
@@ -249,6 +254,8 @@ public class InternalMonitor implements PrismMonitor, DebugDumpable {
 		traceMap.clear();
 		resourceCacheStats = new CachingStatistics();
 		connectorCacheStats = new CachingStatistics();
+		globalObjectCacheStats = new CachingStatistics();
+		globalQueryCacheStats = new CachingStatistics();
 		inspector = null;
 	}
 
@@ -277,7 +284,9 @@ public class InternalMonitor implements PrismMonitor, DebugDumpable {
 			DebugUtil.debugDumpWithLabelLn(sb, "prismObjectCloneDuration", (prismObjectCloneDurationNanos/1000000)+" ms (" + prismObjectCloneDurationNanos + " ns)", indent + 1);
 		}
 		DebugUtil.debugDumpWithLabelLn(sb, "resourceCacheStats", resourceCacheStats, indent + 1);
-		DebugUtil.debugDumpWithLabel(sb, "connectorCacheStats", connectorCacheStats, indent + 1);
+		DebugUtil.debugDumpWithLabelLn(sb, "connectorCacheStats", connectorCacheStats, indent + 1);
+		DebugUtil.debugDumpWithLabelLn(sb, "globalObjectCacheStats", globalObjectCacheStats, indent + 1);
+		DebugUtil.debugDumpWithLabel(sb, "globalQueryCacheStats", globalQueryCacheStats, indent + 1);
 		return sb.toString();
 	}
 }
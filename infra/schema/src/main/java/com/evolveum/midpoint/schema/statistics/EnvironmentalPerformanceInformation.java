@@ -49,7 +49,7 @@ public class EnvironmentalPerformanceInformation {
 
     private Map<ProvisioningStatisticsKey,ProvisioningStatisticsData> provisioningData = new HashMap<>();
     private Map<NotificationsStatisticsKey,GenericStatisticsData> notificationsData = new HashMap<>();
-    private Map<MappingsStatisticsKey,GenericStatisticsData> mappingsData = new HashMap<>();
+    private Map<MappingsStatisticsKey,MappingsStatisticsData> mappingsData = new HashMap<>();
 
 	private static final int AGGREGATION_THRESHOLD = 50;
 
@@ -120,7 +120,7 @@ public class EnvironmentalPerformanceInformation {
 			Integer current = entriesPerType.get(key.getObjectType());
 			entriesPerType.put(key.getObjectType(), current != null ? current+1 : 1);
 		}
-        for (Map.Entry<MappingsStatisticsKey, GenericStatisticsData> entry : mappingsData.entrySet()) {
+        for (Map.Entry<MappingsStatisticsKey, MappingsStatisticsData> entry : mappingsData.entrySet()) {
             final MappingsStatisticsKey key = entry.getKey();
             final String targetEntryName;
 			if (entriesPerType.get(key.getObjectType()) < AGGREGATION_THRESHOLD) {
@@ -135,7 +135,8 @@ public class EnvironmentalPerformanceInformation {
                 rv.getEntry().add(entryType);
             }
             setValueMapping(entryType, entry.getValue().getCount(),
-                    entry.getValue().getMinDuration(), entry.getValue().getMaxDuration(), entry.getValue().getTotalDuration());
+                    entry.getValue().getMinDuration(), entry.getValue().getMaxDuration(), entry.getValue().getTotalDuration(),
+                    entry.getValue().getCacheHits(), entry.getValue().getCacheMisses());
         }
         return rv;
     }
@@ -258,7 +259,8 @@ public class EnvironmentalPerformanceInformation {
         e.setTotalTime(e.getTotalTime() + totalDuration);
     }
 
-    private void setValueMapping(MappingsStatisticsEntryType e, int count, long min, long max, long totalDuration) {
+    private void setValueMapping(MappingsStatisticsEntryType e, int count, long min, long max, long totalDuration,
+            int cacheHits, int cacheMisses) {
         e.setCount(e.getCount() + count);
         if (e.getMinTime() == null || min < e.getMinTime()) {
             e.setMinTime(min);
@@ -267,6 +269,16 @@ public class EnvironmentalPerformanceInformation {
             e.setMaxTime(max);
         }
         e.setTotalTime(e.getTotalTime() + totalDuration);
+        addCacheOperations(e, cacheHits, cacheMisses);
+    }
+
+    // cache counters are present only if pure expressions were evaluated
+    private static void addCacheOperations(MappingsStatisticsEntryType e, Integer cacheHits, Integer cacheMisses) {
+        if ((cacheHits == null || cacheHits == 0) && (cacheMisses == null || cacheMisses == 0)) {
+            return;
+        }
+        e.setCacheHits((e.getCacheHits() != null ? e.getCacheHits() : 0) + (cacheHits != null ? cacheHits : 0));
+        e.setCacheMisses((e.getCacheMisses() != null ? e.getCacheMisses() : 0) + (cacheMisses != null ? cacheMisses : 0));
     }
 
     private EnvironmentalPerformanceInformationType aggregate(EnvironmentalPerformanceInformationType startValue, EnvironmentalPerformanceInformationType delta) {
@@ -355,6 +367,7 @@ public class EnvironmentalPerformanceInformation {
             e.setMinTime(min(e.getMinTime(), de.getMinTime()));
             e.setMaxTime(max(e.getMaxTime(), de.getMaxTime()));
             e.setTotalTime(e.getTotalTime() + de.getTotalTime());
+            addCacheOperations(e, de.getCacheHits(), de.getCacheMisses());
             if (e.getCount() > 0) {
                 e.setAverageTime(e.getTotalTime() / e.getCount());
             } else {
@@ -470,15 +483,17 @@ public class EnvironmentalPerformanceInformation {
         data.recordOperation(duration, 1);
     }
 
-    public synchronized void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName, long duration) {
+    public synchronized void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName,
+            long duration, int cacheHits, int cacheMisses) {
         // ignoring mapping name for now
         MappingsStatisticsKey key = new MappingsStatisticsKey(objectOid, objectName, objectTypeName);
-        GenericStatisticsData data = mappingsData.get(key);
+        MappingsStatisticsData data = mappingsData.get(key);
         if (data == null) {
-            data = new GenericStatisticsData();
+            data = new MappingsStatisticsData();
             mappingsData.put(key, data);
         }
         data.recordOperation(duration, 1);
+        data.recordCacheOperations(cacheHits, cacheMisses);
     }
 
     public synchronized StatusMessage getLastMessage() {
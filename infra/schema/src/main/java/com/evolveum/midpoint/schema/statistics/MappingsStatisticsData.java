@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.schema.statistics;
+
+/**
+ * Besides the usual counts and durations, it keeps hits and misses of the pure expression memoization cache.
+ */
+public class MappingsStatisticsData extends GenericStatisticsData {
+
+    private int cacheHits;
+    private int cacheMisses;
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void recordCacheOperations(int hits, int misses) {
+        cacheHits += hits;
+        cacheMisses += misses;
+    }
+}
@@ -58,7 +58,12 @@ public interface StatisticsCollector {
 
     void recordNotificationOperation(String transportName, boolean success, long duration);
 
-    void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName, long duration);
+    /**
+     * Records evaluation of a mapping. Cache hits and misses are those of the pure expression memoization cache
+     * that occurred during the evaluation.
+     */
+    void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName, long duration,
+            int cacheHits, int cacheMisses);
 
     /**
      * Records information about iterative processing of objects.
@@ -18,6 +18,7 @@ package com.evolveum.midpoint.schema.util;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.InternalsConfigurationType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
 
@@ -64,6 +65,10 @@ public class SystemConfigurationTypeUtil {
         }
     }
 
+    public static CachingConfigurationType getCachingConfiguration(SystemConfigurationType config) {
+        return config != null && config.getInternals() != null ? config.getInternals().getCaching() : null;
+    }
+
     // TODO move to better place?
     public static void applyOperationResultHandling(SystemConfigurationType config) {
         Integer value = config != null && config.getInternals() != null ? config.getInternals().getSubresultStripThreshold() : null;
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.util.histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram with constant memory footprint, suitable for recording latencies
+ * of frequently executed operations.
+ *
+ * Unlike {@link Histogram} it uses log-linear buckets (in the style of HdrHistogram): each power of two
+ * is divided into {@link #SUB_BUCKETS} equal sub-buckets, so the relative error of reported values
+ * is at most 1/{@link #SUB_BUCKETS}. Values are non-negative longs (units are up to the client);
+ * values larger than {@link #MAX_VALUE} are counted in the last bucket.
+ *
+ * Recording is lock-free. Reading is not atomic with respect to concurrent recording, i.e. the values
+ * obtained may be slightly inconsistent with each other. This is acceptable for monitoring purposes.
+ */
+public class ConcurrentHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_VALUE_BITS = 40;
+	public static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+	private static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketIndex(Math.min(value, MAX_VALUE)));
+		count.increment();
+		total.add(value);
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+			// try again
+		}
+	}
+
+	static int bucketIndex(long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Lowest value that falls into a given bucket.
+	 */
+	static long bucketLowerBound(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * Highest value that falls into a given bucket.
+	 */
+	static long bucketUpperBound(int index) {
+		return index + 1 < BUCKETS ? bucketLowerBound(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotal() {
+		return total.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long c = count.sum();
+		return c != 0 ? (double) total.sum() / c : 0.0;
+	}
+
+	/**
+	 * Returns (an approximation of) the value below which given percentage of recorded values falls.
+	 * The result is the upper bound of the respective bucket, but never more than the maximal recorded value.
+	 *
+	 * @param percentile Number from 0 to 100.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			recorded += snapshot[i];
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long threshold = Math.max(1, (long) Math.ceil(recorded * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= threshold) {
+				return Math.min(bucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrentHistogram{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getValueAtPercentile(50)
+				+ ", p95=" + getValueAtPercentile(95) + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "}";
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.util;
+
+import com.evolveum.midpoint.util.histogram.ConcurrentHistogram;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class TestConcurrentHistogram {
+
+	@Test
+	public void testPercentiles() {
+		System.out.println("===[ testPercentiles ]===");
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		System.out.println("Histogram: " + histogram);
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500, histogram.getTotal());
+		assertEquals(1000, histogram.getMax());
+		assertWithinPrecision(500, histogram.getValueAtPercentile(50));
+		assertWithinPrecision(990, histogram.getValueAtPercentile(99));
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testSmallAndHugeValues() {
+		System.out.println("===[ testSmallAndHugeValues ]===");
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+		histogram.record(3);
+		histogram.record(3);
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+		System.out.println("Histogram: " + histogram);
+
+		assertEquals(4, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(25));
+		assertEquals(3, histogram.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE / 2, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		System.out.println("===[ testConcurrentRecording ]===");
+		final int THREADS = 8;
+		final int VALUES = 10000;
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < VALUES; i++) {
+					histogram.record(i);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.println("Histogram: " + histogram);
+		assertEquals(THREADS * VALUES, histogram.getCount());
+		assertEquals(VALUES - 1, histogram.getMax());
+	}
+
+	private void assertWithinPrecision(long expected, long real) {
+		assertTrue("Value " + real + " is not within precision of " + expected,
+				real >= expected && real <= expected + expected / ConcurrentHistogram.SUB_BUCKETS + 1);
+	}
+}
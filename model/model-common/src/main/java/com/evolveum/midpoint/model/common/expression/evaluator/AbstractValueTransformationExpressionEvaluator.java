@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import javax.xml.namespace.QName;
 
 import com.evolveum.midpoint.common.LocalizationService;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.PureExpressionResultCache;
 import com.evolveum.midpoint.prism.Item;
 import com.evolveum.midpoint.prism.ItemDefinition;
 import com.evolveum.midpoint.prism.PrismPropertyValue;
@@ -75,6 +76,8 @@ public abstract class AbstractValueTransformationExpressionEvaluator<V extends P
 
 	private E expressionEvaluatorType;
 
+	private PureExpressionResultCache.ExpressionId expressionId;		// lazily created, for pure expressions only
+
 	private static final Trace LOGGER = TraceManager.getTrace(AbstractValueTransformationExpressionEvaluator.class);
 
     protected AbstractValueTransformationExpressionEvaluator(E expressionEvaluatorType,
@@ -135,6 +138,22 @@ public abstract class AbstractValueTransformationExpressionEvaluator<V extends P
 		return expressionEvaluatorType.getRelativityMode() != TransformExpressionRelativityModeType.ABSOLUTE;
 	}
 
+	/**
+	 * Whether results of the transformation can be memoized. Only evaluators that can be declared pure
+	 * (currently scripts) override this.
+	 */
+	protected boolean isPure() {
+		return false;
+	}
+
+	/**
+	 * Definition of the values produced. It is a part of the memoization key of pure expressions, as the same expression
+	 * may produce different values for different targets (e.g. string vs. polystring).
+	 */
+	protected ItemDefinition getOutputDefinition() {
+		return null;
+	}
+
 	private List<SourceTriple<?,?>> processSources(Collection<Source<?,?>> sources, Boolean includeNulls,
 			ExpressionEvaluationContext params) {
 		List<SourceTriple<?,?>> sourceTriples =
@@ -420,6 +439,16 @@ public abstract class AbstractValueTransformationExpressionEvaluator<V extends P
 				useNew = true;
 			}
 
+			PureExpressionResultCache.Key cacheKey = createCacheKey(pvalues, sourceTriples, evaluationContext);
+			if (cacheKey != null) {
+				List<V> cachedResults = (List) PureExpressionResultCache.get(cacheKey);
+				if (cachedResults != null) {
+					LOGGER.trace("Using memoized results for {}: {}", cacheKey, cachedResults);
+					outputTriple.addAllToSet(valueDestination, cachedResults);
+					return;
+				}
+			}
+
 			List<V> scriptResults;
 			try {
 				scriptResults = transformSingleValue(scriptVariables, valueDestination, useNew, evaluationContext,
@@ -451,6 +480,9 @@ public abstract class AbstractValueTransformationExpressionEvaluator<V extends P
 						"("+dumpSourceValues(sourceVariables)+") in "+contextDescription,e));
 			}
 
+			if (cacheKey != null) {
+				PureExpressionResultCache.put(cacheKey, scriptResults);
+			}
 			outputTriple.addAllToSet(valueDestination, scriptResults);
 		};
 		try {
@@ -481,6 +513,47 @@ public abstract class AbstractValueTransformationExpressionEvaluator<V extends P
 		return outputTriple;
 	}
 
+	/**
+	 * Returns memoization key for given combination of source values, or null if the results should not be memoized:
+	 * the expression is not pure, there are convertors or variable producers we cannot take into account, or some
+	 * of the values are not plain property values.
+	 */
+	private PureExpressionResultCache.Key createCacheKey(Collection<? extends PrismValue> pvalues,
+			List<SourceTriple<?,?>> sourceTriples, ExpressionEvaluationContext evaluationContext) {
+		if (!isPure() || evaluationContext == null || evaluationContext.getAdditionalConvertor() != null
+				|| evaluationContext.getVariableProducer() != null) {
+			return null;
+		}
+		List<Object> inputs = new ArrayList<>(2 * pvalues.size());
+		Iterator<SourceTriple<?,?>> sourceTriplesIterator = sourceTriples.iterator();
+		for (PrismValue pval : pvalues) {
+			SourceTriple<?,?> sourceTriple = sourceTriplesIterator.next();
+			if (sourceTriple.getResidualPath() != null && !sourceTriple.getResidualPath().isEmpty()) {
+				return null;
+			}
+			Object realValue;
+			if (pval == null) {
+				realValue = null;
+			} else if (pval instanceof PrismPropertyValue<?> && !((PrismPropertyValue<?>) pval).isRaw()) {
+				realValue = ((PrismPropertyValue<?>) pval).getValue();
+				if (realValue instanceof byte[]) {
+					return null;
+				}
+			} else {
+				return null;
+			}
+			inputs.add(sourceTriple.getName());
+			inputs.add(realValue);
+		}
+		if (expressionId == null) {
+			ItemDefinition outputDefinition = getOutputDefinition();
+			expressionId = new PureExpressionResultCache.ExpressionId(getClass(), expressionEvaluatorType,
+					outputDefinition != null ? outputDefinition.getName() : null,
+					outputDefinition != null ? outputDefinition.getTypeName() : null);
+		}
+		return new PureExpressionResultCache.Key(expressionId, inputs);
+	}
+
 	private void cleanupTriple(PrismValueDeltaSetTriple<V> triple) {
 		if (triple == null) {
 			return;
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.model.common.expression.evaluator.caching;
+
+import com.evolveum.midpoint.prism.PrismValue;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memoized results of value transformation expressions that are marked as pure (ScriptExpressionEvaluatorType.pure).
+ * So e.g. a lookup of department name by department code is executed once per code, not once per user, when recomputing
+ * all the users.
+ *
+ * Unlike search expression caches, this one is not bound to a thread or an operation: it is shared by all threads and
+ * lives as long as the node does. It is bounded - entries that were not used recently are discarded when MAX_SIZE
+ * is reached - and each entry expires TIME_TO_LIVE seconds after it was stored. Model clears the whole cache when
+ * configuration or other objects are changed on this node. The map is concurrent, so lookups in different threads
+ * do not block each other.
+ * Entries are keyed by the expression (see {@link ExpressionId}) and by the real values of its sources; no other variables
+ * are part of the key. Stored and returned values are clones, so clients can freely use them.
+ *
+ * Hits and misses are counted per thread, so that they can be attributed to individual mappings in task statistics.
+ */
+public class PureExpressionResultCache {
+
+	public static final int MAX_SIZE = 10000;
+	public static final int TIME_TO_LIVE = 60;            // seconds
+
+	private static final Map<Key, List<PrismValue>> ENTRIES = CacheBuilder.newBuilder()
+			.maximumSize(MAX_SIZE)
+			.expireAfterWrite(TIME_TO_LIVE, TimeUnit.SECONDS)
+			.<Key, List<PrismValue>>build()
+			.asMap();
+
+	private static final ThreadLocal<Statistics> STATISTICS = ThreadLocal.withInitial(Statistics::new);
+
+	/**
+	 * Returns (clones of) the memoized values, or null if there are none. Records a hit or a miss.
+	 */
+	public static List<PrismValue> get(Key key) {
+		List<PrismValue> values = ENTRIES.get(key);
+		Statistics statistics = STATISTICS.get();
+		if (values == null) {
+			statistics.misses++;
+			return null;
+		}
+		statistics.hits++;
+		return cloneValues(values);
+	}
+
+	public static void put(Key key, Collection<? extends PrismValue> values) {
+		ENTRIES.put(key, cloneValues(values));
+	}
+
+	public static void clear() {
+		ENTRIES.clear();
+	}
+
+	public static int size() {
+		return ENTRIES.size();
+	}
+
+	/**
+	 * Returns live counters of hits and misses in the current thread. They are never reset; clients are expected
+	 * to compute differences.
+	 */
+	public static Statistics getThreadStatistics() {
+		return STATISTICS.get();
+	}
+
+	private static List<PrismValue> cloneValues(Collection<? extends PrismValue> values) {
+		if (values == null) {
+			return new ArrayList<>();
+		}
+		List<PrismValue> rv = new ArrayList<>(values.size());
+		for (PrismValue value : values) {
+			rv.add(value.clone());
+		}
+		return rv;
+	}
+
+	public static class Statistics {
+
+		private int hits;
+		private int misses;
+
+		public int getHits() {
+			return hits;
+		}
+
+		public int getMisses() {
+			return misses;
+		}
+	}
+
+	/**
+	 * Identity of an expression: e.g. its evaluator bean and output definition. Created once per evaluator,
+	 * as computing hash code of the bean is not cheap.
+	 */
+	public static class ExpressionId {
+
+		private final List<Object> components;
+		private final int hashCode;
+
+		public ExpressionId(Object... components) {
+			this.components = Arrays.asList(components);
+			this.hashCode = this.components.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ExpressionId that = (ExpressionId) o;
+			return hashCode == that.hashCode && components.equals(that.components);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public String toString() {
+			return "ExpressionId" + components;
+		}
+	}
+
+	public static class Key {
+
+		private final ExpressionId expressionId;
+		private final List<Object> inputs;
+		private final int hashCode;
+
+		/**
+		 * @param inputs Names and real values of the sources. Values must have proper equals and hashCode methods.
+		 */
+		public Key(ExpressionId expressionId, List<Object> inputs) {
+			this.expressionId = expressionId;
+			this.inputs = inputs;
+			this.hashCode = 31 * expressionId.hashCode() + inputs.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key key = (Key) o;
+			return hashCode == key.hashCode && inputs.equals(key.inputs) && expressionId.equals(key.expressionId);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public String toString() {
+			return "Key{" + expressionId + ", inputs=" + inputs + '}';
+		}
+	}
+}
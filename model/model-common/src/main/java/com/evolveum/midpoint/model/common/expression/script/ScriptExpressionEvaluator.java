@@ -63,6 +63,16 @@ public class ScriptExpressionEvaluator<V extends PrismValue,D extends ItemDefini
 		return (List<V>) scriptExpression.evaluate(variables, returnType, useNew, contextDescription, task, result);
 	}
 
+	@Override
+	protected boolean isPure() {
+		return Boolean.TRUE.equals(getExpressionEvaluatorType().isPure());
+	}
+
+	@Override
+	protected ItemDefinition getOutputDefinition() {
+		return scriptExpression.getOutputDefinition();
+	}
+
 	/* (non-Javadoc)
 	 * @see com.evolveum.midpoint.common.expression.ExpressionEvaluator#shortDebugDump()
 	 */
@@ -20,11 +20,14 @@ import static org.testng.AssertJUnit.assertEquals;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.PureExpressionResultCache;
 import com.evolveum.midpoint.repo.common.expression.Expression;
 import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluationContext;
 import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
 import com.evolveum.midpoint.repo.common.expression.ExpressionVariables;
+import com.evolveum.midpoint.repo.common.expression.Source;
 import com.evolveum.midpoint.prism.*;
 
 import org.testng.annotations.BeforeSuite;
@@ -64,6 +67,8 @@ public class TestExpression {
 
 	private static final File EXPRESSION_ITERATION_CONDITION_FILE = new File(TEST_DIR, "iteration-condition.xml");
 
+	private static final File EXPRESSION_PURE_DEPARTMENT_NAME_FILE = new File(TEST_DIR, "pure-department-name.xml");
+
     private PrismContext prismContext;
 
 	private long lastScriptExecutionCount;
@@ -120,6 +125,71 @@ public class TestExpression {
 		assertScriptExecutionIncrement(1);
     }
 
+	/**
+	 * Pure expression should be evaluated only once for the same input, even if evaluated for different users
+	 * by different expression instances.
+	 */
+	@Test
+	public void testPureExpressionMemoization() throws Exception {
+		final String TEST_NAME = "testPureExpressionMemoization";
+		TestUtil.displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		OperationResult result = new OperationResult(TestExpression.class.getName()+"."+TEST_NAME);
+		PureExpressionResultCache.clear();
+		PureExpressionResultCache.Statistics cacheStatistics = PureExpressionResultCache.getThreadStatistics();
+		int hitsBefore = cacheStatistics.getHits();
+		int missesBefore = cacheStatistics.getMisses();
+
+		rememberScriptExecutionCount();
+
+		// WHEN
+		String first = evaluatePureDepartmentName("D1", TEST_NAME, result);
+		String second = evaluatePureDepartmentName("D1", TEST_NAME, result);
+
+		// THEN
+		assertEquals("Wrong first result", "Department D1", first);
+		assertEquals("Wrong second result", "Department D1", second);
+		assertScriptExecutionIncrement(1);
+		assertEquals("Wrong # of cache hits", 1, cacheStatistics.getHits() - hitsBefore);
+		assertEquals("Wrong # of cache misses", 1, cacheStatistics.getMisses() - missesBefore);
+
+		// WHEN
+		String third = evaluatePureDepartmentName("D2", TEST_NAME, result);
+
+		// THEN
+		assertEquals("Wrong third result", "Department D2", third);
+		assertScriptExecutionIncrement(1);
+		assertEquals("Wrong # of cache misses", 2, cacheStatistics.getMisses() - missesBefore);
+	}
+
+	private String evaluatePureDepartmentName(String department, String testName, OperationResult result) throws Exception {
+		ExpressionType expressionType = PrismTestUtil.parseAtomicValue(
+				EXPRESSION_PURE_DEPARTMENT_NAME_FILE, ExpressionType.COMPLEX_TYPE);
+		PrismPropertyDefinition<String> outputDefinition = new PrismPropertyDefinitionImpl<>(
+				ExpressionConstants.OUTPUT_ELEMENT_NAME, DOMUtil.XSD_STRING, prismContext);
+		Expression<PrismPropertyValue<String>,PrismPropertyDefinition<String>> expression =
+				expressionFactory.makeExpression(expressionType, outputDefinition, testName, null, result);
+
+		PrismPropertyDefinition<String> inputDefinition = new PrismPropertyDefinitionImpl<>(
+				ExpressionConstants.VAR_INPUT, DOMUtil.XSD_STRING, prismContext);
+		PrismProperty<String> input = inputDefinition.instantiate();
+		input.setRealValue(department);
+		Source<PrismPropertyValue<String>,PrismPropertyDefinition<String>> source =
+				new Source<>(input, null, input, ExpressionConstants.VAR_INPUT);
+
+		ExpressionVariables variables = new ExpressionVariables();
+		variables.addVariableDefinition(ExpressionConstants.VAR_FOCUS, PrismTestUtil.parseObject(USER_JACK_FILE));
+		ExpressionEvaluationContext expressionContext = new ExpressionEvaluationContext(
+				Collections.<Source<?,?>>singleton(source), variables, testName, null, result);
+
+		PrismValueDeltaSetTriple<PrismPropertyValue<String>> outputTriple = expression.evaluate(expressionContext);
+		assertNotNull(outputTriple);
+		outputTriple.checkConsistence();
+		assertEquals("Wrong # of output values", 1, outputTriple.getZeroSet().size());
+		return outputTriple.getZeroSet().iterator().next().getValue();
+	}
+
     protected void rememberScriptExecutionCount() {
 		lastScriptExecutionCount = InternalMonitor.getCount(InternalCounters.SCRIPT_EXECUTION_COUNT);
 	}
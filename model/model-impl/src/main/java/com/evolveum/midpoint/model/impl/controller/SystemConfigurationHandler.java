@@ -144,6 +144,7 @@ public class SystemConfigurationHandler implements ChangeHook {
             applyPrismConfiguration(configType);
 
 			cacheRepositoryService.applyFullTextSearchConfiguration(config.asObjectable().getFullTextSearch());
+			cacheRepositoryService.applyCachingConfiguration(SystemConfigurationTypeUtil.getCachingConfiguration(configType));
             SystemConfigurationTypeUtil.applyOperationResultHandling(config.asObjectable());
 
             result.recordSuccessIfUnknown();
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.hooks;
+
+import com.evolveum.midpoint.model.api.context.ModelContext;
+import com.evolveum.midpoint.model.api.context.ModelElementContext;
+import com.evolveum.midpoint.model.api.context.ModelState;
+import com.evolveum.midpoint.model.api.hooks.ChangeHook;
+import com.evolveum.midpoint.model.api.hooks.HookOperationMode;
+import com.evolveum.midpoint.model.api.hooks.HookRegistry;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.PureExpressionResultCache;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.FunctionLibraryType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.LookupTableType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectTemplateType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SecurityPolicyType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.SystemConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ValuePolicyType;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clears memoized results of pure expressions when system configuration or similar objects are changed on this node.
+ * Pure expressions must depend on their sources only, so this is just a safety net for expressions that (incorrectly)
+ * read configuration data.
+ *
+ * Changes of other objects (users, roles, orgs, ...) are ignored: these are the objects processed in bulk by
+ * recomputations and reconciliations, so clearing the cache on each of them would make the memoization useless.
+ */
+@Component
+public class PureExpressionResultCacheInvalidator implements ChangeHook {
+
+	private static final Trace LOGGER = TraceManager.getTrace(PureExpressionResultCacheInvalidator.class);
+
+	public static final String HOOK_URI = SchemaConstants.NS_MODEL + "/pure-expression-result-cache-invalidator-hook-3";
+
+	private static final List<Class<? extends ObjectType>> CONFIGURATION_TYPES = Arrays.asList(
+			SystemConfigurationType.class, ObjectTemplateType.class, LookupTableType.class, ValuePolicyType.class,
+			SecurityPolicyType.class, FunctionLibraryType.class);
+
+	@Autowired private HookRegistry hookRegistry;
+
+	@PostConstruct
+	public void init() {
+		hookRegistry.registerChangeHook(HOOK_URI, this);
+	}
+
+	@Override
+	public <O extends ObjectType> HookOperationMode invoke(@NotNull ModelContext<O> context, @NotNull Task task,
+			@NotNull OperationResult result) {
+		if (context.getState() != ModelState.FINAL) {
+			return HookOperationMode.FOREGROUND;
+		}
+		ModelElementContext<O> focusContext = context.getFocusContext();
+		if (focusContext == null || !isConfigurationType(focusContext.getObjectTypeClass())
+				|| focusContext.getExecutedDeltas().isEmpty()) {
+			return HookOperationMode.FOREGROUND;
+		}
+		LOGGER.trace("Clearing pure expression result cache because {} was changed", focusContext.getObjectTypeClass());
+		PureExpressionResultCache.clear();
+		return HookOperationMode.FOREGROUND;
+	}
+
+	private boolean isConfigurationType(Class<?> objectTypeClass) {
+		return CONFIGURATION_TYPES.stream().anyMatch(type -> type.isAssignableFrom(objectTypeClass));
+	}
+
+	@Override
+	public void invokeOnException(@NotNull ModelContext context, @NotNull Throwable throwable, @NotNull Task task,
+			@NotNull OperationResult result) {
+		// do nothing
+	}
+}
@@ -24,6 +24,7 @@ import com.evolveum.midpoint.provisioning.api.ChangeNotificationDispatcher;
 import com.evolveum.midpoint.provisioning.api.ResourceObjectChangeListener;
 import com.evolveum.midpoint.schema.result.OperationConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.MiscSchemaUtil;
 import com.evolveum.midpoint.task.api.*;
 import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
 import com.evolveum.midpoint.util.DOMUtil;
@@ -40,7 +41,11 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -69,6 +74,9 @@ public class ImportObjectsFromFileTaskHandler implements TaskHandler {
     @Autowired(required = true)
     private PrismContext prismContext;
 
+    @Autowired(required = true)
+    private ObjectImporter objectImporter;
+
     //private Map<Task,ImportAccountsFromResourceResultHandler> handlers;
     private PrismPropertyDefinition filenamePropertyDefinition;
 
@@ -181,9 +189,16 @@ public class ImportObjectsFromFileTaskHandler implements TaskHandler {
 
         File input = new File(filename);
 
-        // TODO: test file existence, etc.
-
-        // TODO: do import
+        // The objects are parsed from the stream one by one, so the file can be arbitrarily large.
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(input))) {
+            String language = prismContext.detectLanguage(input);
+            objectImporter.importObjects(stream, language, MiscSchemaUtil.getDefaultImportOptions(), task, opResult);
+        } catch (IOException e) {
+            LOGGER.error("Import: Couldn't read file {}: {}", input, e.getMessage(), e);
+            opResult.recordFatalError("Couldn't read file " + input + ": " + e.getMessage(), e);
+            runResult.setRunResultStatus(TaskRunResultStatus.PERMANENT_ERROR);
+            return runResult;
+        }
 
         opResult.computeStatus("Errors during import");
         // TODO: runResult.setProgress(progress);
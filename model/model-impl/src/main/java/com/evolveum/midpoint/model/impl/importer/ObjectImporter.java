@@ -109,7 +109,11 @@ public class ObjectImporter {
 	    int stopAfterErrors = options != null && options.getStopAfterErrors() != null ?
 			    options.getStopAfterErrors() : 0;
 
-	    if (!PrismContext.LANG_XML.equals(language)) {
+	    boolean xml = PrismContext.LANG_XML.equals(language);
+	    if (!xml || !isStaticSchemaValidated(options)) {
+		    // Objects are parsed directly from the stream. (The validator needs DOM of each object for schema validation.)
+		    // For XML we do the same checks of parsed objects as the validator does.
+		    Validator validator = xml ? createValidator(options, null) : null;
 		    AtomicInteger index = new AtomicInteger(0);
 		    AtomicInteger errors = new AtomicInteger(0);
 		    AtomicInteger successes = new AtomicInteger(0);
@@ -118,7 +122,9 @@ public class ObjectImporter {
 			    public boolean handleData(PrismObject<?> object) {
 				    OperationResult objectResult = parentResult.createSubresult(OperationConstants.IMPORT_OBJECT);
 				    objectResult.addContext("objectNumber", index.incrementAndGet());
-				    importParsedObject(object, objectResult, options, task);
+				    if (validator == null || checkParsedObject(object, validator, objectResult)) {
+					    importParsedObject(object, objectResult, options, task);
+				    }
 				    objectResult.computeStatusIfUnknown();
 					objectResult.cleanupResult();
 					parentResult.summarize();
@@ -170,20 +176,43 @@ public class ObjectImporter {
 			    }
 		    };
 
-		    Validator validator = new Validator(prismContext, handler);
-		    validator.setVerbose(true);
-		    if (options != null) {
-			    validator.setValidateSchema(isTrue(options.isValidateStaticSchema()));
-			    if (options.getModelExecutionOptions() != null && isFalse(options.getModelExecutionOptions().isRaw())) {
-			    	// model will take care of this
-				    validator.setValidateName(false);
-			    }
-		    }
+		    Validator validator = createValidator(options, handler);
 		    validator.setStopAfterErrors(stopAfterErrors);
 		    validator.validate(input, parentResult, OperationConstants.IMPORT_OBJECT);
 	    }
     }
 
+	// the validator validates the static schema by default
+	private boolean isStaticSchemaValidated(ImportOptionsType options) {
+		return options == null || isTrue(options.isValidateStaticSchema());
+	}
+
+	private Validator createValidator(ImportOptionsType options, EventHandler handler) {
+		Validator validator = new Validator(prismContext, handler);
+		validator.setVerbose(true);
+		if (options != null) {
+			validator.setValidateSchema(isTrue(options.isValidateStaticSchema()));
+			if (options.getModelExecutionOptions() != null && isFalse(options.getModelExecutionOptions().isRaw())) {
+				// model will take care of this
+				validator.setValidateName(false);
+			}
+		}
+		return validator;
+	}
+
+	// the same checks as the validator does after parsing an object
+	private boolean checkParsedObject(PrismObject<?> object, Validator validator, OperationResult objectResult) {
+		try {
+			object.checkConsistence();
+		} catch (RuntimeException e) {
+			objectResult.recordFatalError("Internal object inconsistence, probably a parser bug: " + e.getMessage(), e);
+			return false;
+		}
+		objectResult.addContext(OperationResult.CONTEXT_OBJECT, object.toString());
+		validator.validateObject(object.asObjectable(), objectResult);
+		return true;
+	}
+
 	@NotNull
 	private <T extends Objectable> EventResult importParsedObject(PrismObject<T> prismObjectObjectable,
 			OperationResult objectResult, ImportOptionsType options, Task task) {
@@ -17,8 +17,11 @@ package com.evolveum.midpoint.model.impl.lens;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -180,6 +183,24 @@ public class AssignmentEvaluator<F extends FocusType> {
 		evaluatedAssignmentTargetCache.reset();
 	}
 
+	/**
+	 * Fetches targets of given assignments (those referenced by OID) in bulk, one repository call per target type.
+	 * The evaluation then gets them from the repository cache.
+	 */
+	public void prefetchTargets(Collection<AssignmentType> assignments, OperationResult result) {
+		Map<Class<? extends ObjectType>, Set<String>> oidsByType = new HashMap<>();
+		for (AssignmentType assignment : assignments) {
+			ObjectReferenceType targetRef = assignment.getTargetRef();
+			if (targetRef != null && targetRef.getOid() != null && targetRef.getType() != null) {
+				Class<? extends ObjectType> targetClass = prismContext.getSchemaRegistry().determineCompileTimeClass(targetRef.getType());
+				if (targetClass != null) {
+					oidsByType.computeIfAbsent(targetClass, k -> new HashSet<>()).add(targetRef.getOid());
+				}
+			}
+		}
+		oidsByType.forEach((type, oids) -> LensUtil.prefetchIntoRepositoryCache(repository, type, oids, result));
+	}
+
 	// This is to reduce the number of parameters passed between methods in this class.
 	// Moreover, it highlights the fact that identity of objects referenced here is fixed for any invocation of the evaluate() method.
 	// (There is single EvaluationContext instance for any call to evaluate().)
@@ -24,6 +24,7 @@ import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistency
 
 import com.evolveum.midpoint.common.Clock;
 import com.evolveum.midpoint.common.SynchronizationUtils;
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
 import com.evolveum.midpoint.prism.delta.*;
 import com.evolveum.midpoint.repo.api.ConflictWatcher;
 import com.evolveum.midpoint.repo.api.ModificationPrecondition;
@@ -52,6 +53,7 @@ import com.evolveum.midpoint.provisioning.api.ProvisioningService;
 import com.evolveum.midpoint.repo.api.RepoAddOptions;
 import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.api.VersionPrecondition;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
 import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.ObjectDeltaOperation;
 import com.evolveum.midpoint.schema.PointInTimeType;
@@ -79,17 +81,32 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
 import com.evolveum.prism.xml.ns._public.types_3.RawType;
 
+import org.apache.commons.configuration.Configuration;
 import org.apache.commons.lang.BooleanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.xml.bind.JAXBElement;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
@@ -111,6 +128,20 @@ public class ChangeExecutor {
 	private static final String OPERATION_UPDATE_SITUATION_ACCOUNT = ChangeExecutor.class.getName()
 			+ ".updateSituationInShadow";
 
+	private static final String CONFIG_PROJECTION_EXECUTION_THREADS = "projectionExecutionThreads";
+
+	/**
+	 * Set in threads that execute projection deltas concurrently. The requestee is managed by the coordinating thread
+	 * in that case, and nested executions (e.g. ones triggered by discovery) are not executed concurrently.
+	 */
+	private static final ThreadLocal<Boolean> IN_CONCURRENT_EXECUTION = new ThreadLocal<>();
+
+	/**
+	 * Set in threads that execute projection deltas concurrently: executed actions are collected here and recorded
+	 * in the caller's task by the coordinating thread, as nobody sees statistics of the workers' subtasks.
+	 */
+	private static final ThreadLocal<List<Consumer<Task>>> DEFERRED_ACTION_RECORDS = new ThreadLocal<>();
+
 	@Autowired private transient TaskManager taskManager;
 	@Autowired @Qualifier("cacheRepositoryService") private transient RepositoryService cacheRepositoryService;
 	@Autowired private ProvisioningService provisioning;
@@ -121,10 +152,13 @@ public class ChangeExecutor {
 	@Autowired private ModelObjectResolver objectResolver;
 	@Autowired private OperationalDataManager metadataManager;
 	@Autowired private CredentialsProcessor credentialsProcessor;
+	@Autowired(required = false) private MidpointConfiguration midpointConfiguration;
 
 	private PrismObjectDefinition<UserType> userDefinition = null;
 	private PrismObjectDefinition<ShadowType> shadowDefinition = null;
 
+	private ExecutorService projectionExecutor;
+
 	@PostConstruct
 	private void locateDefinitions() {
 		userDefinition = prismContext.getSchemaRegistry()
@@ -133,6 +167,46 @@ public class ChangeExecutor {
 				.findObjectDefinitionByCompileTimeClass(ShadowType.class);
 	}
 
+	@PostConstruct
+	private void initializeProjectionExecutor() {
+		int threads = 0;
+		if (midpointConfiguration != null) {
+			Configuration config = midpointConfiguration.getConfiguration(MidpointConfiguration.MODEL_CONFIGURATION_SECTION);
+			if (config != null) {
+				threads = config.getInt(CONFIG_PROJECTION_EXECUTION_THREADS, 0);
+			}
+		}
+		setProjectionExecutionThreads(threads);
+	}
+
+	@PreDestroy
+	private void shutdownProjectionExecutor() {
+		setProjectionExecutionThreads(0);
+	}
+
+	/**
+	 * Sets the number of threads used to execute independent projection deltas concurrently (0 = sequential execution).
+	 */
+	public synchronized void setProjectionExecutionThreads(int threads) {
+		if (projectionExecutor != null) {
+			projectionExecutor.shutdown();
+			projectionExecutor = null;
+		}
+		if (threads > 0) {
+			AtomicInteger counter = new AtomicInteger();
+			projectionExecutor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "ProjectionExecutor-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			LOGGER.info("Independent projection deltas will be executed concurrently, using {} thread(s)", threads);
+		}
+	}
+
+	private synchronized ExecutorService getProjectionExecutor() {
+		return projectionExecutor;
+	}
+
 	// returns true if current operation has to be restarted, see
 	// ObjectAlreadyExistsException handling (TODO specify more exactly)
 	public <O extends ObjectType> boolean executeChanges(LensContext<O> context, Task task,
@@ -229,94 +303,93 @@ public class ChangeExecutor {
 
 			boolean restartRequested = false;
 
-			for (LensProjectionContext projCtx : context.getProjectionContexts()) {
-				if (projCtx.getWave() != context.getExecutionWave()) {
-					continue;
-				}
-
-				if (!projCtx.isCanProject()) {
-					continue;
-				}
+			Map<LensProjectionContext, ConcurrentProjectionExecution> concurrentExecutions =
+					executeIndependentProjectionsConcurrently(context, task, result);
 
-				// we should not get here, but just to be sure
-				if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.IGNORE) {
-					LOGGER.trace("Skipping ignored projection context {}", projCtx.toHumanReadableString());
+			for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+				if (!isExecutableInCurrentWave(context, projCtx)) {
 					continue;
 				}
 
-				OperationResult subResult = result.createSubresult(
-						OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName());
-				subResult.addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator());
-				if (projCtx.getResource() != null) {
-					subResult.addParam("resource", projCtx.getResource());
+				ConcurrentProjectionExecution concurrentExecution = concurrentExecutions.get(projCtx);
+				OperationResult subResult;
+				if (concurrentExecution != null) {
+					subResult = concurrentExecution.attachResult(result);
+				} else {
+					subResult = createProjectionSubresult(projCtx, result);
 				}
 				try {
 
 					context.checkAbortRequested();
 
-					context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
-							projCtx.getResourceShadowDiscriminator(), ENTERING));
+					if (concurrentExecution == null) {
+						// for concurrently executed projections this was reported before their execution started
+						context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+								projCtx.getResourceShadowDiscriminator(), ENTERING));
+					}
 
-					executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
+					if (concurrentExecution != null && concurrentExecution.executed) {
+						// The delta was already executed (along with the "before" reconciliation script);
+						// we only take over its outcome here.
+						concurrentExecution.rethrowIfFailed();
+					} else {
 
-					ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+						executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, subResult);
 
-					if (shouldBeDeleted(projDelta, projCtx)) {
-						projDelta = ObjectDelta.createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid(),
-								prismContext);
-					}
+						ObjectDelta<ShadowType> projDelta = getProjectionDeltaToExecute(projCtx);
 
-					if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
-						if (context.getFocusContext() != null
-								&& context.getFocusContext().getDelta() != null
-								&& context.getFocusContext().getDelta().isDelete()
-								&& context.getOptions() != null
-								&& ModelExecuteOptions.isForce(context.getOptions())) {
-							if (projDelta == null) {
-								projDelta = ObjectDelta.createDeleteDelta(projCtx.getObjectTypeClass(),
-										projCtx.getOid(), prismContext);
+						if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+							if (context.getFocusContext() != null
+									&& context.getFocusContext().getDelta() != null
+									&& context.getFocusContext().getDelta().isDelete()
+									&& context.getOptions() != null
+									&& ModelExecuteOptions.isForce(context.getOptions())) {
+								if (projDelta == null) {
+									projDelta = ObjectDelta.createDeleteDelta(projCtx.getObjectTypeClass(),
+											projCtx.getOid(), prismContext);
+								}
 							}
-						}
-						if (projDelta != null && projDelta.isDelete()) {
-
-							executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task,
-									subResult);
+							if (projDelta != null && projDelta.isDelete()) {
 
-						}
-					} else {
+								executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task,
+										subResult);
 
-						if (projDelta == null || projDelta.isEmpty()) {
-							if (LOGGER.isTraceEnabled()) {
-								LOGGER.trace("No change for " + projCtx.getResourceShadowDiscriminator());
-							}
-							if (focusContext != null) {
-								updateLinks(focusContext, projCtx, task, subResult);
 							}
+						} else {
+
+							if (projDelta == null || projDelta.isEmpty()) {
+								if (LOGGER.isTraceEnabled()) {
+									LOGGER.trace("No change for " + projCtx.getResourceShadowDiscriminator());
+								}
+								if (focusContext != null) {
+									updateLinks(focusContext, projCtx, task, subResult);
+								}
+
+								// Make sure post-reconcile delta is always executed,
+								// even if there is no change
+								executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task,
+										subResult);
 
-							// Make sure post-reconcile delta is always executed,
-							// even if there is no change
-							executeReconciliationScript(projCtx, context, BeforeAfterType.AFTER, task,
-									subResult);
-
-							subResult.computeStatus();
-							subResult.recordNotApplicableIfUnknown();
-							continue;
-
-						} else if (projDelta.isDelete() && projCtx.getResourceShadowDiscriminator() != null
-								&& projCtx.getResourceShadowDiscriminator().getOrder() > 0) {
-							// HACK ... for higher-order context check if this was
-							// already deleted
-							LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(context,
-									projCtx);
-							if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
-								// We assume that this was already executed
-								subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
+								subResult.computeStatus();
+								subResult.recordNotApplicableIfUnknown();
 								continue;
+
+							} else if (projDelta.isDelete() && projCtx.getResourceShadowDiscriminator() != null
+									&& projCtx.getResourceShadowDiscriminator().getOrder() > 0) {
+								// HACK ... for higher-order context check if this was
+								// already deleted
+								LensProjectionContext lowerOrderContext = LensUtil.findLowerOrderContext(context,
+										projCtx);
+								if (lowerOrderContext != null && lowerOrderContext.isDelete()) {
+									// We assume that this was already executed
+									subResult.setStatus(OperationResultStatus.NOT_APPLICABLE);
+									continue;
+								}
 							}
-						}
 
-						executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
+							executeDelta(projDelta, projCtx, context, null, null, projCtx.getResource(), task, subResult);
 
+						}
 					}
 
 					subResult.computeStatus();
@@ -366,6 +439,17 @@ public class ChangeExecutor {
 				}
 			}
 
+			// Results of concurrently executed projections were created beforehand; some of them might not have
+			// been reached because of the restart. (The restarted wave will not execute their deltas again.)
+			for (ConcurrentProjectionExecution concurrentExecution : concurrentExecutions.values()) {
+				concurrentExecution.attachResult(result);
+				if (concurrentExecution.executed) {
+					concurrentExecution.result.computeStatusIfUnknown();
+				} else {
+					concurrentExecution.result.recordNotApplicableIfUnknown();
+				}
+			}
+
 			// Result computation here needs to be slightly different
 			result.computeStatusComposite();
 			return restartRequested;
@@ -376,6 +460,290 @@ public class ChangeExecutor {
 		}
 	}
 
+	private <O extends ObjectType> boolean isExecutableInCurrentWave(LensContext<O> context, LensProjectionContext projCtx) {
+		if (projCtx.getWave() != context.getExecutionWave()) {
+			return false;
+		}
+		if (!projCtx.isCanProject()) {
+			return false;
+		}
+		// we should not get here, but just to be sure
+		if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.IGNORE) {
+			LOGGER.trace("Skipping ignored projection context {}", projCtx.toHumanReadableString());
+			return false;
+		}
+		return true;
+	}
+
+	private OperationResult createProjectionSubresult(LensProjectionContext projCtx, OperationResult result) {
+		OperationResult subResult = result.createSubresult(getProjectionOperationName(projCtx));
+		addProjectionParams(subResult, projCtx);
+		return subResult;
+	}
+
+	// not attached to any parent; used by threads executing projection deltas concurrently
+	private OperationResult createDetachedProjectionResult(LensProjectionContext projCtx) {
+		OperationResult result = new OperationResult(getProjectionOperationName(projCtx));
+		addProjectionParams(result, projCtx);
+		return result;
+	}
+
+	private String getProjectionOperationName(LensProjectionContext projCtx) {
+		return OPERATION_EXECUTE_PROJECTION + "." + projCtx.getObjectTypeClass().getSimpleName();
+	}
+
+	private void addProjectionParams(OperationResult result, LensProjectionContext projCtx) {
+		result.addArbitraryObjectAsContext("discriminator", projCtx.getResourceShadowDiscriminator());
+		if (projCtx.getResource() != null) {
+			result.addParam("resource", projCtx.getResource());
+		}
+	}
+
+	private ObjectDelta<ShadowType> getProjectionDeltaToExecute(LensProjectionContext projCtx) {
+		ObjectDelta<ShadowType> projDelta = projCtx.getExecutableDelta();
+		if (shouldBeDeleted(projDelta, projCtx)) {
+			projDelta = ObjectDelta.createDeleteDelta(projCtx.getObjectTypeClass(), projCtx.getOid(),
+					prismContext);
+		}
+		return projDelta;
+	}
+
+	//region Concurrent execution of projection deltas
+	/**
+	 * Executes deltas of independent projections of the current wave concurrently, if enabled.
+	 *
+	 * A projection is independent if it is a zero-order, non-broken projection with a non-empty delta that
+	 * neither depends on another resource nor is a dependency target of another projection. Projections on
+	 * the same resource are executed one after another (in the order of contexts), different resources
+	 * are contacted concurrently. Only the "before" reconciliation script and the delta itself are executed
+	 * here. The rest (links, "after" script, error handling) is done by the caller in the original order,
+	 * using the outcomes returned.
+	 *
+	 * Neither the task, nor the operation result, nor the lens context is thread safe. So each worker gets
+	 * a transient subtask of the caller's task, detached operation results (put under the caller's result by
+	 * the caller) and its own repository cache. Executed deltas and OIDs of the projections are collected
+	 * by the workers and applied to the lens context here, in the coordinating thread, after all workers finish.
+	 * The same holds for statistics of the executed actions: they are recorded in the caller's task at that time.
+	 *
+	 * Abort requests are checked and ENTERING progress is reported for all the projections before any of them
+	 * is started, so an abort request never leaves a delta executing in the background.
+	 */
+	private <O extends ObjectType> Map<LensProjectionContext, ConcurrentProjectionExecution> executeIndependentProjectionsConcurrently(
+			LensContext<O> context, Task task, OperationResult result) {
+		ExecutorService executor = getProjectionExecutor();
+		if (executor == null || Boolean.TRUE.equals(IN_CONCURRENT_EXECUTION.get())) {
+			return Collections.emptyMap();
+		}
+
+		Set<String> dependencyTargets = new HashSet<>();
+		for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+			for (ResourceObjectTypeDependencyType dependency : projCtx.getDependencies()) {
+				if (dependency.getResourceRef() != null) {
+					dependencyTargets.add(dependency.getResourceRef().getOid());
+				}
+			}
+		}
+		Map<String, List<LensProjectionContext>> byResource = new LinkedHashMap<>();
+		for (LensProjectionContext projCtx : context.getProjectionContexts()) {
+			if (isExecutableInCurrentWave(context, projCtx) && isIndependent(projCtx, dependencyTargets)) {
+				byResource.computeIfAbsent(projCtx.getResourceOid(), k -> new ArrayList<>()).add(projCtx);
+			}
+		}
+		if (byResource.size() < 2) {
+			return Collections.emptyMap();
+		}
+
+		LOGGER.trace("Executing deltas of independent projections on {} resources concurrently", byResource.size());
+		SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+		securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+		Map<LensProjectionContext, ConcurrentProjectionExecution> executions = new LinkedHashMap<>();
+		List<List<ConcurrentProjectionExecution>> groups = new ArrayList<>();
+		for (List<LensProjectionContext> group : byResource.values()) {
+			List<ConcurrentProjectionExecution> groupExecutions = new ArrayList<>();
+			for (LensProjectionContext projCtx : group) {
+				context.checkAbortRequested();
+				context.reportProgress(new ProgressInformation(RESOURCE_OBJECT_OPERATION,
+						projCtx.getResourceShadowDiscriminator(), ENTERING));
+				ConcurrentProjectionExecution execution = new ConcurrentProjectionExecution(projCtx,
+						getProjectionDeltaToExecute(projCtx), createDetachedProjectionResult(projCtx));
+				executions.put(projCtx, execution);
+				groupExecutions.add(execution);
+			}
+			groups.add(groupExecutions);
+		}
+
+		List<Future<?>> futures = new ArrayList<>();
+		CountDownLatch finished = new CountDownLatch(groups.size());
+		try {
+			for (List<ConcurrentProjectionExecution> groupExecutions : groups) {
+				Task workerTask = task.createSubtask();
+				futures.add(executor.submit(() -> {
+					SecurityContextHolder.setContext(securityContext);
+					IN_CONCURRENT_EXECUTION.set(true);
+					RepositoryCache.enter();
+					Utils.setRequestee(workerTask, context);
+					try {
+						for (ConcurrentProjectionExecution execution : groupExecutions) {
+							execute(execution, context, workerTask);
+							if (execution.exception instanceof ObjectAlreadyExistsException) {
+								// the wave will be restarted; remaining projections are to be executed then
+								break;
+							}
+						}
+					} finally {
+						Utils.clearRequestee(workerTask);
+						RepositoryCache.exit();
+						IN_CONCURRENT_EXECUTION.remove();
+						SecurityContextHolder.clearContext();
+						finished.countDown();
+					}
+				}));
+			}
+			// failures are recorded in the executions (see execute(..)), so there is no need to check the futures
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			futures.forEach(f -> f.cancel(true));
+			// some workers might still be running, so neither their results nor their outcomes can be touched
+			throw new SystemException("Interrupted while executing projection deltas", e);
+		}
+		for (ConcurrentProjectionExecution execution : executions.values()) {
+			applyOutcome(execution, context, task);
+		}
+		return executions;
+	}
+
+	private <O extends ObjectType> void applyOutcome(ConcurrentProjectionExecution execution, LensContext<O> context,
+			Task task) {
+		LensProjectionContext projCtx = execution.projectionContext;
+		for (Consumer<Task> actionRecord : execution.actionRecords) {
+			actionRecord.accept(task);
+		}
+		for (LensObjectDeltaOperation<ShadowType> executedDelta : execution.executedDeltas) {
+			projCtx.addToExecutedDeltas(executedDelta);
+		}
+		if (execution.exception == null && !execution.executedDeltas.isEmpty()) {
+			// to make sure that the OID is set (e.g. after ADD operation), also in higher-order contexts
+			ObjectDelta<ShadowType> lastDelta = execution.executedDeltas.get(execution.executedDeltas.size() - 1).getObjectDelta();
+			LensUtil.setContextOid(context, projCtx, lastDelta.getOid());
+		}
+	}
+
+	private boolean isIndependent(LensProjectionContext projCtx, Set<String> dependencyTargets) {
+		ResourceShadowDiscriminator discr = projCtx.getResourceShadowDiscriminator();
+		if (discr == null || discr.getOrder() > 0 || projCtx.getResourceOid() == null) {
+			return false;
+		}
+		if (projCtx.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+			return false;
+		}
+		if (!projCtx.getDependencies().isEmpty() || dependencyTargets.contains(projCtx.getResourceOid())) {
+			return false;
+		}
+		ObjectDelta<ShadowType> projDelta = getProjectionDeltaToExecute(projCtx);
+		return projDelta != null && !projDelta.isEmpty();
+	}
+
+	private <O extends ObjectType> void execute(ConcurrentProjectionExecution execution, LensContext<O> context, Task task) {
+		LensProjectionContext projCtx = execution.projectionContext;
+		DEFERRED_ACTION_RECORDS.set(execution.actionRecords);
+		try {
+			executeReconciliationScript(projCtx, context, BeforeAfterType.BEFORE, task, execution.result);
+			executeDelta(execution.delta, projCtx, context, null, null, projCtx.getResource(), task, execution.result,
+					execution.executedDeltas);
+		} catch (Throwable t) {
+			// will be rethrown and processed in the coordinating thread
+			execution.exception = t;
+		} finally {
+			DEFERRED_ACTION_RECORDS.remove();
+			execution.executed = true;
+		}
+	}
+
+	private static class ConcurrentProjectionExecution {
+		private final LensProjectionContext projectionContext;
+		private final ObjectDelta<ShadowType> delta;
+		private final OperationResult result;
+		// applied to the projection context by the coordinating thread
+		private final List<LensObjectDeltaOperation<ShadowType>> executedDeltas = new ArrayList<>();
+		// recorded in the caller's task by the coordinating thread
+		private final List<Consumer<Task>> actionRecords = new ArrayList<>();
+		private volatile boolean executed;
+		private volatile Throwable exception;
+		private boolean resultAttached;
+
+		private ConcurrentProjectionExecution(LensProjectionContext projectionContext, ObjectDelta<ShadowType> delta,
+				OperationResult result) {
+			this.projectionContext = projectionContext;
+			this.delta = delta;
+			this.result = result;
+		}
+
+		// puts the result under the caller's result (only once); called by the coordinating thread
+		private OperationResult attachResult(OperationResult parentResult) {
+			if (!resultAttached) {
+				parentResult.addSubresult(result);
+				resultAttached = true;
+			}
+			return result;
+		}
+
+		private void rethrowIfFailed() throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException,
+				CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException,
+				PreconditionViolationException {
+			Throwable t = exception;
+			if (t == null) {
+				return;
+			} else if (t instanceof ObjectAlreadyExistsException) {
+				throw (ObjectAlreadyExistsException) t;
+			} else if (t instanceof ObjectNotFoundException) {
+				throw (ObjectNotFoundException) t;
+			} else if (t instanceof SchemaException) {
+				throw (SchemaException) t;
+			} else if (t instanceof CommunicationException) {
+				throw (CommunicationException) t;
+			} else if (t instanceof ConfigurationException) {
+				throw (ConfigurationException) t;
+			} else if (t instanceof SecurityViolationException) {
+				throw (SecurityViolationException) t;
+			} else if (t instanceof ExpressionEvaluationException) {
+				throw (ExpressionEvaluationException) t;
+			} else if (t instanceof PreconditionViolationException) {
+				throw (PreconditionViolationException) t;
+			} else if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else {
+				throw new SystemException(t.getMessage(), t);
+			}
+		}
+	}
+
+	private void setRequestee(Task task, LensContext<?> context) {
+		if (!Boolean.TRUE.equals(IN_CONCURRENT_EXECUTION.get())) {
+			Utils.setRequestee(task, context);
+		}
+	}
+
+	private void clearRequestee(Task task) {
+		if (!Boolean.TRUE.equals(IN_CONCURRENT_EXECUTION.get())) {
+			Utils.clearRequestee(task);
+		}
+	}
+
+	private <T extends ObjectType> void recordObjectActionExecuted(Task task, PrismObject<T> object,
+			Class<T> objectTypeClass, String defaultOid, ChangeType changeType, String channel, Throwable exception) {
+		List<Consumer<Task>> deferredRecords = DEFERRED_ACTION_RECORDS.get();
+		if (deferredRecords != null) {
+			deferredRecords.add(t -> t.recordObjectActionExecuted(object, objectTypeClass, defaultOid, changeType, channel,
+					exception));
+		} else {
+			task.recordObjectActionExecuted(object, objectTypeClass, defaultOid, changeType, channel, exception);
+		}
+	}
+	//endregion
+
 	private <O extends ObjectType> ObjectDelta<O> applyPendingObjectPolicyStateModifications(LensFocusContext<O> focusContext,
 			ObjectDelta<O> focusDelta) throws SchemaException {
 		for (ItemDelta<?, ?> itemDelta : focusContext.getPendingObjectPolicyStateModifications()) {
@@ -863,6 +1231,20 @@ public class ChangeExecutor {
 					throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException,
 					CommunicationException, ConfigurationException, SecurityViolationException,
 					ExpressionEvaluationException, PreconditionViolationException {
+		executeDelta(objectDelta, objectContext, context, options, conflictResolution, resource, task, parentResult, null);
+	}
+
+	/**
+	 * If deferredExecutedDeltas is not null, the executed delta is put there instead of being added to the context,
+	 * and the context OID is not updated. The caller is responsible for doing that.
+	 */
+	private <T extends ObjectType, F extends ObjectType> void executeDelta(ObjectDelta<T> objectDelta,
+			LensElementContext<T> objectContext, LensContext<F> context, ModelExecuteOptions options,
+			ConflictResolutionType conflictResolution, ResourceType resource, Task task, OperationResult parentResult,
+			List<LensObjectDeltaOperation<T>> deferredExecutedDeltas)
+					throws ObjectAlreadyExistsException, ObjectNotFoundException, SchemaException,
+					CommunicationException, ConfigurationException, SecurityViolationException,
+					ExpressionEvaluationException, PreconditionViolationException {
 
 		if (objectDelta == null) {
 			throw new IllegalArgumentException("Null change");
@@ -912,7 +1294,9 @@ public class ChangeExecutor {
 			}
 
 			// To make sure that the OID is set (e.g. after ADD operation)
-			LensUtil.setContextOid(context, objectContext, objectDelta.getOid());
+			if (deferredExecutedDeltas == null) {
+				LensUtil.setContextOid(context, objectContext, objectDelta.getOid());
+			}
 
 		} finally {
 
@@ -923,7 +1307,11 @@ public class ChangeExecutor {
 				}
 				LensObjectDeltaOperation<T> objectDeltaOp = LensUtil.createObjectDeltaOperation(
 						objectDelta.clone(), result, objectContext, null, resource);
-				objectContext.addToExecutedDeltas(objectDeltaOp);
+				if (deferredExecutedDeltas != null) {
+					deferredExecutedDeltas.add(objectDeltaOp);
+				} else {
+					objectContext.addToExecutedDeltas(objectDeltaOp);
+				}
 			}
 
 			if (LOGGER.isDebugEnabled()) {
@@ -1275,10 +1663,10 @@ public class ChangeExecutor {
 				}
 			}
 			change.setOid(oid);
-			task.recordObjectActionExecuted(objectToAdd, objectToAdd.getCompileTimeClass(), oid,
+			recordObjectActionExecuted(task, objectToAdd, objectToAdd.getCompileTimeClass(), oid,
 					ChangeType.ADD, context.getChannel(), null);
 		} catch (Throwable t) {
-			task.recordObjectActionExecuted(objectToAdd, objectToAdd.getCompileTimeClass(), null,
+			recordObjectActionExecuted(task, objectToAdd, objectToAdd.getCompileTimeClass(), null,
 					ChangeType.ADD, context.getChannel(), t);
 			throw t;
 		}
@@ -1330,10 +1718,10 @@ public class ChangeExecutor {
 					result.muteLastSubresultError();
 				}
 			}
-			task.recordObjectActionExecuted(objectOld, objectTypeClass, oid, ChangeType.DELETE,
+			recordObjectActionExecuted(task, objectOld, objectTypeClass, oid, ChangeType.DELETE,
 					context.getChannel(), null);
 		} catch (Throwable t) {
-			task.recordObjectActionExecuted(objectOld, objectTypeClass, oid, ChangeType.DELETE,
+			recordObjectActionExecuted(task, objectOld, objectTypeClass, oid, ChangeType.DELETE,
 					context.getChannel(), t);
 			throw t;
 		}
@@ -1390,10 +1778,10 @@ public class ChangeExecutor {
 				cacheRepositoryService.modifyObject(objectTypeClass, delta.getOid(),
 						delta.getModifications(), precondition, null, result);
 			}
-			task.recordObjectActionExecuted(objectOld, objectTypeClass, delta.getOid(), ChangeType.MODIFY,
+			recordObjectActionExecuted(task, objectOld, objectTypeClass, delta.getOid(), ChangeType.MODIFY,
 					context.getChannel(), null);
 		} catch (Throwable t) {
-			task.recordObjectActionExecuted(objectOld, objectTypeClass, delta.getOid(), ChangeType.MODIFY,
+			recordObjectActionExecuted(task, objectOld, objectTypeClass, delta.getOid(), ChangeType.MODIFY,
 					context.getChannel(), t);
 			throw t;
 		}
@@ -1432,9 +1820,9 @@ public class ChangeExecutor {
 			scripts = prepareScripts(object, context, objectContext, ProvisioningOperationTypeType.ADD,
 					resource, task, result);
 		}
-		Utils.setRequestee(task, context);
+		setRequestee(task, context);
 		String oid = provisioning.addObject(object, scripts, options, task, result);
-		Utils.clearRequestee(task);
+		clearRequestee(task);
 		return oid;
 	}
 
@@ -1461,9 +1849,9 @@ public class ChangeExecutor {
 			scripts = prepareScripts(shadowToModify, context, objectContext,
 					ProvisioningOperationTypeType.DELETE, resource, task, result);
 		}
-		Utils.setRequestee(task, context);
+		setRequestee(task, context);
 		provisioning.deleteObject(objectTypeClass, oid, options, scripts, task, result);
-		Utils.clearRequestee(task);
+		clearRequestee(task);
 	}
 
 	private <F extends ObjectType, T extends ObjectType> String modifyProvisioningObject(
@@ -1494,10 +1882,10 @@ public class ChangeExecutor {
 			scripts = prepareScripts(shadowToModify, context, objectContext,
 					ProvisioningOperationTypeType.MODIFY, resource, task, result);
 		}
-		Utils.setRequestee(task, context);
+		setRequestee(task, context);
 		String changedOid = provisioning.modifyObject(objectTypeClass, oid, modifications, scripts, options,
 				task, result);
-		Utils.clearRequestee(task);
+		clearRequestee(task);
 		return changedOid;
 	}
 
@@ -1741,9 +2129,9 @@ public class ChangeExecutor {
 					projContext.getResourceShadowDiscriminator(), operation, order,
 					variables, context, projContext, task, parentResult);
 			for (OperationProvisioningScriptType script : evaluatedScript.getScript()) {
-				Utils.setRequestee(task, context);
+				setRequestee(task, context);
 				scriptResult = provisioning.executeScript(resource.getOid(), script, task, parentResult);
-				Utils.clearRequestee(task);
+				clearRequestee(task);
 			}
 		} finally {
 			ModelExpressionThreadLocalHolder.popExpressionEnvironment();
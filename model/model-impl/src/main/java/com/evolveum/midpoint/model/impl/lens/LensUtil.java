@@ -63,6 +63,8 @@ import com.evolveum.midpoint.prism.delta.PropertyDelta;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.provisioning.api.ProvisioningService;
 import com.evolveum.midpoint.repo.api.PreconditionViolationException;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
 import com.evolveum.midpoint.repo.common.expression.Expression;
 import com.evolveum.midpoint.repo.common.expression.ExpressionEvaluationContext;
 import com.evolveum.midpoint.repo.common.expression.ExpressionFactory;
@@ -1056,4 +1058,29 @@ public class LensUtil {
 		}
 		return rv;
 	}
+
+	/**
+	 * Fetches given objects from the repository in one call, so they get into the (thread-local) repository cache.
+	 * Subsequent getObject calls for them are then served from the cache, without further repository round trips.
+	 *
+	 * Does nothing if the repository cache is not active or if there are less than two objects. Failures are ignored:
+	 * the objects are then fetched one by one later, and errors (if any) are reported there.
+	 */
+	public static <O extends ObjectType> void prefetchIntoRepositoryCache(RepositoryService cacheRepositoryService,
+			Class<O> type, Collection<String> oids, OperationResult parentResult) {
+		if (oids.size() < 2 || !RepositoryCache.exists()) {
+			return;
+		}
+		OperationResult result = parentResult.createMinorSubresult(LensUtil.class.getName() + ".prefetchIntoRepositoryCache");
+		result.addParam("type", type);
+		try {
+			cacheRepositoryService.getObjects(type, oids, null, result);
+		} catch (SchemaException | RuntimeException e) {
+			LOGGER.debug("Couldn't prefetch {} objects of type {}: {}", oids.size(), type.getSimpleName(), e.getMessage(), e);
+			result.recordFatalError(e);
+		} finally {
+			result.computeStatusIfUnknown();
+			result.muteError();
+		}
+	}
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector;
+
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.api.ProvisioningService;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.util.exception.ConfigurationException;
+import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SecurityViolationException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import org.apache.commons.configuration.Configuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches shadows of several projection contexts from provisioning concurrently.
+ *
+ * Contexts are grouped by resource: shadows on one resource are fetched one after another (so a single
+ * clockwork run never holds more than one pooled connector instance of a resource), while different resources
+ * are contacted in parallel, using a bounded thread pool. The outcome of each fetch (the object or the exception)
+ * is returned to the caller, who processes the outcomes in the original order of contexts. So the lens context
+ * is updated deterministically, in the calling thread.
+ *
+ * Each worker has its own (transient) subtask of the caller's task, its own operation result (put under the caller's
+ * result when the worker is done) and its own repository cache. Statistics of the fetches are therefore not recorded
+ * in the caller's task.
+ *
+ * The number of threads is set by "projectionLoadThreads" in the midpoint.model configuration section.
+ * The default is 0, meaning that projections are loaded sequentially by the caller.
+ */
+@Component
+public class ConcurrentProjectionLoader {
+
+	private static final Trace LOGGER = TraceManager.getTrace(ConcurrentProjectionLoader.class);
+
+	private static final String OPERATION_FETCH = ConcurrentProjectionLoader.class.getName() + ".fetch";
+
+	static final String CONFIG_PROJECTION_LOAD_THREADS = "projectionLoadThreads";
+
+	@Autowired private ProvisioningService provisioningService;
+	@Autowired(required = false) private MidpointConfiguration midpointConfiguration;
+
+	/**
+	 * Fetches started from within a fetch (e.g. by a discovery-triggered clockwork run) must not wait for the pool.
+	 */
+	private static final ThreadLocal<Boolean> IN_LOADER_THREAD = new ThreadLocal<>();
+
+	private ExecutorService executor;
+
+	@PostConstruct
+	public void initialize() {
+		int threads = 0;
+		if (midpointConfiguration != null) {
+			Configuration config = midpointConfiguration.getConfiguration(MidpointConfiguration.MODEL_CONFIGURATION_SECTION);
+			if (config != null) {
+				threads = config.getInt(CONFIG_PROJECTION_LOAD_THREADS, 0);
+			}
+		}
+		setThreads(threads);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		setThreads(0);
+	}
+
+	public synchronized void setThreads(int threads) {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		if (threads > 0) {
+			AtomicInteger counter = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "ProjectionLoader-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			LOGGER.info("Projections will be loaded concurrently, using {} thread(s)", threads);
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Fetches shadows for given projection contexts. Returns outcomes of the fetches that were carried out;
+	 * contexts without an outcome (e.g. if concurrent loading is switched off, if there is only one resource
+	 * to be contacted, or if the caller was interrupted) are to be loaded by the caller in the usual way.
+	 */
+	public Map<LensProjectionContext, FetchedShadow> fetch(
+			LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests,
+			Task task, OperationResult parentResult) {
+		ExecutorService executor = getExecutor();
+		if (executor == null || requests.size() < 2 || Boolean.TRUE.equals(IN_LOADER_THREAD.get())) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, List<LensProjectionContext>> byResource = new LinkedHashMap<>();
+		for (LensProjectionContext projCtx : requests.keySet()) {
+			byResource.computeIfAbsent(projCtx.getResourceOid(), k -> new ArrayList<>()).add(projCtx);
+		}
+		if (byResource.size() < 2) {
+			return Collections.emptyMap();
+		}
+
+		LOGGER.trace("Fetching {} shadow(s) from {} resource(s) concurrently", requests.size(), byResource.size());
+		SecurityContext securityContext = SecurityContextHolder.getContext();
+		Map<LensProjectionContext, FetchedShadow> outcomes = new ConcurrentHashMap<>();
+		List<Future<?>> futures = new ArrayList<>();
+		List<OperationResult> results = new ArrayList<>();
+		for (List<LensProjectionContext> group : byResource.values()) {
+			// neither Task nor OperationResult is thread safe, so each worker gets its own ones
+			Task workerTask = task.createSubtask();
+			OperationResult result = new OperationResult(OPERATION_FETCH);
+			result.setMinor(true);
+			result.addParam("resourceOid", group.get(0).getResourceOid());
+			results.add(result);
+			futures.add(executor.submit(() -> {
+				SecurityContextHolder.setContext(securityContext);
+				IN_LOADER_THREAD.set(true);
+				RepositoryCache.enter();
+				try {
+					for (LensProjectionContext projCtx : group) {
+						outcomes.put(projCtx, fetchShadow(projCtx, requests.get(projCtx), workerTask, result));
+					}
+				} finally {
+					RepositoryCache.exit();
+					IN_LOADER_THREAD.remove();
+					SecurityContextHolder.clearContext();
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.debug("Interrupted while waiting for projections to be loaded");
+			futures.forEach(f -> f.cancel(true));
+			// some workers might still be running, so their results cannot be touched
+			return new HashMap<>(outcomes);
+		} catch (ExecutionException e) {
+			throw new SystemException("Couldn't load projections: " + e.getCause().getMessage(), e.getCause());
+		}
+		for (OperationResult result : results) {
+			result.computeStatusIfUnknown();
+			parentResult.addSubresult(result);
+		}
+		return new HashMap<>(outcomes);
+	}
+
+	private FetchedShadow fetchShadow(LensProjectionContext projCtx, Collection<SelectorOptions<GetOperationOptions>> options,
+			Task task, OperationResult result) {
+		try {
+			return new FetchedShadow(provisioningService.getObject(ShadowType.class, projCtx.getOid(), options, task, result), null);
+		} catch (Throwable t) {
+			// will be rethrown in the caller's thread
+			return new FetchedShadow(null, t);
+		}
+	}
+
+	/**
+	 * The outcome of a fetch: either the shadow or the exception that occurred.
+	 */
+	public static class FetchedShadow {
+
+		private final PrismObject<ShadowType> shadow;
+		private final Throwable exception;
+
+		private FetchedShadow(PrismObject<ShadowType> shadow, Throwable exception) {
+			this.shadow = shadow;
+			this.exception = exception;
+		}
+
+		public PrismObject<ShadowType> get() throws ObjectNotFoundException, CommunicationException, SchemaException,
+				ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
+			if (exception == null) {
+				return shadow;
+			} else if (exception instanceof ObjectNotFoundException) {
+				throw (ObjectNotFoundException) exception;
+			} else if (exception instanceof CommunicationException) {
+				throw (CommunicationException) exception;
+			} else if (exception instanceof SchemaException) {
+				throw (SchemaException) exception;
+			} else if (exception instanceof ConfigurationException) {
+				throw (ConfigurationException) exception;
+			} else if (exception instanceof SecurityViolationException) {
+				throw (SecurityViolationException) exception;
+			} else if (exception instanceof ExpressionEvaluationException) {
+				throw (ExpressionEvaluationException) exception;
+			} else if (exception instanceof RuntimeException) {
+				throw (RuntimeException) exception;
+			} else if (exception instanceof Error) {
+				throw (Error) exception;
+			} else {
+				throw new SystemException(exception.getMessage(), exception);
+			}
+		}
+	}
+}
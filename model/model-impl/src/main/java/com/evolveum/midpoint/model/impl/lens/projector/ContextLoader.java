@@ -18,8 +18,13 @@ package com.evolveum.midpoint.model.impl.lens.projector;
 import static com.evolveum.midpoint.schema.internals.InternalsConfig.consistencyChecks;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.internals.InternalsConfig;
@@ -44,6 +49,7 @@ import com.evolveum.midpoint.model.impl.lens.LensObjectDeltaOperation;
 import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
 import com.evolveum.midpoint.model.impl.lens.LensUtil;
 import com.evolveum.midpoint.model.impl.lens.SynchronizationIntent;
+import com.evolveum.midpoint.model.impl.lens.projector.ConcurrentProjectionLoader.FetchedShadow;
 import com.evolveum.midpoint.model.impl.security.SecurityHelper;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismObject;
@@ -102,6 +108,7 @@ public class ContextLoader {
 	@Autowired private PrismContext prismContext;
 	@Autowired private SecurityHelper securityHelper;
 	@Autowired private ClockworkMedic medic;
+	@Autowired private ConcurrentProjectionLoader concurrentProjectionLoader;
 
 	private static final Trace LOGGER = TraceManager.getTrace(ContextLoader.class);
 
@@ -162,9 +169,15 @@ public class ContextLoader {
     	
     	if (consistencyChecks) context.checkConsistence();
 
+    	for (LensProjectionContext projectionContext: context.getProjectionContexts()) {
+    		prepareLoadOfProjectionContext(projectionContext);
+	    }
+
+	    Map<LensProjectionContext, FetchedShadow> fetchedShadows = fetchShadowsConcurrently(context, task, result);
+
     	for (LensProjectionContext projectionContext: context.getProjectionContexts()) {
             context.checkAbortRequested();
-    		finishLoadOfProjectionContext(context, projectionContext, task, result);
+    		finishLoadOfProjectionContext(context, projectionContext, fetchedShadows.get(projectionContext), task, result);
 		}
 
         if (consistencyChecks) context.checkConsistence();
@@ -227,7 +240,8 @@ public class ContextLoader {
 	public <F extends ObjectType> void makeSureProjectionIsLoaded(LensContext<F> context,
 																  LensProjectionContext projectionContext, Task task, OperationResult result) throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
 		preprocessProjectionContext(context, projectionContext, task, result);
-		finishLoadOfProjectionContext(context, projectionContext, task, result);
+		prepareLoadOfProjectionContext(projectionContext);
+		finishLoadOfProjectionContext(context, projectionContext, null, task, result);
 	}
 
 	/**
@@ -476,6 +490,16 @@ public class ContextLoader {
 		if (linkRef == null) {
 			return;
 		}
+		// repository shadows of the links are read by provisioning one by one; let's have them in the cache beforehand
+		Set<String> shadowOidsToPrefetch = new HashSet<>();
+		for (PrismReferenceValue linkRefVal : linkRef.getValues()) {
+			if (linkRefVal.getObject() == null && StringUtils.isNotBlank(linkRefVal.getOid())
+					&& findAccountContext(linkRefVal.getOid(), context) == null) {
+				shadowOidsToPrefetch.add(linkRefVal.getOid());
+			}
+		}
+		LensUtil.prefetchIntoRepositoryCache(cacheRepositoryService, ShadowType.class, shadowOidsToPrefetch, result);
+
 		for (PrismReferenceValue linkRefVal : linkRef.getValues()) {
 			String oid = linkRefVal.getOid();
 			if (StringUtils.isBlank(oid)) {
@@ -949,16 +973,10 @@ public class ContextLoader {
 	}
 
 	/**
-	 * Check reconcile flag in account sync context and set accountOld
-     * variable if it's not set (from provisioning), load resource (if not set already), etc.
+	 * Adjusts the projection context before its object is loaded. This is done for all the contexts before
+	 * any of them is loaded, so the objects that need to be fetched can be determined up front.
 	 */
-	private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context,
-			LensProjectionContext projContext, Task task, OperationResult result)
-			throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
-			SecurityViolationException, ExpressionEvaluationException {
-
-		String projectionHumanReadableName = projContext.getHumanReadableName();
-
+	private void prepareLoadOfProjectionContext(LensProjectionContext projContext) {
 		if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
 			return;
 		}
@@ -970,12 +988,71 @@ public class ContextLoader {
 			projContext.setDoReconciliation(true);
 		}
 
-		// Remember OID before the object could be wiped
-		String projectionObjectOid = projContext.getOid();
 		if (projContext.isDoReconciliation() && !projContext.isFullShadow()) {
 			// The current object is useless here. So lets just wipe it so it will get loaded
 			projContext.setObjectCurrent(null);
 		}
+	}
+
+	private <F extends ObjectType> boolean needsLoadOfProjectionObject(LensContext<F> context, LensProjectionContext projContext) {
+		return projContext.getSynchronizationPolicyDecision() != SynchronizationPolicyDecision.BROKEN
+				&& (projContext.getObjectCurrent() == null || needToReload(context, projContext))
+				&& !projContext.isAdd()
+				&& projContext.getOid() != null;
+	}
+
+	/**
+	 * Fetches (full) shadows for projections being reconciled from their resources concurrently, if enabled.
+	 * Projections that use noFetch are not fetched here, as they do not contact the resource.
+	 * The results are processed later, in the order of projection contexts.
+	 */
+	private <F extends ObjectType> Map<LensProjectionContext, FetchedShadow> fetchShadowsConcurrently(LensContext<F> context,
+			Task task, OperationResult result) {
+		LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests = new LinkedHashMap<>();
+		for (LensProjectionContext projContext : context.getProjectionContexts()) {
+			if (projContext.isDoReconciliation() && needsLoadOfProjectionObject(context, projContext)) {
+				requests.put(projContext, createProjectionLoadOptions(context, projContext));
+			}
+		}
+		if (requests.size() < 2) {
+			return Collections.emptyMap();
+		}
+		return concurrentProjectionLoader.fetch(requests, task, result);
+	}
+
+	private <F extends ObjectType> Collection<SelectorOptions<GetOperationOptions>> createProjectionLoadOptions(
+			LensContext<F> context, LensProjectionContext projContext) {
+		GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
+		if (projContext.isDoReconciliation()) {
+			if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
+				// Avoid discovery loops
+				rootOptions.setDoNotDiscovery(true);
+			}
+		} else {
+			rootOptions.setNoFetch(true);
+		}
+		rootOptions.setAllowNotFound(true);
+		return SelectorOptions.createCollection(rootOptions);
+	}
+
+	/**
+	 * Check reconcile flag in account sync context and set accountOld
+     * variable if it's not set (from provisioning), load resource (if not set already), etc.
+	 *
+	 * @param fetchedShadow Outcome of fetching projection object, if it was fetched beforehand (concurrently).
+	 */
+	private <F extends ObjectType> void finishLoadOfProjectionContext(LensContext<F> context,
+			LensProjectionContext projContext, FetchedShadow fetchedShadow, Task task, OperationResult result)
+			throws ObjectNotFoundException, CommunicationException, SchemaException, ConfigurationException,
+			SecurityViolationException, ExpressionEvaluationException {
+
+		String projectionHumanReadableName = projContext.getHumanReadableName();
+
+		if (projContext.getSynchronizationPolicyDecision() == SynchronizationPolicyDecision.BROKEN) {
+			return;
+		}
+
+		String projectionObjectOid = projContext.getOid();
 
 		// Load current object
 		boolean thombstone = false;
@@ -995,24 +1072,21 @@ public class ContextLoader {
 					}
 				} else {
 					projContext.setExists(true);
-					GetOperationOptions rootOptions = GetOperationOptions.createPointInTimeType(PointInTimeType.FUTURE);
-					if (projContext.isDoReconciliation()) {
-						if (SchemaConstants.CHANGE_CHANNEL_DISCOVERY_URI.equals(context.getChannel())) {
-							// Avoid discovery loops
-							rootOptions.setDoNotDiscovery(true);
-						}
-					} else {
-						rootOptions.setNoFetch(true);
-					}
-					rootOptions.setAllowNotFound(true);
-					Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(rootOptions);
+					Collection<SelectorOptions<GetOperationOptions>> options = createProjectionLoadOptions(context, projContext);
+					GetOperationOptions rootOptions = SelectorOptions.findRootOptions(options);
 					if (LOGGER.isTraceEnabled()) {
-						LOGGER.trace("Loading shadow {} for projection {}, options={}", projectionObjectOid, projectionHumanReadableName, options);
+						LOGGER.trace("Loading shadow {} for projection {}, options={}{}", projectionObjectOid, projectionHumanReadableName,
+								options, fetchedShadow != null ? " (fetched concurrently)" : "");
 					}
 
 					try {
-						PrismObject<ShadowType> objectOld = provisioningService.getObject(
-								projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+						PrismObject<ShadowType> objectOld;
+						if (fetchedShadow != null) {
+							objectOld = fetchedShadow.get();
+						} else {
+							objectOld = provisioningService.getObject(
+									projContext.getObjectTypeClass(), projectionObjectOid, options, task, result);
+						}
 						if (LOGGER.isTraceEnabled()) {
 							if (!GetOperationOptions.isNoFetch(rootOptions) && !GetOperationOptions.isRaw(rootOptions)) {
 								if (LOGGER.isTraceEnabled()) {
@@ -31,6 +31,7 @@ import com.evolveum.midpoint.repo.common.expression.ExpressionVariables;
 import com.evolveum.midpoint.repo.common.expression.ObjectDeltaObject;
 import com.evolveum.midpoint.repo.common.expression.Source;
 import com.evolveum.midpoint.repo.common.expression.ValuePolicyResolver;
+import com.evolveum.midpoint.model.common.expression.evaluator.caching.PureExpressionResultCache;
 import com.evolveum.midpoint.model.common.mapping.MappingImpl;
 import com.evolveum.midpoint.model.common.mapping.MappingFactory;
 import com.evolveum.midpoint.model.impl.expr.ExpressionEnvironment;
@@ -121,6 +122,9 @@ public class MappingEvaluator {
 			objectOid = objectName = objectTypeName = null;
 		}
 		String mappingName = mapping.getItemName() != null ? mapping.getItemName().getLocalPart() : null;
+		PureExpressionResultCache.Statistics cacheStatistics = PureExpressionResultCache.getThreadStatistics();
+		int cacheHitsBefore = cacheStatistics.getHits();
+		int cacheMissesBefore = cacheStatistics.getMisses();
 		long start = System.currentTimeMillis();
 		try {
 			task.recordState("Started evaluation of mapping " + mapping.getMappingContextDescription() + ".");
@@ -130,7 +134,8 @@ public class MappingEvaluator {
 			task.recordState("Evaluation of mapping " + mapping.getMappingContextDescription() + " finished with error in " + (System.currentTimeMillis()-start) + " ms.");
 			throw new IllegalArgumentException(e.getMessage()+" in "+mapping.getContextDescription(), e);
 		} finally {
-			task.recordMappingOperation(objectOid, objectName, objectTypeName, mappingName, System.currentTimeMillis() - start);
+			task.recordMappingOperation(objectOid, objectName, objectTypeName, mappingName, System.currentTimeMillis() - start,
+					cacheStatistics.getHits() - cacheHitsBefore, cacheStatistics.getMisses() - cacheMissesBefore);
 			ModelExpressionThreadLocalHolder.popExpressionEnvironment();
 			if (lensContext.getInspector() != null) {
 				lensContext.getInspector().afterMappingEvaluation(lensContext, mapping);
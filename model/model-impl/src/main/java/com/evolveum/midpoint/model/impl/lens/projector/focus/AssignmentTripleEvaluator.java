@@ -46,7 +46,9 @@ import com.evolveum.midpoint.xml.ns._public.common.common_3.FocusType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
 
 import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Evaluates all assignments and sorts them to triple: added, removed and untouched assignments.
@@ -153,6 +155,12 @@ public class AssignmentTripleEvaluator<F extends FocusType> {
 			LOGGER.trace("Assignment collection:\n{}", assignmentCollection.debugDump(1));
 		}
 
+		List<AssignmentType> assignments = new ArrayList<>();
+		for (SmartAssignmentElement assignmentElement : assignmentCollection) {
+			assignments.add(assignmentElement.getAssignmentCVal().asContainerable());
+		}
+		assignmentEvaluator.prefetchTargets(assignments, result);
+
 		// Iterate over all the assignments. I mean really all. This is a union of the existing and changed assignments
         // therefore it contains all three types of assignments (plus, minus and zero). As it is an union each assignment
         // will be processed only once. Inside the loop we determine whether it was added, deleted or remains unchanged.
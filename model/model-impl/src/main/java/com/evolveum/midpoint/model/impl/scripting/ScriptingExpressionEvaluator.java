@@ -66,6 +66,8 @@ public class ScriptingExpressionEvaluator {
     private static final Trace LOGGER = TraceManager.getTrace(ScriptingExpressionEvaluator.class);
     private static final String DOT_CLASS = ScriptingExpressionEvaluator.class + ".";
 
+    private static final String PARAM_FOR_WHOLE_INPUT = "forWholeInput";
+
     @Autowired private TaskManager taskManager;
     @Autowired private SearchEvaluator searchEvaluator;
     @Autowired private SelectEvaluator selectEvaluator;
@@ -227,13 +229,46 @@ public class ScriptingExpressionEvaluator {
         }
     }
 
+    /**
+     * A search that is followed by other stages of the pipeline is evaluated in a streaming way: found objects are passed
+     * to the following stages in small batches, as they are found, instead of collecting all of them first.
+     * (So "search | recompute" behaves like "search { recompute }".) This is done only if the following stages process
+     * their input item by item, i.e. they are actions, selects or content filters, and no action works on the whole input.
+     */
     private PipelineData executePipeline(ExpressionPipelineType pipeline, PipelineData data, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
-        for (JAXBElement<? extends ScriptingExpressionType> expressionType : pipeline.getScriptingExpression()) {
-            data = evaluateExpression(expressionType, data, context, result);
+        List<JAXBElement<? extends ScriptingExpressionType>> stages = pipeline.getScriptingExpression();
+        for (int i = 0; i < stages.size(); i++) {
+            ScriptingExpressionType stage = stages.get(i).getValue();
+            List<JAXBElement<? extends ScriptingExpressionType>> followingStages = stages.subList(i + 1, stages.size());
+            if (stage instanceof SearchExpressionType && ((SearchExpressionType) stage).getScriptingExpression() == null
+                    && !followingStages.isEmpty() && processItemByItem(followingStages)) {
+                ExpressionPipelineType followingPipeline = new ExpressionPipelineType();
+                followingPipeline.getScriptingExpression().addAll(followingStages);
+                LOGGER.trace("Streaming search results into {} following pipeline stage(s)", followingStages.size());
+                OperationResult stageResult = result.createMinorSubresult(DOT_CLASS + "evaluateExpression");
+                PipelineData output = searchEvaluator.evaluateStreaming((SearchExpressionType) stage, followingPipeline, data, context, stageResult);
+                stageResult.computeStatusIfUnknown();
+                return output;
+            }
+            data = evaluateExpression(stages.get(i), data, context, result);
         }
         return data;
     }
 
+    private boolean processItemByItem(List<JAXBElement<? extends ScriptingExpressionType>> stages) {
+        for (JAXBElement<? extends ScriptingExpressionType> stage : stages) {
+            ScriptingExpressionType value = stage.getValue();
+            if (value instanceof ActionExpressionType) {
+                if (((ActionExpressionType) value).getParameter().stream().anyMatch(p -> PARAM_FOR_WHOLE_INPUT.equals(p.getName()))) {
+                    return false;
+                }
+            } else if (!(value instanceof SelectExpressionType) && !(value instanceof FilterContentExpressionType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private PipelineData executeSequence(ExpressionSequenceType sequence, PipelineData input, ExecutionContext context, OperationResult result) throws ScriptExecutionException {
         PipelineData lastOutput = null;
         List<JAXBElement<? extends ScriptingExpressionType>> scriptingExpression = sequence.getScriptingExpression();
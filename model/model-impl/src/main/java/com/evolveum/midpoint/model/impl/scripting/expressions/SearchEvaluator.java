@@ -40,6 +40,7 @@ import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ExpressionPipelineType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.ScriptingExpressionType;
 import com.evolveum.midpoint.xml.ns._public.model.scripting_3.SearchExpressionType;
 import org.apache.commons.lang.Validate;
@@ -70,9 +71,28 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
 
     private static final String PARAM_NO_FETCH = "noFetch";
 
+	static final int STREAMING_BATCH_SIZE = 100;
+
     public <T extends ObjectType> PipelineData evaluate(SearchExpressionType searchExpression, PipelineData input,
 			ExecutionContext context, OperationResult globalResult)
 		    throws ScriptExecutionException {
+    	return evaluate(searchExpression, null, input, context, globalResult);
+    }
+
+	/**
+	 * Evaluates the search, passing found objects to the following stages of the pipeline in batches
+	 * of {@link #STREAMING_BATCH_SIZE}, as they are found. So the objects found are never held in memory all at once
+	 * (unless the output of the following stages is aggregated, which is the default).
+	 */
+	public PipelineData evaluateStreaming(SearchExpressionType searchExpression,
+			ExpressionPipelineType followingStages, PipelineData input, ExecutionContext context, OperationResult globalResult)
+			throws ScriptExecutionException {
+		return evaluate(searchExpression, followingStages, input, context, globalResult);
+	}
+
+	private <T extends ObjectType> PipelineData evaluate(SearchExpressionType searchExpression,
+			ExpressionPipelineType followingStages, PipelineData input, ExecutionContext context, OperationResult globalResult)
+			throws ScriptExecutionException {
         Validate.notNull(searchExpression.getType());
 
 	    List<PipelineItem> data = input.getData();
@@ -128,6 +148,7 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
 		    }
 
 		    final String variableName = searchExpression.getVariable();
+		    final PipelineData batch = PipelineData.createEmpty();
 
 		    ResultHandler<T> handler = (object, parentResult) -> {
 			    context.checkTaskStop();
@@ -154,6 +175,15 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
 						    throw new SystemException(e);
 					    }
 				    }
+			    } else if (followingStages != null) {
+				    batch.addValue(object.getValue(), item.getVariables());
+				    if (batch.getData().size() >= STREAMING_BATCH_SIZE) {
+					    try {
+						    processBatch(batch, followingStages, searchExpression, outputData, context, globalResult);
+					    } catch (ScriptExecutionException e) {
+						    throw new SystemException(e);
+					    }
+				    }
 			    } else {
 				    outputData.addValue(object.getValue(), item.getVariables());
 			    }
@@ -167,6 +197,9 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
 			    // TODO continue on any error?
 			    throw new ScriptExecutionException("Couldn't execute searchObjects operation: " + e.getMessage(), e);
 		    }
+		    if (followingStages != null) {
+			    processBatch(batch, followingStages, searchExpression, outputData, context, globalResult);
+		    }
 	    }
 
 	    if (atLeastOne.isFalse()) {
@@ -175,4 +208,28 @@ public class SearchEvaluator extends BaseExpressionEvaluator {
         return outputData;
     }
 
+	private void processBatch(PipelineData batch, ExpressionPipelineType followingStages, SearchExpressionType searchExpression,
+			PipelineData outputData, ExecutionContext context, OperationResult globalResult) throws ScriptExecutionException {
+		if (batch.getData().isEmpty()) {
+			return;
+		}
+		PipelineData batchInput = PipelineData.createEmpty();
+		batchInput.addAllFrom(batch);
+		batch.getData().clear();
+		try {
+			PipelineData expressionResult = scriptingExpressionEvaluator.evaluateExpression(followingStages, batchInput, context, globalResult);
+			if (!BooleanUtils.isFalse(searchExpression.isAggregateOutput())) {
+				outputData.addAllFrom(expressionResult);
+			}
+			globalResult.setSummarizeSuccesses(true);
+			globalResult.summarize();
+		} catch (ScriptExecutionException e) {
+			if (context.isContinueOnAnyError()) {
+				LoggingUtils.logUnexpectedException(LOGGER, "Exception when evaluating a batch of items from search result list.", e);
+			} else {
+				throw e;
+			}
+		}
+	}
+
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.impl.lens.projector;
+
+import com.evolveum.midpoint.model.impl.lens.LensProjectionContext;
+import com.evolveum.midpoint.model.impl.lens.projector.ConcurrentProjectionLoader.FetchedShadow;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.provisioning.api.ProvisioningService;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Tests concurrent fetching of projection shadows. Provisioning, task and projection contexts are mocked.
+ */
+public class TestConcurrentProjectionLoader {
+
+	private static final String RESOURCE_A = "resource-a";
+	private static final String RESOURCE_B = "resource-b";
+
+	private ProvisioningService provisioningService;
+	private Task task;
+	private ConcurrentProjectionLoader loader;
+
+	private final List<Task> tasksUsed = new CopyOnWriteArrayList<>();
+	private final List<Boolean> repositoryCacheEntered = new CopyOnWriteArrayList<>();
+	private final Map<String, Thread> threadsUsed = new ConcurrentHashMap<>();
+
+	@BeforeMethod
+	public void setUp() {
+		tasksUsed.clear();
+		repositoryCacheEntered.clear();
+		threadsUsed.clear();
+
+		provisioningService = mock(ProvisioningService.class);
+		task = mock(Task.class);
+		when(task.createSubtask()).thenAnswer(invocation -> mock(Task.class));
+		loader = new ConcurrentProjectionLoader();
+		ReflectionTestUtils.setField(loader, "provisioningService", provisioningService);
+		loader.setThreads(2);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		loader.shutdown();
+	}
+
+	/**
+	 * Both resources must be contacted at the same time (otherwise the latch would time out), by workers
+	 * having their own tasks and repository caches.
+	 */
+	@Test
+	public void test100FetchConcurrently() throws Exception {
+		CountDownLatch bothResourcesContacted = new CountDownLatch(2);
+		when(provisioningService.getObject(eq(ShadowType.class), anyString(), any(Collection.class), any(Task.class),
+				any(OperationResult.class))).thenAnswer(invocation -> {
+					String oid = (String) invocation.getArguments()[1];
+					recordCall(oid, (Task) invocation.getArguments()[3]);
+					bothResourcesContacted.countDown();
+					assertTrue("Resources are not contacted concurrently", bothResourcesContacted.await(10, TimeUnit.SECONDS));
+					return createShadow(oid);
+				});
+		LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests = new LinkedHashMap<>();
+		LensProjectionContext a1 = addRequest(requests, RESOURCE_A, "a1");
+		LensProjectionContext b1 = addRequest(requests, RESOURCE_B, "b1");
+		LensProjectionContext a2 = addRequest(requests, RESOURCE_A, "a2");
+		OperationResult result = new OperationResult("test100FetchConcurrently");
+
+		// WHEN
+		Map<LensProjectionContext, FetchedShadow> outcomes = loader.fetch(requests, task, result);
+
+		// THEN
+		assertEquals("Wrong # of outcomes", 3, outcomes.size());
+		assertEquals("Wrong shadow", "a1", outcomes.get(a1).get().getOid());
+		assertEquals("Wrong shadow", "b1", outcomes.get(b1).get().getOid());
+		assertEquals("Wrong shadow", "a2", outcomes.get(a2).get().getOid());
+		assertSame("Shadows of one resource fetched by different threads", threadsUsed.get("a1"), threadsUsed.get("a2"));
+		assertFalse("Caller's task was used by a worker", tasksUsed.contains(task));
+		assertFalse("Repository cache was not entered by a worker", repositoryCacheEntered.contains(false));
+		assertEquals("Wrong # of subresults", 2, result.getSubresults().size());
+	}
+
+	/**
+	 * A failure is returned to the caller as the outcome of the respective fetch; other fetches are not affected.
+	 */
+	@Test
+	public void test110FetchFailure() throws Exception {
+		when(provisioningService.getObject(eq(ShadowType.class), anyString(), any(Collection.class), any(Task.class),
+				any(OperationResult.class))).thenAnswer(invocation -> {
+					String oid = (String) invocation.getArguments()[1];
+					if ("b1".equals(oid)) {
+						throw new CommunicationException("Simulated failure of " + oid);
+					}
+					return createShadow(oid);
+				});
+		LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests = new LinkedHashMap<>();
+		LensProjectionContext a1 = addRequest(requests, RESOURCE_A, "a1");
+		LensProjectionContext b1 = addRequest(requests, RESOURCE_B, "b1");
+		OperationResult result = new OperationResult("test110FetchFailure");
+
+		// WHEN
+		Map<LensProjectionContext, FetchedShadow> outcomes = loader.fetch(requests, task, result);
+
+		// THEN
+		assertEquals("Wrong shadow", "a1", outcomes.get(a1).get().getOid());
+		try {
+			outcomes.get(b1).get();
+			fail("Unexpected success");
+		} catch (CommunicationException e) {
+			assertEquals("Wrong exception message", "Simulated failure of b1", e.getMessage());
+		}
+	}
+
+	/**
+	 * There is nothing to parallelize when only one resource is involved. The caller loads the shadows itself.
+	 */
+	@Test
+	public void test120SingleResource() {
+		LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests = new LinkedHashMap<>();
+		addRequest(requests, RESOURCE_A, "a1");
+		addRequest(requests, RESOURCE_A, "a2");
+
+		Map<LensProjectionContext, FetchedShadow> outcomes = loader.fetch(requests, task,
+				new OperationResult("test120SingleResource"));
+
+		assertTrue("Unexpected outcomes: " + outcomes, outcomes.isEmpty());
+	}
+
+	private void recordCall(String oid, Task usedTask) {
+		assertNotNull("No task", usedTask);
+		tasksUsed.add(usedTask);
+		repositoryCacheEntered.add(RepositoryCache.exists());
+		threadsUsed.put(oid, Thread.currentThread());
+	}
+
+	private LensProjectionContext addRequest(
+			LinkedHashMap<LensProjectionContext, Collection<SelectorOptions<GetOperationOptions>>> requests,
+			String resourceOid, String shadowOid) {
+		LensProjectionContext projCtx = mock(LensProjectionContext.class);
+		when(projCtx.getResourceOid()).thenReturn(resourceOid);
+		when(projCtx.getOid()).thenReturn(shadowOid);
+		requests.put(projCtx, null);
+		return projCtx;
+	}
+
+	@SuppressWarnings("unchecked")
+	private PrismObject<ShadowType> createShadow(String oid) {
+		PrismObject<ShadowType> shadow = mock(PrismObject.class);
+		when(shadow.getOid()).thenReturn(oid);
+		return shadow;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.model.intest;
+
+import com.evolveum.midpoint.model.api.ProgressInformation;
+import com.evolveum.midpoint.model.api.ProgressListener;
+import com.evolveum.midpoint.model.api.context.ModelContext;
+import com.evolveum.midpoint.model.impl.lens.ChangeExecutor;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.evolveum.midpoint.model.api.ProgressInformation.ActivityType.RESOURCE_OBJECT_OPERATION;
+import static com.evolveum.midpoint.model.api.ProgressInformation.StateType.ENTERING;
+import static com.evolveum.midpoint.model.api.ProgressInformation.StateType.EXITING;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Tests concurrent execution of deltas of independent projections (projectionExecutionThreads).
+ */
+@ContextConfiguration(locations = {"classpath:ctx-model-intest-test-main.xml"})
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestConcurrentProjectionExecution extends AbstractInitializedModelIntegrationTest {
+
+	private static final String USER_ABORT_NAME = "abort";
+
+	@Autowired private ChangeExecutor changeExecutor;
+
+	@Override
+	public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+		super.initSystem(initTask, initResult);
+		changeExecutor.setProjectionExecutionThreads(2);
+	}
+
+	@AfterClass
+	public void resetThreads() {
+		changeExecutor.setProjectionExecutionThreads(0);
+	}
+
+	/**
+	 * Accounts on two resources are created concurrently. Progress of each of them is reported exactly once,
+	 * ENTERING before EXITING.
+	 */
+	@Test
+	public void test100AssignAccountsOnTwoResources() throws Exception {
+		final String TEST_NAME = "test100AssignAccountsOnTwoResources";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		Task task = createTask(TEST_NAME);
+		OperationResult result = task.getResult();
+		RecordingProgressListener listener = new RecordingProgressListener(false);
+
+		// WHEN
+		displayWhen(TEST_NAME);
+		modelService.executeChanges(createAssignAccountsDeltas(USER_JACK_OID), null, task,
+				Collections.singleton(listener), result);
+
+		// THEN
+		displayThen(TEST_NAME);
+		assertSuccess(result);
+
+		PrismObject<UserType> userJack = getUser(USER_JACK_OID);
+		display("User after change execution", userJack);
+		assertLinks(userJack, 2);
+		assertDefaultDummyAccount(ACCOUNT_JACK_DUMMY_USERNAME, ACCOUNT_JACK_DUMMY_FULLNAME, true);
+		assertDummyAccount(RESOURCE_DUMMY_BLUE_NAME, ACCOUNT_JACK_DUMMY_USERNAME);
+
+		for (String resourceOid : Arrays.asList(RESOURCE_DUMMY_OID, RESOURCE_DUMMY_BLUE_OID)) {
+			List<ProgressInformation.StateType> states = listener.getResourceStates(resourceOid);
+			assertEquals("Wrong progress reported for " + resourceOid, Arrays.asList(ENTERING, EXITING), states);
+		}
+	}
+
+	/**
+	 * Abort is requested when the first projection is entered. No projection delta may be executed then.
+	 */
+	@Test
+	public void test110AbortBeforeExecution() throws Exception {
+		final String TEST_NAME = "test110AbortBeforeExecution";
+		displayTestTitle(TEST_NAME);
+
+		// GIVEN
+		Task task = createTask(TEST_NAME);
+		OperationResult result = task.getResult();
+		PrismObject<UserType> user = createUser(USER_ABORT_NAME, "Abort Me", true);
+		String userOid = addObject(user, task, result);
+		RecordingProgressListener listener = new RecordingProgressListener(true);
+
+		// WHEN
+		displayWhen(TEST_NAME);
+		try {
+			modelService.executeChanges(createAssignAccountsDeltas(userOid), null, task,
+					Collections.singleton(listener), result);
+			fail("Unexpected success");
+		} catch (RuntimeException e) {
+			displayThen(TEST_NAME);
+			display("Expected exception", e);
+		}
+
+		// THEN
+		assertNoDummyAccount(USER_ABORT_NAME);
+		assertNoDummyAccount(RESOURCE_DUMMY_BLUE_NAME, USER_ABORT_NAME);
+	}
+
+	private Collection<ObjectDelta<? extends ObjectType>> createAssignAccountsDeltas(String userOid) throws Exception {
+		ObjectDelta<UserType> delta = createAccountAssignmentUserDelta(userOid, RESOURCE_DUMMY_OID, null, true);
+		delta.merge(createAccountAssignmentUserDelta(userOid, RESOURCE_DUMMY_BLUE_OID, null, true));
+		return Collections.singletonList(delta);
+	}
+
+	private static class RecordingProgressListener implements ProgressListener {
+
+		private final boolean abortOnFirstProjection;
+		private final List<ProgressInformation> progress = new CopyOnWriteArrayList<>();
+		private volatile boolean abortRequested;
+
+		private RecordingProgressListener(boolean abortOnFirstProjection) {
+			this.abortOnFirstProjection = abortOnFirstProjection;
+		}
+
+		@Override
+		public void onProgressAchieved(ModelContext modelContext, ProgressInformation progressInformation) {
+			if (progressInformation.getActivityType() == RESOURCE_OBJECT_OPERATION) {
+				progress.add(progressInformation);
+				if (abortOnFirstProjection) {
+					abortRequested = true;
+				}
+			}
+		}
+
+		@Override
+		public boolean isAbortRequested() {
+			return abortRequested;
+		}
+
+		private List<ProgressInformation.StateType> getResourceStates(String resourceOid) {
+			List<ProgressInformation.StateType> states = new ArrayList<>();
+			for (ProgressInformation information : progress) {
+				if (information.getResourceShadowDiscriminator() != null
+						&& resourceOid.equals(information.getResourceShadowDiscriminator().getResourceOid())) {
+					states.add(information.getStateType());
+				}
+			}
+			return states;
+		}
+	}
+}
@@ -29,6 +29,7 @@ import com.evolveum.midpoint.prism.crypto.EncryptionException;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.builder.DeltaBuilder;
 import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.PrismAsserts;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.internals.InternalMonitor;
@@ -104,6 +105,10 @@ public class TestScriptingBasic extends AbstractInitializedModelIntegrationTest
 	private static final File GENERATE_PASSWORDS_3_FILE = new File(TEST_DIR, "generate-passwords-3.xml");
 	private static final File ECHO_FILE = new File(TEST_DIR, "echo.xml");
 	private static final File USE_VARIABLES_FILE = new File(TEST_DIR, "use-variables.xml");
+	private static final File MODIFY_STREAMED_USERS_FILE = new File(TEST_DIR, "modify-streamed-users.xml");
+	private static final File MODIFY_STREAMED_USERS_NO_OUTPUT_FILE = new File(TEST_DIR, "modify-streamed-users-no-output.xml");
+	private static final String STREAMED_USERS_COST_CENTER = "streaming";
+	private static final int STREAMED_USERS = 250;          // more than two streaming batches (100 items each)
 	private static final QName USER_NAME_TASK_EXTENSION_PROPERTY = new QName("http://midpoint.evolveum.com/xml/ns/samples/piracy", "userName");
 	private static final QName USER_DESCRIPTION_TASK_EXTENSION_PROPERTY = new QName("http://midpoint.evolveum.com/xml/ns/samples/piracy", "userDescription");
 	private static final QName STUDY_GROUP_TASK_EXTENSION_PROPERTY = new QName("http://midpoint.evolveum.com/xml/ns/samples/piracy", "studyGroup");
@@ -1076,6 +1081,73 @@ public class TestScriptingBasic extends AbstractInitializedModelIntegrationTest
 		taskManager.suspendTasks(singleton(TASK_TRIGGER_SCANNER_OID), 10000L, result);
 	}
 
+	/**
+	 * The search is followed by an item-by-item action, so found users are passed to the action in batches as they are
+	 * found. All of them must be processed and (as the output is aggregated by default) returned.
+	 */
+	@Test
+	public void test600ModifyStreamedUsers() throws Exception {
+		final String TEST_NAME = "test600ModifyStreamedUsers";
+		TestUtil.displayTestTitle(this, TEST_NAME);
+
+		// GIVEN
+		Task task = createTask(DOT_CLASS + TEST_NAME);
+		OperationResult result = task.getResult();
+		for (int i = 0; i < STREAMED_USERS; i++) {
+			PrismObject<UserType> user = createUser(String.format("streamed-%03d", i), "Streamed User " + i);
+			user.asObjectable().setCostCenter(STREAMED_USERS_COST_CENTER);
+			repoAddObject(user, result);
+		}
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(MODIFY_STREAMED_USERS_FILE);
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), task, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertOutputData(output, STREAMED_USERS, OperationResultStatus.SUCCESS);
+		Set<String> outputOids = output.getFinalOutput().getData().stream()
+				.map(item -> ((PrismObjectValue<?>) item.getValue()).getOid())
+				.collect(Collectors.toSet());
+		assertEquals("Some users were processed more than once", STREAMED_USERS, outputOids.size());
+		assertStreamedUsersLocality("Streamed", result);
+	}
+
+	/**
+	 * The same as test600 but with aggregateOutput=false: users are processed but not returned.
+	 */
+	@Test
+	public void test610ModifyStreamedUsersWithoutOutput() throws Exception {
+		final String TEST_NAME = "test610ModifyStreamedUsersWithoutOutput";
+		TestUtil.displayTestTitle(this, TEST_NAME);
+
+		// GIVEN
+		Task task = createTask(DOT_CLASS + TEST_NAME);
+		OperationResult result = task.getResult();
+		PrismProperty<ScriptingExpressionType> expression = parseAnyData(MODIFY_STREAMED_USERS_NO_OUTPUT_FILE);
+
+		// WHEN
+		ExecutionContext output = scriptingExpressionEvaluator.evaluateExpression(expression.getAnyValue().getValue(), task, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+		assertNoOutputData(output);
+		assertStreamedUsersLocality("Streamed without output", result);
+	}
+
+	private void assertStreamedUsersLocality(String expected, OperationResult result) throws SchemaException {
+		ObjectQuery query = queryFor(UserType.class)
+				.item(UserType.F_COST_CENTER).eq(STREAMED_USERS_COST_CENTER)
+				.build();
+		List<PrismObject<UserType>> users = repositoryService.searchObjects(UserType.class, query, null, result);
+		assertEquals("Wrong # of streamed users", STREAMED_USERS, users.size());
+		for (PrismObject<UserType> user : users) {
+			assertEquals("Wrong locality of " + user, expected, user.asObjectable().getLocality().getOrig());
+		}
+	}
+
 	private void assertNoOutputData(ExecutionContext output) {
         assertTrue("Script returned unexpected data", output.getFinalOutput() == null || output.getFinalOutput().getData().isEmpty());
     }
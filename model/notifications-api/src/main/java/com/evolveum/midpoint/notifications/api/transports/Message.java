@@ -21,13 +21,16 @@ import com.evolveum.midpoint.util.DebugUtil;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.NotificationMessageType;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * @author mederly
  */
-public class Message implements DebugDumpable {
+public class Message implements DebugDumpable, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private String from;
     @NotNull private List<String> to = new ArrayList<>();
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.notifications.impl;
+
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
+import com.evolveum.midpoint.notifications.api.NotificationManager;
+import com.evolveum.midpoint.notifications.api.events.Event;
+import com.evolveum.midpoint.notifications.api.transports.Message;
+import com.evolveum.midpoint.notifications.api.transports.Transport;
+import com.evolveum.midpoint.notifications.impl.api.transports.CustomTransport;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.statistics.StatisticsCollector;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.EnvironmentalPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NotificationsStatisticsEntryType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationStatsType;
+import org.apache.commons.configuration.Configuration;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends notification messages asynchronously, so that a slow transport (e.g. a mail server) does not slow down
+ * the thread that produced the event.
+ *
+ * Messages are rendered by notifiers in the caller's thread, as before. Then they are written to the outbox
+ * directory (one file per message) and put into a queue. Dispatcher threads take messages from the queue and send
+ * them via their transports. At most transportConcurrency messages are sent via any single transport at once.
+ * If a transport fails to send a message, the message is tried again later (after retryInterval, doubled on
+ * each further attempt but at most MAX_RETRY_DELAY), up to maxAttempts times. The message file is deleted when the message is sent or given up.
+ * Files left in the outbox directory (e.g. by a node that went down) are sent when the outbox starts.
+ *
+ * Configured in the midpoint.notifications section: outboxThreads (default 0, meaning that messages are sent
+ * synchronously by the caller), outboxTransportConcurrency, outboxMaxAttempts, outboxRetryInterval (in milliseconds)
+ * and outboxDirectory (default: notification-outbox in midpoint home).
+ *
+ * Messages are sent with a copy of the sender's authentication, under a task created for each dispatch: the sender's
+ * task and operation result are not thread-safe and the sender may be done with them by then. What the transport records
+ * on the dispatch task (notification statistics and state) is then added to the sender's task, as recording statistics
+ * is thread-safe. Only the message itself is kept in the queue, not the event that caused it. Custom transports, whose
+ * expressions get the event as a variable, are therefore always invoked synchronously. Messages read from the directory
+ * are sent without any authentication, and their statistics are not recorded anywhere.
+ */
+@Component
+public class NotificationOutbox {
+
+	private static final Trace LOGGER = TraceManager.getTrace(NotificationOutbox.class);
+
+	private static final String DOT_CLASS = NotificationOutbox.class.getName() + ".";
+	private static final String OPERATION_ENQUEUE = DOT_CLASS + "enqueue";
+	private static final String OPERATION_DISPATCH = DOT_CLASS + "dispatch";
+
+	static final String CONFIG_THREADS = "outboxThreads";
+	static final String CONFIG_TRANSPORT_CONCURRENCY = "outboxTransportConcurrency";
+	static final String CONFIG_MAX_ATTEMPTS = "outboxMaxAttempts";
+	static final String CONFIG_RETRY_INTERVAL = "outboxRetryInterval";
+	static final String CONFIG_DIRECTORY = "outboxDirectory";
+
+	private static final int DEFAULT_TRANSPORT_CONCURRENCY = 2;
+	private static final int DEFAULT_MAX_ATTEMPTS = 5;
+	private static final long DEFAULT_RETRY_INTERVAL = 60000L;
+	private static final String DEFAULT_DIRECTORY = "notification-outbox";
+
+	private static final int MAX_RETRY_SHIFT = 10;
+	private static final long MAX_RETRY_DELAY = 3600000L;
+	private static final long BUSY_TRANSPORT_DELAY = 100L;
+	private static final long SHUTDOWN_TIMEOUT = 30000L;
+	private static final String FILE_SUFFIX = ".msg";
+
+	@Autowired private NotificationManager notificationManager;
+	@Autowired private TaskManager taskManager;
+	@Autowired(required = false) private MidpointConfiguration midpointConfiguration;
+
+	private final DelayQueue<Entry> queue = new DelayQueue<>();
+	private final Map<String, Semaphore> transportPermits = new ConcurrentHashMap<>();
+
+	private int transportConcurrency;
+	private int maxAttempts;
+	private long retryInterval;
+	private File directory;
+	private List<Thread> dispatchers = new ArrayList<>();
+	private volatile boolean enabled;
+	private volatile boolean stopRequested;
+
+	public NotificationOutbox() {
+	}
+
+	NotificationOutbox(NotificationManager notificationManager, TaskManager taskManager) {
+		this.notificationManager = notificationManager;
+		this.taskManager = taskManager;
+	}
+
+	@PostConstruct
+	public void initialize() {
+		if (midpointConfiguration == null) {
+			return;
+		}
+		Configuration config = midpointConfiguration.getConfiguration(MidpointConfiguration.NOTIFICATIONS_CONFIGURATION_SECTION);
+		if (config == null) {
+			return;
+		}
+		int threads = config.getInt(CONFIG_THREADS, 0);
+		if (threads > 0) {
+			String directoryName = config.getString(CONFIG_DIRECTORY, null);
+			File directory = directoryName != null
+					? new File(directoryName)
+					: new File(midpointConfiguration.getMidpointHome(), DEFAULT_DIRECTORY);
+			start(threads, config.getInt(CONFIG_TRANSPORT_CONCURRENCY, DEFAULT_TRANSPORT_CONCURRENCY),
+					config.getInt(CONFIG_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS),
+					config.getLong(CONFIG_RETRY_INTERVAL, DEFAULT_RETRY_INTERVAL), directory);
+		}
+	}
+
+	public synchronized void start(int threads, int transportConcurrency, int maxAttempts, long retryInterval,
+			@NotNull File directory) {
+		shutdown();
+		this.transportConcurrency = transportConcurrency;
+		this.maxAttempts = maxAttempts;
+		this.retryInterval = retryInterval;
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			LOGGER.warn("Couldn't create notification outbox directory {}; messages will be sent synchronously", directory);
+			return;
+		}
+		transportPermits.clear();
+		stopRequested = false;
+		queue.clear();
+		replayDirectory();
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(this::dispatch, "NotificationDispatcher-" + (i+1));
+			thread.setDaemon(true);
+			thread.start();
+			dispatchers.add(thread);
+		}
+		enabled = true;
+		LOGGER.info("Notification outbox started (threads: {}, per-transport concurrency: {}, max attempts: {}, directory: {})",
+				threads, transportConcurrency, maxAttempts, directory);
+	}
+
+	/**
+	 * Stops the dispatchers. Messages not sent yet stay in the outbox directory, to be sent after the next start.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (dispatchers.isEmpty()) {
+			return;
+		}
+		enabled = false;
+		stopRequested = true;
+		for (Thread thread : dispatchers) {
+			thread.interrupt();
+		}
+		for (Thread thread : dispatchers) {
+			try {
+				thread.join(SHUTDOWN_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		dispatchers = new ArrayList<>();
+		if (!queue.isEmpty()) {
+			LOGGER.info("Notification outbox stopped; {} message(s) left in {}", queue.size(), directory);
+			queue.clear();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sends the message via given transport: either asynchronously (if the outbox is enabled) or right now.
+	 */
+	public void send(Transport transport, Message message, String transportName, Event event, Task task,
+			OperationResult parentResult) {
+		if (!isEnabled() || transport instanceof CustomTransport) {
+			transport.send(message, transportName, event, task, parentResult);
+			return;
+		}
+		OperationResult result = parentResult.createMinorSubresult(OPERATION_ENQUEUE);
+		result.addParam("transportName", transportName);
+		SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+		securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+		Entry entry = new Entry(new StoredMessage(message, transportName), securityContext, task, null);
+		store(entry);
+		queue.add(entry);
+		LOGGER.trace("Message for transport {} put into the outbox ({} message(s) waiting)", transportName, queue.size());
+		result.recordSuccess();
+	}
+
+	private void dispatch() {
+		while (!stopRequested) {
+			Entry entry;
+			try {
+				entry = queue.take();
+			} catch (InterruptedException e) {
+				LOGGER.trace("Notification dispatcher interrupted");
+				continue;
+			}
+			String transportName = entry.message.transportName;
+			Semaphore permits = transportPermits.computeIfAbsent(getTransportKey(transportName),
+					k -> new Semaphore(transportConcurrency));
+			if (!permits.tryAcquire()) {
+				queue.add(entry.postpone(BUSY_TRANSPORT_DELAY));
+				continue;
+			}
+			try {
+				dispatch(entry);
+			} catch (Throwable t) {
+				LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception while sending notification via {}", t, transportName);
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	private void dispatch(Entry entry) {
+		StoredMessage stored = entry.message;
+		Task task = taskManager.createTaskInstance(OPERATION_DISPATCH);
+		OperationResult result = new OperationResult(OPERATION_DISPATCH);
+		boolean sent;
+		if (entry.securityContext != null) {
+			SecurityContextHolder.setContext(entry.securityContext);
+		}
+		try {
+			Transport transport = notificationManager.getTransport(stored.transportName);
+			transport.send(stored.message, stored.transportName, null, task, result);
+			result.computeStatusIfUnknown();
+			sent = !isFailed(result);
+		} catch (RuntimeException e) {
+			LoggingUtils.logException(LOGGER, "Couldn't send notification via {}", e, stored.transportName);
+			sent = false;
+		} finally {
+			SecurityContextHolder.clearContext();
+		}
+		if (entry.statistics != null) {
+			recordStatistics(task, entry.statistics);
+		}
+		int attempts = entry.attempts + 1;
+		if (sent) {
+			LOGGER.trace("Message for transport {} sent from the outbox (attempt {})", stored.transportName, attempts);
+			delete(entry);
+		} else if (attempts >= maxAttempts || stopRequested) {
+			if (stopRequested) {
+				LOGGER.debug("Message for transport {} not sent; it stays in the outbox", stored.transportName);
+			} else {
+				LOGGER.error("Couldn't send notification message to {} via {} in {} attempt(s); giving up",
+						stored.message.getTo(), stored.transportName, attempts);
+				delete(entry);
+			}
+		} else {
+			long delay = getRetryDelay(attempts);
+			LOGGER.warn("Couldn't send notification message to {} via {} (attempt {} of {}); trying again in {} ms",
+					stored.message.getTo(), stored.transportName, attempts, maxAttempts, delay);
+			queue.add(entry.retry(delay));
+		}
+	}
+
+	/**
+	 * Adds notification statistics and the last state recorded by the transport on the dispatch task to the sender's
+	 * task. A transport records one notification operation per message, so the durations are kept exact in that case.
+	 */
+	private void recordStatistics(Task dispatchTask, StatisticsCollector sender) {
+		OperationStatsType stats = dispatchTask.getAggregatedLiveOperationStats();
+		EnvironmentalPerformanceInformationType info = stats != null ? stats.getEnvironmentalPerformanceInformation() : null;
+		if (info == null) {
+			return;
+		}
+		if (info.getNotificationsStatistics() != null) {
+			for (NotificationsStatisticsEntryType entry : info.getNotificationsStatistics().getEntry()) {
+				int count = entry.getCountSuccess() + entry.getCountFailure();
+				long duration = count > 0 ? entry.getTotalTime() / count : 0;
+				for (int i = 0; i < entry.getCountSuccess(); i++) {
+					sender.recordNotificationOperation(entry.getTransport(), true, duration);
+				}
+				for (int i = 0; i < entry.getCountFailure(); i++) {
+					sender.recordNotificationOperation(entry.getTransport(), false, duration);
+				}
+			}
+		}
+		if (info.getLastMessage() != null) {
+			sender.recordState(info.getLastMessage());
+		}
+	}
+
+	private long getRetryDelay(int attempts) {
+		long delay = retryInterval << Math.min(attempts - 1, MAX_RETRY_SHIFT);
+		return Math.max(retryInterval, Math.min(delay, MAX_RETRY_DELAY));
+	}
+
+	/**
+	 * Transports do not throw exceptions; they record failures in the operation result. A transport that tried to
+	 * send the message and did not succeed (e.g. the mail transport with all mail servers failing) records a fatal error
+	 * in a subresult. Other warnings (e.g. no mail servers configured) do not make sense to be retried.
+	 */
+	private boolean isFailed(OperationResult result) {
+		if (result.isSuccess()) {
+			return false;
+		} else if (result.isError()) {
+			return true;
+		} else {
+			return result.getSubresults().stream().anyMatch(OperationResult::isError);
+		}
+	}
+
+	// accepts name:subname, like NotificationManager.getTransport
+	private String getTransportKey(String transportName) {
+		return transportName.split(":")[0];
+	}
+
+	//region Outbox directory
+	private void store(Entry entry) {
+		File file = new File(directory, entry.id + FILE_SUFFIX);
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeObject(entry.message);
+		} catch (IOException e) {
+			LoggingUtils.logUnexpectedException(LOGGER, "Couldn't write notification message to {}; it will be kept in memory only",
+					e, file);
+		}
+	}
+
+	private void delete(Entry entry) {
+		File file = new File(directory, entry.id + FILE_SUFFIX);
+		if (file.exists() && !file.delete()) {
+			LOGGER.warn("Couldn't delete notification outbox file {}; the message might be sent again", file);
+		}
+	}
+
+	private void replayDirectory() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+		if (files == null || files.length == 0) {
+			return;
+		}
+		int count = 0;
+		for (File file : files) {
+			try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				String id = file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length());
+				queue.add(new Entry((StoredMessage) in.readObject(), null, null, id));
+				count++;
+			} catch (IOException | ClassNotFoundException | RuntimeException e) {
+				LoggingUtils.logUnexpectedException(LOGGER, "Couldn't read notification outbox file {}; ignoring it", e, file);
+			}
+		}
+		LOGGER.info("{} notification message(s) left in outbox directory {} will be sent", count, directory);
+	}
+	//endregion
+
+	/**
+	 * The part of an outbox entry that is stored in the directory.
+	 */
+	private static class StoredMessage implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Message message;
+		private final String transportName;
+
+		private StoredMessage(Message message, String transportName) {
+			this.message = message;
+			this.transportName = transportName;
+		}
+	}
+
+	private static class Entry implements Delayed {
+
+		private final String id;
+		private final StoredMessage message;
+		// a copy of the sender's security context; not available for messages read from the directory
+		private final SecurityContext securityContext;
+		// the sender's task, used only to record statistics; not available for messages read from the directory
+		private final StatisticsCollector statistics;
+		private final int attempts;
+		private final long dueTime;
+
+		private Entry(StoredMessage message, SecurityContext securityContext, StatisticsCollector statistics, String id) {
+			this(id != null ? id : UUID.randomUUID().toString(), message, securityContext, statistics, 0,
+					System.currentTimeMillis());
+		}
+
+		private Entry(String id, StoredMessage message, SecurityContext securityContext, StatisticsCollector statistics,
+				int attempts, long dueTime) {
+			this.id = id;
+			this.message = message;
+			this.securityContext = securityContext;
+			this.statistics = statistics;
+			this.attempts = attempts;
+			this.dueTime = dueTime;
+		}
+
+		private Entry postpone(long delay) {
+			return new Entry(id, message, securityContext, statistics, attempts, System.currentTimeMillis() + delay);
+		}
+
+		private Entry retry(long delay) {
+			return new Entry(id, message, securityContext, statistics, attempts + 1, System.currentTimeMillis() + delay);
+		}
+
+		@Override
+		public long getDelay(@NotNull TimeUnit unit) {
+			return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(@NotNull Delayed other) {
+			return Long.compare(dueTime, ((Entry) other).dueTime);
+		}
+	}
+}
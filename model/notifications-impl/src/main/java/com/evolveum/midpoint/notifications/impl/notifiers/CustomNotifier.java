@@ -27,6 +27,7 @@ import com.evolveum.midpoint.notifications.api.events.ModelEvent;
 import com.evolveum.midpoint.notifications.api.transports.Message;
 import com.evolveum.midpoint.notifications.api.transports.Transport;
 import com.evolveum.midpoint.notifications.impl.NotificationFunctionsImpl;
+import com.evolveum.midpoint.notifications.impl.NotificationOutbox;
 import com.evolveum.midpoint.notifications.impl.api.transports.CustomTransport;
 import com.evolveum.midpoint.notifications.impl.formatters.TextFormatter;
 import com.evolveum.midpoint.notifications.impl.handlers.AggregatedEventHandler;
@@ -80,6 +81,9 @@ public class CustomNotifier extends BaseHandler {
     @Autowired
     protected TextFormatter textFormatter;
 
+    @Autowired
+    protected NotificationOutbox notificationOutbox;
+
     @Autowired
     protected AggregatedEventHandler aggregatedEventHandler;
 
@@ -122,7 +126,7 @@ public class CustomNotifier extends BaseHandler {
 					Message message = getMessageFromExpression(config, variables, task, result);
 					if (message != null) {
 						getLogger().trace("Sending notification via transport {}:\n{}", transportName, message);
-						transport.send(message, transportName, event, task, result);
+						notificationOutbox.send(transport, message, transportName, event, task, result);
 					} else {
 						getLogger().debug("No message for transport {}, won't send anything", transportName);
 					}
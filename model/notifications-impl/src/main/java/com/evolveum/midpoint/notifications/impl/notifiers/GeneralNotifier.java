@@ -25,6 +25,7 @@ import com.evolveum.midpoint.notifications.api.events.SimpleObjectRef;
 import com.evolveum.midpoint.notifications.api.transports.Message;
 import com.evolveum.midpoint.notifications.api.transports.Transport;
 import com.evolveum.midpoint.notifications.impl.NotificationFunctionsImpl;
+import com.evolveum.midpoint.notifications.impl.NotificationOutbox;
 import com.evolveum.midpoint.notifications.impl.formatters.TextFormatter;
 import com.evolveum.midpoint.notifications.impl.handlers.AggregatedEventHandler;
 import com.evolveum.midpoint.notifications.impl.handlers.BaseHandler;
@@ -71,6 +72,9 @@ public class GeneralNotifier extends BaseHandler {
     @Autowired
     protected TextFormatter textFormatter;
 
+    @Autowired
+    protected NotificationOutbox notificationOutbox;
+
     @Autowired
     protected AggregatedEventHandler aggregatedEventHandler;
 
@@ -152,7 +156,7 @@ public class GeneralNotifier extends BaseHandler {
 								message.setBcc(getCcBccAddresses(generalNotifierType.getBccExpression(), variables, "notification bcc-expression", task, result));
 
                                 getLogger().trace("Sending notification via transport {}:\n{}", transportName, message);
-                                transport.send(message, transportName, event, task, result);
+                                notificationOutbox.send(transport, message, transportName, event, task, result);
                             } else {
                                 getLogger().info("No recipients addresses for transport " + transportName + ", message corresponding to event " + event.getId() + " will not be send.");
                             }
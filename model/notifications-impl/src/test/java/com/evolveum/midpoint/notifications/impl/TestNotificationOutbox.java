@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.notifications.impl;
+
+import com.evolveum.midpoint.notifications.api.NotificationManager;
+import com.evolveum.midpoint.notifications.api.events.Event;
+import com.evolveum.midpoint.notifications.api.transports.Message;
+import com.evolveum.midpoint.notifications.api.transports.Transport;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.EnvironmentalPerformanceInformationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NotificationsStatisticsEntryType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.NotificationsStatisticsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationStatsType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class TestNotificationOutbox {
+
+	private static final File OUTBOX_DIR = new File("target/notification-outbox-test");
+	private static final String TRANSPORT_NAME = "test";
+	private static final long WAIT_TIMEOUT = 10000L;
+
+	private TestTransport transport;
+	private NotificationOutbox outbox;
+	private OperationStatsType dispatchStats;
+
+	@BeforeMethod
+	public void setUp() {
+		for (File file : listOutbox()) {
+			assertTrue("Couldn't delete " + file, file.delete());
+		}
+		transport = new TestTransport();
+		dispatchStats = null;
+		NotificationManager notificationManager = mock(NotificationManager.class);
+		when(notificationManager.getTransport(TRANSPORT_NAME)).thenReturn(transport);
+		TaskManager taskManager = mock(TaskManager.class);
+		when(taskManager.createTaskInstance(anyString())).thenAnswer(invocation -> {
+			Task task = mock(Task.class);
+			when(task.getResult()).thenReturn(new OperationResult("test"));
+			when(task.getAggregatedLiveOperationStats()).thenAnswer(i -> dispatchStats);
+			return task;
+		});
+		outbox = new NotificationOutbox(notificationManager, taskManager);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		outbox.shutdown();
+	}
+
+	@Test
+	public void test100SendAsynchronously() throws Exception {
+		outbox.start(2, 1, 3, 50L, OUTBOX_DIR);
+
+		// WHEN
+		for (int i = 0; i < 5; i++) {
+			send("message " + i);
+		}
+
+		// THEN
+		waitForSent(5);
+		assertEquals("Wrong maximal concurrency of the transport", 1, transport.maxConcurrent.get());
+		assertOutboxEmpty();
+	}
+
+	/**
+	 * Messages must not be sent under the sender's task, as it is not thread-safe and the sender may be done with it.
+	 * But the statistics recorded by the transport must get to the sender's task.
+	 */
+	@Test
+	public void test150SendUnderDedicatedTask() throws Exception {
+		outbox.start(1, 1, 3, 50L, OUTBOX_DIR);
+		Task task = mock(Task.class);
+		dispatchStats = createNotificationStats("message sent", 1, 0, 30L);
+
+		// WHEN
+		send("message with task", task);
+
+		// THEN
+		waitForSent(1);
+		assertEquals("Wrong # of tasks used", 1, transport.tasks.size());
+		assertNotSame("Sender's task used to send the message", task, transport.tasks.get(0));
+		verify(task).recordNotificationOperation(TRANSPORT_NAME, true, 30L);
+		verify(task).recordState("message sent");
+	}
+
+	@Test
+	public void test200RetryFailedMessage() throws Exception {
+		outbox.start(1, 1, 3, 50L, OUTBOX_DIR);
+		transport.failuresToSimulate.set(2);
+
+		// WHEN
+		send("retried message");
+
+		// THEN
+		waitForSent(1);
+		assertEquals("Wrong # of attempts", 3, transport.attempts.get());
+		assertOutboxEmpty();
+	}
+
+	@Test
+	public void test300SendMessagesLeftInOutbox() throws Exception {
+		outbox.start(1, 1, 10, 60000L, OUTBOX_DIR);
+		transport.failuresToSimulate.set(1);
+		send("message left in outbox");
+		waitForAttempts(1);
+		outbox.shutdown();
+		assertEquals("Wrong # of files in outbox", 1, listOutbox().length);
+
+		// WHEN
+		outbox.start(1, 1, 10, 60000L, OUTBOX_DIR);
+
+		// THEN
+		waitForSent(1);
+		assertEquals("Wrong message sent", "message left in outbox", transport.sent.get(0).getBody());
+		assertOutboxEmpty();
+	}
+
+	private void send(String body) {
+		send(body, null);
+	}
+
+	private void send(String body, Task task) {
+		Message message = new Message();
+		message.setTo(Collections.singletonList("jack@example.com"));
+		message.setBody(body);
+		outbox.send(transport, message, TRANSPORT_NAME, null, task, new OperationResult("send"));
+	}
+
+	private OperationStatsType createNotificationStats(String lastMessage, int countSuccess, int countFailure, long totalTime) {
+		NotificationsStatisticsEntryType entry = new NotificationsStatisticsEntryType();
+		entry.setTransport(TRANSPORT_NAME);
+		entry.setCountSuccess(countSuccess);
+		entry.setCountFailure(countFailure);
+		entry.setTotalTime(totalTime);
+		NotificationsStatisticsType notifications = new NotificationsStatisticsType();
+		notifications.getEntry().add(entry);
+		EnvironmentalPerformanceInformationType info = new EnvironmentalPerformanceInformationType();
+		info.setNotificationsStatistics(notifications);
+		info.setLastMessage(lastMessage);
+		OperationStatsType stats = new OperationStatsType();
+		stats.setEnvironmentalPerformanceInformation(info);
+		return stats;
+	}
+
+	private void waitForSent(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+		while (transport.sent.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals("Wrong # of messages sent", count, transport.sent.size());
+		outbox.shutdown();          // lets the dispatchers finish their work with the outbox directory
+	}
+
+	private void waitForAttempts(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+		while (transport.attempts.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals("Wrong # of attempts", count, transport.attempts.get());
+	}
+
+	private void assertOutboxEmpty() {
+		assertTrue("Outbox is not empty", listOutbox().length == 0);
+	}
+
+	private File[] listOutbox() {
+		File[] files = OUTBOX_DIR.listFiles();
+		return files != null ? files : new File[0];
+	}
+
+	private static class TestTransport implements Transport {
+
+		private final List<Message> sent = new CopyOnWriteArrayList<>();
+		private final List<Task> tasks = new CopyOnWriteArrayList<>();
+		private final AtomicInteger attempts = new AtomicInteger();
+		private final AtomicInteger failuresToSimulate = new AtomicInteger();
+		private final AtomicInteger concurrent = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+		@Override
+		public void send(Message message, String transportName, Event event, Task task, OperationResult parentResult) {
+			OperationResult result = parentResult.createSubresult(TestTransport.class.getName() + ".send");
+			attempts.incrementAndGet();
+			tasks.add(task);
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(10);
+				if (failuresToSimulate.getAndDecrement() > 0) {
+					result.recordFatalError("Simulated failure");
+				} else {
+					sent.add(message);
+					result.recordSuccess();
+				}
+			} catch (InterruptedException e) {
+				result.recordFatalError("Interrupted");
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		}
+
+		@Override
+		public String getDefaultRecipientAddress(UserType recipient) {
+			return recipient.getEmailAddress();
+		}
+
+		@Override
+		public String getName() {
+			return TRANSPORT_NAME;
+		}
+	}
+}
@@ -40,6 +40,14 @@ public class MidPointDataSource implements JRDataSource{
 		}
 	}
 
+	/**
+	 * Creates a data source that goes through the values only once, as they are provided by the iterator
+	 * (e.g. by {@link StreamingObjectIterator}).
+	 */
+	public MidPointDataSource(Iterator<PrismContainerValue<? extends Containerable>> iterator) {
+		this.iterator = iterator;
+	}
+
 
 	@Override
 	public boolean next() throws JRException {
@@ -51,6 +51,7 @@ public class MidPointLocalQueryExecutor extends MidPointQueryExecutor {
 	private String script;
 	private Class type;
 	private ReportService reportService;
+	private StreamingObjectIterator streamingIterator;
 
 
 	public MidPointLocalQueryExecutor(JasperReportsContext jasperReportsContext, JRDataset dataset,
@@ -107,6 +108,26 @@ public class MidPointLocalQueryExecutor extends MidPointQueryExecutor {
 		return pcvList;
 	}
 
+	@Override
+	protected JRDataSource createStreamingDataSource(Object query, Collection<SelectorOptions<GetOperationOptions>> options) {
+		closeStreamingIterator();
+		streamingIterator = new StreamingObjectIterator(reportService, (ObjectQuery) query, options);
+		streamingIterator.start();
+		return new MidPointDataSource(streamingIterator);
+	}
+
+	@Override
+	public void close() {
+		closeStreamingIterator();
+	}
+
+	private void closeStreamingIterator() {
+		if (streamingIterator != null) {
+			streamingIterator.close();
+			streamingIterator = null;
+		}
+	}
+
 	@Override
 	protected JRDataSource createDataSourceFromContainerValues(Collection<PrismContainerValue<? extends Containerable>> results) {
 		return new MidPointDataSource(results);
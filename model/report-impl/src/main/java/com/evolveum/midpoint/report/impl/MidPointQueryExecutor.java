@@ -15,9 +15,10 @@
  */
 package com.evolveum.midpoint.report.impl;
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
@@ -136,6 +137,14 @@ public abstract class MidPointQueryExecutor extends JRAbstractQueryExecuter {
 
 	protected abstract JRDataSource createDataSourceFromContainerValues(Collection<PrismContainerValue<? extends Containerable>> results);
 
+	/**
+	 * Creates a data source that fetches objects lazily, as the report is being filled. Returns null if this
+	 * is not supported; objects are then searched for all at once and passed to createDataSourceFromObjects.
+	 */
+	protected JRDataSource createStreamingDataSource(Object query, Collection<SelectorOptions<GetOperationOptions>> options) {
+		return null;
+	}
+
 	@Override
 	protected void parseQuery() {
 		try {
@@ -167,18 +176,40 @@ public abstract class MidPointQueryExecutor extends JRAbstractQueryExecuter {
 			}
 
 			if (query != null) {
+				Collection<SelectorOptions<GetOperationOptions>> options = SelectorOptions.createCollection(GetOperationOptions.createRaw());
+				JRDataSource streamingDataSource = createStreamingDataSource(query, options);
+				if (streamingDataSource != null) {
+					return streamingDataSource;
+				}
 				Collection<PrismObject<? extends ObjectType>> results;
-				results = searchObjects(query, SelectorOptions.createCollection(GetOperationOptions.createRaw()));
+				results = searchObjects(query, options);
 				return createDataSourceFromObjects(results);
 			} else {
 				if (script.contains("AuditEventRecord")){
 					Collection<AuditEventRecord> audtiEventRecords = searchAuditRecords(script, getPromptingParameters());
-					Collection<AuditEventRecordType> auditEventRecordsType = new ArrayList<>();
-					for (AuditEventRecord aer : audtiEventRecords){
-						AuditEventRecordType aerType = aer.createAuditEventRecordType(true);
-						auditEventRecordsType.add(aerType);
-					}
-					return new JRBeanCollectionDataSource(auditEventRecordsType);
+					// records are converted one by one as the report is filled, so we don't keep two copies of them
+					return new JRBeanCollectionDataSource(new AbstractCollection<AuditEventRecordType>() {
+						@Override
+						public Iterator<AuditEventRecordType> iterator() {
+							Iterator<AuditEventRecord> records = audtiEventRecords.iterator();
+							return new Iterator<AuditEventRecordType>() {
+								@Override
+								public boolean hasNext() {
+									return records.hasNext();
+								}
+
+								@Override
+								public AuditEventRecordType next() {
+									return records.next().createAuditEventRecordType(true);
+								}
+							};
+						}
+
+						@Override
+						public int size() {
+							return audtiEventRecords.size();
+						}
+					});
 				} else {
 					Collection<PrismContainerValue<? extends Containerable>> results;
 					results = evaluateScript(script, getParameters());
@@ -52,6 +52,7 @@ import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.TypeFilter;
 import com.evolveum.midpoint.report.api.ReportService;
 import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.ObjectResolver;
@@ -132,41 +133,49 @@ public class ReportServiceImpl implements ReportService {
 			Collection<SelectorOptions<GetOperationOptions>> options) throws SchemaException,
 			ObjectNotFoundException, SecurityViolationException, CommunicationException,
 			ConfigurationException, ExpressionEvaluationException {
-		// List<PrismObject<? extends ObjectType>> results = new ArrayList<>();
+		Class<? extends ObjectType> clazz = getObjectClass(query);
+		ObjectQuery queryForSearch = ObjectQuery.createObjectQuery(((TypeFilter) query.getFilter()).getFilter());
 
-		// GetOperationOptions options = GetOperationOptions.createRaw();
+		Task task = taskManager.createTaskInstance(ReportService.class.getName() + ".searchObjects()");
+		OperationResult parentResult = task.getResult();
+
+		List<PrismObject<? extends ObjectType>> results = (List) model.searchObjects(clazz, queryForSearch, createSearchOptions(), task, parentResult);
+		return results;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void searchObjectsIterative(ObjectQuery query, Collection<SelectorOptions<GetOperationOptions>> options,
+			ResultHandler<ObjectType> handler) throws SchemaException,
+			ObjectNotFoundException, SecurityViolationException, CommunicationException,
+			ConfigurationException, ExpressionEvaluationException {
+		Class<ObjectType> clazz = (Class<ObjectType>) getObjectClass(query);
+		ObjectQuery queryForSearch = ObjectQuery.createObjectQuery(((TypeFilter) query.getFilter()).getFilter());
 
+		Task task = taskManager.createTaskInstance(ReportService.class.getName() + ".searchObjectsIterative()");
+		OperationResult parentResult = task.getResult();
+
+		model.searchObjectsIterative(clazz, queryForSearch, handler, createSearchOptions(), task, parentResult);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Class<? extends ObjectType> getObjectClass(ObjectQuery query) {
 		if (!(query.getFilter() instanceof TypeFilter)) {
 			throw new IllegalArgumentException("Query must contain type filter.");
 		}
 
-		TypeFilter typeFilter = (TypeFilter) query.getFilter();
-		QName type = typeFilter.getType();
+		QName type = ((TypeFilter) query.getFilter()).getType();
 		Class clazz = prismContext.getSchemaRegistry().determineCompileTimeClass(type);
 		if (clazz == null) {
 			clazz = prismContext.getSchemaRegistry().findObjectDefinitionByType(type).getCompileTimeClass();
 		}
+		return clazz;
+	}
 
-		ObjectQuery queryForSearch = ObjectQuery.createObjectQuery(typeFilter.getFilter());
-
-		Task task = taskManager.createTaskInstance(ReportService.class.getName() + ".searchObjects()");
-		OperationResult parentResult = task.getResult();
-
-		// options.add(new
-		// SelectorOptions(GetOperationOptions.createResolveNames()));
+	private Collection<SelectorOptions<GetOperationOptions>> createSearchOptions() {
 		GetOperationOptions getOptions = GetOperationOptions.createResolveNames();
 		getOptions.setRaw(Boolean.TRUE);
-		options = SelectorOptions.createCollection(getOptions);
-		List<PrismObject<? extends ObjectType>> results;
-		try {
-			results = model.searchObjects(clazz, queryForSearch, options, task, parentResult);
-			return results;
-		} catch (SchemaException | ObjectNotFoundException | SecurityViolationException
-				| CommunicationException | ConfigurationException | ExpressionEvaluationException e) {
-			// TODO Auto-generated catch block
-			throw e;
-		}
-
+		return SelectorOptions.createCollection(getOptions);
 	}
 
 	public Collection<PrismContainerValue<? extends Containerable>> evaluateScript(String script,
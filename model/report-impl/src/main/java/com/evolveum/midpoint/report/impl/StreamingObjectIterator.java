@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.report.impl;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.report.api.ReportService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+/**
+ * Provides objects found by a report query as the report is being filled, without keeping all of them in memory.
+ *
+ * The search (searchObjectsIterative) runs in a separate producer thread that puts found objects into a bounded queue.
+ * The thread filling the report takes them from the queue as Jasper asks for further rows. So at most
+ * {@link #QUEUE_CAPACITY} objects wait in memory at any time, regardless of how many objects the query matches.
+ * The security context of the caller is propagated to the producer thread, so the search is authorized as before.
+ *
+ * If the search fails, the exception is rethrown (as SystemException) in the consuming thread after all objects
+ * found so far have been consumed. If the consumer stops early, it should call {@link #close()} so that the search
+ * is stopped as well.
+ */
+public class StreamingObjectIterator implements Iterator<PrismContainerValue<? extends Containerable>>, AutoCloseable {
+
+	private static final Trace LOGGER = TraceManager.getTrace(StreamingObjectIterator.class);
+
+	static final int QUEUE_CAPACITY = 100;
+	private static final long OFFER_TIMEOUT = 1000L;
+
+	private static final Object END = new Object();
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private final ReportService reportService;
+	private final ObjectQuery query;
+	private final Collection<SelectorOptions<GetOperationOptions>> options;
+
+	private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private volatile boolean closed;
+	private volatile Throwable failure;
+
+	private Thread producer;
+	private PrismContainerValue<? extends Containerable> nextValue;
+	private boolean finished;
+
+	public StreamingObjectIterator(ReportService reportService, ObjectQuery query,
+			Collection<SelectorOptions<GetOperationOptions>> options) {
+		this.reportService = reportService;
+		this.query = query;
+		this.options = options;
+	}
+
+	public synchronized void start() {
+		if (producer != null) {
+			return;
+		}
+		SecurityContext securityContext = SecurityContextHolder.getContext();
+		producer = new Thread(() -> {
+			SecurityContextHolder.setContext(securityContext);
+			try {
+				reportService.searchObjectsIterative(query, options, (object, parentResult) ->
+						offer(object.asObjectable().asPrismContainerValue()));
+			} catch (Throwable t) {
+				LOGGER.debug("Search for report objects failed: {}", t.getMessage(), t);
+				failure = t;
+			} finally {
+				offer(END);
+				SecurityContextHolder.clearContext();
+			}
+		}, "ReportObjectProducer-" + THREAD_COUNTER.incrementAndGet());
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Waits until there is space in the queue. Returns false if the consumer is gone, so the search should stop.
+	 */
+	private boolean offer(Object item) {
+		try {
+			while (!closed) {
+				if (queue.offer(item, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			LOGGER.trace("Interrupted while passing report objects to the consumer", e);
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean hasNext() {
+		if (nextValue != null) {
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+		start();
+		Object item;
+		try {
+			item = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new SystemException("Interrupted while waiting for report objects", e);
+		}
+		if (item == END) {
+			finished = true;
+			if (failure != null) {
+				throw new SystemException("Couldn't search for report objects: " + failure.getMessage(), failure);
+			}
+			return false;
+		}
+		nextValue = (PrismContainerValue<? extends Containerable>) item;
+		return true;
+	}
+
+	@Override
+	public PrismContainerValue<? extends Containerable> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PrismContainerValue<? extends Containerable> value = nextValue;
+		nextValue = null;
+		return value;
+	}
+
+	/**
+	 * Stops the search (at the next object found) and discards objects not consumed yet.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		finished = true;
+		nextValue = null;
+		queue.clear();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.report.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.prism.Containerable;
+import com.evolveum.midpoint.prism.PrismContainerValue;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.report.api.ReportService;
+import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.ResultHandler;
+import com.evolveum.midpoint.schema.SelectorOptions;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+
+/**
+ * Tests passing of objects found by the (mocked) report service from the producer thread to the consumer.
+ */
+public class TestStreamingObjectIterator {
+
+	private ReportService reportService;
+	private List<PrismContainerValue<? extends Containerable>> values;
+
+	private final AtomicInteger produced = new AtomicInteger();
+	private final CountDownLatch searchFinished = new CountDownLatch(1);
+	private volatile boolean stoppedByConsumer;
+	private volatile Authentication producerAuthentication;
+
+	@BeforeMethod
+	public void setUp() {
+		reportService = mock(ReportService.class);
+		values = new ArrayList<>();
+		produced.set(0);
+		stoppedByConsumer = false;
+		producerAuthentication = null;
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	/**
+	 * All objects are provided in the order they were found, even if there are more of them than the queue holds.
+	 * The search runs under the caller's security context.
+	 */
+	@Test
+	public void test100ConsumeAll() throws Exception {
+		int count = StreamingObjectIterator.QUEUE_CAPACITY * 2 + 50;
+		mockSearch(count, null);
+		Authentication authentication = mock(Authentication.class);
+		SecurityContextHolder.getContext().setAuthentication(authentication);
+
+		// WHEN
+		List<PrismContainerValue<? extends Containerable>> consumed = new ArrayList<>();
+		try (StreamingObjectIterator iterator = createIterator()) {
+			while (iterator.hasNext()) {
+				consumed.add(iterator.next());
+			}
+		}
+
+		// THEN
+		assertEquals("Wrong # of objects", count, consumed.size());
+		for (int i = 0; i < count; i++) {
+			assertSame("Wrong object #" + i, values.get(i), consumed.get(i));
+		}
+		assertTrue("Search has not finished", searchFinished.await(10, TimeUnit.SECONDS));
+		assertFalse("Search was stopped", stoppedByConsumer);
+		assertSame("Wrong security context in the producer", authentication, producerAuthentication);
+	}
+
+	/**
+	 * When the consumer closes the iterator, the search is stopped instead of producing all the objects.
+	 */
+	@Test
+	public void test110CloseEarly() throws Exception {
+		int count = StreamingObjectIterator.QUEUE_CAPACITY * 10;
+		mockSearch(count, null);
+
+		// WHEN
+		StreamingObjectIterator iterator = createIterator();
+		for (int i = 0; i < 5; i++) {
+			assertSame("Wrong object #" + i, values.get(i), iterator.next());
+		}
+		iterator.close();
+
+		// THEN
+		assertTrue("Search has not finished after close", searchFinished.await(10, TimeUnit.SECONDS));
+		assertTrue("Search was not stopped", stoppedByConsumer);
+		assertTrue("Too many objects produced: " + produced.get(), produced.get() < count);
+		assertFalse("Objects provided after close", iterator.hasNext());
+	}
+
+	/**
+	 * Objects found before the failure are provided; then the failure is rethrown in the consumer.
+	 */
+	@Test
+	public void test120SearchFailure() throws Exception {
+		SchemaException exception = new SchemaException("Simulated search failure");
+		mockSearch(3, exception);
+
+		// WHEN
+		List<PrismContainerValue<? extends Containerable>> consumed = new ArrayList<>();
+		try (StreamingObjectIterator iterator = createIterator()) {
+			while (iterator.hasNext()) {
+				consumed.add(iterator.next());
+			}
+			fail("Unexpected success");
+		} catch (SystemException e) {
+			// THEN
+			assertSame("Wrong cause", exception, e.getCause());
+		}
+		assertEquals("Wrong # of objects before the failure", 3, consumed.size());
+	}
+
+	private StreamingObjectIterator createIterator() {
+		return new StreamingObjectIterator(reportService, mock(ObjectQuery.class), null);
+	}
+
+	/**
+	 * The search produces given number of objects (unless the handler asks to stop) and then optionally fails.
+	 */
+	@SuppressWarnings("unchecked")
+	private void mockSearch(int count, Exception failure) throws Exception {
+		for (int i = 0; i < count; i++) {
+			values.add(mock(PrismContainerValue.class));
+		}
+		doAnswer(invocation -> {
+			producerAuthentication = SecurityContextHolder.getContext().getAuthentication();
+			ResultHandler<ObjectType> handler = (ResultHandler<ObjectType>) invocation.getArguments()[2];
+			try {
+				for (PrismContainerValue<? extends Containerable> value : values) {
+					produced.incrementAndGet();
+					if (!handler.handle(createObject(value), null)) {
+						stoppedByConsumer = true;
+						return null;
+					}
+				}
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			} finally {
+				searchFinished.countDown();
+			}
+		}).when(reportService).searchObjectsIterative(any(ObjectQuery.class), any(Collection.class),
+				any(ResultHandler.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private PrismObject<ObjectType> createObject(PrismContainerValue<? extends Containerable> value) {
+		ObjectType objectType = mock(ObjectType.class);
+		when(objectType.asPrismContainerValue()).thenReturn(value);
+		PrismObject<ObjectType> object = mock(PrismObject.class);
+		when(object.asObjectable()).thenReturn(objectType);
+		return object;
+	}
+}
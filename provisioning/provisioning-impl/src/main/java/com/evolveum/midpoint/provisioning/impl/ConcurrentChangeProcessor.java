@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import com.evolveum.midpoint.prism.crypto.EncryptionException;
+import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.provisioning.ucf.api.GenericFrameworkException;
+import com.evolveum.midpoint.schema.ResourceShadowDiscriminator;
+import com.evolveum.midpoint.schema.processor.ObjectClassComplexTypeDefinition;
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.task.api.LightweightTaskHandler;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.*;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes live sync changes in worker threads (lightweight subtasks of the live sync task).
+ *
+ * Changes are dispatched to workers according to the primary identifier of the resource object, so all changes
+ * of a given object are processed by the same worker, in the order in which they were fetched. Each worker
+ * has a bounded queue; if it is full, the coordinator waits.
+ *
+ * The token is committed (i.e. written to the task) only up to the last change that was completed together
+ * with all the changes fetched before it. So if the task is suspended or a change fails, no change is skipped
+ * in the next run, although some of them might be processed again.
+ *
+ * Only the coordinator thread touches the coordinator task.
+ */
+class ConcurrentChangeProcessor {
+
+	private static final Trace LOGGER = TraceManager.getTrace(ConcurrentChangeProcessor.class);
+
+	private static final String OP_PROCESS_CHANGE = ConcurrentChangeProcessor.class.getName() + ".processChange";
+	private static final String OP_WORKER = ConcurrentChangeProcessor.class.getName() + ".worker";
+
+	private static final int WORKER_QUEUE_SIZE = 100;
+	private static final long WAIT_INTERVAL = 500L;
+
+	private final ShadowCache shadowCache;
+	private final ProvisioningContextFactory ctxFactory;
+	private final TaskManager taskManager;
+	private final ResourceShadowDiscriminator shadowCoordinates;
+	private final Task coordinatorTask;
+	private final int threadsCount;
+	private final boolean retryUnhandledError;
+
+	private final List<BlockingQueue<ChangeRequest>> workerQueues = new ArrayList<>();
+	private final List<OperationResult> workerResults = new ArrayList<>();
+	private final BlockingQueue<ChangeRequest> completedRequests = new LinkedBlockingQueue<>();
+	private final AtomicInteger runningWorkers = new AtomicInteger();
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private volatile boolean allChangesSubmitted;
+
+	// used by the coordinator thread only
+	private final Deque<ChangeRequest> uncommittedRequests = new ArrayDeque<>();
+	private int processedChanges;
+
+	private static class ChangeRequest {
+		private final Change change;
+		private volatile boolean completed;
+		private volatile boolean committable;
+
+		private ChangeRequest(Change change) {
+			this.change = change;
+		}
+	}
+
+	ConcurrentChangeProcessor(ShadowCache shadowCache, ProvisioningContextFactory ctxFactory, TaskManager taskManager,
+			ResourceShadowDiscriminator shadowCoordinates, Task coordinatorTask, int threadsCount, boolean retryUnhandledError) {
+		this.shadowCache = shadowCache;
+		this.ctxFactory = ctxFactory;
+		this.taskManager = taskManager;
+		this.shadowCoordinates = shadowCoordinates;
+		this.coordinatorTask = coordinatorTask;
+		this.threadsCount = threadsCount;
+		this.retryUnhandledError = retryUnhandledError;
+	}
+
+	/**
+	 * Processes the changes and commits their tokens. Returns the number of (non-token-only) changes committed.
+	 */
+	int process(List<Change> changes, OperationResult result) throws SchemaException, CommunicationException,
+			ConfigurationException, SecurityViolationException, ObjectNotFoundException, GenericFrameworkException,
+			ObjectAlreadyExistsException, ExpressionEvaluationException, EncryptionException {
+		createWorkers();
+		try {
+			for (Change change : changes) {
+				if (shouldStop()) {
+					break;
+				}
+				ChangeRequest request = new ChangeRequest(change);
+				uncommittedRequests.add(request);
+				if (change.isTokenOnly()) {
+					LOGGER.trace("Found token-only change: {}", change);
+					request.committable = true;
+					request.completed = true;
+				} else if (!submit(request)) {
+					break;
+				}
+				commitCompletedChanges();
+			}
+		} finally {
+			allChangesSubmitted = true;
+		}
+
+		waitForWorkers();
+		taskManager.waitForTransientChildren(coordinatorTask, result);
+		commitCompletedChanges();
+
+		for (OperationResult workerResult : workerResults) {
+			workerResult.computeStatus();
+			workerResult.summarize();
+			result.addSubresult(workerResult);
+		}
+		if (!uncommittedRequests.isEmpty()) {
+			LOGGER.debug("{} change(s) were not committed; they will be fetched again in the next run", uncommittedRequests.size());
+		}
+		throwFailureIfAny();
+		return processedChanges;
+	}
+
+	private void createWorkers() {
+		for (int i = 0; i < threadsCount; i++) {
+			BlockingQueue<ChangeRequest> queue = new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE);
+			workerQueues.add(queue);
+
+			// the worker result is put under the main operation result only after the worker is done (see process(..))
+			OperationResult workerResult = new OperationResult(OP_WORKER);
+			workerResult.addContext("subtaskIndex", i+1);
+			workerResults.add(workerResult);
+
+			Task subtask = coordinatorTask.createSubtask(new WorkerHandler(queue, workerResult));
+			subtask.resetIterativeTaskInformation(null);
+			subtask.resetSynchronizationInformation(null);
+			subtask.resetActionsExecutedInformation(null);
+			subtask.setCategory(coordinatorTask.getCategory());
+			subtask.setResult(new OperationResult(OP_WORKER, OperationResultStatus.IN_PROGRESS, (String) null));
+			subtask.setName("Live sync worker " + (i+1) + " of " + threadsCount);
+			runningWorkers.incrementAndGet();
+			subtask.startLightweightHandler();
+			LOGGER.trace("Worker subtask {} created", subtask);
+		}
+	}
+
+	private boolean shouldStop() {
+		return failure.get() != null || !coordinatorTask.canRun() || runningWorkers.get() == 0;
+	}
+
+	private boolean submit(ChangeRequest request) throws SchemaException {
+		BlockingQueue<ChangeRequest> queue = workerQueues.get(getWorkerIndex(request.change));
+		try {
+			while (!queue.offer(request, WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+				commitCompletedChanges();
+				if (shouldStop()) {
+					return false;
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			LOGGER.trace("Interrupted while submitting a change", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void waitForWorkers() throws SchemaException {
+		try {
+			while (!uncommittedRequests.isEmpty() && runningWorkers.get() > 0) {
+				completedRequests.poll(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+				commitCompletedChanges();
+			}
+		} catch (InterruptedException e) {
+			LOGGER.trace("Interrupted while waiting for workers", e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void commitCompletedChanges() throws SchemaException {
+		completedRequests.clear();          // only a wake-up signal for the coordinator
+		ChangeRequest request;
+		while ((request = uncommittedRequests.peek()) != null && request.completed) {
+			uncommittedRequests.poll();
+			if (request.committable) {
+				coordinatorTask.setExtensionProperty(request.change.getToken());
+				if (!request.change.isTokenOnly()) {
+					processedChanges++;
+					coordinatorTask.incrementProgressAndStoreStatsIfNeeded();
+				}
+			}
+		}
+	}
+
+	private int getWorkerIndex(Change change) {
+		return Math.floorMod(getObjectKey(change).hashCode(), threadsCount);
+	}
+
+	/**
+	 * Primary identifier(s) of the resource object. If the object class is not known (e.g. for some delete changes)
+	 * we cannot tell primary and secondary identifiers apart, so all the identifiers are used. But in such cases
+	 * the connector provides the primary identifier only.
+	 */
+	private String getObjectKey(Change change) {
+		Collection<ResourceAttribute<?>> identifiers = change.getIdentifiers();
+		if (identifiers == null) {
+			return "";
+		}
+		ObjectClassComplexTypeDefinition objectClassDefinition = change.getObjectClassDefinition();
+		List<String> values = new ArrayList<>();
+		for (ResourceAttribute<?> identifier : identifiers) {
+			if (objectClassDefinition == null || !objectClassDefinition.isSecondaryIdentifier(identifier.getElementName())) {
+				values.add(identifier.getElementName().getLocalPart() + "=" + identifier.getRealValues());
+			}
+		}
+		Collections.sort(values);
+		return values.toString();
+	}
+
+	private void throwFailureIfAny() throws SchemaException, CommunicationException, ConfigurationException,
+			SecurityViolationException, ObjectNotFoundException, GenericFrameworkException, ObjectAlreadyExistsException,
+			ExpressionEvaluationException, EncryptionException {
+		Throwable t = failure.get();
+		if (t == null) {
+			return;
+		} else if (t instanceof SchemaException) {
+			throw (SchemaException) t;
+		} else if (t instanceof CommunicationException) {
+			throw (CommunicationException) t;
+		} else if (t instanceof ConfigurationException) {
+			throw (ConfigurationException) t;
+		} else if (t instanceof SecurityViolationException) {
+			throw (SecurityViolationException) t;
+		} else if (t instanceof ObjectNotFoundException) {
+			throw (ObjectNotFoundException) t;
+		} else if (t instanceof GenericFrameworkException) {
+			throw (GenericFrameworkException) t;
+		} else if (t instanceof ObjectAlreadyExistsException) {
+			throw (ObjectAlreadyExistsException) t;
+		} else if (t instanceof ExpressionEvaluationException) {
+			throw (ExpressionEvaluationException) t;
+		} else if (t instanceof EncryptionException) {
+			throw (EncryptionException) t;
+		} else if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		} else if (t instanceof Error) {
+			throw (Error) t;
+		} else {
+			throw new SystemException("Unexpected exception in live sync worker: " + t.getMessage(), t);
+		}
+	}
+
+	private class WorkerHandler implements LightweightTaskHandler {
+
+		private final BlockingQueue<ChangeRequest> queue;
+		private final OperationResult workerResult;
+
+		private WorkerHandler(BlockingQueue<ChangeRequest> queue, OperationResult workerResult) {
+			this.queue = queue;
+			this.workerResult = workerResult;
+		}
+
+		@Override
+		public void run(Task workerTask) {
+			try {
+				ProvisioningContext ctx = ctxFactory.create(shadowCoordinates, workerTask, workerResult);
+				while (workerTask.canRun() && failure.get() == null) {
+					ChangeRequest request = queue.poll(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+					if (request != null) {
+						processRequest(ctx, request);
+					} else if (allChangesSubmitted && queue.isEmpty()) {
+						LOGGER.trace("Queue is empty and nothing more is expected - exiting");
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				LOGGER.trace("Interrupted when waiting for next change", e);
+			} catch (Throwable t) {
+				workerResult.recordFatalError(t);
+				recordFailure(t);
+			} finally {
+				runningWorkers.decrementAndGet();
+				completedRequests.offer(new ChangeRequest(null));
+			}
+		}
+
+		private void processRequest(ProvisioningContext ctx, ChangeRequest request) {
+			OperationResult result = workerResult.createSubresult(OP_PROCESS_CHANGE);
+			try {
+				request.committable = shadowCache.processRawChangeForSynchronization(ctx, request.change,
+						retryUnhandledError, result);
+				request.completed = true;
+				result.computeStatusIfUnknown();
+			} catch (Throwable t) {
+				result.recordFatalError(t);
+				recordFailure(t);
+			} finally {
+				workerResult.summarize();
+				completedRequests.offer(request);
+			}
+		}
+	}
+
+	private void recordFailure(Throwable t) {
+		if (failure.compareAndSet(null, t)) {
+			LoggingUtils.logException(LOGGER, "Live synchronization worker failed; stopping the processing", t);
+		}
+	}
+}
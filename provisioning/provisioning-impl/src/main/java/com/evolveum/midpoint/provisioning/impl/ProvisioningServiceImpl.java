@@ -1068,7 +1068,7 @@ public class ProvisioningServiceImpl implements ProvisioningService {
 		PrismObject<ResourceType> resource;
 		try {
 
-			resource = resourceManager.getResource(resourceOid, null, task, result);
+			resource = resourceManager.getResource(resourceOid, GetOperationOptions.createReadOnly(), task, result);
 
 		} catch (SchemaException | ObjectNotFoundException | ExpressionEvaluationException ex) {
 			ProvisioningUtil.recordFatalError(LOGGER, result, ex.getMessage(), ex);
@@ -15,32 +15,35 @@
  */
 package com.evolveum.midpoint.provisioning.impl;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.stereotype.Component;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.schema.GetOperationOptions;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.util.exception.SchemaException;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ResourceType;
 
 /**
  * Class for caching ResourceType instances with a parsed schemas.
  *
+ * Cached resources are immutable snapshots: they are frozen when put into the cache and never change afterwards.
+ * Therefore they can be shared by all the threads without any locking. Callers that ask for read-only resource
+ * get the shared snapshot; others get their own (mutable) copy. Such copies are counted as
+ * {@link InternalCounters#RESOURCE_CACHE_CLONE_COUNT}.
+ *
  * @author Radovan Semancik
  *
  */
 @Component
 public class ResourceCache {
 
-	private Map<String,PrismObject<ResourceType>> cache;
-
-    ResourceCache() {
-        cache = new HashMap<>();
-    }
+	private final ConcurrentMap<String,PrismObject<ResourceType>> cache = new ConcurrentHashMap<>();
 
-	public synchronized void put(PrismObject<ResourceType> resource) throws SchemaException {
+	public void put(PrismObject<ResourceType> resource) throws SchemaException {
 		String oid = resource.getOid();
 		if (oid == null) {
 			throw new SchemaException("Attempt to cache "+resource+" without an OID");
@@ -52,15 +55,13 @@ public class ResourceCache {
 		}
 
 		PrismObject<ResourceType> cachedResource = cache.get(oid);
-		if (cachedResource == null) {
-			cache.put(oid, resource.createImmutableClone());
-		} else {
-			if (compareVersion(resource.getVersion(), cachedResource.getVersion())) {
-				// We already have equivalent resource, nothing to do
-			} else {
-				cache.put(oid, resource.createImmutableClone());
-			}
+		if (cachedResource != null && compareVersion(version, cachedResource.getVersion())) {
+			// We already have equivalent resource, nothing to do
+			return;
 		}
+		// Cloning is done outside of any lock. If other thread puts the same version meanwhile, one of the
+		// (equivalent) snapshots simply wins.
+		cache.put(oid, resource.createImmutableClone());
 	}
 
 	private boolean compareVersion(String version1, String version2) {
@@ -73,11 +74,11 @@ public class ResourceCache {
 		return version1.equals(version2);
 	}
 
-	public synchronized PrismObject<ResourceType> get(PrismObject<ResourceType> resource, GetOperationOptions options) throws SchemaException {
+	public PrismObject<ResourceType> get(PrismObject<ResourceType> resource, GetOperationOptions options) throws SchemaException {
 		return get(resource.getOid(), resource.getVersion(), options);
 	}
 
-	public synchronized PrismObject<ResourceType> get(String oid, String version, GetOperationOptions options) throws SchemaException {
+	public PrismObject<ResourceType> get(String oid, String version, GetOperationOptions options) throws SchemaException {
 		if (oid == null) {
 			return null;
 		}
@@ -95,6 +96,7 @@ public class ResourceCache {
 			cachedResource.checkImmutability();
 			return cachedResource;
 		} else {
+			InternalMonitor.recordCount(InternalCounters.RESOURCE_CACHE_CLONE_COUNT);
 			return cachedResource.clone();
 		}
 	}
@@ -102,7 +104,7 @@ public class ResourceCache {
 	/**
 	 * Returns currently cached version. FOR DIAGNOSTICS ONLY.
 	 */
-	public synchronized String getVersion(String oid) {
+	public String getVersion(String oid) {
 		if (oid == null) {
 			return null;
 		}
@@ -113,7 +115,7 @@ public class ResourceCache {
 		return cachedResource.getVersion();
 	}
 
-	public synchronized void remove(String oid) {
+	public void remove(String oid) {
 		cache.remove(oid);
 	}
 
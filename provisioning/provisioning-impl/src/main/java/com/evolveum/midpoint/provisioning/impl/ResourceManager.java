@@ -1233,7 +1233,7 @@ public class ResourceManager {
 	}
 
 	public Object executeScript(String resourceOid, ProvisioningScriptType script, Task task, OperationResult result) throws ObjectNotFoundException, SchemaException, CommunicationException, ConfigurationException, SecurityViolationException, ExpressionEvaluationException {
-		PrismObject<ResourceType> resource = getResource(resourceOid, null, task, result);
+		PrismObject<ResourceType> resource = getResource(resourceOid, GetOperationOptions.createReadOnly(), task, result);
 		ConnectorSpec connectorSpec = selectConnectorSpec(resource, ScriptCapabilityType.class);
 		if (connectorSpec == null) {
 			throw new UnsupportedOperationException("No connector supports script capability");
@@ -1720,6 +1720,31 @@ public class ResourceObjectConverter {
 	public List<Change> fetchChanges(ProvisioningContext ctx, PrismProperty<?> lastToken,
 			OperationResult parentResult) throws SchemaException,
 			CommunicationException, ConfigurationException, SecurityViolationException, GenericFrameworkException, ObjectNotFoundException, ExpressionEvaluationException {
+
+		List<Change> changes = fetchRawChanges(ctx, lastToken, parentResult);
+
+		Iterator<Change> iterator = changes.iterator();
+		while (iterator.hasNext()) {
+			Change change = iterator.next();
+			if (!processFetchedChange(ctx, change, parentResult)) {
+				iterator.remove();
+			}
+		}
+
+		computeResultStatus(parentResult);
+		
+		LOGGER.trace("END fetch changes ({} changes)", changes == null ? "null" : changes.size());
+		return changes;
+	}
+
+	/**
+	 * Gets changes from the connector, without any post-processing. Each of the (non-token-only) changes
+	 * has to be passed to {@link #processFetchedChange(ProvisioningContext, Change, OperationResult)} before use.
+	 * This allows the (potentially expensive) post-processing to be done later, e.g. in worker threads.
+	 */
+	public List<Change> fetchRawChanges(ProvisioningContext ctx, PrismProperty<?> lastToken,
+			OperationResult parentResult) throws SchemaException,
+			CommunicationException, ConfigurationException, GenericFrameworkException, ObjectNotFoundException, ExpressionEvaluationException {
 		Validate.notNull(parentResult, "Operation result must not be null.");
 
 		LOGGER.trace("START fetch changes, objectClass: {}", ctx.getObjectClassDefinition());
@@ -1731,80 +1756,85 @@ public class ResourceObjectConverter {
 		ConnectorInstance connector = ctx.getConnector(LiveSyncCapabilityType.class, parentResult);
 		
 		// get changes from the connector
-		List<Change> changes = connector.fetchChanges(ctx.getObjectClassDefinition(), lastToken, attrsToReturn, ctx, parentResult);
+		return connector.fetchChanges(ctx.getObjectClassDefinition(), lastToken, attrsToReturn, ctx, parentResult);
+	}
 
-		Iterator<Change> iterator = changes.iterator();
-		while (iterator.hasNext()) {
-			Change change = iterator.next();
-			LOGGER.trace("Original change:\n{}", change.debugDump());
-			if (change.isTokenOnly()) {
-				continue;
-			}
-			ProvisioningContext shadowCtx = ctx;
-			AttributesToReturn shadowAttrsToReturn = attrsToReturn;
-			PrismObject<ShadowType> currentShadow = change.getCurrentShadow();
-			ObjectClassComplexTypeDefinition changeObjectClassDefinition = change.getObjectClassDefinition();
-			if (changeObjectClassDefinition == null) {
-				if (!ctx.isWildcard() || change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
-					throw new SchemaException("No object class definition in change "+change);
-				}
+	/**
+	 * Completes a change obtained from the connector: determines its object class (for wildcard contexts)
+	 * and fetches and post-processes the current state of the object.
+	 *
+	 * @return false if the change should be skipped, because the object no longer exists on the resource
+	 */
+	public boolean processFetchedChange(ProvisioningContext ctx, Change change, OperationResult parentResult) throws SchemaException,
+			CommunicationException, ConfigurationException, SecurityViolationException, GenericFrameworkException, ObjectNotFoundException, ExpressionEvaluationException {
+		LOGGER.trace("Original change:\n{}", change.debugDump());
+		if (change.isTokenOnly()) {
+			return true;
+		}
+		AttributesToReturn attrsToReturn = null;
+		if (!ctx.isWildcard()) {
+			attrsToReturn = ProvisioningUtil.createAttributesToReturn(ctx);
+		}
+		ProvisioningContext shadowCtx = ctx;
+		AttributesToReturn shadowAttrsToReturn = attrsToReturn;
+		PrismObject<ShadowType> currentShadow = change.getCurrentShadow();
+		ObjectClassComplexTypeDefinition changeObjectClassDefinition = change.getObjectClassDefinition();
+		if (changeObjectClassDefinition == null) {
+			if (!ctx.isWildcard() || change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
+				throw new SchemaException("No object class definition in change "+change);
 			}
-			if (ctx.isWildcard() && changeObjectClassDefinition != null) {
-				shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
-				if (shadowCtx.isWildcard()) {
-					String message = "Unkown object class "+changeObjectClassDefinition.getTypeName()+" found in synchronization delta";
-					parentResult.recordFatalError(message);
-					throw new SchemaException(message);
-				}
-				change.setObjectClassDefinition(shadowCtx.getObjectClassDefinition());
-				
-				shadowAttrsToReturn = ProvisioningUtil.createAttributesToReturn(shadowCtx);
+		}
+		if (ctx.isWildcard() && changeObjectClassDefinition != null) {
+			shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
+			if (shadowCtx.isWildcard()) {
+				String message = "Unkown object class "+changeObjectClassDefinition.getTypeName()+" found in synchronization delta";
+				parentResult.recordFatalError(message);
+				throw new SchemaException(message);
 			}
+			change.setObjectClassDefinition(shadowCtx.getObjectClassDefinition());
 			
-			if (change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
-				if (currentShadow == null) {
-					// There is no current shadow in a change. Add it by fetching it explicitly.
-					try {
-						
-						LOGGER.trace("Re-fetching object {} because it is not in the change", change.getIdentifiers());
-						currentShadow = fetchResourceObject(shadowCtx, 
-								change.getIdentifiers(), shadowAttrsToReturn, true, parentResult);	// todo consider whether it is always necessary to fetch the entitlements
-						change.setCurrentShadow(currentShadow);
-						
-					} catch (ObjectNotFoundException ex) {
-						parentResult.recordHandledError(
-								"Object detected in change log no longer exist on the resource. Skipping processing this object.", ex);
-						LOGGER.warn("Object detected in change log no longer exist on the resource. Skipping processing this object "
-								+ ex.getMessage());
-						// TODO: Maybe change to DELETE instead of this?
-						iterator.remove();
-						continue;
-					}
-				} else {
-					if (ctx.isWildcard()) {
-						if (!MiscUtil.equals(shadowAttrsToReturn, attrsToReturn)) {
-							// re-fetch the shadow if necessary (if attributesToGet does not match)
-							ResourceObjectIdentification identification = ResourceObjectIdentification.create(shadowCtx.getObjectClassDefinition(), 
-									change.getIdentifiers());
-							identification.validatePrimaryIdenfiers();
-							LOGGER.trace("Re-fetching object {} because of attrsToReturn", identification);
-							currentShadow = connector.fetchObject(identification, shadowAttrsToReturn, ctx, parentResult);
-						}
-						
+			shadowAttrsToReturn = ProvisioningUtil.createAttributesToReturn(shadowCtx);
+		}
+		
+		if (change.getObjectDelta() == null || !change.getObjectDelta().isDelete()) {
+			if (currentShadow == null) {
+				// There is no current shadow in a change. Add it by fetching it explicitly.
+				try {
+					
+					LOGGER.trace("Re-fetching object {} because it is not in the change", change.getIdentifiers());
+					currentShadow = fetchResourceObject(shadowCtx, 
+							change.getIdentifiers(), shadowAttrsToReturn, true, parentResult);	// todo consider whether it is always necessary to fetch the entitlements
+					change.setCurrentShadow(currentShadow);
+					
+				} catch (ObjectNotFoundException ex) {
+					parentResult.recordHandledError(
+							"Object detected in change log no longer exist on the resource. Skipping processing this object.", ex);
+					LOGGER.warn("Object detected in change log no longer exist on the resource. Skipping processing this object "
+							+ ex.getMessage());
+					// TODO: Maybe change to DELETE instead of this?
+					return false;
+				}
+			} else {
+				if (ctx.isWildcard()) {
+					if (!MiscUtil.equals(shadowAttrsToReturn, attrsToReturn)) {
+						// re-fetch the shadow if necessary (if attributesToGet does not match)
+						ResourceObjectIdentification identification = ResourceObjectIdentification.create(shadowCtx.getObjectClassDefinition(), 
+								change.getIdentifiers());
+						identification.validatePrimaryIdenfiers();
+						LOGGER.trace("Re-fetching object {} because of attrsToReturn", identification);
+						ConnectorInstance connector = ctx.getConnector(LiveSyncCapabilityType.class, parentResult);
+						currentShadow = connector.fetchObject(identification, shadowAttrsToReturn, ctx, parentResult);
 					}
-							
-					PrismObject<ShadowType> processedCurrentShadow = postProcessResourceObjectRead(shadowCtx,
-							currentShadow, true, parentResult);
-					change.setCurrentShadow(processedCurrentShadow);
+					
 				}
+						
+				PrismObject<ShadowType> processedCurrentShadow = postProcessResourceObjectRead(shadowCtx,
+						currentShadow, true, parentResult);
+				change.setCurrentShadow(processedCurrentShadow);
 			}
-			LOGGER.trace("Processed change\n:{}", change.debugDump());
 		}
-
-		computeResultStatus(parentResult);
-		
-		LOGGER.trace("END fetch changes ({} changes)", changes == null ? "null" : changes.size());
-		return changes;
+		LOGGER.trace("Processed change\n:{}", change.debugDump());
+		return true;
 	}
 	
 	/**
@@ -16,6 +16,7 @@
 package com.evolveum.midpoint.provisioning.impl;
 
 import com.evolveum.midpoint.common.Clock;
+import com.evolveum.midpoint.common.configuration.api.MidpointConfiguration;
 import com.evolveum.midpoint.common.crypto.CryptoUtil;
 import com.evolveum.midpoint.common.refinery.RefinedAssociationDefinition;
 import com.evolveum.midpoint.common.refinery.RefinedObjectClassDefinition;
@@ -39,6 +40,7 @@ import com.evolveum.midpoint.provisioning.ucf.api.ConnectorInstance;
 import com.evolveum.midpoint.provisioning.ucf.api.GenericFrameworkException;
 import com.evolveum.midpoint.provisioning.util.ProvisioningUtil;
 import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.repo.cache.RepositoryCache;
 import com.evolveum.midpoint.schema.*;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.internals.InternalCounters;
@@ -72,16 +74,21 @@ import com.evolveum.prism.xml.ns._public.types_3.ProtectedStringType;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
+import org.apache.commons.configuration.Configuration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import javax.annotation.PostConstruct;
 import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Shadow cache is a facade that covers all the operations with shadows. It
@@ -119,13 +126,41 @@ public abstract class ShadowCache {
 	@Autowired private ChangeNotificationDispatcher changeNotificationDispatcher;
 	@Autowired private ProvisioningContextFactory ctxFactory;
 	@Autowired private Protector protector;
+	@Autowired(required = false) private MidpointConfiguration midpointConfiguration;
 
 	private static final Trace LOGGER = TraceManager.getTrace(ShadowCache.class);
 
+	static final String CONFIG_SHADOW_LOOKUP_BATCH_SIZE = "shadowLookupBatchSize";
+
+	/**
+	 * Number of resource objects whose shadows are looked up in repository by a single query when searching
+	 * the resource. Set by "shadowLookupBatchSize" in the midpoint.provisioning configuration section.
+	 * The default is 0, meaning that shadows are looked up one by one.
+	 */
+	private volatile int shadowLookupBatchSize;
+
 	public ShadowCache() {
 		repositoryService = null;
 	}
 
+	@PostConstruct
+	public void initialize() {
+		if (midpointConfiguration != null) {
+			Configuration config = midpointConfiguration.getConfiguration(MidpointConfiguration.PROVISIONING_CONFIGURATION_SECTION);
+			if (config != null) {
+				setShadowLookupBatchSize(config.getInt(CONFIG_SHADOW_LOOKUP_BATCH_SIZE, 0));
+			}
+		}
+	}
+
+	public int getShadowLookupBatchSize() {
+		return shadowLookupBatchSize;
+	}
+
+	public void setShadowLookupBatchSize(int shadowLookupBatchSize) {
+		this.shadowLookupBatchSize = shadowLookupBatchSize;
+	}
+
 	/**
 	 * Get the value of repositoryService.
 	 * 
@@ -1535,105 +1570,266 @@ public abstract class ShadowCache {
 
 		ObjectQuery attributeQuery = createAttributeQuery(query);
 
-		ResultHandler<ShadowType> resultHandler = (PrismObject<ShadowType> resourceShadow, OperationResult objResult) -> {
-				if (LOGGER.isTraceEnabled()) {
-					LOGGER.trace("Found resource object\n{}", resourceShadow.debugDump(1));
-				}
-				PrismObject<ShadowType> resultShadow;
-				try {
-					// The shadow does not have any kind or intent at this
-					// point.
-					// But at least locate the definition using object classes.
-					ProvisioningContext estimatedShadowCtx = reapplyDefinitions(ctx, resourceShadow);
-					// Try to find shadow that corresponds to the resource
-					// object.
-					if (readFromRepository) {
-						PrismObject<ShadowType> repoShadow = lookupOrCreateShadowInRepository(
-								estimatedShadowCtx, resourceShadow, true, parentResult);
-
-						// This determines the definitions exactly. How the repo
-						// shadow should have proper kind/intent
-						ProvisioningContext shadowCtx = applyAttributesDefinition(ctx, repoShadow);
-
-						repoShadow = shadowManager.updateShadow(shadowCtx, resourceShadow, repoShadow,
-								parentResult);
-						
-						resultShadow = completeShadow(shadowCtx, resourceShadow, repoShadow, objResult);
-						
-					} else {
-						resultShadow = resourceShadow;
-					}
+		boolean fetchAssociations = SelectorOptions.hasToLoadPath(ShadowType.F_ASSOCIATION, options);
 
-					validateShadow(resultShadow, readFromRepository);
-					
-				} catch (SchemaException e) {
-					objResult.recordFatalError("Schema error: " + e.getMessage(), e);
-					LOGGER.error("Schema error: {}", e.getMessage(), e);
-					return false;
-				} catch (ConfigurationException e) {
-					objResult.recordFatalError("Configuration error: " + e.getMessage(), e);
-					LOGGER.error("Configuration error: {}", e.getMessage(), e);
-					return false;
-				} catch (ObjectNotFoundException | ObjectAlreadyExistsException | CommunicationException
-						| SecurityViolationException | GenericConnectorException | ExpressionEvaluationException | EncryptionException e) {
-					objResult.recordFatalError(e.getMessage(), e);
-					LOGGER.error("{}", e.getMessage(), e);
-					return false;
+		int batchSize = getShadowLookupBatchSize();
+		if (!readFromRepository || batchSize <= 1) {
+			ResultHandler<ShadowType> resultHandler = (resourceShadow, objResult) ->
+					processFoundResourceObject(ctx, new FoundResourceObject(resourceShadow, objResult), handler,
+							readFromRepository, parentResult);
+			return resouceObjectConverter.searchResourceObjects(ctx, resultHandler, attributeQuery,
+					fetchAssociations, parentResult);
+		}
+
+		ShadowLookupBuffer buffer = new ShadowLookupBuffer(ctx, handler, batchSize, parentResult);
+		try {
+			return resouceObjectConverter.searchResourceObjects(ctx, buffer, attributeQuery,
+					fetchAssociations, parentResult);
+		} finally {
+			// objects received before the search ended (or failed) are processed in any case
+			RepositoryCache.enter();
+			try {
+				buffer.flush();
+			} finally {
+				RepositoryCache.exit();
+			}
+		}
+	}
+
+	/**
+	 * Processes a resource object found by the search: determines (or creates) its repository shadow, completes
+	 * the shadow and passes it to the upstream handler.
+	 */
+	private boolean processFoundResourceObject(ProvisioningContext ctx, FoundResourceObject found,
+			ResultHandler<ShadowType> handler, boolean readFromRepository, OperationResult parentResult) {
+		PrismObject<ShadowType> resourceShadow = found.resourceShadow;
+		OperationResult objResult = found.objResult;
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Found resource object\n{}", resourceShadow.debugDump(1));
+		}
+		PrismObject<ShadowType> resultShadow;
+		try {
+			// The shadow does not have any kind or intent at this
+			// point.
+			// But at least locate the definition using object classes.
+			ProvisioningContext estimatedShadowCtx = found.estimatedShadowCtx != null ?
+					found.estimatedShadowCtx : reapplyDefinitions(ctx, resourceShadow);
+			// Try to find shadow that corresponds to the resource
+			// object.
+			if (readFromRepository) {
+				PrismObject<ShadowType> repoShadow;
+				if (!found.lookedUp) {
+					repoShadow = lookupOrCreateShadowInRepository(estimatedShadowCtx, resourceShadow, true, parentResult);
+				} else if (found.repoShadow != null) {
+					repoShadow = found.repoShadow;
+				} else {
+					// The bulk lookup found nothing, but the shadow might have been created since then (e.g. by another
+					// thread, or for a duplicate of this object found earlier in the same batch). So we look it up again.
+					LOGGER.trace("Shadow object (in repo) corresponding to the resource object was not found by the bulk lookup.");
+					repoShadow = lookupOrCreateShadowInRepository(estimatedShadowCtx, resourceShadow, true, parentResult);
 				}
 
-				boolean doContinue;
-				try {
-					
-					doContinue =  handler.handle(resultShadow, objResult);
-					
-					objResult.computeStatus();
-					objResult.recordSuccessIfUnknown();
+				// This determines the definitions exactly. How the repo
+				// shadow should have proper kind/intent
+				ProvisioningContext shadowCtx = applyAttributesDefinition(ctx, repoShadow);
 
-                    if (!objResult.isSuccess() && !objResult.isHandledError()) {
-                        Collection<? extends ItemDelta> shadowModificationType = PropertyDelta
-                                .createModificationReplacePropertyCollection(ShadowType.F_RESULT,
-                                        getResourceObjectShadowDefinition(), objResult.createOperationResultType());
-                        try {
-							ConstraintsChecker.onShadowModifyOperation(shadowModificationType);
-							repositoryService.modifyObject(ShadowType.class, resultShadow.getOid(),
-                                    shadowModificationType, objResult);
-                        } catch (ObjectNotFoundException ex) {
-                        	objResult.recordFatalError("Saving of result to " + resultShadow
-                                    + " shadow failed: Not found: " + ex.getMessage(), ex);
-                        } catch (ObjectAlreadyExistsException ex) {
-                        	objResult.recordFatalError("Saving of result to " + resultShadow
-                                    + " shadow failed: Already exists: " + ex.getMessage(), ex);
-                        } catch (SchemaException ex) {
-                        	objResult.recordFatalError("Saving of result to " + resultShadow
-                                    + " shadow failed: Schema error: " + ex.getMessage(), ex);
-                        } catch (RuntimeException e) {
-                        	objResult.recordFatalError("Saving of result to " + resultShadow
-                                    + " shadow failed: " + e.getMessage(), e);
-                        	throw e;
-                        }
-                    }
-                } catch (RuntimeException | Error e) {
-                	objResult.recordFatalError(e);
+				repoShadow = shadowManager.updateShadow(shadowCtx, resourceShadow, repoShadow,
+						parentResult);
+				
+				resultShadow = completeShadow(shadowCtx, resourceShadow, repoShadow, objResult);
+				
+			} else {
+				resultShadow = resourceShadow;
+			}
+
+			validateShadow(resultShadow, readFromRepository);
+			
+		} catch (SchemaException e) {
+			objResult.recordFatalError("Schema error: " + e.getMessage(), e);
+			LOGGER.error("Schema error: {}", e.getMessage(), e);
+			return false;
+		} catch (ConfigurationException e) {
+			objResult.recordFatalError("Configuration error: " + e.getMessage(), e);
+			LOGGER.error("Configuration error: {}", e.getMessage(), e);
+			return false;
+		} catch (ObjectNotFoundException | ObjectAlreadyExistsException | CommunicationException
+				| SecurityViolationException | GenericConnectorException | ExpressionEvaluationException | EncryptionException e) {
+			objResult.recordFatalError(e.getMessage(), e);
+			LOGGER.error("{}", e.getMessage(), e);
+			return false;
+		}
+
+		boolean doContinue;
+		try {
+			
+			doContinue =  handler.handle(resultShadow, objResult);
+			
+			objResult.computeStatus();
+			objResult.recordSuccessIfUnknown();
+
+            if (!objResult.isSuccess() && !objResult.isHandledError()) {
+                Collection<? extends ItemDelta> shadowModificationType = PropertyDelta
+                        .createModificationReplacePropertyCollection(ShadowType.F_RESULT,
+                                getResourceObjectShadowDefinition(), objResult.createOperationResultType());
+                try {
+					ConstraintsChecker.onShadowModifyOperation(shadowModificationType);
+					repositoryService.modifyObject(ShadowType.class, resultShadow.getOid(),
+                            shadowModificationType, objResult);
+                } catch (ObjectNotFoundException ex) {
+                	objResult.recordFatalError("Saving of result to " + resultShadow
+                            + " shadow failed: Not found: " + ex.getMessage(), ex);
+                } catch (ObjectAlreadyExistsException ex) {
+                	objResult.recordFatalError("Saving of result to " + resultShadow
+                            + " shadow failed: Already exists: " + ex.getMessage(), ex);
+                } catch (SchemaException ex) {
+                	objResult.recordFatalError("Saving of result to " + resultShadow
+                            + " shadow failed: Schema error: " + ex.getMessage(), ex);
+                } catch (RuntimeException e) {
+                	objResult.recordFatalError("Saving of result to " + resultShadow
+                            + " shadow failed: " + e.getMessage(), e);
                 	throw e;
-                } finally {
-                	objResult.computeStatus();
-                	objResult.recordSuccessIfUnknown();
-                    // FIXME: hack. Hardcoded ugly summarization of successes. something like
-                    // AbstractSummarizingResultHandler [lazyman]
-                    if (objResult.isSuccess()) {
-                    	objResult.getSubresults().clear();
-                    }
-                    parentResult.summarize();
                 }
+            }
+        } catch (RuntimeException | Error e) {
+        	objResult.recordFatalError(e);
+        	throw e;
+        } finally {
+        	objResult.computeStatus();
+        	objResult.recordSuccessIfUnknown();
+            // FIXME: hack. Hardcoded ugly summarization of successes. something like
+            // AbstractSummarizingResultHandler [lazyman]
+            if (objResult.isSuccess()) {
+            	objResult.getSubresults().clear();
+            }
+            parentResult.summarize();
+        }
+
+		return doContinue;
+	}
 
-				return doContinue;
-			};
+	/**
+	 * A resource object found by the search, along with the information gathered by the bulk shadow lookup (if any).
+	 */
+	private static class FoundResourceObject {
+		private final PrismObject<ShadowType> resourceShadow;
+		private final OperationResult objResult;
+		private ProvisioningContext estimatedShadowCtx;
+		private boolean lookedUp;                           // true if repoShadow was determined by the bulk lookup
+		private PrismObject<ShadowType> repoShadow;         // null means "there is no shadow in repository"
 
-		boolean fetchAssociations = SelectorOptions.hasToLoadPath(ShadowType.F_ASSOCIATION, options);
+		private FoundResourceObject(PrismObject<ShadowType> resourceShadow, OperationResult objResult) {
+			this.resourceShadow = resourceShadow;
+			this.objResult = objResult;
+		}
+	}
 
-		return resouceObjectConverter.searchResourceObjects(ctx, resultHandler, attributeQuery,
-				fetchAssociations, parentResult);
+	/**
+	 * Accumulates resource objects coming from the connector. When the buffer is full, repository shadows for all
+	 * the objects are looked up using a single query (per object class) and the objects are then passed to the
+	 * upstream handler, in the original order. Missing shadows are created one by one, just before their objects
+	 * are passed to the handler, because each creation is followed by a discovery notification.
+	 */
+	private class ShadowLookupBuffer implements ResultHandler<ShadowType> {
+
+		private final ProvisioningContext ctx;
+		private final ResultHandler<ShadowType> handler;
+		private final int batchSize;
+		private final OperationResult parentResult;
+		private final List<FoundResourceObject> objects = new ArrayList<>();
+		private boolean stopped;
+
+		private ShadowLookupBuffer(ProvisioningContext ctx, ResultHandler<ShadowType> handler, int batchSize,
+				OperationResult parentResult) {
+			this.ctx = ctx;
+			this.handler = handler;
+			this.batchSize = batchSize;
+			this.parentResult = parentResult;
+		}
+
+		@Override
+		public boolean handle(PrismObject<ShadowType> resourceShadow, OperationResult objResult) {
+			if (stopped) {
+				return false;
+			}
+			objects.add(new FoundResourceObject(resourceShadow, objResult));
+			if (objects.size() >= batchSize) {
+				flush();
+			}
+			return !stopped;
+		}
 
+		private void flush() {
+			if (objects.isEmpty()) {
+				return;
+			}
+			List<FoundResourceObject> batch = new ArrayList<>(objects);
+			objects.clear();
+			if (stopped) {
+				return;
+			}
+			lookupShadows(batch);
+			for (FoundResourceObject found : batch) {
+				if (!processFoundResourceObject(ctx, found, handler, true, parentResult)) {
+					stopped = true;
+					break;
+				}
+			}
+		}
+
+		/**
+		 * Objects are grouped by their object class and auxiliary object classes. (Contexts cannot be used as keys:
+		 * a new one is spawned for each object having auxiliary object classes.) All objects in a group have the same
+		 * definition, so the context of the first one is used for the lookup.
+		 */
+		private void lookupShadows(List<FoundResourceObject> batch) {
+			Map<List<QName>, List<FoundResourceObject>> byDefinition = new LinkedHashMap<>();
+			for (FoundResourceObject found : batch) {
+				try {
+					found.estimatedShadowCtx = reapplyDefinitions(ctx, found.resourceShadow);
+				} catch (SchemaException | ConfigurationException | ObjectNotFoundException | CommunicationException
+						| ExpressionEvaluationException | RuntimeException e) {
+					// will be reported when the object is processed
+					LOGGER.trace("Couldn't determine definitions for {}: {}", found.resourceShadow, e.getMessage(), e);
+					continue;
+				}
+				byDefinition.computeIfAbsent(getDefinitionKey(found.resourceShadow), k -> new ArrayList<>()).add(found);
+			}
+			for (List<FoundResourceObject> group : byDefinition.values()) {
+				if (group.size() < 2) {
+					continue;
+				}
+				List<PrismObject<ShadowType>> resourceShadows = new ArrayList<>();
+				group.forEach(found -> resourceShadows.add(found.resourceShadow));
+				Map<PrismObject<ShadowType>, PrismObject<ShadowType>> repoShadows;
+				try {
+					repoShadows = shadowManager.lookupShadowsInRepository(group.get(0).estimatedShadowCtx, resourceShadows,
+							parentResult);
+				} catch (SchemaException | ConfigurationException | ObjectNotFoundException | CommunicationException
+						| ExpressionEvaluationException | RuntimeException e) {
+					// objects will be looked up individually, reporting any problems in their own results
+					LOGGER.debug("Couldn't look up shadows for {} resource object(s), falling back to individual lookups: {}",
+							group.size(), e.getMessage(), e);
+					continue;
+				}
+				for (FoundResourceObject found : group) {
+					if (repoShadows.containsKey(found.resourceShadow)) {
+						found.lookedUp = true;
+						found.repoShadow = repoShadows.get(found.resourceShadow);
+					}
+				}
+			}
+		}
+
+		// object class followed by auxiliary object classes (sorted, as their order is not significant)
+		private List<QName> getDefinitionKey(PrismObject<ShadowType> resourceShadow) {
+			ShadowType shadow = resourceShadow.asObjectable();
+			List<QName> auxiliaryObjectClasses = new ArrayList<>(shadow.getAuxiliaryObjectClass());
+			auxiliaryObjectClasses.sort(Comparator.comparing(QName::toString));
+			List<QName> key = new ArrayList<>();
+			key.add(shadow.getObjectClass());
+			key.addAll(auxiliaryObjectClasses);
+			return key;
+		}
 	}
 
 	ObjectQuery createAttributeQuery(ObjectQuery query) throws SchemaException {
@@ -2011,79 +2207,43 @@ public abstract class ShadowCache {
 		List<Change> changes;
 		try {
 
-			changes = resouceObjectConverter.fetchChanges(ctx, lastToken, parentResult);
+			boolean retryUnhandledError = isRetryUnhandledError(task);
+			int workerThreads = getWorkerThreads(task);
+			int processedChanges;
 
-			LOGGER.trace("Found {} change(s). Start processing it (them).", changes.size());
+			if (workerThreads > 0) {
 
-			int processedChanges = 0;
+				// post-processing of the changes (e.g. re-fetching the objects) is left to the worker threads
+				changes = resouceObjectConverter.fetchRawChanges(ctx, lastToken, parentResult);
 
-			for (Change change : changes) {
+				LOGGER.trace("Found {} change(s). Start processing it (them) in {} worker thread(s).", changes.size(), workerThreads);
 
-				if (change.isTokenOnly()) {
-					LOGGER.trace("Found token-only change: {}", change);
-					task.setExtensionProperty(change.getToken());
-					continue;
-				}
+				ConcurrentChangeProcessor processor = new ConcurrentChangeProcessor(this, ctxFactory, taskManager,
+						shadowCoordinates, task, workerThreads, retryUnhandledError);
+				processedChanges = processor.process(changes, parentResult);
 
-				ObjectClassComplexTypeDefinition changeObjectClassDefinition = change
-						.getObjectClassDefinition();
-
-				ProvisioningContext shadowCtx;
-				PrismObject<ShadowType> oldShadow = null;
-				if (changeObjectClassDefinition == null) {
-					if (change.getObjectDelta() != null && change.getObjectDelta().isDelete()) {
-						oldShadow = change.getOldShadow();
-						if (oldShadow == null) {
-							oldShadow = shadowManager.findOrAddShadowFromChangeGlobalContext(ctx, change,
-									parentResult);
-						}
-						if (oldShadow == null) {
-							LOGGER.debug(
-									"No old shadow for delete synchronization event {}, we probably did not know about that object anyway, so well be ignoring this event",
-									change);
-							continue;
-						}
-						shadowCtx = ctx.spawn(oldShadow);
-					} else {
-						throw new SchemaException("No object class definition in change " + change);
+			} else {
+
+				changes = resouceObjectConverter.fetchChanges(ctx, lastToken, parentResult);
+
+				LOGGER.trace("Found {} change(s). Start processing it (them).", changes.size());
+
+				processedChanges = 0;
+
+				for (Change change : changes) {
+
+					if (change.isTokenOnly()) {
+						LOGGER.trace("Found token-only change: {}", change);
+						task.setExtensionProperty(change.getToken());
+						continue;
 					}
-				} else {
-					shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
-				}
 
-				processChange(shadowCtx, change, oldShadow, parentResult);
-
-				// this is the case,when we want to skip processing of change,
-				// because the shadow was not created or found to the resource
-				// object
-				// it may be caused with the fact, that the object which was
-				// created in the resource was deleted before the sync run
-				// such a change should be skipped to process consistent changes
-				if (change.getOldShadow() == null) {
-					PrismProperty<?> newToken = change.getToken();
-					task.setExtensionProperty(newToken);
-					processedChanges++;
-					task.incrementProgressAndStoreStatsIfNeeded();
-					LOGGER.debug(
-							"Skipping processing change. Can't find appropriate shadow (e.g. the object was deleted on the resource meantime).");
-					continue;
-				}
-				boolean isSuccess = processSynchronization(shadowCtx, change, parentResult);
-                                
-                                boolean retryUnhandledError = true;
-                                if (task.getExtension() != null) {
-                                      PrismProperty tokenRetryUnhandledErrProperty = task.getExtensionProperty(SchemaConstants.SYNC_TOKEN_RETRY_UNHANDLED);
-                                      
-                                      if (tokenRetryUnhandledErrProperty != null) {
-                                          retryUnhandledError = (boolean) tokenRetryUnhandledErrProperty.getRealValue(); 
-                                      }                                                                     
-                                }     
-                                
-				if (!retryUnhandledError || isSuccess) {                                    
-					// get updated token from change, create property modification from new token and replace old token with the new one
-					task.setExtensionProperty(change.getToken());
-					processedChanges++;
-					task.incrementProgressAndStoreStatsIfNeeded();
+					if (processChangeForSynchronization(ctx, change, retryUnhandledError, parentResult)) {
+						// get updated token from change, create property modification from new token and replace old token with the new one
+						task.setExtensionProperty(change.getToken());
+						processedChanges++;
+						task.incrementProgressAndStoreStatsIfNeeded();
+					}
 				}
 			}
 
@@ -2102,6 +2262,94 @@ public abstract class ShadowCache {
 		}
 	}
 
+	private boolean isRetryUnhandledError(Task task) {
+		if (task.getExtension() != null) {
+			PrismProperty tokenRetryUnhandledErrProperty = task.getExtensionProperty(SchemaConstants.SYNC_TOKEN_RETRY_UNHANDLED);
+			if (tokenRetryUnhandledErrProperty != null) {
+				return (boolean) tokenRetryUnhandledErrProperty.getRealValue();
+			}
+		}
+		return true;
+	}
+
+	private int getWorkerThreads(Task task) {
+		PrismProperty<Integer> workerThreadsProperty = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_THREADS);
+		if (workerThreadsProperty != null && workerThreadsProperty.getRealValue() != null) {
+			return workerThreadsProperty.getRealValue();
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Processes a change obtained by {@link ResourceObjectConverter#fetchRawChanges(ProvisioningContext, PrismProperty, OperationResult)},
+	 * i.e. one that was not post-processed yet.
+	 *
+	 * @return true if the token of the change can be committed
+	 */
+	boolean processRawChangeForSynchronization(ProvisioningContext ctx, Change change, boolean retryUnhandledError,
+			OperationResult parentResult) throws SchemaException, CommunicationException, ConfigurationException,
+			SecurityViolationException, ObjectNotFoundException, GenericFrameworkException, ObjectAlreadyExistsException,
+			ExpressionEvaluationException, EncryptionException {
+		if (!resouceObjectConverter.processFetchedChange(ctx, change, parentResult)) {
+			return false;
+		}
+		return processChangeForSynchronization(ctx, change, retryUnhandledError, parentResult);
+	}
+
+	/**
+	 * Processes a single (not token-only) change: updates the shadow and notifies the change listeners.
+	 *
+	 * @return true if the token of the change can be committed
+	 */
+	private boolean processChangeForSynchronization(ProvisioningContext ctx, Change change, boolean retryUnhandledError,
+			OperationResult parentResult) throws SchemaException, CommunicationException, ConfigurationException,
+			SecurityViolationException, ObjectNotFoundException, ObjectAlreadyExistsException,
+			ExpressionEvaluationException, EncryptionException {
+
+		ObjectClassComplexTypeDefinition changeObjectClassDefinition = change
+				.getObjectClassDefinition();
+
+		ProvisioningContext shadowCtx;
+		PrismObject<ShadowType> oldShadow = null;
+		if (changeObjectClassDefinition == null) {
+			if (change.getObjectDelta() != null && change.getObjectDelta().isDelete()) {
+				oldShadow = change.getOldShadow();
+				if (oldShadow == null) {
+					oldShadow = shadowManager.findOrAddShadowFromChangeGlobalContext(ctx, change,
+							parentResult);
+				}
+				if (oldShadow == null) {
+					LOGGER.debug(
+							"No old shadow for delete synchronization event {}, we probably did not know about that object anyway, so well be ignoring this event",
+							change);
+					return false;
+				}
+				shadowCtx = ctx.spawn(oldShadow);
+			} else {
+				throw new SchemaException("No object class definition in change " + change);
+			}
+		} else {
+			shadowCtx = ctx.spawn(changeObjectClassDefinition.getTypeName());
+		}
+
+		processChange(shadowCtx, change, oldShadow, parentResult);
+
+		// this is the case,when we want to skip processing of change,
+		// because the shadow was not created or found to the resource
+		// object
+		// it may be caused with the fact, that the object which was
+		// created in the resource was deleted before the sync run
+		// such a change should be skipped to process consistent changes
+		if (change.getOldShadow() == null) {
+			LOGGER.debug(
+					"Skipping processing change. Can't find appropriate shadow (e.g. the object was deleted on the resource meantime).");
+			return true;
+		}
+		boolean isSuccess = processSynchronization(shadowCtx, change, parentResult);
+		return !retryUnhandledError || isSuccess;
+	}
+
 	@SuppressWarnings("rawtypes")
 	boolean processSynchronization(ProvisioningContext ctx, Change change, OperationResult parentResult)
 			throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException,
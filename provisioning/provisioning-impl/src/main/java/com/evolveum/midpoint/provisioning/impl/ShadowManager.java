@@ -19,7 +19,11 @@ package com.evolveum.midpoint.provisioning.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 
@@ -77,6 +81,8 @@ import com.evolveum.midpoint.schema.GetOperationOptions;
 import com.evolveum.midpoint.schema.SearchResultMetadata;
 import com.evolveum.midpoint.schema.SelectorOptions;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.processor.ResourceAttribute;
 import com.evolveum.midpoint.schema.processor.ResourceAttributeContainer;
 import com.evolveum.midpoint.schema.result.AsynchronousOperationResult;
@@ -222,7 +228,102 @@ public class ShadowManager {
 		}
 		PrismObject<ShadowType> shadow = results.get(0);
 		checkConsistency(shadow);
+		resetDeadFlag(shadow, parentResult);
+		return shadow;
+	}
+
+	/**
+	 * Locates repository shadows for a page of resource objects (of the object class of given context)
+	 * using a single query on values of their primary identifier.
+	 *
+	 * Returns a map keyed by the resource objects (by identity). A null value means that there is no shadow for
+	 * the object in the repository. Objects that could not be resolved by the bulk query (e.g. because of missing
+	 * or multi-valued primary identifier, or because more shadows were found) are not in the map at all; the caller
+	 * has to look them up individually using {@link #lookupShadowInRepository(ProvisioningContext, PrismObject, OperationResult)}.
+	 *
+	 * DEAD flag is cleared for the shadows found - in memory as well as in repository.
+	 */
+	public Map<PrismObject<ShadowType>, PrismObject<ShadowType>> lookupShadowsInRepository(ProvisioningContext ctx,
+			List<PrismObject<ShadowType>> resourceShadows, OperationResult parentResult)
+					throws SchemaException, ConfigurationException, ObjectNotFoundException, CommunicationException, ExpressionEvaluationException {
+
+		Map<PrismObject<ShadowType>, PrismObject<ShadowType>> rv = new IdentityHashMap<>();
+		PrismPropertyDefinition<?> identifierDef = null;
+		QName objectClass = null;
+		Map<Object, List<PrismObject<ShadowType>>> objectsByIdentifier = new HashMap<>();
+		List<PrismPropertyValue<?>> identifierValues = new ArrayList<>();
+		for (PrismObject<ShadowType> resourceShadow : resourceShadows) {
+			ResourceAttributeContainer attributesContainer = ShadowUtil.getAttributesContainer(resourceShadow);
+			PrismProperty<?> identifier = attributesContainer != null ? attributesContainer.getPrimaryIdentifier() : null;
+			QName shadowObjectClass = resourceShadow.getPropertyRealValue(ShadowType.F_OBJECT_CLASS, QName.class);
+			if (identifier == null || identifier.size() != 1 || identifier.getDefinition() == null
+					|| identifierDef != null && !identifierDef.getName().equals(identifier.getDefinition().getName())
+					|| objectClass != null && !objectClass.equals(shadowObjectClass)) {
+				continue;
+			}
+			PrismPropertyValue<?> normalizedValue = getNormalizedValue(identifier, ctx.getObjectClassDefinition()).get(0);
+			if (normalizedValue.getValue() == null) {
+				continue;
+			}
+			identifierDef = identifier.getDefinition();
+			objectClass = shadowObjectClass;
+			List<PrismObject<ShadowType>> objects = objectsByIdentifier.get(normalizedValue.getValue());
+			if (objects == null) {
+				objects = new ArrayList<>();
+				objectsByIdentifier.put(normalizedValue.getValue(), objects);
+				identifierValues.add(normalizedValue);
+			}
+			objects.add(resourceShadow);
+		}
+		if (identifierValues.isEmpty()) {
+			return rv;
+		}
+
+		ObjectQuery query = QueryBuilder.queryFor(ShadowType.class, prismContext)
+				.itemWithDef(identifierDef, ShadowType.F_ATTRIBUTES, identifierDef.getName()).eq(identifierValues)
+				.and().item(ShadowType.F_OBJECT_CLASS).eq(objectClass)
+				.and().item(ShadowType.F_RESOURCE_REF).ref(ctx.getResourceOid())
+				.build();
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Searching for shadows of {} resource object(s) using filter:\n{}", identifierValues.size(),
+					query.debugDump());
+		}
+		InternalMonitor.recordCount(InternalCounters.SHADOW_LOOKUP_BATCH_COUNT);
+		List<PrismObject<ShadowType>> results = repositoryService.searchObjects(ShadowType.class, query, null, parentResult);
+		MiscSchemaUtil.reduceSearchResult(results);
+		LOGGER.trace("lookupShadows found {} objects", results.size());
+
+		Map<Object, List<PrismObject<ShadowType>>> shadowsByIdentifier = new HashMap<>();
+		for (PrismObject<ShadowType> shadow : results) {
+			PrismProperty<?> shadowIdentifier = shadow.findProperty(new ItemPath(ShadowType.F_ATTRIBUTES, identifierDef.getName()));
+			Object value = shadowIdentifier != null && shadowIdentifier.size() == 1 ? shadowIdentifier.getRealValue() : null;
+			if (value == null || !objectsByIdentifier.containsKey(value)) {
+				// we cannot tell which object this shadow belongs to; let the caller look them up one by one
+				LOGGER.trace("Couldn't match shadow {} to a resource object, falling back to individual lookups", shadow);
+				return rv;
+			}
+			shadowsByIdentifier.computeIfAbsent(value, k -> new ArrayList<>()).add(shadow);
+		}
 
+		for (Map.Entry<Object, List<PrismObject<ShadowType>>> entry : objectsByIdentifier.entrySet()) {
+			List<PrismObject<ShadowType>> shadows = shadowsByIdentifier.getOrDefault(entry.getKey(), Collections.emptyList());
+			if (shadows.size() > 1 || entry.getValue().size() > 1) {
+				continue;           // individual lookup will report the problem (or find the shadow created meanwhile)
+			}
+			PrismObject<ShadowType> shadow = shadows.isEmpty() ? null : shadows.get(0);
+			if (shadow != null) {
+				checkConsistency(shadow);
+				resetDeadFlag(shadow, parentResult);
+			}
+			for (PrismObject<ShadowType> resourceShadow : entry.getValue()) {
+				rv.put(resourceShadow, shadow);
+			}
+		}
+		return rv;
+	}
+
+	private void resetDeadFlag(PrismObject<ShadowType> shadow, OperationResult parentResult)
+			throws SchemaException, ObjectNotFoundException {
 		if (Boolean.TRUE.equals(shadow.asObjectable().isDead())) {
 			LOGGER.debug("Repository shadow {} is marked as dead - resetting the flag", ObjectTypeUtil.toShortString(shadow));
 			shadow.asObjectable().setDead(false);
@@ -233,7 +334,6 @@ public class ShadowManager {
 				throw new SystemException("Unexpected exception when resetting 'dead' flag: " + e.getMessage(), e);
 			}
 		}
-		return shadow;
 	}
 
 	public PrismObject<ShadowType> lookupShadowInRepository(ProvisioningContext ctx, ResourceAttributeContainer identifierContainer,
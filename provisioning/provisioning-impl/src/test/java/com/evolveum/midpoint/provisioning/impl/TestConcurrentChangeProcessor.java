@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.provisioning.impl;
+
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.delta.ObjectDelta;
+import com.evolveum.midpoint.provisioning.ucf.api.Change;
+import com.evolveum.midpoint.schema.ResourceShadowDiscriminator;
+import com.evolveum.midpoint.schema.processor.ResourceAttribute;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.LightweightTaskHandler;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.util.exception.CommunicationException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.xml.namespace.QName;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Tests processing of live sync changes in worker threads. Worker subtasks are simulated by plain threads,
+ * the processing itself (ShadowCache) is mocked.
+ */
+public class TestConcurrentChangeProcessor {
+
+	private static final int THREADS = 3;
+	private static final int OBJECTS = 5;
+	private static final int CHANGES = 40;
+
+	private ShadowCache shadowCache;
+	private TaskManager taskManager;
+	private Task coordinatorTask;
+
+	private final List<Thread> workerThreads = new CopyOnWriteArrayList<>();
+	private final List<Integer> committedTokens = new CopyOnWriteArrayList<>();
+	private final Map<Integer, List<Integer>> processedPerObject = new HashMap<>();     // guarded by itself
+	private final Map<PrismProperty<?>, Integer> tokenIndices = new HashMap<>();
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		workerThreads.clear();
+		committedTokens.clear();
+		processedPerObject.clear();
+		tokenIndices.clear();
+
+		shadowCache = mock(ShadowCache.class);
+		taskManager = mock(TaskManager.class);
+		doAnswer(invocation -> {
+			for (Thread thread : workerThreads) {
+				thread.join();
+			}
+			return null;
+		}).when(taskManager).waitForTransientChildren(any(Task.class), any(OperationResult.class));
+
+		coordinatorTask = mock(Task.class);
+		when(coordinatorTask.canRun()).thenReturn(true);
+		doAnswer(invocation -> {
+			committedTokens.add(tokenIndices.get((PrismProperty<?>) invocation.getArguments()[0]));
+			return null;
+		}).when(coordinatorTask).setExtensionProperty(any(PrismProperty.class));
+		when(coordinatorTask.createSubtask(any(LightweightTaskHandler.class))).thenAnswer(invocation -> {
+			LightweightTaskHandler handler = (LightweightTaskHandler) invocation.getArguments()[0];
+			Task subtask = mock(Task.class);
+			when(subtask.canRun()).thenReturn(true);
+			doAnswer(startInvocation -> {
+				Thread thread = new Thread(() -> handler.run(subtask));
+				workerThreads.add(thread);
+				thread.start();
+				return null;
+			}).when(subtask).startLightweightHandler();
+			return subtask;
+		});
+	}
+
+	/**
+	 * Changes of the same object must be processed in the order they were fetched; tokens must be committed
+	 * in that order as well.
+	 */
+	@Test
+	public void test100ProcessInOrder() throws Exception {
+		List<Change> changes = createChanges();
+		doAnswer(invocation -> {
+			recordProcessing((Change) invocation.getArguments()[1]);
+			Thread.sleep(new Random().nextInt(5));
+			return true;
+		}).when(shadowCache).processRawChangeForSynchronization(any(ProvisioningContext.class), any(Change.class),
+				anyBoolean(), any(OperationResult.class));
+		OperationResult result = new OperationResult("test100ProcessInOrder");
+
+		// WHEN
+		int processed = createProcessor().process(changes, result);
+
+		// THEN
+		assertEquals("Wrong # of processed changes", CHANGES, processed);
+		for (Map.Entry<Integer, List<Integer>> entry : processedPerObject.entrySet()) {
+			List<Integer> sorted = new ArrayList<>(entry.getValue());
+			Collections.sort(sorted);
+			assertEquals("Changes of object " + entry.getKey() + " were processed out of order", sorted, entry.getValue());
+		}
+		assertEquals("Wrong committed tokens", allIndices(CHANGES), committedTokens);
+		result.computeStatus();
+		assertTrue("Result is not success: " + result, result.isSuccess());
+	}
+
+	/**
+	 * A failed change stops the processing. Its token and tokens of all the changes after it must not be committed,
+	 * and the exception must be propagated to the caller.
+	 */
+	@Test
+	public void test200FailedChange() throws Exception {
+		int failingIndex = 10;
+		List<Change> changes = createChanges();
+		doAnswer(invocation -> {
+			int index = recordProcessing((Change) invocation.getArguments()[1]);
+			if (index == failingIndex) {
+				throw new CommunicationException("Simulated failure of change " + index);
+			}
+			return true;
+		}).when(shadowCache).processRawChangeForSynchronization(any(ProvisioningContext.class), any(Change.class),
+				anyBoolean(), any(OperationResult.class));
+		OperationResult result = new OperationResult("test200FailedChange");
+
+		// WHEN
+		try {
+			createProcessor().process(changes, result);
+			fail("Unexpected success");
+		} catch (CommunicationException e) {
+			// THEN
+			assertEquals("Wrong exception message", "Simulated failure of change " + failingIndex, e.getMessage());
+		}
+
+		assertEquals("Wrong committed tokens", allIndices(committedTokens.size()), committedTokens);
+		assertTrue("Token of the failed change (or a later one) was committed: " + committedTokens,
+				committedTokens.size() <= failingIndex);
+		result.computeStatus();
+		assertTrue("Result is not a failure: " + result, result.isError());
+	}
+
+	private ConcurrentChangeProcessor createProcessor() {
+		return new ConcurrentChangeProcessor(shadowCache, mock(ProvisioningContextFactory.class), taskManager,
+				new ResourceShadowDiscriminator("10000000-0000-0000-0000-000000000000", null), coordinatorTask,
+				THREADS, false);
+	}
+
+	private List<Change> createChanges() {
+		List<Change> changes = new ArrayList<>();
+		for (int i = 0; i < CHANGES; i++) {
+			ResourceAttribute<?> identifier = mock(ResourceAttribute.class);
+			when(identifier.getElementName()).thenReturn(new QName("uid"));
+			doReturn(Collections.singletonList("object-" + (i % OBJECTS))).when(identifier).getRealValues();
+			PrismProperty<?> token = mock(PrismProperty.class);
+			tokenIndices.put(token, i);
+			changes.add(new Change(Collections.<ResourceAttribute<?>>singletonList(identifier),
+					(ObjectDelta<ShadowType>) null, token));
+		}
+		return changes;
+	}
+
+	private int recordProcessing(Change change) {
+		int index = tokenIndices.get(change.getToken());
+		synchronized (processedPerObject) {
+			processedPerObject.computeIfAbsent(index % OBJECTS, k -> new ArrayList<>()).add(index);
+		}
+		return index;
+	}
+
+	private List<Integer> allIndices(int count) {
+		List<Integer> rv = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			rv.add(i);
+		}
+		return rv;
+	}
+}
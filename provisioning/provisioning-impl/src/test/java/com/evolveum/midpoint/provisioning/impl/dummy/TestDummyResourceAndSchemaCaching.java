@@ -325,6 +325,43 @@ public class TestDummyResourceAndSchemaCaching extends AbstractDummyTest {
 	}
 
 
+	/**
+	 * Read-only get should use the cached resource directly. Ordinary get should make its own copy.
+	 */
+	@Test
+	public void test014GetResourceReadOnly() throws Exception {
+		final String TEST_NAME = "test014GetResourceReadOnly";
+		displayTestTitle(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummyResourceAndSchemaCaching.class.getName()
+				+ "." + TEST_NAME);
+		rememberCounter(InternalCounters.RESOURCE_CACHE_CLONE_COUNT);
+
+		// WHEN
+		PrismObject<ResourceType> resourceProvisioning = provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID,
+				SelectorOptions.createCollection(GetOperationOptions.createReadOnly()), null, result);
+
+		// THEN
+		assertSuccess(result);
+		assertHasSchema(resourceProvisioning, "provisioning resource(1)");
+		assertResourceCacheHitsIncrement(1);
+		assertResourceCacheMissesIncrement(0);
+		assertCounterIncrement(InternalCounters.RESOURCE_CACHE_CLONE_COUNT, 0);
+
+		// WHEN
+		resourceProvisioning = provisioningService.getObject(ResourceType.class, RESOURCE_DUMMY_OID, null, null, result);
+
+		// THEN
+		assertSuccess(result);
+		assertHasSchema(resourceProvisioning, "provisioning resource(2)");
+		assertResourceCacheHitsIncrement(1);
+		assertResourceCacheMissesIncrement(0);
+		assertCounterIncrement(InternalCounters.RESOURCE_CACHE_CLONE_COUNT, 1);
+
+		assertConnectorInstanceUnchanged(resourceProvisioning);
+	}
+
+
 	/**
 	 * Change something that is not important. The cached resource should be refreshed, the schema re-parsed
 	 * but the connector should still be cached.
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.provisioning.impl.dummy;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.evolveum.icf.dummy.resource.DummyAccount;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
+import com.evolveum.midpoint.provisioning.impl.ShadowCacheProvisioner;
+import com.evolveum.midpoint.provisioning.impl.ShadowCacheReconciler;
+import com.evolveum.midpoint.schema.internals.InternalCounters;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.util.SchemaTestConstants;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.test.DummyResourceContoller;
+import com.evolveum.midpoint.test.IntegrationTestTools;
+import com.evolveum.midpoint.test.util.TestUtil;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
+
+/**
+ * Almost the same as TestDummy but repository shadows of objects found on the resource are looked up in batches.
+ * The batch is small, so both full batches and the remainder (flushed at the end of the search) are processed.
+ * The resource has an auxiliary object class (posixAccount), so that lookup of objects having it can be tested.
+ */
+@ContextConfiguration(locations = "classpath:ctx-provisioning-test-main.xml")
+@DirtiesContext
+public class TestDummyShadowLookupBatch extends TestDummy {
+
+	private static final int BATCH_SIZE = 3;
+	private static final int NEW_ACCOUNTS = 7;
+	private static final int POSIX_ACCOUNTS = 6;            // exactly two batches
+
+	@Autowired private ShadowCacheProvisioner shadowCacheProvisioner;
+	@Autowired private ShadowCacheReconciler shadowCacheReconciler;
+
+	@Override
+	public void initSystem(Task initTask, OperationResult initResult) throws Exception {
+		super.initSystem(initTask, initResult);
+		dummyResourceCtl.extendSchemaPosix();
+		shadowCacheProvisioner.setShadowLookupBatchSize(BATCH_SIZE);
+		shadowCacheReconciler.setShadowLookupBatchSize(BATCH_SIZE);
+	}
+
+	@AfterClass
+	public void resetBatchSize() {
+		shadowCacheProvisioner.setShadowLookupBatchSize(0);
+		shadowCacheReconciler.setShadowLookupBatchSize(0);
+	}
+
+	/**
+	 * Accounts without shadows are found together with ones having shadows. Missing shadows must be created
+	 * (exactly once), and the next search must find all of them by the batched lookup.
+	 */
+	@Test
+	public void test950SearchNewAccountsInBatches() throws Exception {
+		final String TEST_NAME = "test950SearchNewAccountsInBatches";
+		displayTestTitle(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummyShadowLookupBatch.class.getName() + "." + TEST_NAME);
+		for (int i = 0; i < NEW_ACCOUNTS; i++) {
+			dummyResource.addAccount(new DummyAccount("batch" + i));
+		}
+		ObjectQuery query = IntegrationTestTools.createAllShadowsQuery(resourceType,
+				SchemaTestConstants.ICF_ACCOUNT_OBJECT_CLASS_LOCAL_NAME, prismContext);
+		int accountsOnResource = dummyResource.listAccounts().size();
+
+		// WHEN
+		List<PrismObject<ShadowType>> firstRun = provisioningService.searchObjects(ShadowType.class, query, null, null, result);
+		int shadowsAfterFirstRun = repositoryService.countObjects(ShadowType.class, query, null, result);
+		List<PrismObject<ShadowType>> secondRun = provisioningService.searchObjects(ShadowType.class, query, null, null, result);
+		int shadowsAfterSecondRun = repositoryService.countObjects(ShadowType.class, query, null, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+
+		assertEquals("Wrong # of accounts found (first run)", accountsOnResource, firstRun.size());
+		assertEquals("Wrong # of accounts found (second run)", accountsOnResource, secondRun.size());
+		assertEquals("Shadows were created in the second run", shadowsAfterFirstRun, shadowsAfterSecondRun);
+		Set<String> firstRunOids = getOids(firstRun);
+		assertEquals("Some accounts share a shadow (first run)", accountsOnResource, firstRunOids.size());
+		assertEquals("Different shadows found in the second run", firstRunOids, getOids(secondRun));
+		checkConsistency(secondRun);
+	}
+
+	/**
+	 * A new provisioning context is created for each object having auxiliary object classes. Such objects must
+	 * still be looked up together: one repository query per batch.
+	 */
+	@Test
+	public void test960SearchAccountsWithAuxiliaryObjectClassInBatches() throws Exception {
+		final String TEST_NAME = "test960SearchAccountsWithAuxiliaryObjectClassInBatches";
+		displayTestTitle(TEST_NAME);
+		// GIVEN
+		OperationResult result = new OperationResult(TestDummyShadowLookupBatch.class.getName() + "." + TEST_NAME);
+		for (DummyAccount account : new ArrayList<>(dummyResource.listAccounts())) {
+			dummyResource.deleteAccountByName(account.getName());
+		}
+		for (int i = 0; i < POSIX_ACCOUNTS; i++) {
+			DummyAccount account = new DummyAccount("posix" + i);
+			account.addAuxiliaryObjectClassName(DummyResourceContoller.DUMMY_POSIX_ACCOUNT_OBJECT_CLASS_NAME);
+			dummyResource.addAccount(account);
+		}
+		ObjectQuery query = IntegrationTestTools.createAllShadowsQuery(resourceType,
+				SchemaTestConstants.ICF_ACCOUNT_OBJECT_CLASS_LOCAL_NAME, prismContext);
+		provisioningService.searchObjects(ShadowType.class, query, null, null, result);      // creates the shadows
+		rememberCounter(InternalCounters.SHADOW_LOOKUP_BATCH_COUNT);
+
+		// WHEN
+		List<PrismObject<ShadowType>> found = provisioningService.searchObjects(ShadowType.class, query, null, null, result);
+
+		// THEN
+		result.computeStatus();
+		TestUtil.assertSuccess(result);
+
+		assertEquals("Wrong # of accounts found", POSIX_ACCOUNTS, found.size());
+		for (PrismObject<ShadowType> shadow : found) {
+			assertEquals("Wrong auxiliary object classes in " + shadow, 1, shadow.asObjectable().getAuxiliaryObjectClass().size());
+		}
+		assertCounterIncrement(InternalCounters.SHADOW_LOOKUP_BATCH_COUNT, POSIX_ACCOUNTS / BATCH_SIZE);
+	}
+
+	private Set<String> getOids(List<PrismObject<ShadowType>> shadows) {
+		Set<String> oids = new HashSet<>();
+		for (PrismObject<ShadowType> shadow : shadows) {
+			assertNotNull("No shadow OID for " + shadow, shadow.getOid());
+			oids.add(shadow.getOid());
+		}
+		return oids;
+	}
+}
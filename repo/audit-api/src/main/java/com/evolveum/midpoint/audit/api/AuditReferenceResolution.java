@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.audit.api;
+
+/**
+ * How initiator, attorney, target and target owner of audit records are provided when listing them.
+ * Passed as {@link AuditService#PARAM_RESOLVE_REFERENCES} parameter.
+ */
+public enum AuditReferenceResolution {
+
+	/**
+	 * Objects are fetched from the repository (if they still exist). This is the default.
+	 */
+	FULL,
+
+	/**
+	 * Objects are not fetched; only their OID, name and type as stored in the audit record are provided.
+	 */
+	NAMES_ONLY,
+
+	/**
+	 * Initiator, attorney, target and target owner are not provided at all.
+	 */
+	NONE
+}
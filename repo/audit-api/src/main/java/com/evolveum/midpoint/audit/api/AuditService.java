@@ -30,6 +30,12 @@ public interface AuditService {
     int MAX_MESSAGE_SIZE = 1024;
     int MAX_PROPERTY_SIZE = 1024;
 
+    /**
+     * Parameter of listRecords and listRecordsIterative: value of {@link AuditReferenceResolution}
+     * (or its name) that tells how objects referenced from audit records are to be resolved. Default is FULL.
+     */
+    String PARAM_RESOLVE_REFERENCES = "resolveReferences";
+
 	void audit(AuditEventRecord record, Task task);
 
     /**
@@ -118,6 +118,7 @@ public interface RepositoryService {
 
     String CLASS_NAME_WITH_DOT = RepositoryService.class.getName() + ".";
     String GET_OBJECT = CLASS_NAME_WITH_DOT + "getObject";
+    String GET_OBJECTS = CLASS_NAME_WITH_DOT + "getObjects";
     @Deprecated
     String LIST_ACCOUNT_SHADOW = CLASS_NAME_WITH_DOT + "listAccountShadowOwner";
     String ADD_OBJECT = CLASS_NAME_WITH_DOT + "addObject";
@@ -163,6 +164,27 @@ public interface RepositoryService {
 			OperationResult parentResult)
 			throws ObjectNotFoundException, SchemaException;
 
+	/**
+	 * Returns objects for provided OIDs. This is a bulk version of {@link #getObject(Class, String, Collection, OperationResult)},
+	 * fetching all the objects at once.
+	 *
+	 * Unlike getObject, it does not fail if some of the objects do not exist: they are simply not returned.
+	 * Objects that cannot be read are returned in the same way as by searchObjects, i.e. with the fetchResult set.
+	 *
+	 * @param oids
+	 *            OIDs of the objects to get (duplicates are ignored)
+	 * @param parentResult
+	 *            parent OperationResult (in/out)
+	 * @return Objects found, in the order of the OIDs
+	 *
+	 * @throws SchemaException
+	 *             error dealing with storage schema
+	 */
+	@NotNull
+	<T extends ObjectType> List<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+			Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult)
+			throws SchemaException;
+
 //	<T extends ObjectType> PrismObject<T> getContainerValue(Class<T> type, String oid, long id,
 //															Collection<SelectorOptions<GetOperationOptions>> options,
 //															OperationResult parentResult)
@@ -605,6 +627,12 @@ public interface RepositoryService {
 
 	FullTextSearchConfigurationType getFullTextSearchConfiguration();
 
+	/**
+	 * Applies configuration of the node-wide object cache. Repository implementations without such a cache
+	 * simply ignore it. Null means "no node-wide caching".
+	 */
+	void applyCachingConfiguration(CachingConfigurationType cachingConfiguration);
+
 	void postInit(OperationResult result) throws SchemaException;
 
 	ConflictWatcher createAndRegisterConflictWatcher(String oid);
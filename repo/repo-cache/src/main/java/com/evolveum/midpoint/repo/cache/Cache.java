@@ -65,7 +65,10 @@ public class Cache extends AbstractCache {
     }
 
     public <T extends ObjectType> void putQueryResult(Class<T> type, ObjectQuery query, SearchResultList searchResultList, PrismContext prismContext) {
-        QueryKey queryKey = createQueryKey(type, query, prismContext);
+        putQueryResult(createQueryKey(type, query, prismContext), searchResultList);
+    }
+
+    public void putQueryResult(QueryKey queryKey, SearchResultList searchResultList) {
         if (queryKey != null) {     // TODO BRUTAL HACK
             queries.put(queryKey, searchResultList);
         }
@@ -89,7 +92,10 @@ public class Cache extends AbstractCache {
     }
 
     public SearchResultList getQueryResult(Class<? extends ObjectType> type, ObjectQuery query, PrismContext prismContext) {
-        QueryKey queryKey = createQueryKey(type, query, prismContext);
+        return getQueryResult(createQueryKey(type, query, prismContext));
+    }
+
+    public SearchResultList getQueryResult(QueryKey queryKey) {
         if (queryKey != null) {         // TODO BRUTAL HACK
             return queries.get(queryKey);
         } else {
@@ -97,7 +103,7 @@ public class Cache extends AbstractCache {
         }
     }
 
-    private QueryKey createQueryKey(Class<? extends ObjectType> type, ObjectQuery query, PrismContext prismContext) {
+    static QueryKey createQueryKey(Class<? extends ObjectType> type, ObjectQuery query, PrismContext prismContext) {
         try {
             return new QueryKey(type, query, prismContext);
         } catch (Exception e) {     // TODO THIS IS REALLY UGLY HACK - query converter / prism serializer refuse to serialize some queries - should be fixed RSN!
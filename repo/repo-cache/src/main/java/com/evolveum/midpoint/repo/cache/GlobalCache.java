@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.schema.constants.ObjectTypes;
+import com.evolveum.midpoint.schema.internals.CachingStatistics;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.*;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.namespace.QName;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Node-wide cache of objects of rarely changing types. Supplements the thread-local {@link Cache}:
+ * objects (and search results) stored here survive individual operations and are shared by all threads.
+ *
+ * All cached objects are immutable. Each entry carries a time after which it has to be version-checked
+ * against the repository before it is served again. This way, changes done on other cluster nodes
+ * are reflected at latest after the configured time to live. Changes done on this node invalidate
+ * entries immediately (see {@link RepositoryCache}).
+ *
+ * An object read from the repository is stored only if no object of compatible type was invalidated during the read
+ * (see {@link #getObjectInvalidationCount()}); otherwise we could store a version that was just overwritten.
+ *
+ * Search results are not version-checked. They are invalidated whenever an object of related type is added,
+ * modified or deleted on this node (any change of an org invalidates all of them), and they expire after the time to live.
+ */
+public class GlobalCache {
+
+	private static final Trace LOGGER = TraceManager.getTrace(GlobalCache.class);
+
+	private static final int DEFAULT_TIME_TO_LIVE = 60;            // seconds
+	private static final int DEFAULT_MAX_SIZE = 10000;
+	private static final int DEFAULT_MAX_QUERY_RESULTS = 1000;
+
+	private static final List<Class<? extends ObjectType>> DEFAULT_TYPES = Arrays.asList(
+			SystemConfigurationType.class, RoleType.class, OrgType.class, ServiceType.class, ResourceType.class,
+			ObjectTemplateType.class, SecurityPolicyType.class, ValuePolicyType.class);
+
+	/**
+	 * Object type -> cached objects of that type (oid -> entry). Replaced as a whole when configuration changes.
+	 */
+	private volatile Map<Class<? extends ObjectType>, TypeCache> typeCaches = Collections.emptyMap();
+
+	/**
+	 * Incremented on each invalidation of objects of cached types. Used to avoid storing objects that were read
+	 * concurrently with a modification.
+	 */
+	private final AtomicLong objectInvalidations = new AtomicLong();
+
+	static class TypeCache {
+		final long timeToLive;
+		final ConcurrentMap<String, GlobalCacheObjectValue<? extends ObjectType>> objects;
+		final ConcurrentMap<QueryKey, SearchResultList<? extends PrismObject<? extends ObjectType>>> queries;      // null if not caching queries
+
+		/**
+		 * Incremented on each invalidation of query results. Used to avoid storing results of a search that
+		 * was running concurrently with a modification.
+		 */
+		final AtomicLong queryInvalidations = new AtomicLong();
+
+		TypeCache(long timeToLive, int maxSize, int maxQueryResults) {
+			this.timeToLive = timeToLive;
+			this.objects = CacheBuilder.newBuilder()
+					.maximumSize(maxSize)
+					.removalListener(evictionCounter(InternalMonitor::getGlobalObjectCacheStats))
+					.<String, GlobalCacheObjectValue<? extends ObjectType>>build()
+					.asMap();
+			if (maxQueryResults > 0) {
+				this.queries = CacheBuilder.newBuilder()
+						.maximumSize(maxQueryResults)
+						.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+						.removalListener(evictionCounter(InternalMonitor::getGlobalQueryCacheStats))
+						.<QueryKey, SearchResultList<? extends PrismObject<? extends ObjectType>>>build()
+						.asMap();
+			} else {
+				this.queries = null;
+			}
+		}
+
+		private static <K, V> RemovalListener<K, V> evictionCounter(Supplier<CachingStatistics> statistics) {
+			return notification -> {
+				if (notification.wasEvicted()) {
+					statistics.get().recordEviction();
+				}
+			};
+		}
+	}
+
+	public synchronized void applyConfiguration(CachingConfigurationType configuration) {
+		Map<Class<? extends ObjectType>, TypeCache> newCaches = new HashMap<>();
+		if (configuration != null && !Boolean.FALSE.equals(configuration.isEnabled())) {
+			int defaultTtl = configuration.getTimeToLive() != null ? configuration.getTimeToLive() : DEFAULT_TIME_TO_LIVE;
+			int defaultSize = configuration.getMaxSize() != null ? configuration.getMaxSize() : DEFAULT_MAX_SIZE;
+			int defaultQueries = configuration.getMaxQueryResults() != null ?
+					configuration.getMaxQueryResults() : DEFAULT_MAX_QUERY_RESULTS;
+			if (configuration.getObjectTypeSettings().isEmpty()) {
+				for (Class<? extends ObjectType> type : DEFAULT_TYPES) {
+					newCaches.put(type, new TypeCache(defaultTtl * 1000L, defaultSize, defaultQueries));
+				}
+			} else {
+				for (CacheObjectTypeSettingsType settings : configuration.getObjectTypeSettings()) {
+					int ttl = settings.getTimeToLive() != null ? settings.getTimeToLive() : defaultTtl;
+					int size = settings.getMaxSize() != null ? settings.getMaxSize() : defaultSize;
+					int queries = settings.getMaxQueryResults() != null ? settings.getMaxQueryResults() : defaultQueries;
+					for (QName typeName : settings.getObjectType()) {
+						Class<? extends ObjectType> type = resolveType(typeName);
+						if (type != null) {
+							newCaches.put(type, new TypeCache(ttl * 1000L, size, queries));
+						}
+					}
+				}
+			}
+		}
+		typeCaches = newCaches;
+		LOGGER.info("Applied global repository cache configuration: {} object type(s) cached", newCaches.size());
+	}
+
+	private Class<? extends ObjectType> resolveType(QName typeName) {
+		for (ObjectTypes objectType : ObjectTypes.values()) {
+			if (QNameUtil.match(objectType.getTypeQName(), typeName)) {
+				Class<? extends ObjectType> type = objectType.getClassDefinition();
+				if (TaskType.class.equals(type)) {
+					LOGGER.warn("Tasks cannot be cached in the global repository cache, ignoring {}", typeName);
+					return null;
+				}
+				return type;
+			}
+		}
+		LOGGER.warn("Unknown object type {} in caching configuration, ignoring it", typeName);
+		return null;
+	}
+
+	public boolean isAvailable() {
+		return !typeCaches.isEmpty();
+	}
+
+	public boolean supports(@NotNull Class<?> type) {
+		return typeCaches.containsKey(type);
+	}
+
+	/**
+	 * Returns cached entry for a given OID, provided it is compatible with the requested type.
+	 * The type may be abstract (e.g. AbstractRoleType), so we look into all compatible type caches.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends ObjectType> GlobalCacheObjectValue<T> getObject(@NotNull Class<T> type, @NotNull String oid) {
+		for (Map.Entry<Class<? extends ObjectType>, TypeCache> entry : typeCaches.entrySet()) {
+			if (type.isAssignableFrom(entry.getKey())) {
+				GlobalCacheObjectValue<? extends ObjectType> value = entry.getValue().objects.get(oid);
+				if (value != null) {
+					return (GlobalCacheObjectValue<T>) value;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns current object invalidation counter. It should be obtained before the object is read from the repository
+	 * and then passed to {@link #putObject(PrismObject, long)}.
+	 */
+	public long getObjectInvalidationCount() {
+		return objectInvalidations.get();
+	}
+
+	/**
+	 * Puts an immutable object into the cache, if its type is cached and no object was invalidated since
+	 * the invalidation counter was obtained.
+	 */
+	public <T extends ObjectType> void putObject(@NotNull PrismObject<T> object, long invalidationCountBeforeRead) {
+		if (object.getOid() == null || object.getCompileTimeClass() == null) {
+			return;
+		}
+		TypeCache typeCache = typeCaches.get(object.getCompileTimeClass());
+		if (typeCache != null) {
+			if (!object.isImmutable()) {
+				throw new IllegalArgumentException("Only immutable objects can be put into the global cache: " + object);
+			}
+			GlobalCacheObjectValue<T> value = new GlobalCacheObjectValue<>(object, System.currentTimeMillis() + typeCache.timeToLive);
+			typeCache.objects.put(object.getOid(), value);
+			if (objectInvalidations.get() != invalidationCountBeforeRead) {
+				// a modification came in the meanwhile; the object might be outdated
+				typeCache.objects.remove(object.getOid(), value);
+			}
+		}
+	}
+
+	/**
+	 * Marks the entry as valid for another time to live period (after successful version check).
+	 */
+	public void prolong(@NotNull GlobalCacheObjectValue<?> value) {
+		TypeCache typeCache = typeCaches.get(value.getObjectType());
+		if (typeCache != null) {
+			value.setCheckVersionTime(System.currentTimeMillis() + typeCache.timeToLive);
+		}
+	}
+
+	/**
+	 * Removes given object from the cache. The type may be abstract (e.g. when deleting an object of unknown type),
+	 * so we simply remove the OID from all type caches.
+	 *
+	 * If the type is compatible with any of cached types, the invalidation counter is incremented - before the removal,
+	 * so that a concurrent putObject either sees the new counter value or has its object removed here.
+	 */
+	public void removeObject(@NotNull Class<?> type, @NotNull String oid) {
+		Map<Class<? extends ObjectType>, TypeCache> caches = typeCaches;
+		for (Class<? extends ObjectType> cachedType : caches.keySet()) {
+			if (cachedType.isAssignableFrom(type) || type.isAssignableFrom(cachedType)) {
+				objectInvalidations.incrementAndGet();
+				break;
+			}
+		}
+		for (TypeCache typeCache : caches.values()) {
+			typeCache.objects.remove(oid);
+		}
+	}
+
+	public boolean supportsQueries(@NotNull Class<?> type) {
+		TypeCache typeCache = typeCaches.get(type);
+		return typeCache != null && typeCache.queries != null;
+	}
+
+	/**
+	 * Returns current query invalidation counter for given type. It should be obtained before the search
+	 * is executed and then passed to {@link #putQueryResult(QueryKey, SearchResultList, long)}.
+	 */
+	public long getQueryInvalidationCount(@NotNull Class<?> type) {
+		TypeCache typeCache = typeCaches.get(type);
+		return typeCache != null ? typeCache.queryInvalidations.get() : 0L;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends ObjectType> SearchResultList<PrismObject<T>> getQueryResult(@NotNull QueryKey key) {
+		TypeCache typeCache = typeCaches.get(key.getType());
+		if (typeCache == null || typeCache.queries == null) {
+			return null;
+		}
+		return (SearchResultList<PrismObject<T>>) typeCache.queries.get(key);
+	}
+
+	/**
+	 * Stores (immutable) search result, unless query results of the type were invalidated since
+	 * the invalidation counter was obtained.
+	 */
+	public <T extends ObjectType> void putQueryResult(@NotNull QueryKey key, @NotNull SearchResultList<PrismObject<T>> result,
+			long invalidationCountBeforeSearch) {
+		TypeCache typeCache = typeCaches.get(key.getType());
+		if (typeCache == null || typeCache.queries == null) {
+			return;
+		}
+		for (PrismObject<T> object : result) {
+			if (!object.isImmutable()) {
+				throw new IllegalArgumentException("Only immutable objects can be put into the global cache: " + object);
+			}
+		}
+		typeCache.queries.put(key, result);
+		if (typeCache.queryInvalidations.get() != invalidationCountBeforeSearch) {
+			// a modification came in the meanwhile; the result might be outdated
+			typeCache.queries.remove(key);
+		}
+	}
+
+	/**
+	 * Invalidates search results that could be influenced by a change of an object of given type.
+	 * These are results of searches over the type itself, its supertypes and its subtypes.
+	 * (For abstract types like ObjectType this means all results.)
+	 *
+	 * A change of an org can change the org closure, so results of org and hierarchy queries over any type
+	 * may become outdated. Therefore all search results are invalidated in that case.
+	 */
+	public void invalidateQueryResults(@NotNull Class<?> changedType) {
+		boolean orgChange = OrgType.class.isAssignableFrom(changedType) || changedType.isAssignableFrom(OrgType.class);
+		typeCaches.forEach((type, typeCache) -> {
+			if (typeCache.queries != null
+					&& (orgChange || type.isAssignableFrom(changedType) || changedType.isAssignableFrom(type))) {
+				typeCache.queryInvalidations.incrementAndGet();
+				typeCache.queries.clear();
+			}
+		});
+	}
+
+	public void clear() {
+		objectInvalidations.incrementAndGet();
+		for (TypeCache typeCache : typeCaches.values()) {
+			typeCache.objects.clear();
+			if (typeCache.queries != null) {
+				typeCache.queryInvalidations.incrementAndGet();
+				typeCache.queries.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (TypeCache typeCache : typeCaches.values()) {
+			size += typeCache.objects.size();
+		}
+		return size;
+	}
+
+	public String description() {
+		StringBuilder sb = new StringBuilder("Global cache: ");
+		typeCaches.forEach((type, typeCache) ->
+				sb.append(type.getSimpleName()).append("=").append(typeCache.objects.size())
+						.append("/").append(typeCache.queries != null ? typeCache.queries.size() : 0).append(" "));
+		return sb.toString().trim();
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Entry in the global cache: an immutable object plus the time when its version has to be re-checked.
+ */
+public class GlobalCacheObjectValue<T extends ObjectType> {
+
+	@NotNull private final PrismObject<T> object;
+	private volatile long checkVersionTime;
+
+	GlobalCacheObjectValue(@NotNull PrismObject<T> object, long checkVersionTime) {
+		this.object = object;
+		this.checkVersionTime = checkVersionTime;
+	}
+
+	@NotNull
+	public PrismObject<T> getObject() {
+		return object;
+	}
+
+	public String getObjectOid() {
+		return object.getOid();
+	}
+
+	public Class<T> getObjectType() {
+		return object.getCompileTimeClass();
+	}
+
+	public String getObjectVersion() {
+		return object.getVersion();
+	}
+
+	public boolean isVersionCheckNeeded() {
+		return System.currentTimeMillis() >= checkVersionTime;
+	}
+
+	void setCheckVersionTime(long checkVersionTime) {
+		this.checkVersionTime = checkVersionTime;
+	}
+
+	@Override
+	public String toString() {
+		return "GlobalCacheObjectValue{" + object + ", checkVersionTime=" + checkVersionTime + "}";
+	}
+}
@@ -23,8 +23,10 @@ import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.api.*;
 import com.evolveum.midpoint.repo.api.query.ObjectFilterExpressionEvaluator;
 import com.evolveum.midpoint.schema.*;
+import com.evolveum.midpoint.schema.internals.InternalMonitor;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.util.DiagnosticContextHolder;
+import com.evolveum.midpoint.schema.util.SystemConfigurationTypeUtil;
 import com.evolveum.midpoint.util.exception.CommunicationException;
 import com.evolveum.midpoint.util.exception.ConfigurationException;
 import com.evolveum.midpoint.util.exception.ExpressionEvaluationException;
@@ -40,13 +42,21 @@ import org.apache.commons.lang.Validate;
 import org.jetbrains.annotations.NotNull;
 
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
  * Read-through write-through per-session repository cache.
  *
+ * Besides the per-session (thread-local) cache there is an optional node-wide {@link GlobalCache}
+ * that keeps objects of rarely changing types across sessions. It is configured via system configuration
+ * (internals/caching).
+ *
  * TODO doc
  * TODO logging perf measurements
  *
@@ -67,6 +77,8 @@ public class RepositoryCache implements RepositoryService {
 
 	private PrismContext prismContext;
 
+	private final GlobalCache globalCache = new GlobalCache();
+
 	public RepositoryCache() {
     }
 
@@ -143,6 +155,14 @@ public class RepositoryCache implements RepositoryService {
 			}
 			log("Cache: MISS {} ({})", oid, type.getSimpleName());
 		}
+		if (globalCache.isAvailable()) {
+			PrismObject<T> globalObject = getObjectFromGlobalCache(type, oid, parentResult);
+			if (globalObject != null) {
+				cacheObject(cache, globalObject, true);
+				return readOnly ? globalObject : globalObject.clone();
+			}
+		}
+		long globalInvalidationCount = globalCache.getObjectInvalidationCount();
 		PrismObject<T> object;
 		Long startTime = repoOpStart();
 		try {
@@ -151,9 +171,131 @@ public class RepositoryCache implements RepositoryService {
 			repoOpEnd(startTime);
 		}
 		cacheObject(cache, object, readOnly);
+		cacheObjectGlobally(object, readOnly, globalInvalidationCount);
 		return object;
 	}
 
+	/**
+	 * Objects found in the local or global cache are served from there; only the rest is fetched from the repository
+	 * (in one call).
+	 */
+	@NotNull
+	@Override
+	public <T extends ObjectType> List<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+			Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws SchemaException {
+		if (!isCacheable(type) || !nullOrHarmlessOptions(options)) {
+			log("Cache: PASS {} ({})", oids, type.getSimpleName());
+			Long startTime = repoOpStart();
+			try {
+				return repository.getObjects(type, oids, options, parentResult);
+			} finally {
+				repoOpEnd(startTime);
+			}
+		}
+		Cache cache = getCache();
+		boolean readOnly = GetOperationOptions.isReadOnly(SelectorOptions.findRootOptions(options));
+		Collection<String> uniqueOids = new LinkedHashSet<>(oids);
+		Map<String, PrismObject<T>> objectsByOid = new HashMap<>();
+		List<String> oidsToFetch = new ArrayList<>();
+		for (String oid : uniqueOids) {
+			PrismObject<T> object = cache != null ? (PrismObject) cache.getObject(oid) : null;
+			if (object != null) {
+				log("Cache: HIT {} ({})", oid, type.getSimpleName());
+				objectsByOid.put(oid, readOnly ? object : object.clone());
+				continue;
+			}
+			if (globalCache.isAvailable()) {
+				PrismObject<T> globalObject;
+				try {
+					globalObject = getObjectFromGlobalCache(type, oid, parentResult);
+				} catch (ObjectNotFoundException e) {
+					continue;           // the object no longer exists, so it is simply not returned
+				}
+				if (globalObject != null) {
+					cacheObject(cache, globalObject, true);
+					objectsByOid.put(oid, readOnly ? globalObject : globalObject.clone());
+					continue;
+				}
+			}
+			oidsToFetch.add(oid);
+		}
+		if (!oidsToFetch.isEmpty()) {
+			log("Cache: {} {} ({})", cache != null ? "MISS" : "NULL", oidsToFetch, type.getSimpleName());
+			long globalInvalidationCount = globalCache.getObjectInvalidationCount();
+			List<PrismObject<T>> fetchedObjects;
+			Long startTime = repoOpStart();
+			try {
+				fetchedObjects = repository.getObjects(type, oidsToFetch, null, parentResult);
+			} finally {
+				repoOpEnd(startTime);
+			}
+			for (PrismObject<T> object : fetchedObjects) {
+				if (object.asObjectable().getFetchResult() == null) {          // unreadable objects are not cached
+					cacheObject(cache, object, readOnly);
+					cacheObjectGlobally(object, readOnly, globalInvalidationCount);
+				}
+				objectsByOid.put(object.getOid(), object);
+			}
+		}
+		List<PrismObject<T>> rv = new ArrayList<>(objectsByOid.size());
+		for (String oid : uniqueOids) {
+			PrismObject<T> object = objectsByOid.get(oid);
+			if (object != null) {
+				rv.add(object);
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * Returns (immutable) object from the global cache, checking its version in the repository if the entry is too old.
+	 * Returns null if the object is not there or if it is outdated.
+	 */
+	private <T extends ObjectType> PrismObject<T> getObjectFromGlobalCache(Class<T> type, String oid,
+			OperationResult parentResult) throws ObjectNotFoundException, SchemaException {
+		InternalMonitor.getGlobalObjectCacheStats().recordRequest();
+		GlobalCacheObjectValue<T> value = globalCache.getObject(type, oid);
+		if (value == null) {
+			InternalMonitor.getGlobalObjectCacheStats().recordMiss();
+			log("Cache: Global MISS {} ({})", oid, type.getSimpleName());
+			return null;
+		}
+		if (value.isVersionCheckNeeded()) {
+			String currentVersion;
+			Long startTime = repoOpStart();
+			try {
+				currentVersion = repository.getVersion(type, oid, parentResult);
+			} catch (ObjectNotFoundException e) {
+				globalCache.removeObject(type, oid);
+				throw e;
+			} finally {
+				repoOpEnd(startTime);
+			}
+			if (!currentVersion.equals(value.getObjectVersion())) {
+				InternalMonitor.getGlobalObjectCacheStats().recordMiss();
+				log("Cache: Global MISS (outdated: {} -> {}) {} ({})", value.getObjectVersion(), currentVersion, oid,
+						type.getSimpleName());
+				globalCache.removeObject(type, oid);
+				return null;
+			}
+			globalCache.prolong(value);
+			log("Cache: Global HIT (version checked) {} ({})", oid, type.getSimpleName());
+		} else {
+			log("Cache: Global HIT {} ({})", oid, type.getSimpleName());
+		}
+		InternalMonitor.getGlobalObjectCacheStats().recordHit();
+		return value.getObject();
+	}
+
+	private <T extends ObjectType> void cacheObjectGlobally(PrismObject<T> object, boolean readOnly,
+			long invalidationCountBeforeRead) {
+		if (globalCache.supports(object.getCompileTimeClass())) {
+			// in the readOnly case the object was already made immutable by cacheObject(..) call
+			globalCache.putObject(readOnly && object.isImmutable() ? object : object.createImmutableClone(),
+					invalidationCountBeforeRead);
+		}
+	}
+
 	private Long repoOpStart() {
 		RepositoryPerformanceMonitor monitor = DiagnosticContextHolder.get(RepositoryPerformanceMonitor.class);
 		if (monitor == null) {
@@ -199,6 +341,8 @@ public class RepositoryCache implements RepositoryService {
 			cache.removeObject(oid);
 			cache.clearQueryResults(object.getCompileTimeClass());
 		}
+		globalCache.removeObject(object.getCompileTimeClass(), oid);
+		globalCache.invalidateQueryResults(object.getCompileTimeClass());
 		return oid;
 	}
 
@@ -217,10 +361,12 @@ public class RepositoryCache implements RepositoryService {
 		}
 		Cache cache = getCache();
 		boolean readOnly = GetOperationOptions.isReadOnly(SelectorOptions.findRootOptions(options));
+		boolean globalQueryCaching = globalCache.supportsQueries(type);
+		QueryKey queryKey = cache != null || globalQueryCaching ? Cache.createQueryKey(type, query, prismContext) : null;
 		if (cache == null) {
 			log("Cache: NULL ({})", type.getSimpleName());
 		} else {
-			SearchResultList queryResult = cache.getQueryResult(type, query, prismContext);
+			SearchResultList queryResult = cache.getQueryResult(queryKey);
 			if (queryResult != null) {
 				if (readOnly) {
 					log("Cache: HIT {} ({})", query, type.getSimpleName());
@@ -232,6 +378,20 @@ public class RepositoryCache implements RepositoryService {
 			}
 			log("Cache: MISS {} ({})", query, type.getSimpleName());
 		}
+		long globalInvalidationCount = 0;
+		long globalObjectInvalidationCount = globalCache.getObjectInvalidationCount();
+		if (globalQueryCaching && queryKey != null) {
+			InternalMonitor.getGlobalQueryCacheStats().recordRequest();
+			SearchResultList<PrismObject<T>> globalResult = globalCache.getQueryResult(queryKey);
+			if (globalResult != null) {
+				InternalMonitor.getGlobalQueryCacheStats().recordHit();
+				log("Cache: Global HIT {} ({})", query, type.getSimpleName());
+				return readOnly ? globalResult : globalResult.clone();
+			}
+			InternalMonitor.getGlobalQueryCacheStats().recordMiss();
+			log("Cache: Global MISS {} ({})", query, type.getSimpleName());
+			globalInvalidationCount = globalCache.getQueryInvalidationCount(type);
+		}
 
 		// Cannot satisfy from cache, pass down to repository
 		SearchResultList<PrismObject<T>> objects;
@@ -246,11 +406,26 @@ public class RepositoryCache implements RepositoryService {
 				cacheObject(cache, object, readOnly);
 			}
 			// TODO cloning before storing into cache?
-			cache.putQueryResult(type, query, objects, prismContext);
+			cache.putQueryResult(queryKey, objects);
+		}
+		if (globalQueryCaching && queryKey != null) {
+			cacheQueryResultGlobally(queryKey, objects, globalInvalidationCount, globalObjectInvalidationCount);
 		}
 		return objects;
 	}
 
+	private <T extends ObjectType> void cacheQueryResultGlobally(QueryKey queryKey, SearchResultList<PrismObject<T>> objects,
+			long invalidationCountBeforeSearch, long objectInvalidationCountBeforeSearch) {
+		List<PrismObject<T>> immutableObjects = new ArrayList<>(objects.size());
+		for (PrismObject<T> object : objects) {
+			PrismObject<T> immutableObject = object.isImmutable() ? object : object.createImmutableClone();
+			immutableObjects.add(immutableObject);
+			globalCache.putObject(immutableObject, objectInvalidationCountBeforeSearch);
+		}
+		globalCache.putQueryResult(queryKey, new SearchResultList<>(immutableObjects, objects.getMetadata()),
+				invalidationCountBeforeSearch);
+	}
+
 	@Override
 	public <T extends Containerable> SearchResultList<T> searchContainers(Class<T> type, ObjectQuery query, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult parentResult) throws SchemaException {
 		Long startTime = repoOpStart();
@@ -375,6 +550,8 @@ public class RepositoryCache implements RepositoryService {
 			cache.removeObject(oid);
 			cache.clearQueryResults(type);
 		}
+		globalCache.removeObject(type, oid);
+		globalCache.invalidateQueryResults(type);
 	}
 
 	@Override
@@ -474,13 +651,33 @@ public class RepositoryCache implements RepositoryService {
 			}
 			log("Cache: MISS {} ({})", oid, type.getSimpleName());
 		}
+		GlobalCacheObjectValue<T> globalValue = globalCache.isAvailable() ? globalCache.getObject(type, oid) : null;
+		if (globalValue != null && !globalValue.isVersionCheckNeeded()) {
+			log("Cache: Global HIT {} ({})", oid, type.getSimpleName());
+			String version = globalValue.getObjectVersion();
+			cacheObjectVersion(cache, oid, version);
+			return version;
+		}
 		String version;
 		Long startTime = repoOpStart();
 		try {
 			version = repository.getVersion(type, oid, parentResult);
+		} catch (ObjectNotFoundException e) {
+			if (globalValue != null) {
+				globalCache.removeObject(type, oid);
+			}
+			throw e;
 		} finally {
 			repoOpEnd(startTime);
 		}
+		if (globalValue != null) {
+			// we have just checked the version, so let's use this information
+			if (version.equals(globalValue.getObjectVersion())) {
+				globalCache.prolong(globalValue);
+			} else {
+				globalCache.removeObject(type, oid);
+			}
+		}
 		cacheObjectVersion(cache, oid, version);
 		return version;
 	}
@@ -657,9 +854,26 @@ public class RepositoryCache implements RepositoryService {
 		}
 	}
 
+	@Override
+	public void applyCachingConfiguration(CachingConfigurationType cachingConfiguration) {
+		globalCache.applyConfiguration(cachingConfiguration);
+	}
+
 	@Override
 	public void postInit(OperationResult result) throws SchemaException {
 		repository.postInit(result);
+
+		SystemConfigurationType systemConfiguration;
+		try {
+			systemConfiguration = repository.getObject(SystemConfigurationType.class,
+					SystemObjectsType.SYSTEM_CONFIGURATION.value(), null, result).asObjectable();
+		} catch (ObjectNotFoundException e) {
+			// ok, no problem e.g. for tests or initial startup
+			result.muteLastSubresultError();
+			LOGGER.debug("System configuration not found, global cache configuration not applied.");
+			return;
+		}
+		applyCachingConfiguration(SystemConfigurationTypeUtil.getCachingConfiguration(systemConfiguration));
 	}
 
 	@Override
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.cache;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.api.RepositoryService;
+import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
+import com.evolveum.midpoint.schema.SearchResultList;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.CachingConfigurationType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OrgType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+/**
+ * Tests the node-wide (global) part of the repository cache, using a fake repository underneath.
+ * No thread-local cache is entered, so all hits come from the global cache.
+ */
+public class TestRepositoryCache {
+
+	private static final String ROLE_OID = "c0c010c0-d34d-b33f-f00d-111111111111";
+	private static final String ORG_OID = "c0c010c0-d34d-b33f-f00d-222222222222";
+
+	private PrismContext prismContext;
+	private FakeRepository fakeRepository;
+	private RepositoryCache repositoryCache;
+
+	@BeforeClass
+	public void setup() throws Exception {
+		prismContext = MidPointPrismContextFactory.FACTORY.createInitializedPrismContext();
+	}
+
+	@BeforeMethod
+	public void createCache() {
+		fakeRepository = new FakeRepository();
+		fakeRepository.store(createRole("1", "first"));
+		repositoryCache = new RepositoryCache();
+		repositoryCache.setRepository(fakeRepository.createProxy(), prismContext);
+		repositoryCache.applyCachingConfiguration(new CachingConfigurationType());      // default types, including roles
+	}
+
+	@Test
+	public void test100GetObjectMissAndHit() throws Exception {
+		OperationResult result = new OperationResult("test100GetObjectMissAndHit");
+
+		PrismObject<RoleType> first = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+		PrismObject<RoleType> second = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+		assertEquals("Wrong # of repository reads", 1, fakeRepository.reads);
+		assertEquals("Wrong description (first)", "first", first.asObjectable().getDescription());
+		assertEquals("Wrong description (second)", "first", second.asObjectable().getDescription());
+	}
+
+	@Test
+	public void test110ModificationInvalidatesObject() throws Exception {
+		OperationResult result = new OperationResult("test110ModificationInvalidatesObject");
+		repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+		fakeRepository.store(createRole("2", "second"));
+		repositoryCache.modifyObject(RoleType.class, ROLE_OID, Collections.emptyList(), result);
+		PrismObject<RoleType> role = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+		assertEquals("Wrong # of repository reads", 2, fakeRepository.reads);
+		assertEquals("Stale object returned", "second", role.asObjectable().getDescription());
+	}
+
+	/**
+	 * The object is modified (and the cache entry invalidated) after it was read from the repository but before
+	 * it was put into the global cache. The old version must not be stored.
+	 */
+	@Test
+	public void test120ModificationDuringRead() throws Exception {
+		OperationResult result = new OperationResult("test120ModificationDuringRead");
+		fakeRepository.afterRead = () -> modifyConcurrently(result);
+
+		PrismObject<RoleType> first = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+		PrismObject<RoleType> second = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+		assertEquals("Wrong description (first)", "first", first.asObjectable().getDescription());
+		assertEquals("Stale object returned", "second", second.asObjectable().getDescription());
+		assertEquals("Wrong # of repository reads", 2, fakeRepository.reads);
+	}
+
+	@Test
+	public void test200SearchMissAndHit() throws Exception {
+		OperationResult result = new OperationResult("test200SearchMissAndHit");
+
+		SearchResultList<PrismObject<RoleType>> first = repositoryCache.searchObjects(RoleType.class, null, null, result);
+		SearchResultList<PrismObject<RoleType>> second = repositoryCache.searchObjects(RoleType.class, null, null, result);
+		PrismObject<RoleType> role = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+
+		assertEquals("Wrong # of repository reads", 1, fakeRepository.reads);
+		assertEquals("Wrong # of objects found (first)", 1, first.size());
+		assertEquals("Wrong # of objects found (second)", 1, second.size());
+		assertEquals("Wrong description", "first", role.asObjectable().getDescription());
+	}
+
+	/**
+	 * The object is modified while the search is running. Neither the search result nor the object found
+	 * must be stored in the global cache.
+	 */
+	@Test
+	public void test210ModificationDuringSearch() throws Exception {
+		OperationResult result = new OperationResult("test210ModificationDuringSearch");
+		fakeRepository.afterRead = () -> modifyConcurrently(result);
+
+		SearchResultList<PrismObject<RoleType>> found = repositoryCache.searchObjects(RoleType.class, null, null, result);
+		PrismObject<RoleType> role = repositoryCache.getObject(RoleType.class, ROLE_OID, null, result);
+		SearchResultList<PrismObject<RoleType>> foundAgain = repositoryCache.searchObjects(RoleType.class, null, null, result);
+
+		assertEquals("Wrong description (search)", "first", found.get(0).asObjectable().getDescription());
+		assertEquals("Stale object returned", "second", role.asObjectable().getDescription());
+		assertEquals("Stale search result returned", "second", foundAgain.get(0).asObjectable().getDescription());
+		assertEquals("Wrong # of repository reads", 3, fakeRepository.reads);
+	}
+
+	/**
+	 * A change of an org can change the org closure, so cached results of searches over other types
+	 * (e.g. roles in an org) must be invalidated as well.
+	 */
+	@Test
+	public void test220OrgModificationInvalidatesSearches() throws Exception {
+		OperationResult result = new OperationResult("test220OrgModificationInvalidatesSearches");
+		repositoryCache.searchObjects(RoleType.class, null, null, result);
+
+		repositoryCache.modifyObject(OrgType.class, ORG_OID, Collections.emptyList(), result);
+		repositoryCache.searchObjects(RoleType.class, null, null, result);
+
+		assertEquals("Wrong # of repository reads", 2, fakeRepository.reads);
+	}
+
+	private void modifyConcurrently(OperationResult result) {
+		fakeRepository.afterRead = null;
+		fakeRepository.store(createRole("2", "second"));
+		try {
+			repositoryCache.modifyObject(RoleType.class, ROLE_OID, Collections.emptyList(), result);
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private PrismObject<RoleType> createRole(String version, String description) {
+		RoleType role = new RoleType(prismContext);
+		role.setOid(ROLE_OID);
+		role.setVersion(version);
+		role.setDescription(description);
+		return role.asPrismObject();
+	}
+
+	/**
+	 * Minimal in-memory repository. Only methods used by the tests are implemented.
+	 */
+	private static class FakeRepository {
+
+		private final Map<String, PrismObject<? extends ObjectType>> objects = new HashMap<>();
+		private int reads;
+		private Runnable afterRead;
+
+		private void store(PrismObject<? extends ObjectType> object) {
+			objects.put(object.getOid(), object);
+		}
+
+		private RepositoryService createProxy() {
+			return (RepositoryService) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { RepositoryService.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+							case "getObject":
+								return read((String) args[1]);
+							case "getVersion":
+								return read((String) args[1]).getVersion();
+							case "searchObjects":
+								List<PrismObject<? extends ObjectType>> found = new ArrayList<>();
+								for (String oid : objects.keySet()) {
+									found.add(read(oid));
+								}
+								return new SearchResultList<>(found);
+							case "modifyObject":
+								return null;
+							default:
+								throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+
+		private PrismObject<? extends ObjectType> read(String oid) throws ObjectNotFoundException {
+			PrismObject<? extends ObjectType> object = objects.get(oid);
+			if (object == null) {
+				throw new ObjectNotFoundException("Object " + oid + " not found");
+			}
+			reads++;
+			PrismObject<? extends ObjectType> rv = object.clone();
+			if (afterRead != null) {
+				afterRead.run();
+			}
+			return rv;
+		}
+	}
+}
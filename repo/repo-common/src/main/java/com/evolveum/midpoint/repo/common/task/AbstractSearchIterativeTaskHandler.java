@@ -20,6 +20,7 @@ import static com.evolveum.midpoint.prism.PrismProperty.getRealValue;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
@@ -30,7 +31,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.marshaller.QueryConvertor;
 import com.evolveum.midpoint.prism.query.FilterUtils;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.query.QueryJaxbConvertor;
 import com.evolveum.midpoint.prism.util.CloneUtil;
@@ -42,6 +45,7 @@ import com.evolveum.midpoint.schema.constants.ObjectTypes;
 import com.evolveum.midpoint.schema.constants.SchemaConstants;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.schema.util.ObjectQueryUtil;
 import com.evolveum.midpoint.task.api.StatisticsCollectionStrategy;
 import com.evolveum.midpoint.task.api.Task;
 import com.evolveum.midpoint.task.api.TaskHandler;
@@ -61,6 +65,7 @@ import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.IterationMethodType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectReferenceType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.ObjectType;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.ShadowType;
 import com.evolveum.prism.xml.ns._public.query_3.QueryType;
 import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
 
@@ -179,6 +184,11 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 	@Override
     public TaskRunResult run(Task coordinatorTask) {
 	    LOGGER.trace("{} run starting (coordinator task {})", taskName, coordinatorTask);
+		if (coordinatorTask.isPersistent() && PartitionedTaskCoordinator.isCoordinator(coordinatorTask)) {
+			// the work is done by worker tasks, each processing one partition
+			return new PartitionedTaskCoordinator(taskName, taskOperationPrefix, taskManager, coordinatorTask).run();
+		}
+
 		OperationResult opResult = new OperationResult(taskOperationPrefix + ".run");
 		opResult.setStatus(OperationResultStatus.IN_PROGRESS);
 		TaskRunResult runResult = new TaskRunResult();
@@ -231,6 +241,8 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 			return runResult;
 		}
 
+		Class<? extends ObjectType> type = getType(coordinatorTask);
+
 		try {
 			
 			query = preProcessQuery(query, coordinatorTask, opResult);
@@ -241,11 +253,17 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 			return runResult;
 		}
 
-		Class<? extends ObjectType> type = getType(coordinatorTask);
-
         Collection<SelectorOptions<GetOperationOptions>> queryOptions = createQueryOptions(resultHandler, runResult, coordinatorTask, opResult);
         boolean useRepository = useRepositoryDirectly(resultHandler, runResult, coordinatorTask, opResult);
 
+		try {
+			query = addPartitionFilter(query, type, useRepository, coordinatorTask);
+		} catch (SchemaException e) {
+			logErrorAndSetResult(runResult, resultHandler, "Error while restricting search filter to the partition", e,
+					OperationResultStatus.FATAL_ERROR, TaskRunResultStatus.PERMANENT_ERROR);
+			return runResult;
+		}
+
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("{}: searching {} with options {}, using query:\n{}", taskName, type, queryOptions, query.debugDump());
         }
@@ -402,6 +420,40 @@ public abstract class AbstractSearchIterativeTaskHandler<O extends ObjectType, H
 	protected void finish(H handler, TaskRunResult runResult, Task task, OperationResult opResult) throws SchemaException {
 	}
 
+	/**
+	 * For worker tasks: restricts the query to the partition, either by the explicit partition filter or by OID range.
+	 * OID ranges cannot be used when searching for objects on a resource, as these are not identified by OIDs there.
+	 */
+	private ObjectQuery addPartitionFilter(ObjectQuery query, Class<? extends ObjectType> type, boolean useRepository,
+			Task task) throws SchemaException {
+		if (!PartitionedTaskCoordinator.isWorker(task)) {
+			return query;
+		}
+		List<SearchFilterType> partitionFilters = PartitionedTaskCoordinator.getPartitionFilters(task);
+		ObjectFilter partitionFilter;
+		if (!partitionFilters.isEmpty()) {
+			partitionFilter = QueryConvertor.parseFilter(partitionFilters.get(0), type, prismContext);
+		} else if (!useRepository && ShadowType.class.isAssignableFrom(type)) {
+			throw new SchemaException("Resource objects cannot be partitioned by OID; please specify partitionFilter values instead");
+		} else {
+			Integer partitionIndex = getRealValue(task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_PARTITION_INDEX));
+			Integer partitionCount = getRealValue(task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_PARTITION_COUNT));
+			if (partitionCount == null) {
+				throw new SchemaException("No partition count in worker task " + task);
+			}
+			partitionFilter = PartitionedTaskCoordinator.createOidRangeFilter(partitionIndex, partitionCount, prismContext);
+			if (partitionFilter == null) {
+				return query;
+			}
+		}
+		ObjectQuery partitionQuery = query.clone();
+		partitionQuery.setFilter(ObjectQueryUtil.filterAnd(query.getFilter(), partitionFilter));
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("{}: query restricted to the partition:\n{}", taskName, partitionQuery.debugDump(1));
+		}
+		return partitionQuery;
+	}
+
 	private H getHandler(Task task) {
         return handlers.get(task.getOid());
     }
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.common.task;
+
+import com.evolveum.midpoint.prism.Item;
+import com.evolveum.midpoint.prism.PrismConstants;
+import com.evolveum.midpoint.prism.PrismContainer;
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.prism.PrismPropertyDefinition;
+import com.evolveum.midpoint.prism.PrismPropertyDefinitionImpl;
+import com.evolveum.midpoint.prism.path.ItemPath;
+import com.evolveum.midpoint.prism.query.AndFilter;
+import com.evolveum.midpoint.prism.query.GreaterFilter;
+import com.evolveum.midpoint.prism.query.LessFilter;
+import com.evolveum.midpoint.prism.query.ObjectFilter;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.schema.result.OperationResultStatus;
+import com.evolveum.midpoint.task.api.*;
+import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
+import com.evolveum.midpoint.util.DOMUtil;
+import com.evolveum.midpoint.util.QNameUtil;
+import com.evolveum.midpoint.util.exception.ObjectAlreadyExistsException;
+import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
+import com.evolveum.midpoint.util.exception.SchemaException;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultStatusType;
+import com.evolveum.prism.xml.ns._public.query_3.SearchFilterType;
+
+import java.util.*;
+
+import static com.evolveum.midpoint.prism.PrismProperty.getRealValue;
+
+/**
+ * Executes a run of a search-iterative task as a coordinator of persistent worker tasks, each of them processing
+ * one partition of the objects. Workers are subtasks of the coordinator with loose binding, so they can be picked up
+ * by any node in the cluster. They execute the same handler as the coordinator, having partitionIndex and partitionCount
+ * (and possibly partitionFilter) set in their extension.
+ *
+ * Partitions without explicit filter are ranges of OIDs, see {@link #createOidRangeFilter(int, int, PrismContext)}.
+ * They are part of the query, so each worker reads only objects of its own partition.
+ *
+ * The coordinator waits for the workers, aggregating their progress, and re-runs each partition that failed (i.e. whose
+ * worker was closed with a fatal error) up to {@link #MAX_ATTEMPTS} times. If the coordinator is stopped (e.g. suspended,
+ * or its node goes down), the workers continue; when the coordinator runs again, it waits for the existing workers
+ * instead of creating new ones.
+ */
+class PartitionedTaskCoordinator {
+
+	private static final transient Trace LOGGER = TraceManager.getTrace(PartitionedTaskCoordinator.class);
+
+	private static final long POLL_INTERVAL = 2000L;
+	private static final int MAX_ATTEMPTS = 3;
+
+	// OID ranges are delimited by 4-digit hexadecimal prefixes
+	private static final int OID_PREFIX_VALUES = 0x10000;
+
+	private final String taskName;
+	private final String taskOperationPrefix;
+	private final TaskManager taskManager;
+	private final Task coordinatorTask;
+
+	private final Map<String, Integer> attempts = new HashMap<>();        // worker task OID -> number of runs
+
+	PartitionedTaskCoordinator(String taskName, String taskOperationPrefix, TaskManager taskManager, Task coordinatorTask) {
+		this.taskName = taskName;
+		this.taskOperationPrefix = taskOperationPrefix;
+		this.taskManager = taskManager;
+		this.coordinatorTask = coordinatorTask;
+	}
+
+	static boolean isCoordinator(Task task) {
+		if (isWorker(task)) {
+			return false;
+		}
+		Integer workerTasks = getRealValue(task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_TASKS));
+		return !getPartitionFilters(task).isEmpty() || workerTasks != null && workerTasks > 0;
+	}
+
+	static boolean isWorker(Task task) {
+		return getRealValue(task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_PARTITION_INDEX)) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	static List<SearchFilterType> getPartitionFilters(Task task) {
+		PrismProperty<SearchFilterType> property = task.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_PARTITION_FILTER);
+		return property != null ? new ArrayList<>(property.getRealValues()) : Collections.emptyList();
+	}
+
+	/**
+	 * Returns the lowest OID (inclusive) of the partition, or null if the partition has no lower bound.
+	 * The upper bound (exclusive) is the lowest OID of the following partition.
+	 *
+	 * Boundaries divide the space of (random) UUIDs into partitions of the same size. OIDs of other forms
+	 * still fall into exactly one partition, although the partitions need not be balanced for them.
+	 */
+	static String getOidBoundary(int partitionIndex, int partitionCount) {
+		if (partitionIndex <= 0 || partitionIndex >= partitionCount) {
+			return null;
+		}
+		return String.format("%04x", (int) ((long) partitionIndex * OID_PREFIX_VALUES / partitionCount));
+	}
+
+	/**
+	 * Returns the filter selecting objects of the given partition by their OID, or null if no restriction is needed.
+	 */
+	static ObjectFilter createOidRangeFilter(int partitionIndex, int partitionCount, PrismContext prismContext) {
+		String from = getOidBoundary(partitionIndex, partitionCount);
+		String to = getOidBoundary(partitionIndex + 1, partitionCount);
+		ItemPath oidPath = new ItemPath(PrismConstants.T_ID);
+		PrismPropertyDefinition<String> oidDefinition = new PrismPropertyDefinitionImpl<>(PrismConstants.T_ID,
+				DOMUtil.XSD_STRING, prismContext);
+		List<ObjectFilter> conditions = new ArrayList<>();
+		if (from != null) {
+			conditions.add(GreaterFilter.createGreater(oidPath, oidDefinition, true, prismContext, from));
+		}
+		if (to != null) {
+			conditions.add(LessFilter.createLess(oidPath, oidDefinition, prismContext, to, false));
+		}
+		if (conditions.isEmpty()) {
+			return null;
+		} else if (conditions.size() == 1) {
+			return conditions.get(0);
+		} else {
+			return AndFilter.createAnd(conditions);
+		}
+	}
+
+	TaskRunResult run() {
+		LOGGER.trace("{} coordinator run starting (task {})", taskName, coordinatorTask);
+		OperationResult opResult = new OperationResult(taskOperationPrefix + ".coordinate");
+		opResult.setStatus(OperationResultStatus.IN_PROGRESS);
+		TaskRunResult runResult = new TaskRunResult();
+		runResult.setOperationResult(opResult);
+
+		List<Task> workers;
+		try {
+			workers = getWorkers(opResult);
+			if (workers.isEmpty()) {
+				createWorkers(opResult);
+			} else if (allClosed(workers)) {
+				LOGGER.info("{}: re-running {} existing worker task(s) of {}", taskName, workers.size(), coordinatorTask);
+				for (Task worker : workers) {
+					startWorker(worker, opResult);
+				}
+			} else {
+				LOGGER.info("{}: continuing with {} existing worker task(s) of {}", taskName, workers.size(), coordinatorTask);
+			}
+			workers = waitForWorkers(opResult);
+		} catch (SchemaException | ObjectNotFoundException | ObjectAlreadyExistsException | RuntimeException e) {
+			LOGGER.error("{}: Couldn't coordinate worker tasks: {}", taskName, e.getMessage(), e);
+			opResult.recordFatalError("Couldn't coordinate worker tasks: " + e.getMessage(), e);
+			runResult.setRunResultStatus(TaskRunResultStatus.PERMANENT_ERROR);
+			return runResult;
+		}
+
+		runResult.setProgress(coordinatorTask.getProgress());
+		if (workers == null) {
+			opResult.recordWarning("Interrupted; worker tasks continue running");
+			runResult.setRunResultStatus(TaskRunResultStatus.INTERRUPTED);
+			return runResult;
+		}
+
+		int failed = 0;
+		for (Task worker : workers) {
+			if (worker.getResultStatus() == OperationResultStatusType.FATAL_ERROR) {
+				failed++;
+			}
+		}
+		if (failed > 0) {
+			opResult.recordPartialError(failed + " of " + workers.size() + " partition(s) failed");
+		} else {
+			opResult.recordSuccess();
+		}
+		runResult.setRunResultStatus(TaskRunResultStatus.FINISHED);
+		LOGGER.info("{}: all {} partition(s) of {} finished, {} of them failed; progress: {}", taskName, workers.size(),
+				coordinatorTask, failed, coordinatorTask.getProgress());
+		return runResult;
+	}
+
+	private List<Task> getWorkers(OperationResult result) throws SchemaException {
+		List<Task> workers = new ArrayList<>();
+		for (Task subtask : coordinatorTask.listSubtasks(result)) {
+			if (subtask.isPersistent() && isWorker(subtask)) {
+				workers.add(subtask);
+			}
+		}
+		return workers;
+	}
+
+	private boolean allClosed(List<Task> workers) {
+		return workers.stream().allMatch(w -> w.getExecutionStatus() == TaskExecutionStatus.CLOSED);
+	}
+
+	private void createWorkers(OperationResult result) throws SchemaException {
+		List<SearchFilterType> filters = getPartitionFilters(coordinatorTask);
+		int count = filters.isEmpty()
+				? getRealValue(coordinatorTask.getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_TASKS))
+				: filters.size();
+		LOGGER.info("{}: creating {} worker task(s) for {}", taskName, count, coordinatorTask);
+		String baseName = coordinatorTask.getName() != null ? coordinatorTask.getName().getOrig() : taskName;
+		for (int i = 0; i < count; i++) {
+			Task worker = coordinatorTask.createSubtask();
+			worker.setName(baseName + " (partition " + (i+1) + " of " + count + ")");
+			worker.setHandlerUri(coordinatorTask.getHandlerUri());
+			worker.setCategory(coordinatorTask.getCategory());
+			if (coordinatorTask.getObjectRef() != null) {
+				worker.setObjectRef(coordinatorTask.getObjectRef().clone());
+			}
+			copyExtension(worker);
+			worker.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_PARTITION_INDEX, i);
+			worker.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_PARTITION_COUNT, count);
+			if (!filters.isEmpty()) {
+				worker.setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_PARTITION_FILTER, filters.get(i));
+			}
+			worker.setBinding(TaskBinding.LOOSE);
+			worker.setInitialExecutionStatus(TaskExecutionStatus.RUNNABLE);
+			taskManager.switchToBackground(worker, result);
+			attempts.put(worker.getOid(), 1);
+			LOGGER.trace("Worker task {} created", worker);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void copyExtension(Task worker) throws SchemaException {
+		PrismContainer<?> extension = coordinatorTask.getExtension();
+		if (extension == null || extension.getValue() == null) {
+			return;
+		}
+		for (Item<?, ?> item : extension.getValue().getItems()) {
+			if (!QNameUtil.match(item.getElementName(), SchemaConstants.MODEL_EXTENSION_WORKER_TASKS)
+					&& !QNameUtil.match(item.getElementName(), SchemaConstants.MODEL_EXTENSION_PARTITION_FILTER)) {
+				worker.setExtensionItem((Item) item.clone());
+			}
+		}
+	}
+
+	private void startWorker(Task worker, OperationResult result) throws SchemaException, ObjectNotFoundException {
+		attempts.merge(worker.getOid(), 1, Integer::sum);
+		taskManager.scheduleTaskNow(worker, result);
+	}
+
+	/**
+	 * Returns the workers (in their final state) or null if the coordinator was interrupted.
+	 */
+	private List<Task> waitForWorkers(OperationResult result)
+			throws SchemaException, ObjectNotFoundException, ObjectAlreadyExistsException {
+		while (coordinatorTask.canRun()) {
+			List<Task> workers = getWorkers(result);
+			long progress = 0;
+			boolean allDone = true;
+			for (Task worker : workers) {
+				progress += worker.getProgress();
+				if (worker.getExecutionStatus() != TaskExecutionStatus.CLOSED) {
+					allDone = false;
+				} else if (worker.getResultStatus() == OperationResultStatusType.FATAL_ERROR
+						&& attempts.getOrDefault(worker.getOid(), 1) < MAX_ATTEMPTS) {
+					LOGGER.warn("{}: worker task {} failed, running it again", taskName, worker);
+					startWorker(worker, result);
+					allDone = false;
+				}
+			}
+			coordinatorTask.setProgress(progress);
+			coordinatorTask.savePendingModifications(result);
+			if (allDone) {
+				return workers;
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				LOGGER.trace("Interrupted while waiting for worker tasks", e);
+				return null;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.common.task;
+
+import com.evolveum.midpoint.prism.PrismProperty;
+import com.evolveum.midpoint.schema.constants.SchemaConstants;
+import com.evolveum.midpoint.schema.result.OperationResult;
+import com.evolveum.midpoint.task.api.Task;
+import com.evolveum.midpoint.task.api.TaskExecutionStatus;
+import com.evolveum.midpoint.task.api.TaskManager;
+import com.evolveum.midpoint.task.api.TaskRunResult;
+import com.evolveum.midpoint.task.api.TaskRunResult.TaskRunResultStatus;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.OperationResultStatusType;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ * Tests partitioning of objects and coordination of worker tasks. Tasks and task manager are mocked.
+ */
+public class TestPartitionedTaskCoordinator {
+
+	private static final int WORKERS = 3;
+	private static final int FAILING_WORKER = 1;
+
+	private TaskManager taskManager;
+	private Task coordinatorTask;
+	private List<Task> workers;
+	private AtomicInteger failingWorkerRuns;
+	private int failingRuns;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		workers = new ArrayList<>();
+		failingWorkerRuns = new AtomicInteger(1);
+
+		taskManager = mock(TaskManager.class);
+		doAnswer(invocation -> failingWorkerRuns.incrementAndGet())
+				.when(taskManager).scheduleTaskNow(any(Task.class), any(OperationResult.class));
+
+		coordinatorTask = mock(Task.class);
+		when(coordinatorTask.canRun()).thenReturn(true);
+		doReturn(property(WORKERS)).when(coordinatorTask).getExtensionProperty(SchemaConstants.MODEL_EXTENSION_WORKER_TASKS);
+		when(coordinatorTask.listSubtasks(any(OperationResult.class))).thenAnswer(invocation -> new ArrayList<>(workers));
+		when(coordinatorTask.createSubtask()).thenAnswer(invocation -> createWorker(workers.size()));
+	}
+
+	@Test
+	public void test100EachObjectInOnePartition() {
+		int[] sizes = new int[WORKERS];
+		for (int i = 0; i < 1000; i++) {
+			String oid = UUID.randomUUID().toString();
+			int partitions = 0;
+			for (int p = 0; p < WORKERS; p++) {
+				String from = PartitionedTaskCoordinator.getOidBoundary(p, WORKERS);
+				String to = PartitionedTaskCoordinator.getOidBoundary(p + 1, WORKERS);
+				if ((from == null || oid.compareTo(from) >= 0) && (to == null || oid.compareTo(to) < 0)) {
+					partitions++;
+					sizes[p]++;
+				}
+			}
+			assertEquals("Wrong # of partitions for " + oid, 1, partitions);
+		}
+		for (int p = 0; p < WORKERS; p++) {
+			assertTrue("Partition " + p + " is empty", sizes[p] > 0);
+		}
+	}
+
+	/**
+	 * Workers are created with the right partition parameters, the failed one is re-run, and the progress
+	 * of the workers is summed up in the coordinator.
+	 */
+	@Test
+	public void test200CreateWorkersAndAggregate() throws Exception {
+		failingRuns = 1;
+
+		// WHEN
+		TaskRunResult runResult = createCoordinator().run();
+
+		// THEN
+		assertEquals("Wrong # of workers", WORKERS, workers.size());
+		for (int i = 0; i < WORKERS; i++) {
+			verify(workers.get(i)).setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_PARTITION_INDEX, i);
+			verify(workers.get(i)).setExtensionPropertyValue(SchemaConstants.MODEL_EXTENSION_PARTITION_COUNT, WORKERS);
+		}
+		verify(taskManager, times(WORKERS)).switchToBackground(any(Task.class), any(OperationResult.class));
+		verify(taskManager, times(1)).scheduleTaskNow(workers.get(FAILING_WORKER), runResult.getOperationResult());
+		verify(coordinatorTask, times(2)).setProgress(10L + 20L + 30L);
+		assertEquals("Wrong run result status", TaskRunResultStatus.FINISHED, runResult.getRunResultStatus());
+		assertTrue("Result is not success: " + runResult.getOperationResult(), runResult.getOperationResult().isSuccess());
+	}
+
+	/**
+	 * A worker that keeps failing is re-run only a limited number of times; then the coordinator finishes
+	 * with a partial error.
+	 */
+	@Test
+	public void test210PermanentlyFailingWorker() throws Exception {
+		failingRuns = Integer.MAX_VALUE;
+
+		// WHEN
+		TaskRunResult runResult = createCoordinator().run();
+
+		// THEN
+		verify(taskManager, times(2)).scheduleTaskNow(any(Task.class), any(OperationResult.class));
+		assertEquals("Wrong run result status", TaskRunResultStatus.FINISHED, runResult.getRunResultStatus());
+		assertTrue("Result is not a partial error: " + runResult.getOperationResult(),
+				runResult.getOperationResult().isPartialError());
+	}
+
+	private PartitionedTaskCoordinator createCoordinator() {
+		return new PartitionedTaskCoordinator("Test", TestPartitionedTaskCoordinator.class.getName(), taskManager, coordinatorTask);
+	}
+
+	private Task createWorker(int index) {
+		Task worker = mock(Task.class);
+		when(worker.getOid()).thenReturn("worker-" + index);
+		when(worker.isPersistent()).thenReturn(true);
+		doReturn(property(index)).when(worker).getExtensionProperty(SchemaConstants.MODEL_EXTENSION_PARTITION_INDEX);
+		when(worker.getExecutionStatus()).thenReturn(TaskExecutionStatus.CLOSED);
+		when(worker.getProgress()).thenReturn(10L * (index + 1));
+		if (index == FAILING_WORKER) {
+			when(worker.getResultStatus()).thenAnswer(invocation -> failingWorkerRuns.get() <= failingRuns
+					? OperationResultStatusType.FATAL_ERROR : OperationResultStatusType.SUCCESS);
+		} else {
+			when(worker.getResultStatus()).thenReturn(OperationResultStatusType.SUCCESS);
+		}
+		workers.add(worker);
+		return worker;
+	}
+
+	@SuppressWarnings("unchecked")
+	private PrismProperty<Integer> property(int value) {
+		PrismProperty<Integer> property = mock(PrismProperty.class);
+		when(property.getRealValue()).thenReturn(value);
+		return property;
+	}
+}
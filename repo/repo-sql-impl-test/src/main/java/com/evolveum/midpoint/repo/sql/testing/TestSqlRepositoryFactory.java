@@ -114,6 +114,8 @@ public class TestSqlRepositoryFactory extends SqlRepositoryFactory {
         updateConfigurationStringProperty(configuration, properties, PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE);
 
         updateConfigurationBooleanProperty(configuration, properties, PROPERTY_USE_ZIP);
+        updateConfigurationStringProperty(configuration, properties, PROPERTY_FULL_OBJECT_FORMAT);
+        updateConfigurationStringProperty(configuration, properties, PROPERTY_FULL_OBJECT_COMPRESSION);
         updateConfigurationIntegerProperty(configuration, properties, PROPERTY_MIN_POOL_SIZE);
         updateConfigurationIntegerProperty(configuration, properties, PROPERTY_MAX_POOL_SIZE);
 
@@ -762,6 +762,31 @@ public class AddGetObjectTest extends BaseSQLRepoTest {
         assertNotNull(user.getAssignment().get(1).asPrismContainerValue().getId());
     }
 
+    @Test
+    public void test310GetObjects() throws Exception {
+        OperationResult result = new OperationResult("test310GetObjects");
+
+        // GIVEN
+        String oid1 = repositoryService.addObject(new UserType(prismContext).name("t310-1").asPrismObject(), null, result);
+        String oid2 = repositoryService.addObject(new UserType(prismContext).name("t310-2").asPrismObject(), null, result);
+        String oid3 = repositoryService.addObject(new UserType(prismContext).name("t310-3").asPrismObject(), null, result);
+        String nonExistingOid = "f8b4b5a0-5b43-4a0c-bd5e-9ac3f55b0310";
+
+        // WHEN
+        List<PrismObject<UserType>> users = repositoryService.getObjects(UserType.class,
+                Arrays.asList(oid3, nonExistingOid, oid1, oid3), null, result);
+
+        // THEN
+        result.computeStatus();
+        assertTrue("Operation failed: " + result.getMessage(), result.isSuccess());
+        assertEquals("Wrong # of objects", 2, users.size());
+        assertEquals("Wrong first object", oid3, users.get(0).getOid());
+        assertEquals("Wrong second object", oid1, users.get(1).getOid());
+        assertEquals("Object differs from the one returned by getObject",
+                repositoryService.getObject(UserType.class, oid1, null, result), users.get(1));
+        assertFalse("Object not requested was returned", users.stream().anyMatch(u -> oid2.equals(u.getOid())));
+    }
+
     @Test
     public void test990AddResourceWithEmptyConnectorConfiguration() throws Exception {
         OperationResult result = new OperationResult("test990AddResourceWithEmptyConnectorConfiguration");
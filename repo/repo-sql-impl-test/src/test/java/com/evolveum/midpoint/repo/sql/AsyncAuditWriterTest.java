@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.audit.api.AuditEventRecord;
+import com.evolveum.midpoint.repo.sql.util.SimpleTaskAdapter;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class AsyncAuditWriterTest extends BaseSQLRepoTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(AsyncAuditWriterTest.class);
+
+    private static final File SPOOL_FILE = new File("target/audit-spool-test.bin");
+    private static final File REJECTED_FILE = new File("target/audit-spool-test.bin.rejected");
+
+    @Autowired private SqlRepositoryFactory sqlRepositoryFactory;
+
+    @Test
+    public void test100WriteInBatches() throws Exception {
+        LOGGER.info("===[ test100WriteInBatches ]===");
+
+        AsyncAuditWriter writer = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl service = createService(writer);
+        writer.setStore(service::storeBatch);
+        long before = service.countObjects(null, Collections.emptyMap());
+
+        // WHEN
+        for (int i = 0; i < 25; i++) {
+            service.audit(createRecord("batch-" + i), new SimpleTaskAdapter());
+        }
+
+        // THEN
+        try {
+            assertEquals("Wrong # of audit records", before + 25, service.countObjects(null, Collections.emptyMap()));
+            assertFalse("Spool file exists", SPOOL_FILE.exists());
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void test200SpoolAndReplay() throws Exception {
+        LOGGER.info("===[ test200SpoolAndReplay ]===");
+
+        AsyncAuditWriter failingWriter = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl failingService = createService(failingWriter);
+        failingWriter.setStore(records -> { throw new IllegalStateException("Simulated database failure"); });
+        long before = failingService.countObjects(null, Collections.emptyMap());
+
+        // WHEN
+        for (int i = 0; i < 3; i++) {
+            failingService.audit(createRecord("spooled-" + i), new SimpleTaskAdapter());
+        }
+        failingWriter.shutdown();
+
+        // THEN
+        assertTrue("Spool file does not exist", SPOOL_FILE.exists());
+
+        // WHEN
+        AsyncAuditWriter writer = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl service = createService(writer);
+        writer.setStore(service::storeBatch);
+        writer.flush();             // starts the writer, which replays the spool file first
+        writer.shutdown();
+
+        // THEN
+        assertFalse("Spool file still exists", SPOOL_FILE.exists());
+        assertEquals("Wrong # of audit records", before + 3, service.countObjects(null, Collections.emptyMap()));
+    }
+
+    /**
+     * A spooled record that cannot be deserialized must not prevent the others from being stored.
+     */
+    @Test
+    public void test210ReplayWithUnreadableRecord() throws Exception {
+        LOGGER.info("===[ test210ReplayWithUnreadableRecord ]===");
+
+        REJECTED_FILE.delete();
+        AsyncAuditWriter failingWriter = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl failingService = createService(failingWriter);
+        failingWriter.setStore(records -> { throw new IllegalStateException("Simulated database failure"); });
+        long before = failingService.countObjects(null, Collections.emptyMap());
+
+        failingService.audit(createRecord("before-garbage"), new SimpleTaskAdapter());
+        failingWriter.flush();              // the record is spooled now
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(SPOOL_FILE, true))) {
+            byte[] garbage = { 1, 2, 3 };
+            out.writeInt(garbage.length);
+            out.write(garbage);
+        }
+        failingService.audit(createRecord("after-garbage"), new SimpleTaskAdapter());
+        failingWriter.shutdown();
+
+        // WHEN
+        AsyncAuditWriter writer = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl service = createService(writer);
+        writer.setStore(service::storeBatch);
+        writer.flush();
+        writer.shutdown();
+
+        // THEN
+        assertFalse("Spool file still exists", SPOOL_FILE.exists());
+        assertTrue("Rejected records file does not exist", REJECTED_FILE.exists());
+        assertEquals("Wrong # of audit records", before + 2, service.countObjects(null, Collections.emptyMap()));
+    }
+
+    /**
+     * A spooled record that cannot be stored (for a non-transient reason) must not block storing of the others.
+     */
+    @Test
+    public void test220ReplayWithUnstorableRecord() throws Exception {
+        LOGGER.info("===[ test220ReplayWithUnstorableRecord ]===");
+
+        REJECTED_FILE.delete();
+        AsyncAuditWriter failingWriter = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl failingService = createService(failingWriter);
+        failingWriter.setStore(records -> { throw new IllegalStateException("Simulated database failure"); });
+        long before = failingService.countObjects(null, Collections.emptyMap());
+
+        failingService.audit(createRecord("before-poison"), new SimpleTaskAdapter());
+        AuditEventRecord poison = createRecord("poison");
+        poison.setMessage("poison");
+        failingService.audit(poison, new SimpleTaskAdapter());
+        failingService.audit(createRecord("after-poison"), new SimpleTaskAdapter());
+        failingWriter.shutdown();
+
+        // WHEN
+        AsyncAuditWriter writer = new AsyncAuditWriter(100, 10, 50L, SPOOL_FILE);
+        SqlAuditServiceImpl service = createService(writer);
+        writer.setStore(records -> {
+            for (byte[] record : records) {
+                if ("poison".equals(AsyncAuditWriter.deserialize(record).getMessage())) {
+                    throw new IllegalStateException("Simulated constraint violation");
+                }
+            }
+            service.storeBatch(records);
+        });
+        writer.flush();
+        writer.shutdown();
+
+        // THEN
+        assertFalse("Spool file still exists", SPOOL_FILE.exists());
+        assertTrue("Rejected records file does not exist", REJECTED_FILE.exists());
+        assertEquals("Wrong # of audit records", before + 2, service.countObjects(null, Collections.emptyMap()));
+    }
+
+    private SqlAuditServiceImpl createService(AsyncAuditWriter writer) {
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(sqlRepositoryFactory);
+        applicationContext.getAutowireCapableBeanFactory().autowireBean(service);
+        service.setAsyncWriter(writer);
+        return service;
+    }
+
+    private AuditEventRecord createRecord(String value) {
+        AuditEventRecord record = new AuditEventRecord();
+        record.addPropertyValue("prop", value);
+        return record;
+    }
+}
@@ -19,18 +19,23 @@ package com.evolveum.midpoint.repo.sql;
 import com.evolveum.midpoint.audit.api.AuditEventRecord;
 import com.evolveum.midpoint.audit.api.AuditEventStage;
 import com.evolveum.midpoint.audit.api.AuditEventType;
+import com.evolveum.midpoint.audit.api.AuditReferenceResolution;
 import com.evolveum.midpoint.audit.api.AuditReferenceValue;
+import com.evolveum.midpoint.audit.api.AuditService;
+import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.delta.ObjectDelta;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.repo.sql.data.audit.RAuditEventRecord;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
 import com.evolveum.midpoint.repo.sql.util.SimpleTaskAdapter;
 import com.evolveum.midpoint.schema.ObjectDeltaOperation;
+import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.SystemException;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.RoleType;
 import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import com.evolveum.prism.xml.ns._public.types_3.PolyStringType;
 import org.hibernate.query.Query;
 import org.hibernate.Session;
 import org.springframework.test.annotation.DirtiesContext;
@@ -40,6 +45,7 @@ import org.testng.annotations.Test;
 import java.util.*;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
 
 /**
  * @author mederly
@@ -130,6 +136,47 @@ public class AuditTest extends BaseSQLRepoTest {
 		auditService.audit(record, new SimpleTaskAdapter());
 	}
 
+	@Test
+	public void test200ListWithReferenceResolution() throws Exception {
+		LOGGER.info("===[ test200ListWithReferenceResolution ]===");
+
+		// GIVEN
+		OperationResult result = new OperationResult("test200ListWithReferenceResolution");
+		PrismObject<UserType> user = prismContext.createObject(UserType.class);
+		user.asObjectable().setName(PolyStringType.fromOrig("auditInitiator"));
+		user.asObjectable().setFullName(PolyStringType.fromOrig("Audit Initiator"));
+		String oid = repositoryService.addObject(user, null, result);
+
+		AuditEventRecord record = new AuditEventRecord();
+		record.setInitiator(user);
+		record.setTarget(user);
+		auditService.audit(record, new SimpleTaskAdapter());
+
+		String query = "from RAuditEventRecord as aer where aer.initiatorOid = :oid";
+
+		// WHEN + THEN
+		AuditEventRecord full = listSingleRecord(query, oid, AuditReferenceResolution.FULL);
+		assertEquals("Wrong initiator full name", "Audit Initiator", full.getInitiator().asObjectable().getFullName().getOrig());
+		assertEquals("Wrong target OID", oid, full.getTarget().getOid());
+
+		AuditEventRecord namesOnly = listSingleRecord(query, oid, AuditReferenceResolution.NAMES_ONLY);
+		assertEquals("Wrong initiator name", "auditInitiator", namesOnly.getInitiator().asObjectable().getName().getOrig());
+		assertNull("Initiator full name present", namesOnly.getInitiator().asObjectable().getFullName());
+
+		AuditEventRecord none = listSingleRecord(query, oid, AuditReferenceResolution.NONE);
+		assertNull("Initiator present", none.getInitiator());
+		assertNull("Target present", none.getTarget());
+	}
+
+	private AuditEventRecord listSingleRecord(String query, String oid, AuditReferenceResolution resolution) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("oid", oid);
+		params.put(AuditService.PARAM_RESOLVE_REFERENCES, resolution);
+		List<AuditEventRecord> records = auditService.listRecords(query, params);
+		assertEquals("Wrong # of records", 1, records.size());
+		return records.get(0);
+	}
+
 	private AuditEventRecord getAuditEventRecord(int expectedCount, int index) {
 		Session session = getFactory().openSession();
 		try {
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.prism.PrismObject;
+import com.evolveum.midpoint.repo.sql.util.FullObjectCodec;
+import com.evolveum.midpoint.repo.sql.util.FullObjectCodec.Compression;
+import com.evolveum.midpoint.repo.sql.util.FullObjectCodec.Language;
+import com.evolveum.midpoint.repo.sql.util.RUtil;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import com.evolveum.midpoint.xml.ns._public.common.common_3.UserType;
+import org.apache.commons.io.IOUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+@ContextConfiguration(locations = {"../../../../../ctx-test.xml"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class FullObjectCodecTest extends BaseSQLRepoTest {
+
+    private static final Trace LOGGER = TraceManager.getTrace(FullObjectCodecTest.class);
+
+    private static final File USER_BIG_FILE = new File(BaseSQLRepoTest.FOLDER_BASIC, "user-big.xml");
+
+    @Test
+    public void test100ReadLegacyData() throws Exception {
+        String xml = IOUtils.toString(new FileInputStream(USER_BIG_FILE), "utf-8");
+
+        AssertJUnit.assertEquals(xml, FullObjectCodec.decode(RUtil.getByteArrayFromXml(xml, true)));
+        AssertJUnit.assertEquals(xml, FullObjectCodec.decode(RUtil.getByteArrayFromXml(xml, false)));
+    }
+
+    @Test
+    public void test110LegacyCodecWritesLegacyData() throws Exception {
+        String xml = IOUtils.toString(new FileInputStream(USER_BIG_FILE), "utf-8");
+
+        AssertJUnit.assertEquals(xml, RUtil.getXmlFromByteArray(FullObjectCodec.legacy(true).encode(xml), true));
+        AssertJUnit.assertEquals(xml, RUtil.getXmlFromByteArray(FullObjectCodec.legacy(false).encode(xml), false));
+    }
+
+    @Test
+    public void test200RoundTripAllFormats() throws Exception {
+        PrismObject<UserType> user = prismContext.parseObject(USER_BIG_FILE);
+
+        for (Language language : Language.values()) {
+            for (Compression compression : Compression.values()) {
+                FullObjectCodec codec = new FullObjectCodec(language, compression);
+                String serialized = prismContext.serializeObjectToString(user, codec.getLanguage());
+                byte[] array = codec.encode(serialized);
+                LOGGER.info("{}: {} bytes (serialized: {} bytes)", codec, array.length, serialized.length());
+
+                String decoded = FullObjectCodec.decode(array);
+                AssertJUnit.assertEquals("Wrong decoded data for " + codec, serialized, decoded);
+
+                PrismObject<UserType> parsed = prismContext.parserFor(decoded).compat().parse();
+                AssertJUnit.assertEquals("Wrong OID for " + codec, user.getOid(), parsed.getOid());
+                AssertJUnit.assertEquals("Wrong name for " + codec, user.getName(), parsed.getName());
+            }
+        }
+    }
+}
@@ -654,6 +654,30 @@ public class QueryInterpreter2Test extends BaseSQLRepoTest {
         }
     }
 
+    @Test
+    public void test075QueryAccountByAttributeValues() throws Exception {
+        Session session = open();
+        try {
+            PrismPropertyDefinition<String> a1Def = new PrismPropertyDefinitionImpl<>(A1_QNAME, DOMUtil.XSD_STRING, prismContext);
+            ObjectQuery query = QueryBuilder.queryFor(ShadowType.class, prismContext)
+                    .itemWithDef(a1Def, ShadowType.F_ATTRIBUTES, A1_QNAME).eq("abc", "def", "ghi")
+                    .build();
+
+            RQueryImpl realQuery = (RQueryImpl) getInterpretedQuery2Whole(session, ShadowType.class, query, false, null);
+            String expected = "select\n" +
+                    "  s.oid, s.fullObject, s.stringsCount, s.longsCount, s.datesCount, s.referencesCount, s.polysCount, s.booleansCount\n" +
+                    "from\n" +
+                    "  RShadow s\n" +
+                    "    left join s.strings s2 with ( s2.ownerType = :ownerType and s2.item.id = :id )\n" +
+                    "where\n" +
+                    "  s2.value in (:value)\n";
+            assertEqualsIgnoreWhitespace(expected, realQuery.getQuery().getQueryString());
+            assertEquals("Wrong property ID for 'a1'", a1Definition.getId(), realQuery.getQuerySource().getParameters().get("id").getValue());
+        } finally {
+            close(session);
+        }
+    }
+
     @Test
     public void test076QueryOrComposite() throws Exception {
         Session session = open();
@@ -1676,6 +1700,36 @@ public class QueryInterpreter2Test extends BaseSQLRepoTest {
         }
     }
 
+    /**
+     * OID range, as used by partitioned worker tasks.
+     */
+    @Test
+    public void test210QueryUserOidRange() throws Exception {
+        Session session = open();
+        try {
+            PrismPropertyDefinition<String> oidDefinition = new PrismPropertyDefinitionImpl<>(T_ID, DOMUtil.XSD_STRING, prismContext);
+            ObjectQuery query = QueryBuilder.queryFor(UserType.class, prismContext)
+                    .item(new ItemPath(T_ID), oidDefinition).ge("4000")
+                    .and().item(new ItemPath(T_ID), oidDefinition).lt("8000")
+                    .build();
+            String real = getInterpretedQuery2(session, UserType.class, query);
+
+            String expected = "select\n" +
+                    "  u.oid, u.fullObject, u.stringsCount, u.longsCount, u.datesCount, u.referencesCount, u.polysCount, u.booleansCount\n" +
+                    "from\n" +
+                    "  RUser u\n" +
+                    "where\n" +
+                    "  (\n" +
+                    "    u.oid >= :oid and\n" +
+                    "    u.oid < :oid2\n" +
+                    "  )\n";
+
+            assertEqualsIgnoreWhitespace(expected, real);
+        } finally {
+            close(session);
+        }
+    }
+
     @Test
     public void test300CountObjectOrderByName() throws Exception {
         Session session = open();
@@ -18,6 +18,8 @@ package com.evolveum.midpoint.repo.sql;
 
 import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.polystring.PolyString;
+import com.evolveum.midpoint.prism.query.ObjectPaging;
+import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.prism.util.PrismTestUtil;
 import com.evolveum.midpoint.schema.MidPointPrismContextFactory;
 import com.evolveum.midpoint.schema.ResultHandler;
@@ -36,6 +38,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static org.testng.AssertJUnit.assertEquals;
@@ -247,4 +250,58 @@ public class SearchIterativeTest extends BaseSQLRepoTest {
         int count = repositoryService.countObjects(UserType.class, null, null, result);
         assertEquals("Wrong # of objects after operation", COUNT, count);
     }
+
+    @Test
+    public void test140PagedIterationByOid() throws Exception {
+        OperationResult result = new OperationResult("test140PagedIterationByOid");
+
+        List<String> allOids = new ArrayList<>();
+        for (PrismObject<UserType> user : repositoryService.searchObjects(UserType.class, null, null, result)) {
+            allOids.add(user.getOid());
+        }
+        Collections.sort(allOids);
+
+        final List<String> oids = new ArrayList<>();
+        ResultHandler<UserType> handler = (object, parentResult) -> oids.add(object.getOid());
+
+        SqlRepositoryConfiguration config = ((SqlRepositoryServiceImpl) repositoryService).getConfiguration();
+        int oldBatch = config.getIterativeSearchByPagingBatchSize();
+        config.setIterativeSearchByPagingBatchSize(7);
+        try {
+            // no ordering is prescribed, so keyset pagination (with prefetching) is used
+            ObjectQuery query = new ObjectQuery();
+            query.setPaging(ObjectPaging.createPaging(10, 25));
+            repositoryService.searchObjectsIterative(UserType.class, query, handler, null, false, result);
+        } finally {
+            config.setIterativeSearchByPagingBatchSize(oldBatch);
+        }
+        result.recomputeStatus();
+
+        assertTrue(result.isSuccess());
+        assertEquals("Wrong objects returned", allOids.subList(10, 35), oids);
+    }
+
+    @Test
+    public void test150StopIteration() throws Exception {
+        OperationResult result = new OperationResult("test150StopIteration");
+
+        final List<String> oids = new ArrayList<>();
+        ResultHandler<UserType> handler = (object, parentResult) -> {
+            oids.add(object.getOid());
+            return oids.size() < 3;
+        };
+
+        SqlRepositoryConfiguration config = ((SqlRepositoryServiceImpl) repositoryService).getConfiguration();
+        int oldBatch = config.getIterativeSearchByPagingBatchSize();
+        config.setIterativeSearchByPagingBatchSize(2);
+        try {
+            repositoryService.searchObjectsIterative(UserType.class, null, handler, null, true, result);
+        } finally {
+            config.setIterativeSearchByPagingBatchSize(oldBatch);
+        }
+        result.recomputeStatus();
+
+        assertTrue(result.isSuccess());
+        assertEquals("Wrong # of objects processed", 3, oids.size());
+    }
 }
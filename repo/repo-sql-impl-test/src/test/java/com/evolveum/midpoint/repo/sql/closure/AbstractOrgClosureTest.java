@@ -33,6 +33,7 @@ import com.evolveum.midpoint.repo.sql.BaseSQLRepoTest;
 import com.evolveum.midpoint.repo.sql.data.common.ROrgClosure;
 import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
 import com.evolveum.midpoint.repo.sql.helpers.OrgClosureManager;
+import com.evolveum.midpoint.repo.sql.helpers.OrgHierarchyIndex;
 import com.evolveum.midpoint.repo.sql.type.XMLGregorianCalendarType;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.util.exception.ObjectNotFoundException;
@@ -153,6 +154,11 @@ public abstract class AbstractOrgClosureTest extends BaseSQLRepoTest {
                 System.out.println("Actual-Expected = " + actualMinusExpected);
             }
             assertEquals("Incorrect children for " + subroot, expectedChildren, actualChildren);
+            OrgHierarchyIndex hierarchyIndex = closureManager.getHierarchyIndex();
+            if (hierarchyIndex != null) {
+                assertEquals("Incorrect children for " + subroot + " in hierarchy index", expectedChildren,
+                        hierarchyIndex.getSubtree(subroot, Integer.MAX_VALUE));
+            }
         }
     }
 
@@ -833,6 +839,14 @@ public abstract class AbstractOrgClosureTest extends BaseSQLRepoTest {
         checkClosureUnconditional(getVertices());
     }
 
+    // recomputes the closure from scratch and compares it with the one maintained incrementally
+    protected void _test160RebuildClosure() throws Exception {
+        OperationResult opResult = new OperationResult("===[ test160RebuildClosure ]===");
+        closureManager.checkAndOrRebuild(true, true, true, false, opResult);
+        assertTrue("Recomputed closure differs from the existing one: " + opResult.getMessage(), opResult.isSuccess());
+        checkClosureUnconditional(getVertices());
+    }
+
     protected synchronized Set<String> getVertices() {
         return new HashSet<>(orgGraph.vertexSet());
     }
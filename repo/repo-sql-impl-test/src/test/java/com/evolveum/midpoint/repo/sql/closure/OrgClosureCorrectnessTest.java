@@ -56,6 +56,7 @@ public class OrgClosureCorrectnessTest extends AbstractOrgClosureTest {
 
     @Test(enabled = true) public void test100LoadOrgStructure() throws Exception { _test100LoadOrgStructure(); }
     @Test(enabled = true) public void test150CheckClosure() throws Exception { _test150CheckClosure(); }
+    @Test(enabled = true) public void test160RebuildClosure() throws Exception { _test160RebuildClosure(); }
     @Test(enabled = true) public void test200AddRemoveLinks() throws Exception { _test200AddRemoveLinks(); }
     @Test(enabled = true) public void test200AddRemoveLinksUsingReplace() throws Exception { _test200AddRemoveLinks(true); }
     @Test(enabled = true) public void test300AddRemoveOrgs() throws Exception { _test300AddRemoveOrgs(); }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.closure;
+
+import com.evolveum.midpoint.repo.sql.helpers.OrgHierarchyIndex;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static org.testng.AssertJUnit.*;
+
+/**
+ * Tests the in-memory org hierarchy index without the repository.
+ */
+public class OrgHierarchyIndexTest {
+
+    @Test
+    public void test100Rebuild() {
+        OrgHierarchyIndex index = createIndex();
+
+        assertEquals("Wrong size", 5, index.size());
+        assertTrue(index.isAnySubordinate("root", singleton("root")));
+        assertTrue(index.isAnySubordinate("root", singleton("d")));
+        assertTrue(index.isAnySubordinate("b", singleton("d")));
+        assertTrue(index.isAnySubordinate("c", singleton("d")));
+        assertFalse(index.isAnySubordinate("d", singleton("root")));
+        assertFalse(index.isAnySubordinate("b", singleton("c")));
+        assertTrue(index.isAnySubordinate("b", asList("c", "d")));
+        assertFalse("Non-existing parent counts", index.isAnySubordinate("x", singleton("e")));
+        assertFalse("Unknown org counts", index.isAnySubordinate("root", singleton("unknown")));
+
+        assertEquals(set("root", "b", "c", "d"), index.getSubtree("root", 100));
+        assertEquals(set("c", "d"), index.getSubtree("c", 100));
+        assertNull("Size limit ignored", index.getSubtree("root", 3));
+        assertEquals(set("root", "b", "c"), index.getAncestors("d"));
+        assertEquals(Collections.emptySet(), index.getAncestors("root"));
+    }
+
+    @Test
+    public void test200ModifyParents() {
+        OrgHierarchyIndex index = createIndex();
+
+        // WHEN
+        index.setOrg("c", singleton("e"));
+
+        // THEN
+        assertEquals(set("root", "b", "d"), index.getSubtree("root", 100));
+        assertEquals(set("e", "c", "d"), index.getSubtree("e", 100));
+        assertEquals(set("root", "b", "c", "e"), index.getAncestors("d"));
+        assertFalse(index.isAnySubordinate("root", singleton("c")));
+    }
+
+    @Test
+    public void test300DeleteAndReAdd() {
+        OrgHierarchyIndex index = createIndex();
+
+        // WHEN
+        index.removeOrg("c");
+
+        // THEN
+        assertEquals(4, index.size());
+        assertEquals(set("root", "b", "d"), index.getSubtree("root", 100));
+        assertEquals(set("root", "b"), index.getAncestors("d"));
+        assertFalse(index.isAnySubordinate("c", singleton("d")));
+
+        // WHEN
+        index.setOrg("c", singleton("root"));
+
+        // THEN
+        assertEquals(5, index.size());
+        assertEquals(set("root", "b", "c"), index.getAncestors("d"));
+        assertTrue(index.isAnySubordinate("c", singleton("d")));
+    }
+
+    @Test
+    public void test400AddMissingParent() {
+        OrgHierarchyIndex index = createIndex();
+
+        // WHEN
+        index.setOrg("x", singleton("root"));
+
+        // THEN
+        assertTrue(index.isAnySubordinate("x", singleton("e")));
+        assertTrue(index.isAnySubordinate("root", singleton("e")));
+        assertEquals(set("root", "b", "c", "d", "x", "e"), index.getSubtree("root", 100));
+    }
+
+    /*
+     *      root        (x) - does not exist
+     *      /  \         |
+     *     b    c        e
+     *      \  /
+     *       d
+     */
+    private OrgHierarchyIndex createIndex() {
+        Map<String, Set<String>> parents = new HashMap<>();
+        parents.put("b", set("root"));
+        parents.put("c", set("root"));
+        parents.put("d", set("b", "c"));
+        parents.put("e", set("x"));
+        OrgHierarchyIndex index = new OrgHierarchyIndex();
+        index.rebuild(asList("root", "b", "c", "d", "e"), parents);
+        return index;
+    }
+
+    private Set<String> set(String... oids) {
+        return new HashSet<>(asList(oids));
+    }
+}
@@ -725,7 +725,8 @@ public class SimpleTaskAdapter implements Task {
     }
 
     @Override
-    public void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName, long duration) {
+    public void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName, long duration,
+            int cacheHits, int cacheMisses) {
     }
 
     @Override
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql;
+
+import com.evolveum.midpoint.repo.sql.data.audit.RAuditEventRecord;
+import com.evolveum.midpoint.util.exception.SystemException;
+import com.evolveum.midpoint.util.logging.LoggingUtils;
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+import org.hibernate.exception.JDBCConnectionException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes audit records asynchronously, in batches.
+ *
+ * Records are converted to their repository form in the caller's thread and put into a bounded queue
+ * (in serialized form, so they can be stored repeatedly and spooled to disk without any further conversion).
+ * If the queue is full, the caller waits (back-pressure). A single writer thread takes records from the queue
+ * and stores them in batches of up to batchSize records, each batch in one transaction. The writer waits at most
+ * flushInterval milliseconds for a batch to fill up.
+ *
+ * If a batch cannot be stored, its records are appended to a local spool file. The spool file is
+ * replayed when the writer starts and periodically afterwards, until it is successfully stored in the repository.
+ * If a replayed batch fails for a reason other than a transient (connection) problem, its records are stored one by one.
+ * Spooled records that cannot be deserialized (e.g. ones written by an incompatible version) or stored (e.g. because
+ * of a constraint violation) are moved to a separate file ({@code <spool file>.rejected}) instead, so they do not block
+ * replaying of the others.
+ *
+ * Readers of the audit log call {@link #flush()} before reading, so records audited by this node are visible to them.
+ */
+public class AsyncAuditWriter {
+
+	private static final Trace LOGGER = TraceManager.getTrace(AsyncAuditWriter.class);
+
+	private static final long SPOOL_REPLAY_INTERVAL = 60000L;
+	private static final long FLUSH_TIMEOUT = 30000L;
+	private static final long SHUTDOWN_TIMEOUT = 60000L;
+
+	private final BlockingQueue<byte[]> queue;
+	private final int batchSize;
+	private final long flushInterval;
+	private final File spoolFile;
+	private final File rejectedFile;
+
+	private volatile Consumer<List<byte[]>> store;
+
+	private volatile Thread writerThread;
+	private volatile boolean stopRequested;
+	private volatile boolean flushRequested;
+
+	private final Object spoolLock = new Object();
+	private final Object progressLock = new Object();
+	private long submitted;         // guarded by progressLock
+	private long processed;         // guarded by progressLock (stored or spooled)
+
+	private long lastSpoolReplay;   // used only by writer thread
+
+	public AsyncAuditWriter(int queueSize, int batchSize, long flushInterval, @NotNull File spoolFile) {
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.spoolFile = spoolFile;
+		this.rejectedFile = new File(spoolFile.getPath() + ".rejected");
+	}
+
+	/**
+	 * Sets the function that stores a batch of serialized records in one transaction.
+	 * It must throw an exception if the batch could not be stored.
+	 */
+	public void setStore(Consumer<List<byte[]>> store) {
+		this.store = store;
+	}
+
+	public void submit(RAuditEventRecord record) {
+		ensureStarted();
+		byte[] serialized = serialize(record);
+		synchronized (progressLock) {
+			submitted++;
+		}
+		try {
+			queue.put(serialized);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while waiting for audit queue; spooling the record instead");
+			spool(Collections.singletonList(serialized));
+			recordProcessed(1);
+		}
+	}
+
+	/**
+	 * Waits until all records submitted so far are either stored or spooled (or the timeout expires).
+	 */
+	public void flush() {
+		ensureStarted();
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+		synchronized (progressLock) {
+			long target = submitted;
+			while (processed < target) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					LOGGER.warn("Timed out waiting for audit records to be written ({} of {} done)", processed, target);
+					return;
+				}
+				flushRequested = true;
+				try {
+					progressLock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void ensureStarted() {
+		if (writerThread == null && !stopRequested) {
+			startWriterThread();
+		}
+	}
+
+	private synchronized void startWriterThread() {
+		if (writerThread != null || stopRequested) {
+			return;
+		}
+		writerThread = new Thread(this::run, "AsyncAuditWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		LOGGER.info("Asynchronous audit writer started (batch size: {}, flush interval: {} ms, queue size: {}, spool file: {})",
+				batchSize, flushInterval, queue.remainingCapacity() + queue.size(), spoolFile);
+	}
+
+	public void shutdown() {
+		Thread thread;
+		synchronized (this) {
+			stopRequested = true;
+			thread = writerThread;
+		}
+		if (thread != null) {
+			try {
+				thread.join(SHUTDOWN_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		List<byte[]> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			LOGGER.warn("{} audit record(s) could not be written before shutdown; spooling them to {}", remaining.size(), spoolFile);
+			spool(remaining);
+			recordProcessed(remaining.size());
+		}
+		LOGGER.info("Asynchronous audit writer stopped.");
+	}
+
+	private void run() {
+		replaySpoolIfNeeded(true);
+		while (!stopRequested || !queue.isEmpty()) {
+			try {
+				List<byte[]> batch = collectBatch();
+				if (!batch.isEmpty()) {
+					storeOrSpool(batch);
+				}
+				replaySpoolIfNeeded(false);
+			} catch (InterruptedException e) {
+				LOGGER.debug("Asynchronous audit writer interrupted");
+			} catch (Throwable t) {
+				LoggingUtils.logUnexpectedException(LOGGER, "Unexpected exception in asynchronous audit writer", t);
+			}
+		}
+	}
+
+	private List<byte[]> collectBatch() throws InterruptedException {
+		List<byte[]> batch = new ArrayList<>(batchSize);
+		byte[] first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+		if (first == null) {
+			return batch;
+		}
+		batch.add(first);
+		long deadline = System.currentTimeMillis() + flushInterval;
+		while (batch.size() < batchSize && !flushRequested && !stopRequested) {
+			queue.drainTo(batch, batchSize - batch.size());
+			long remaining = deadline - System.currentTimeMillis();
+			if (batch.size() >= batchSize || remaining <= 0) {
+				break;
+			}
+			byte[] next = queue.poll(Math.min(remaining, 10L), TimeUnit.MILLISECONDS);
+			if (next != null) {
+				batch.add(next);
+			}
+		}
+		queue.drainTo(batch, batchSize - batch.size());
+		flushRequested = false;
+		return batch;
+	}
+
+	private void storeOrSpool(List<byte[]> batch) {
+		try {
+			getStore().accept(batch);
+		} catch (RuntimeException e) {
+			LoggingUtils.logException(LOGGER, "Couldn't store {} audit record(s), spooling them to {}", e, batch.size(), spoolFile);
+			spool(batch);
+		}
+		recordProcessed(batch.size());
+	}
+
+	private Consumer<List<byte[]>> getStore() {
+		Consumer<List<byte[]>> current = store;
+		if (current == null) {
+			throw new IllegalStateException("No audit store function set");
+		}
+		return current;
+	}
+
+	private void recordProcessed(int count) {
+		synchronized (progressLock) {
+			processed += count;
+			progressLock.notifyAll();
+		}
+	}
+
+	//region Spooling
+	private void spool(List<byte[]> records) {
+		synchronized (spoolLock) {
+			writeRecords(spoolFile, records, true);
+		}
+	}
+
+	private void writeRecords(File file, List<byte[]> records, boolean append) {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)))) {
+			for (byte[] record : records) {
+				out.writeInt(record.length);
+				out.write(record);
+			}
+		} catch (IOException e) {
+			// nothing more we can do here
+			LoggingUtils.logUnexpectedException(LOGGER, "Couldn't write {} audit record(s) to {}; THEY ARE LOST",
+					e, records.size(), file);
+		}
+	}
+
+	private void replaySpoolIfNeeded(boolean force) {
+		long now = System.currentTimeMillis();
+		if (!force && now - lastSpoolReplay < SPOOL_REPLAY_INTERVAL) {
+			return;
+		}
+		lastSpoolReplay = now;
+		synchronized (spoolLock) {
+			if (!spoolFile.exists()) {
+				return;
+			}
+			List<byte[]> records = rejectUnreadable(readSpool());
+			LOGGER.info("Replaying {} audit record(s) from spool file {}", records.size(), spoolFile);
+			List<byte[]> rejected = new ArrayList<>();
+			int done = 0;           // stored or rejected
+			try {
+				while (done < records.size()) {
+					List<byte[]> batch = records.subList(done, Math.min(done + batchSize, records.size()));
+					try {
+						getStore().accept(batch);
+						done += batch.size();
+					} catch (RuntimeException e) {
+						if (isTransient(e)) {
+							throw e;
+						}
+						LoggingUtils.logException(LOGGER, "Couldn't store a batch of {} spooled audit record(s), storing them one by one",
+								e, batch.size());
+						for (byte[] record : new ArrayList<>(batch)) {
+							storeOrReject(record, rejected);
+							done++;
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				LoggingUtils.logException(LOGGER, "Couldn't replay audit spool file {}; {} of {} record(s) processed, will try again later",
+						e, spoolFile, done, records.size());
+			}
+			if (!rejected.isEmpty()) {
+				writeRecords(rejectedFile, rejected, true);
+			}
+			rewriteSpool(records.subList(done, records.size()));
+		}
+	}
+
+	/**
+	 * Stores a single record. If it fails for other than transient reason, the record is added to the rejected ones.
+	 * Transient failures are re-thrown, so the record stays in the spool file.
+	 */
+	private void storeOrReject(byte[] record, List<byte[]> rejected) {
+		try {
+			getStore().accept(Collections.singletonList(record));
+		} catch (RuntimeException e) {
+			if (isTransient(e)) {
+				throw e;
+			}
+			LoggingUtils.logException(LOGGER, "Spooled audit record cannot be stored, moving it to {}", e, rejectedFile);
+			rejected.add(record);
+		}
+	}
+
+	/**
+	 * Whether the failure is caused by a problem that can go away by itself, typically an unavailable database.
+	 */
+	static boolean isTransient(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+					|| cause instanceof SQLNonTransientConnectionException || cause instanceof JDBCConnectionException
+					|| cause instanceof ConnectException) {
+				return true;
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	private List<byte[]> readSpool() {
+		List<byte[]> records = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)))) {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				byte[] record = new byte[length];
+				in.readFully(record);
+				records.add(record);
+			}
+		} catch (EOFException e) {
+			LOGGER.warn("Audit spool file {} ends with an incomplete record; ignoring it", spoolFile);
+		} catch (IOException e) {
+			throw new SystemException("Couldn't read audit spool file " + spoolFile + ": " + e.getMessage(), e);
+		}
+		return records;
+	}
+
+	/**
+	 * Returns the records that can be deserialized. The others are moved to the rejected records file: storing them
+	 * would fail every time, unlike transient failures (e.g. database being down) that are handled by keeping
+	 * the records in the spool file.
+	 */
+	private List<byte[]> rejectUnreadable(List<byte[]> records) {
+		List<byte[]> readable = new ArrayList<>(records.size());
+		List<byte[]> unreadable = new ArrayList<>();
+		for (byte[] record : records) {
+			try {
+				deserialize(record);
+				readable.add(record);
+			} catch (SystemException e) {
+				LoggingUtils.logException(LOGGER, "Spooled audit record cannot be read, moving it to {}", e, rejectedFile);
+				unreadable.add(record);
+			}
+		}
+		if (!unreadable.isEmpty()) {
+			writeRecords(rejectedFile, unreadable, true);
+		}
+		return readable;
+	}
+
+	private void rewriteSpool(List<byte[]> remaining) {
+		if (remaining.isEmpty()) {
+			if (!spoolFile.delete()) {
+				LOGGER.warn("Couldn't delete audit spool file {}; its records might be stored again", spoolFile);
+			}
+			return;
+		}
+		File tempFile = new File(spoolFile.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			for (byte[] record : remaining) {
+				out.writeInt(record.length);
+				out.write(record);
+			}
+		} catch (IOException e) {
+			LoggingUtils.logUnexpectedException(LOGGER, "Couldn't rewrite audit spool file {}", e, spoolFile);
+			return;
+		}
+		if (!spoolFile.delete() || !tempFile.renameTo(spoolFile)) {
+			LOGGER.warn("Couldn't replace audit spool file {} with {}", spoolFile, tempFile);
+		}
+	}
+	//endregion
+
+	//region Serialization
+	private static byte[] serialize(RAuditEventRecord record) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(record);
+		} catch (IOException e) {
+			throw new SystemException("Couldn't serialize audit record: " + e.getMessage(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns a fresh (transient) copy of the record each time it is called.
+	 */
+	static RAuditEventRecord deserialize(byte[] serialized) {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return (RAuditEventRecord) in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new SystemException("Couldn't deserialize audit record: " + e.getMessage(), e);
+		}
+	}
+	//endregion
+}
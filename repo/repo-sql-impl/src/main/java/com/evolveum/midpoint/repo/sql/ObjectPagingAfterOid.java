@@ -22,6 +22,7 @@ import com.evolveum.midpoint.prism.query.ObjectPaging;
  * @author Pavol
  */ // Temporary hack. Represents special paging object that means
 // "give me objects with OID greater than specified one, sorted by OID ascending".
+// Offset (if present) is applied after the OID condition; it is used for the first page of keyset iteration.
 //
 // TODO: replace by using cookie that is part of the standard ObjectPaging
 // (but think out all consequences, e.g. conflicts with the other use of the cookie)
@@ -24,13 +24,37 @@ import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 import org.apache.commons.configuration.Configuration;
 
+import java.io.File;
+
 /**
  * @author lazyman
  */
 public class SqlAuditServiceFactory implements AuditServiceFactory {
 
     private static final Trace LOGGER = TraceManager.getTrace(SqlAuditServiceFactory.class);
+
+    /**
+     * If true, audit records are written asynchronously, in batches (see {@link AsyncAuditWriter}).
+     */
+    public static final String PROPERTY_ASYNCHRONOUS = "asynchronous";
+    public static final String PROPERTY_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    public static final String PROPERTY_ASYNC_BATCH_SIZE = "asyncBatchSize";
+    /**
+     * Maximal time (in milliseconds) the writer waits for a batch to fill up.
+     */
+    public static final String PROPERTY_ASYNC_FLUSH_INTERVAL = "asyncFlushInterval";
+    /**
+     * File where records that could not be written to the database are kept. Default is audit-spool.bin in the base dir.
+     */
+    public static final String PROPERTY_ASYNC_SPOOL_FILE = "asyncSpoolFile";
+
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_ASYNC_BATCH_SIZE = 50;
+    private static final long DEFAULT_ASYNC_FLUSH_INTERVAL = 200L;
+    private static final String DEFAULT_ASYNC_SPOOL_FILE_NAME = "audit-spool.bin";
+
     private SqlRepositoryFactory repositoryFactory;
+    private AsyncAuditWriter asyncWriter;
 
     public SqlRepositoryFactory getRepositoryFactory() {
         return repositoryFactory;
@@ -43,6 +67,10 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
     @Override
     public synchronized void destroy() throws AuditServiceFactoryException {
         LOGGER.info("Destroying Sql audit service factory.");
+        if (asyncWriter != null) {
+            asyncWriter.shutdown();
+            asyncWriter = null;
+        }
         try {
             repositoryFactory.destroy();
         } catch (RepositoryServiceFactoryException ex) {
@@ -59,9 +87,26 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
         } catch (RepositoryServiceFactoryException ex) {
             throw new AuditServiceFactoryException(ex.getMessage(), ex);
         }
+        if (config.getBoolean(PROPERTY_ASYNCHRONOUS, false)) {
+            asyncWriter = createAsyncWriter(config);
+        }
         LOGGER.info("Sql audit service factory initialization complete.");
     }
 
+    private AsyncAuditWriter createAsyncWriter(Configuration config) throws AuditServiceFactoryException {
+        int queueSize = config.getInt(PROPERTY_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+        int batchSize = config.getInt(PROPERTY_ASYNC_BATCH_SIZE, DEFAULT_ASYNC_BATCH_SIZE);
+        long flushInterval = config.getLong(PROPERTY_ASYNC_FLUSH_INTERVAL, DEFAULT_ASYNC_FLUSH_INTERVAL);
+        if (queueSize <= 0 || batchSize <= 0 || flushInterval < 0) {
+            throw new AuditServiceFactoryException("Invalid asynchronous audit configuration: queue size = " + queueSize
+                    + ", batch size = " + batchSize + ", flush interval = " + flushInterval);
+        }
+        String spoolFileName = config.getString(PROPERTY_ASYNC_SPOOL_FILE);
+        File spoolFile = spoolFileName != null ? new File(spoolFileName) :
+                new File(repositoryFactory.getSqlConfiguration().getBaseDir(), DEFAULT_ASYNC_SPOOL_FILE_NAME);
+        return new AsyncAuditWriter(queueSize, batchSize, flushInterval, spoolFile);
+    }
+
     @Override
     public void destroyService(AuditService service) throws AuditServiceFactoryException {
         //we don't need destroying service objects, they will be GC correctly
@@ -69,6 +114,11 @@ public class SqlAuditServiceFactory implements AuditServiceFactory {
 
     @Override
     public AuditService getAuditService() throws AuditServiceFactoryException {
-        return new SqlAuditServiceImpl(repositoryFactory);
+        SqlAuditServiceImpl service = new SqlAuditServiceImpl(repositoryFactory);
+        if (asyncWriter != null) {
+            service.setAsyncWriter(asyncWriter);
+            asyncWriter.setStore(service::storeBatch);
+        }
+        return service;
     }
 }
@@ -22,8 +22,8 @@ import com.evolveum.midpoint.repo.sql.data.common.enums.ROperationResultStatus;
 import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
 import com.evolveum.midpoint.repo.sql.helpers.BaseHelper;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
+import com.evolveum.midpoint.repo.sql.util.FullObjectCodec;
 import com.evolveum.midpoint.repo.sql.util.GetObjectResult;
-import com.evolveum.midpoint.repo.sql.util.RUtil;
 import com.evolveum.midpoint.repo.sql.util.TemporaryTableDialect;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.task.api.Task;
@@ -77,15 +77,42 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
     private static final String QUERY_MAX_RESULT = "setMaxResults";
     private static final String QUERY_FIRST_RESULT = "setFirstResult";
 
+    /**
+     * Number of audit records whose referenced objects are fetched by a single query.
+     */
+    private static final int RESOLUTION_BATCH_SIZE = 100;
+    /**
+     * Maximal number of OIDs in one "in" clause.
+     */
+    private static final int MAX_OIDS_IN_QUERY = 500;
+    /**
+     * Maximal number of resolved objects kept during one listing (they are reused across batches of records).
+     */
+    private static final int MAX_RESOLVED_OBJECTS = 1000;
+
+    /**
+     * If set, audit records are written asynchronously, in batches.
+     */
+    private AsyncAuditWriter asyncWriter;
+
     public SqlAuditServiceImpl(SqlRepositoryFactory repositoryFactory) {
         super(repositoryFactory);
     }
 
+    public void setAsyncWriter(AsyncAuditWriter asyncWriter) {
+        this.asyncWriter = asyncWriter;
+    }
+
     @Override
     public void audit(AuditEventRecord record, Task task) {
         Validate.notNull(record, "Audit event record must not be null.");
         Validate.notNull(task, "Task must not be null.");
 
+        if (asyncWriter != null) {
+            auditAsynchronously(record);
+            return;
+        }
+
         final String operation = "audit";
         int attempt = 1;
 
@@ -101,6 +128,9 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     @Override
     public List<AuditEventRecord> listRecords(String query, Map<String, Object> params) {
+        flushPendingRecords();
+
+        AuditReferenceResolution resolution = extractReferenceResolution(params);
         final String operation = "listRecords";
         int attempt = 1;
 
@@ -121,7 +151,7 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
                         return 0;
                     }
                 };
-                listRecordsIterativeAttempt(query, params, handler);
+                listRecordsIterativeAttempt(query, params, resolution, handler);
                 return auditEventRecords;
             } catch (RuntimeException ex) {
                 attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
@@ -131,12 +161,15 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     @Override
     public void listRecordsIterative(String query, Map<String, Object> params, AuditResultHandler handler) {
+        flushPendingRecords();
+
+        AuditReferenceResolution resolution = extractReferenceResolution(params);
         final String operation = "listRecordsIterative";
         int attempt = 1;
 
         while (true) {
             try {
-                listRecordsIterativeAttempt(query, params, handler);
+                listRecordsIterativeAttempt(query, params, resolution, handler);
                 return;
             } catch (RuntimeException ex) {
                 attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
@@ -190,8 +223,22 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
     }
 
+    private AuditReferenceResolution extractReferenceResolution(Map<String, Object> params) {
+        if (params == null || !params.containsKey(AuditService.PARAM_RESOLVE_REFERENCES)) {
+            return AuditReferenceResolution.FULL;
+        }
+        Object value = params.remove(AuditService.PARAM_RESOLVE_REFERENCES);
+        if (value == null) {
+            return AuditReferenceResolution.FULL;
+        } else if (value instanceof AuditReferenceResolution) {
+            return (AuditReferenceResolution) value;
+        } else {
+            return AuditReferenceResolution.valueOf(value.toString().toUpperCase());
+        }
+    }
+
     private void listRecordsIterativeAttempt(String query, Map<String, Object> params,
-                                             AuditResultHandler handler) {
+                                             AuditReferenceResolution resolution, AuditResultHandler handler) {
         Session session = null;
         int count = 0;
 
@@ -221,28 +268,28 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
 
             ScrollableResults resultList = q.scroll();
 
-            while (resultList.next()) {
+            // Records are processed in batches, so that objects they refer to can be fetched using a single query.
+            List<RAuditEventRecord> batch = new ArrayList<>(RESOLUTION_BATCH_SIZE);
+            Map<String, PrismObject<? extends ObjectType>> resolvedObjects = new HashMap<>();
+            boolean stopped = false;
+            while (!stopped && resultList.next()) {
                 Object o = resultList.get(0);
                 if (!(o instanceof RAuditEventRecord)) {
                     throw new DtoTranslationException(
                             "Unexpected object in result set. Expected audit record, but got "
                                     + o.getClass().getSimpleName());
                 }
-                RAuditEventRecord raudit = (RAuditEventRecord) o;
-
-                AuditEventRecord audit = RAuditEventRecord.fromRepo(raudit, getPrismContext());
-
-                // TODO what if original name (in audit log) differs from the current one (in repo) ?
-                audit.setInitiator(resolve(session, raudit.getInitiatorOid(), raudit.getInitiatorName(), defaultIfNull(raudit.getInitiatorType(), RObjectType.USER)));
-                audit.setAttorney(resolve(session, raudit.getAttorneyOid(), raudit.getAttorneyName(), RObjectType.USER));
-                audit.setTarget(resolve(session, raudit.getTargetOid(), raudit.getTargetName(), raudit.getTargetType()));
-                audit.setTargetOwner(resolve(session, raudit.getTargetOwnerOid(), raudit.getTargetOwnerName(), RObjectType.USER));
-                count++;
-                if (!handler.handle(audit)) {
-                    LOGGER.trace("Skipping handling of objects after {} was handled. ", audit);
-                    break;
+                batch.add((RAuditEventRecord) o);
+                if (batch.size() >= RESOLUTION_BATCH_SIZE) {
+                    int processed = processRecords(session, batch, resolution, resolvedObjects, handler);
+                    count += processed;
+                    stopped = processed < batch.size();
+                    batch.clear();
                 }
             }
+            if (!stopped && !batch.isEmpty()) {
+                count += processRecords(session, batch, resolution, resolvedObjects, handler);
+            }
 
             session.getTransaction().commit();
 
@@ -270,6 +317,7 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
             q.setMaxResults((int) params.get("setMaxResults"));
             params.remove("setMaxResults");
         }
+        params.remove(AuditService.PARAM_RESOLVE_REFERENCES);         // not a query parameter
         Set<Entry<String, Object>> paramSet = params.entrySet();
         for (Entry<String, Object> p : paramSet) {
             if (p.getValue() == null) {
@@ -316,20 +364,85 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         return value;
     }
 
+    /**
+     * Converts records, provides objects they refer to and passes them to the handler.
+     *
+     * @return Number of records passed to the handler. If less than the number of records, the handler requested to stop.
+     */
+    private int processRecords(Session session, List<RAuditEventRecord> records, AuditReferenceResolution resolution,
+            Map<String, PrismObject<? extends ObjectType>> resolvedObjects, AuditResultHandler handler) throws SchemaException {
+        if (resolution == AuditReferenceResolution.FULL) {
+            fetchReferencedObjects(session, records, resolvedObjects);
+        }
+        int processed = 0;
+        for (RAuditEventRecord raudit : records) {
+            AuditEventRecord audit = RAuditEventRecord.fromRepo(raudit, getPrismContext());
+
+            if (resolution != AuditReferenceResolution.NONE) {
+                // TODO what if original name (in audit log) differs from the current one (in repo) ?
+                audit.setInitiator(resolve(resolvedObjects, raudit.getInitiatorOid(), raudit.getInitiatorName(), defaultIfNull(raudit.getInitiatorType(), RObjectType.USER)));
+                audit.setAttorney(resolve(resolvedObjects, raudit.getAttorneyOid(), raudit.getAttorneyName(), RObjectType.USER));
+                audit.setTarget(resolve(resolvedObjects, raudit.getTargetOid(), raudit.getTargetName(), raudit.getTargetType()));
+                audit.setTargetOwner(resolve(resolvedObjects, raudit.getTargetOwnerOid(), raudit.getTargetOwnerName(), RObjectType.USER));
+            }
+            processed++;
+            if (!handler.handle(audit)) {
+                LOGGER.trace("Skipping handling of objects after {} was handled. ", audit);
+                break;
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Fetches objects referenced from given records (those that are not fetched yet) using as few queries as possible.
+     */
+    private void fetchReferencedObjects(Session session, List<RAuditEventRecord> records,
+            Map<String, PrismObject<? extends ObjectType>> resolvedObjects) throws SchemaException {
+        if (resolvedObjects.size() > MAX_RESOLVED_OBJECTS) {
+            resolvedObjects.clear();
+        }
+        Set<String> oids = new HashSet<>();
+        for (RAuditEventRecord record : records) {
+            addIfNotNull(oids, record.getInitiatorOid());
+            addIfNotNull(oids, record.getAttorneyOid());
+            addIfNotNull(oids, record.getTargetOid());
+            addIfNotNull(oids, record.getTargetOwnerOid());
+        }
+        oids.removeAll(resolvedObjects.keySet());
+        List<String> oidList = new ArrayList<>(oids);
+        for (int i = 0; i < oidList.size(); i += MAX_OIDS_IN_QUERY) {
+            Query query = session.getNamedQuery("get.objects");
+            query.setParameterList("oids", oidList.subList(i, Math.min(i + MAX_OIDS_IN_QUERY, oidList.size())));
+            query.setResultTransformer(GetObjectResult.RESULT_STYLE.getResultTransformer());
+            @SuppressWarnings("unchecked")
+            List<GetObjectResult> objects = query.list();
+            for (GetObjectResult object : objects) {
+                String serialized = FullObjectCodec.decode(object.getFullObject());
+                PrismObject<? extends ObjectType> parsed = getPrismContext().parserFor(serialized).compat().parse();
+                resolvedObjects.put(object.getOid(), parsed);
+            }
+        }
+    }
+
+    private void addIfNotNull(Set<String> oids, String oid) {
+        if (oid != null) {
+            oids.add(oid);
+        }
+    }
+
     // using generic parameter to avoid typing warnings
-    private <X extends ObjectType> PrismObject<X> resolve(Session session, String oid, String defaultName, RObjectType defaultType) throws SchemaException {
+    private <X extends ObjectType> PrismObject<X> resolve(Map<String, PrismObject<? extends ObjectType>> resolvedObjects,
+            String oid, String defaultName, RObjectType defaultType) throws SchemaException {
         if (oid == null) {
             return null;
         }
-        Query query = session.getNamedQuery("get.object");
-        query.setParameter("oid", oid);
-        query.setResultTransformer(GetObjectResult.RESULT_STYLE.getResultTransformer());
-        GetObjectResult object = (GetObjectResult) query.uniqueResult();
+        PrismObject<? extends ObjectType> object = resolvedObjects.get(oid);
 
         PrismObject result;
         if (object != null) {
-            String xml = RUtil.getXmlFromByteArray(object.getFullObject(), getConfiguration().isUseZip());
-            result = getPrismContext().parserFor(xml).compat().parse();
+            // the same object can be referenced from more records
+            result = object.clone();
         } else if (defaultType != null) {
             result = getPrismContext().createObject(defaultType.getJaxbClass());
             result.asObjectable().setName(PolyStringType.fromOrig(defaultName != null ? defaultName : oid));
@@ -359,6 +472,66 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
         }
     }
 
+    private void auditAsynchronously(AuditEventRecord record) {
+        RAuditEventRecord repoRecord;
+        try {
+            repoRecord = RAuditEventRecord.toRepo(record, getPrismContext(), true);
+        } catch (DtoTranslationException ex) {
+            throw new SystemException("Couldn't convert audit record to repository form: " + ex.getMessage(), ex);
+        }
+        asyncWriter.submit(repoRecord);
+    }
+
+    /**
+     * Stores a batch of records (serialized by {@link AsyncAuditWriter}) in a single transaction.
+     * Throws an exception if the records could not be stored.
+     */
+    void storeBatch(List<byte[]> serializedRecords) {
+        final String operation = "auditBatch";
+        int attempt = 1;
+
+        SqlPerformanceMonitor pm = getPerformanceMonitor();
+        long opHandle = pm.registerOperationStart(operation);
+        try {
+            while (true) {
+                try {
+                    storeBatchAttempt(serializedRecords);
+                    return;
+                } catch (RuntimeException ex) {
+                    attempt = baseHelper.logOperationAttempt(null, operation, attempt, ex, null);
+                    pm.registerOperationNewAttempt(opHandle, attempt);
+                }
+            }
+        } finally {
+            pm.registerOperationFinish(opHandle, attempt);
+        }
+    }
+
+    private void storeBatchAttempt(List<byte[]> serializedRecords) {
+        Session session = null;
+        try {
+            session = baseHelper.beginTransaction();
+            for (byte[] serializedRecord : serializedRecords) {
+                // each attempt needs fresh (transient) entities
+                session.save(AsyncAuditWriter.deserialize(serializedRecord));
+            }
+            session.getTransaction().commit();
+        } catch (RuntimeException ex) {
+            baseHelper.handleGeneralRuntimeException(ex, session, null);
+        } finally {
+            baseHelper.cleanupSessionAndResult(session, null);
+        }
+    }
+
+    /**
+     * Makes sure records audited asynchronously by this node are visible to subsequent reads.
+     */
+    private void flushPendingRecords() {
+        if (asyncWriter != null) {
+            asyncWriter.flush();
+        }
+    }
+
     @Override
     public void cleanupAudit(CleanupPolicyType policy, OperationResult parentResult) {
         Validate.notNull(policy, "Cleanup policy must not be null.");
@@ -667,6 +840,8 @@ public class SqlAuditServiceImpl extends SqlBaseService implements AuditService
     }
 
     public long countObjects(String query, Map<String, Object> params) {
+        flushPendingRecords();
+
         Session session = null;
         long count = 0;
         try {
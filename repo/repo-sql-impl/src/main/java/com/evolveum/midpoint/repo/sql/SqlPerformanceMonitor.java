@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2010-2013 Evolveum
+ * Copyright (c) 2010-2018 Evolveum
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,56 +16,70 @@
 
 package com.evolveum.midpoint.repo.sql;
 
+import com.evolveum.midpoint.schema.LabeledString;
+import com.evolveum.midpoint.util.histogram.ConcurrentHistogram;
 import com.evolveum.midpoint.util.logging.LoggingUtils;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Created with IntelliJ IDEA.
- * User: Pavol
- * Date: 31.1.2013
- * Time: 18:43
- * To change this template use File | Settings | File Templates.
+ * Collects performance statistics of SQL repository operations.
+ *
+ * Finished operations are not kept: for each operation kind only aggregated values are maintained
+ * (latency histogram, attempts, conflicts, wasted time), so the memory consumption does not grow with uptime.
+ * Recording is lock-free. Current statistics can be obtained at any time via {@link #getFormattedStatistics()},
+ * {@link #getStatisticsDetails()} (used for repository diagnostics) or via JMX (see {@link SqlPerformanceMonitorMBean}).
  */
-public class SqlPerformanceMonitor {
+public class SqlPerformanceMonitor implements SqlPerformanceMonitorMBean {
 
     private static final Trace LOGGER = TraceManager.getTrace(SqlPerformanceMonitor.class);
 
     public static final int LEVEL_NONE = 0;
     public static final int LEVEL_DETAILS = 10;
 
+    private static final String MBEAN_NAME = "com.evolveum.midpoint.repo.sql:type=SqlPerformanceMonitor";
+
     private int level = 0;
 
     private AtomicLong currentHandle = new AtomicLong();
 
-    private ConcurrentMap<Long,OperationRecord> outstandingOperations = new ConcurrentHashMap<Long, OperationRecord>();
-    private List<OperationRecord> finishedOperations = Collections.synchronizedList(new ArrayList<OperationRecord>());
+    private ConcurrentMap<Long, OperationRecord> outstandingOperations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationKindStatistics> statistics = new ConcurrentHashMap<>();
+    private volatile long statisticsStartTime = System.currentTimeMillis();
 
     private SqlRepositoryFactory sqlRepositoryFactory;
+    private ObjectName mbeanName;
 
     class OperationRecord {
         String kind;
         long handle;
         int attempts;
         long startTime;
-        long startCpuTime;
-        long totalTime;
-        long totalCpuTime;
-        long wastedTime;
-        long wastedCpuTime;
+        long startNanoTime;
+        long wastedTime;        // microseconds
 
         public OperationRecord(String kind, long handle) {
             this.kind = kind;
             this.handle = handle;
             this.startTime = System.currentTimeMillis();
+            this.startNanoTime = System.nanoTime();
+        }
+
+        long getElapsedMicros() {
+            return (System.nanoTime() - startNanoTime) / 1000;
         }
 
         @Override
@@ -75,22 +89,99 @@ public class SqlPerformanceMonitor {
                     ", handle=" + handle +
                     ", attempts=" + attempts +
                     ", startTime=" + new Date(startTime) +
-                    ", totalTime=" + totalTime +
-//                    ", totalCpuTime=" + totalCpuTime +
                     ", wastedTime=" + wastedTime +
-//                    ", wastedCpuTime=" + wastedCpuTime +
                     '}';
         }
     }
 
+    /**
+     * Aggregated statistics for a given operation kind. Times are in microseconds.
+     */
+    static class OperationKindStatistics {
+        // total times of finished operations
+        final ConcurrentHistogram totalTime = new ConcurrentHistogram();
+        final LongAdder wastedTime = new LongAdder();
+        final LongAdder attempts = new LongAdder();
+        // number of attempts that failed because of a conflict (i.e. the number of retries)
+        final LongAdder conflicts = new LongAdder();
+        // operations that needed more than one attempt
+        final LongAdder retriedOperations = new LongAdder();
+        // operations that were not correctly finished
+        final LongAdder unfinished = new LongAdder();
+        // number of operations that finished after N+1 attempts; the last item is "this number or more"
+        final AtomicLongArray perAttempts = new AtomicLongArray(SqlBaseService.LOCKING_MAX_ATTEMPTS + 1);
+
+        void recordFinish(OperationRecord operation, int attempt) {
+            if (attempt < 0) {
+                unfinished.increment();
+                wastedTime.add(operation.wastedTime);
+                return;
+            }
+            totalTime.record(operation.getElapsedMicros());
+            wastedTime.add(operation.wastedTime);
+            attempts.add(attempt);
+            if (attempt > 1) {
+                retriedOperations.increment();
+            }
+            if (attempt >= 1) {
+                perAttempts.incrementAndGet(Math.min(attempt, perAttempts.length()) - 1);
+            }
+        }
+
+        void add(OperationKindStatistics other) {
+            totalTime.add(other.totalTime);
+            wastedTime.add(other.wastedTime.sum());
+            attempts.add(other.attempts.sum());
+            conflicts.add(other.conflicts.sum());
+            retriedOperations.add(other.retriedOperations.sum());
+            unfinished.add(other.unfinished.sum());
+            for (int i = 0; i < perAttempts.length(); i++) {
+                perAttempts.addAndGet(i, other.perAttempts.get(i));
+            }
+        }
+
+        String dump() {
+            long records = totalTime.getCount();
+            if (records == 0) {
+                return "no finished records" + (unfinished.sum() > 0 ? ", unfinished: " + unfinished.sum() : "");
+            }
+            long total = totalTime.getTotal();
+            long wasted = wastedTime.sum();
+            StringBuilder sb = new StringBuilder();
+            sb.append("Records: ").append(records).append(", ")
+                    .append("Time in ms (avg/p50/p95/p99/max/sum): ")
+                    .append(ms(totalTime.getMean())).append("/")
+                    .append(ms(totalTime.getValueAtPercentile(50))).append("/")
+                    .append(ms(totalTime.getValueAtPercentile(95))).append("/")
+                    .append(ms(totalTime.getValueAtPercentile(99))).append("/")
+                    .append(ms(totalTime.getMax())).append("/")
+                    .append(ms(total)).append(", ")
+                    .append("Wasted time in ms (avg/sum): ").append(ms((double) wasted / records)).append("/").append(ms(wasted))
+                    .append(" (").append(String.format(Locale.US, "%.1f", total > 0 ? wasted * 100.0 / total : 0.0)).append("%), ")
+                    .append("Attempts (avg): ").append(String.format(Locale.US, "%.2f", (double) attempts.sum() / records)).append(", ")
+                    .append("Conflicts: ").append(conflicts.sum()).append(", ")
+                    .append("Retried operations: ").append(retriedOperations.sum()).append(", ")
+                    .append("Unfinished: ").append(unfinished.sum());
+            return sb.toString();
+        }
+
+        private static String ms(double micros) {
+            return String.format(Locale.US, "%.1f", micros / 1000.0);
+        }
+    }
+
     public void initialize(SqlRepositoryFactory sqlRepositoryFactory) {
         outstandingOperations.clear();
-        finishedOperations.clear();
+        statistics.clear();
+        statisticsStartTime = System.currentTimeMillis();
         this.sqlRepositoryFactory = sqlRepositoryFactory;
         this.level = sqlRepositoryFactory.getSqlConfiguration().getPerformanceStatisticsLevel();
         if (level >= LEVEL_NONE) {
             LOGGER.info("SQL Performance Monitor initialized (level = " + level + ").");
         }
+        if (level > LEVEL_NONE) {
+            registerMBean();
+        }
     }
 
     public void shutdown() {
@@ -101,83 +192,137 @@ public class SqlPerformanceMonitor {
             if (file != null) {
                 writeStatisticsToFile(file);
             }
+            unregisterMBean();
         }
     }
 
-    private void writeStatisticsToFile(String file) {
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                // e.g. left over from previous repository factory instance (in tests)
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            mbeanName = name;
+        } catch (Exception|LinkageError e) {
+            LoggingUtils.logException(LOGGER, "Couldn't register SQL performance monitor as MBean; continuing without it", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
         try {
-            PrintWriter pw = new PrintWriter(new FileWriter(file, true));
-            for (OperationRecord or : finishedOperations) {
-                pw.println(new Date(or.startTime) + "\t" + or.kind + "\t" + or.attempts + "\t" + or.totalTime + "\t" + or.wastedTime);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName)) {
+                server.unregisterMBean(mbeanName);
+            }
+        } catch (Exception e) {
+            LoggingUtils.logException(LOGGER, "Couldn't unregister SQL performance monitor MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    private void writeStatisticsToFile(String file) {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(file, true))) {
+            Date now = new Date();
+            for (Map.Entry<String, OperationKindStatistics> entry : new TreeMap<>(statistics).entrySet()) {
+                OperationKindStatistics s = entry.getValue();
+                pw.println(now + "\t" + entry.getKey() + "\t" + s.totalTime.getCount() + "\t" + s.attempts.sum()
+                        + "\t" + s.conflicts.sum() + "\t" + s.unfinished.sum() + "\t" + s.totalTime.getTotal()
+                        + "\t" + s.totalTime.getValueAtPercentile(50) + "\t" + s.totalTime.getValueAtPercentile(95)
+                        + "\t" + s.totalTime.getValueAtPercentile(99) + "\t" + s.totalTime.getMax()
+                        + "\t" + s.wastedTime.sum());
             }
             for (OperationRecord or : outstandingOperations.values()) {
-                pw.println(new Date(or.startTime) + "\t" + or.kind + "\t" + "?" + "\t" + "?" + "\t" + or.wastedTime);
+                pw.println(new Date(or.startTime) + "\t" + or.kind + "\toutstanding\t" + or.attempts + "\t" + or.wastedTime);
             }
-            pw.close();
-            LOGGER.trace("" + (finishedOperations.size() + outstandingOperations.size()) + " record(s) written to file " + file);
+            LOGGER.trace("{} statistics record(s) written to file {}", statistics.size() + outstandingOperations.size(), file);
         } catch (IOException e) {
             LoggingUtils.logException(LOGGER, "Couldn't write repository performance statistics to file " + file, e);
         }
-
     }
 
-    class StatEntry {
-        long totalTime, wastedTime;
-        int attempts;
-        int records;
+    @Override
+    public String getFormattedStatistics() {
+        OperationKindStatistics all = new OperationKindStatistics();
 
-        public void process(OperationRecord operation) {
-            totalTime += operation.totalTime;
-            wastedTime += operation.wastedTime;
-            attempts += operation.attempts;
-            records++;
+        StringBuilder perKind = new StringBuilder();
+        for (Map.Entry<String, OperationKindStatistics> entry : new TreeMap<>(statistics).entrySet()) {
+            OperationKindStatistics s = entry.getValue();
+            perKind.append(entry.getKey()).append(": ").append(s.dump()).append("\n");
+            all.add(s);
         }
 
-        public String dump() {
-            if (records == 0) {
-                return "no records";
+        StringBuilder retval = new StringBuilder();
+        retval.append("Since: ").append(new Date(statisticsStartTime)).append("\n");
+        retval.append("Overall: ").append(all.dump()).append("\n");
+        retval.append(perKind);
+        for (int i = 0; i < all.perAttempts.length(); i++) {
+            long count = all.perAttempts.get(i);
+            if (count > 0) {
+                retval.append(i + 1).append(i + 1 < all.perAttempts.length() ? "" : "+").append(" attempt(s): ")
+                        .append(count).append(" operation(s)\n");
             }
-            return "Records: " + records + ", " +
-                   "Total time (avg/sum): " + ((float) totalTime/records) + "/" + totalTime + ", " +
-                   "Wasted time (avg/sum): " + ((float) wastedTime/records) + "/" + wastedTime + " (" + (wastedTime*100.0f/totalTime) + "%), " +
-                   "Attempts (avg): " + ((float) attempts/records);
         }
+        retval.append("Unfinished: ").append(all.unfinished.sum()).append("\n");
+        retval.append("Outstanding: ").append(outstandingOperations.values());
+        return retval.toString();
     }
 
-    private String getFormattedStatistics() {
-        StatEntry all = new StatEntry();
-        StatEntry unfinished = new StatEntry();
-        StatEntry[] perAttempts = new StatEntry[SqlBaseService.LOCKING_MAX_ATTEMPTS+1];         // "+1" is a safety margin
-
-        for (int i = 0; i < SqlBaseService.LOCKING_MAX_ATTEMPTS+1; i++) {
-            perAttempts[i] = new StatEntry();
+    /**
+     * Returns one line of statistics per operation kind; meant to be displayed as part of repository diagnostics.
+     */
+    public List<LabeledString> getStatisticsDetails() {
+        List<LabeledString> rv = new ArrayList<>();
+        if (level <= LEVEL_NONE) {
+            return rv;
         }
-
-        synchronized (finishedOperations) {
-            for (OperationRecord operation : finishedOperations) {
-                all.process(operation);
-                if (operation.attempts >= 1 && operation.attempts <= SqlBaseService.LOCKING_MAX_ATTEMPTS+1) {
-                    perAttempts[operation.attempts-1].process(operation);
-                } else if (operation.attempts < 0) {
-                    unfinished.process(operation);
-                }
-            }
+        for (Map.Entry<String, OperationKindStatistics> entry : new TreeMap<>(statistics).entrySet()) {
+            rv.add(new LabeledString("Performance: " + entry.getKey(), entry.getValue().dump()));
         }
+        rv.add(new LabeledString("Performance: outstanding operations", String.valueOf(outstandingOperations.size())));
+        return rv;
+    }
 
-        StringBuilder retval = new StringBuilder();
-        retval.append("Overall: " + all.dump() + "\n");
-        for (int i = 0; i < SqlBaseService.LOCKING_MAX_ATTEMPTS+1; i++) {
-            retval.append((i+1) + " attempt(s): " + perAttempts[i].dump() + "\n");
-        }
-        retval.append("Unfinished: " + unfinished.dump() + "\n");
-        retval.append("Outstanding: " + outstandingOperations.toString());
-        return retval.toString();
+    @Override
+    public String[] getOperationKinds() {
+        return new TreeSet<>(statistics.keySet()).toArray(new String[0]);
+    }
+
+    @Override
+    public String getOperationStatistics(String kind) {
+        OperationKindStatistics s = statistics.get(kind);
+        return s != null ? s.dump() : null;
     }
 
-    private String dump() {
-        return "Finished operations: " + finishedOperations + "\nOutstanding operations: " + outstandingOperations;
+    @Override
+    public long getFinishedOperationsCount() {
+        return statistics.values().stream().mapToLong(s -> s.totalTime.getCount()).sum();
     }
 
+    @Override
+    public long getConflictsCount() {
+        return statistics.values().stream().mapToLong(s -> s.conflicts.sum()).sum();
+    }
+
+    @Override
+    public int getOutstandingOperationsCount() {
+        return outstandingOperations.size();
+    }
+
+    @Override
+    public void resetStatistics() {
+        statistics.clear();
+        statisticsStartTime = System.currentTimeMillis();
+    }
+
+    private OperationKindStatistics getKindStatistics(String kind) {
+        return statistics.computeIfAbsent(kind, k -> new OperationKindStatistics());
+    }
 
     public long registerOperationStart(String kind) {
 
@@ -187,8 +332,8 @@ public class SqlPerformanceMonitor {
 
         long handle = currentHandle.getAndIncrement();
         Long threadId = Thread.currentThread().getId();
-        if (outstandingOperations.containsKey(threadId)) {
-            OperationRecord unfinishedOperation = outstandingOperations.get(threadId);
+        OperationRecord unfinishedOperation = outstandingOperations.get(threadId);
+        if (unfinishedOperation != null) {
             LOGGER.warn("Unfinished operation: " + unfinishedOperation);
             registerOperationFinishRaw(threadId, unfinishedOperation, -1);
         }
@@ -218,9 +363,8 @@ public class SqlPerformanceMonitor {
     }
 
     private void registerOperationFinishRaw(Long threadId, OperationRecord operation, int attempt) {
-        operation.totalTime = System.currentTimeMillis() - operation.startTime;
         operation.attempts = attempt;
-        finishedOperations.add(operation);
+        getKindStatistics(operation.kind).recordFinish(operation, attempt);
         outstandingOperations.remove(threadId);
     }
 
@@ -242,8 +386,9 @@ public class SqlPerformanceMonitor {
             outstandingOperations.remove(threadId);
             return;
         }
-        operation.wastedTime = System.currentTimeMillis() - operation.startTime;
+        operation.wastedTime = operation.getElapsedMicros();
         operation.attempts = attempt;
+        getKindStatistics(operation.kind).conflicts.increment();
     }
 
 }
@@ -142,6 +142,16 @@ public class SqlRepositoryConfiguration {
     public static final String PROPERTY_JDBC_URL = "jdbcUrl";
     public static final String PROPERTY_DATASOURCE = "dataSource";
     public static final String PROPERTY_USE_ZIP = "useZip";
+    /**
+     * Language of the fullObject column: xml or json. If not specified, legacy format is used (XML without header).
+     * Existing rows are readable regardless of this setting; they are converted on next write (e.g. by reindex task).
+     */
+    public static final String PROPERTY_FULL_OBJECT_FORMAT = "fullObjectFormat";
+    /**
+     * Compression of the fullObject column: none, gzip or fast. Applicable only if fullObjectFormat is set.
+     * Default is gzip if useZip is true, none otherwise.
+     */
+    public static final String PROPERTY_FULL_OBJECT_COMPRESSION = "fullObjectCompression";
     public static final String PROPERTY_MIN_POOL_SIZE = "minPoolSize";
     public static final String PROPERTY_MAX_POOL_SIZE = "maxPoolSize";
 
@@ -156,12 +166,18 @@ public class SqlRepositoryConfiguration {
     //other
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING = "iterativeSearchByPaging";
     public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE = "iterativeSearchByPagingBatchSize";
+    /**
+     * Whether the next page of an iterative search is fetched in a background thread while the current one
+     * is being processed. Default is true.
+     */
+    public static final String PROPERTY_ITERATIVE_SEARCH_BY_PAGING_PREFETCH = "iterativeSearchByPagingPrefetch";
 
     //closure
     public static final String PROPERTY_IGNORE_ORG_CLOSURE = "ignoreOrgClosure";
     public static final String PROPERTY_ORG_CLOSURE_STARTUP_ACTION = "orgClosureStartupAction";
     public static final String PROPERTY_SKIP_ORG_CLOSURE_STRUCTURE_CHECK = "skipOrgClosureStructureCheck";
     public static final String PROPERTY_STOP_ON_ORG_CLOSURE_STARTUP_FAILURE = "stopOnOrgClosureStartupFailure";
+    public static final String PROPERTY_ORG_CLOSURE_IN_MEMORY_INDEX = "orgClosureInMemoryIndex";
 
     private static final String DRIVER_H2 = Driver.class.getName();
     private static final String DRIVER_MYSQL = "com.mysql.cj.jdbc.Driver";
@@ -200,6 +216,7 @@ public class SqlRepositoryConfiguration {
     private final int minPoolSize;
     private final int maxPoolSize;
     private final boolean useZip;
+    private final FullObjectCodec fullObjectCodec;
 
     private TransactionIsolation defaultTransactionIsolation;
     private boolean defaultLockForUpdateViaHibernate;
@@ -219,11 +236,13 @@ public class SqlRepositoryConfiguration {
 
     private final boolean iterativeSearchByPaging;
     private int iterativeSearchByPagingBatchSize;               // not final only because of testing
+    private boolean iterativeSearchByPagingPrefetch;            // not final only because of testing
 
     private final boolean ignoreOrgClosure;
     private final OrgClosureManager.StartupAction orgClosureStartupAction;
     private final boolean skipOrgClosureStructureCheck;
     private final boolean stopOnOrgClosureStartupFailure;
+    private final boolean orgClosureInMemoryIndex;
 
 	/*
 	 * Notes:
@@ -285,6 +304,8 @@ public class SqlRepositoryConfiguration {
         minPoolSize = configuration.getInt(PROPERTY_MIN_POOL_SIZE, DEFAULT_MIN_POOL_SIZE);
         maxPoolSize = configuration.getInt(PROPERTY_MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE);
         useZip = configuration.getBoolean(PROPERTY_USE_ZIP, false);
+        fullObjectCodec = createFullObjectCodec(configuration.getString(PROPERTY_FULL_OBJECT_FORMAT),
+                configuration.getString(PROPERTY_FULL_OBJECT_COMPRESSION));
 
         // requires asServer, baseDir, fileName, port
 	    jdbcUrl = configuration.getString(PROPERTY_JDBC_URL, embedded ? getDefaultEmbeddedJdbcUrl() : null);
@@ -304,6 +325,7 @@ public class SqlRepositoryConfiguration {
         computeDefaultIterativeSearchParameters();
         iterativeSearchByPaging = configuration.getBoolean(PROPERTY_ITERATIVE_SEARCH_BY_PAGING, defaultIterativeSearchByPaging);
         iterativeSearchByPagingBatchSize = configuration.getInt(PROPERTY_ITERATIVE_SEARCH_BY_PAGING_BATCH_SIZE, defaultIterativeSearchByPagingBatchSize);
+        iterativeSearchByPagingPrefetch = configuration.getBoolean(PROPERTY_ITERATIVE_SEARCH_BY_PAGING_PREFETCH, true);
 
         ignoreOrgClosure = configuration.getBoolean(PROPERTY_IGNORE_ORG_CLOSURE, false);
         orgClosureStartupAction = OrgClosureManager.StartupAction.fromValue(
@@ -311,8 +333,28 @@ public class SqlRepositoryConfiguration {
 				        OrgClosureManager.StartupAction.REBUILD_IF_NEEDED.toString()));
         skipOrgClosureStructureCheck = configuration.getBoolean(PROPERTY_SKIP_ORG_CLOSURE_STRUCTURE_CHECK, false);
         stopOnOrgClosureStartupFailure = configuration.getBoolean(PROPERTY_STOP_ON_ORG_CLOSURE_STARTUP_FAILURE, true);
+        orgClosureInMemoryIndex = configuration.getBoolean(PROPERTY_ORG_CLOSURE_IN_MEMORY_INDEX, false);
     }
 
+	private FullObjectCodec createFullObjectCodec(String format, String compression) {
+		if (StringUtils.isEmpty(format)) {
+			if (StringUtils.isNotEmpty(compression)) {
+				LOGGER.warn("Ignoring {}={} because {} is not set", PROPERTY_FULL_OBJECT_COMPRESSION, compression,
+						PROPERTY_FULL_OBJECT_FORMAT);
+			}
+			return FullObjectCodec.legacy(useZip);
+		}
+		try {
+			FullObjectCodec.Language language = FullObjectCodec.Language.fromValue(format);
+			FullObjectCodec.Compression compressionValue = StringUtils.isNotEmpty(compression) ?
+					FullObjectCodec.Compression.fromValue(compression) :
+					(useZip ? FullObjectCodec.Compression.GZIP : FullObjectCodec.Compression.NONE);
+			return new FullObjectCodec(language, compressionValue);
+		} catch (IllegalArgumentException e) {
+			throw new SystemException("Unsupported full object format/compression: " + format + "/" + compression, e);
+		}
+	}
+
 	private String getDefaultEmbeddedJdbcUrl() {
 		return getDefaultEmbeddedJdbcUrlPrefix()
 				+ ";MVCC=FALSE"                // Turn off MVCC, revert to table locking.
@@ -449,7 +491,9 @@ public class SqlRepositoryConfiguration {
 	        defaultIterativeSearchByPaging = true;
 	        defaultIterativeSearchByPagingBatchSize = 50;
         } else {
+            // paging can be switched on explicitly via iterativeSearchByPaging property
 	        defaultIterativeSearchByPaging = false;
+	        defaultIterativeSearchByPagingBatchSize = 100;
         }
     }
 
@@ -636,6 +680,15 @@ public class SqlRepositoryConfiguration {
         this.iterativeSearchByPagingBatchSize = iterativeSearchByPagingBatchSize;
     }
 
+    public boolean isIterativeSearchByPagingPrefetch() {
+        return iterativeSearchByPagingPrefetch;
+    }
+
+    // exists because of testing
+    public void setIterativeSearchByPagingPrefetch(boolean iterativeSearchByPagingPrefetch) {
+        this.iterativeSearchByPagingPrefetch = iterativeSearchByPagingPrefetch;
+    }
+
     public String getDataSource() {
         return dataSource;
     }
@@ -652,6 +705,10 @@ public class SqlRepositoryConfiguration {
         return useZip;
     }
 
+    public FullObjectCodec getFullObjectCodec() {
+        return fullObjectCodec;
+    }
+
     public boolean isIgnoreOrgClosure() {
         return ignoreOrgClosure;
     }
@@ -704,6 +761,14 @@ public class SqlRepositoryConfiguration {
         return skipOrgClosureStructureCheck;
     }
 
+    /**
+     * Whether the org hierarchy should be kept also in memory (see OrgHierarchyIndex). Not suitable for clusters,
+     * as the index is not aware of changes made by other nodes.
+     */
+    public boolean isOrgClosureInMemoryIndex() {
+        return orgClosureInMemoryIndex;
+    }
+
     public Database getDatabase() {
         return database;
     }
@@ -34,6 +34,7 @@ import com.evolveum.midpoint.prism.match.MatchingRuleRegistry;
 import com.evolveum.midpoint.prism.path.ItemPath;
 import com.evolveum.midpoint.prism.polystring.PolyString;
 import com.evolveum.midpoint.prism.query.AllFilter;
+import com.evolveum.midpoint.prism.query.InOidFilter;
 import com.evolveum.midpoint.prism.query.NoneFilter;
 import com.evolveum.midpoint.prism.query.ObjectFilter;
 import com.evolveum.midpoint.prism.query.ObjectPaging;
@@ -108,6 +109,7 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
     private static final Trace LOGGER_PERFORMANCE = TraceManager.getTrace(PERFORMANCE_LOG_NAME);
 
     private static final int MAX_CONFLICT_WATCHERS = 10;          // just a safeguard (watchers per thread should be at most 1-2)
+    private static final int MAX_OIDS_IN_QUERY = 1000;            // Oracle does not allow more items in the IN clause
     public static final int MAX_CONSTRAINT_NAME_LENGTH = 40;
     private static final String IMPLEMENTATION_SHORT_NAME = "SQL";
     private static final String IMPLEMENTATION_DESCRIPTION = "Implementation that stores data in generic relational" +
@@ -181,6 +183,48 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 	    return object;
     }
 
+    @NotNull
+    @Override
+    public <T extends ObjectType> List<PrismObject<T>> getObjects(Class<T> type, Collection<String> oids,
+            Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result) throws SchemaException {
+        Validate.notNull(type, "Object type must not be null.");
+        Validate.notNull(oids, "Oids must not be null.");
+        Validate.notNull(result, "Operation result must not be null.");
+
+        LOGGER.debug("Getting {} object(s) of type '{}'.", oids.size(), type.getSimpleName());
+
+        OperationResult subResult = result.createMinorSubresult(GET_OBJECTS);
+        subResult.addParam("type", type.getName());
+        subResult.addArbitraryObjectCollectionAsParam("oids", oids);
+
+        // one IN query per batch of OIDs; the objects are parsed in parallel by the object retriever
+        List<String> uniqueOids = new ArrayList<>(new LinkedHashSet<>(oids));
+        Map<String, PrismObject<T>> objectsByOid = new HashMap<>();
+        for (int from = 0; from < uniqueOids.size(); from += MAX_OIDS_IN_QUERY) {
+            List<String> batch = uniqueOids.subList(from, Math.min(from + MAX_OIDS_IN_QUERY, uniqueOids.size()));
+            batch.forEach(oid -> InternalMonitor.recordRepositoryRead(type, oid));
+            ObjectQuery query = ObjectQuery.createObjectQuery(InOidFilter.createInOid(batch));
+            List<PrismObject<T>> objects = executeQueryAttempts(query, "getObjects", "getting", subResult,
+                    () -> new SearchResultList<>(new ArrayList<PrismObject<T>>(0)),
+                    (q) -> objectRetriever.searchObjectsAttempt(type, q, options, subResult));
+            for (PrismObject<T> object : objects) {
+                objectsByOid.put(object.getOid(), object);
+                invokeConflictWatchers((w) -> w.afterGetObject(object));
+            }
+        }
+        subResult.computeStatusIfUnknown();
+
+        List<PrismObject<T>> rv = new ArrayList<>(objectsByOid.size());
+        for (String oid : uniqueOids) {
+            PrismObject<T> object = objectsByOid.get(oid);
+            if (object != null) {
+                rv.add(object);
+            }
+        }
+        LOGGER.trace("Got {} of {} requested object(s)", rv.size(), uniqueOids.size());
+        return rv;
+    }
+
     private <RV> RV executeAttempts(String oid, String operationName, String operationVerb, OperationResult subResult,
             ResultSupplier<RV> supplier) throws ObjectNotFoundException, SchemaException {
         SqlPerformanceMonitor pm = getPerformanceMonitor();
@@ -657,6 +701,8 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 
         readDetailsFromConnection(diag, config);
 
+        details.addAll(getPerformanceMonitor().getStatisticsDetails());
+
         Collections.sort(details, new Comparator<LabeledString>() {
 
             @Override
@@ -894,6 +940,11 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
             return false;
         }
 
+        OrgHierarchyIndex hierarchyIndex = closureManager.getHierarchyIndex();
+        if (hierarchyIndex != null) {
+            return hierarchyIndex.isAnySubordinate(upperOrgOid, lowerObjectOids);
+        }
+
         // TODO executeAttempts
         int attempt = 1;
 
@@ -1123,6 +1174,11 @@ public class SqlRepositoryServiceImpl extends SqlBaseService implements Reposito
 		return fullTextSearchConfiguration;
 	}
 
+	@Override
+	public void applyCachingConfiguration(CachingConfigurationType cachingConfiguration) {
+		// node-wide caching is provided by RepositoryCache
+	}
+
 	@Override
 	public void postInit(OperationResult result) throws SchemaException {
 
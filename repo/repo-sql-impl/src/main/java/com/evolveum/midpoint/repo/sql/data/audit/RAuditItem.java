@@ -17,6 +17,7 @@
 package com.evolveum.midpoint.repo.sql.data.audit;
 
 import javax.persistence.*;
+import java.io.Serializable;
 
 import com.evolveum.midpoint.repo.sql.helpers.modify.Ignore;
 import com.evolveum.midpoint.repo.sql.util.EntityState;
@@ -27,7 +28,9 @@ import org.hibernate.annotations.ForeignKey;
 @IdClass(RAuditItemId.class)
 @Table(name = RAuditItem.TABLE_NAME, indexes = {
 		@Index(name = "iChangedItemPath", columnList = "changedItemPath")})
-public class RAuditItem implements EntityState {
+public class RAuditItem implements EntityState, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	public static final String TABLE_NAME = "m_audit_item";
 	public static final String COLUMN_RECORD_ID = "record_id";
@@ -56,10 +56,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.xml.namespace.QName;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.apache.commons.lang3.ArrayUtils.getLength;
 
@@ -71,6 +75,10 @@ public class ObjectRetriever {
 
 	public static final String CLASS_DOT = ObjectRetriever.class.getName() + ".";
 	public static final String OPERATION_GET_OBJECT_INTERNAL = CLASS_DOT + "getObjectInternal";
+	private static final String OPERATION_PREFETCH_PAGE = CLASS_DOT + "prefetchPage";
+
+	// parsing of full objects is CPU-bound and needs no session, so larger query results are parsed in parallel
+	private static final int PARALLEL_PARSING_THRESHOLD = 20;
 
     private static final Trace LOGGER = TraceManager.getTrace(ObjectRetriever.class);
     private static final Trace LOGGER_PERFORMANCE = TraceManager.getTrace(SqlRepositoryServiceImpl.PERFORMANCE_LOG_NAME);
@@ -80,10 +88,28 @@ public class ObjectRetriever {
 	@Autowired private BaseHelper baseHelper;
 	@Autowired private NameResolutionHelper nameResolutionHelper;
 	@Autowired private PrismContext prismContext;
+	@Autowired private OrgClosureManager closureManager;
 	@Autowired
 	@Qualifier("repositoryService")
 	private RepositoryService repositoryService;
 
+	// fetches next pages of iterative searches; there is at most one outstanding task per running search
+	private final ExecutorService prefetchExecutor = createPrefetchExecutor();
+
+	private static ExecutorService createPrefetchExecutor() {
+		AtomicInteger counter = new AtomicInteger();
+		return Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "RepositoryPrefetch-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		prefetchExecutor.shutdownNow();
+	}
+
     public <T extends ObjectType> PrismObject<T> getObjectAttempt(Class<T> type, String oid,
 			Collection<SelectorOptions<GetOperationOptions>> options, OperationResult result)
             throws ObjectNotFoundException, SchemaException {
@@ -211,6 +237,10 @@ public class ObjectRetriever {
 		return prismObject;
     }
 
+    private QueryEngine2 createQueryEngine() {
+        return new QueryEngine2(getConfiguration(), prismContext, closureManager.getHierarchyIndex());
+    }
+
     protected SqlRepositoryConfiguration getConfiguration() {
         return baseHelper.getConfiguration();
     }
@@ -316,7 +346,7 @@ public class ObjectRetriever {
                 longCount = (Number) sqlQuery.uniqueResult();
             } else {
                 RQuery rQuery;
-				QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+				QueryEngine2 engine = createQueryEngine();
 				rQuery = engine.interpret(query, type, options, true, session);
 
                 longCount = (Number) rQuery.uniqueResult();
@@ -347,7 +377,7 @@ public class ObjectRetriever {
 		try {
 			session = baseHelper.beginReadOnlyTransaction();
 
-			QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+			QueryEngine2 engine = createQueryEngine();
 			RQuery rQuery = engine.interpret(query, type, options, true, session);
 			Number longCount = (Number) rQuery.uniqueResult();
 			LOGGER.trace("Found {} objects.", longCount);
@@ -371,7 +401,7 @@ public class ObjectRetriever {
             session = baseHelper.beginReadOnlyTransaction();
             RQuery rQuery;
 
-			QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+			QueryEngine2 engine = createQueryEngine();
 			rQuery = engine.interpret(query, type, options, false, session);
 
 			@SuppressWarnings({"unchecked", "raw"})
@@ -396,12 +426,27 @@ public class ObjectRetriever {
 			Session session, OperationResult result) throws SchemaException {
 		List<PrismObject<T>> rv = new ArrayList<>();
 		if (objects != null) {
-			for (GetObjectResult object : objects) {
+			@SuppressWarnings("unchecked")
+			PrismObject<T>[] parsedObjects = new PrismObject[objects.size()];
+			Throwable[] parsingErrors = new Throwable[objects.size()];
+			IntStream indices = IntStream.range(0, objects.size());
+			(objects.size() >= PARALLEL_PARSING_THRESHOLD ? indices.parallel() : indices).forEach(i -> {
+				try {
+					parsedObjects[i] = parseFullObject(objects.get(i), type, objects.get(i).getOid());
+				} catch (Throwable t) {
+					parsingErrors[i] = t;
+				}
+			});
+			for (int i = 0; i < objects.size(); i++) {
+				GetObjectResult object = objects.get(i);
 				String oid = object.getOid();
 				Holder<PrismObject<T>> partialValueHolder = new Holder<>();
 				PrismObject<T> prismObject;
 				try {
-					prismObject = updateLoadedObject(object, type, oid, options, partialValueHolder, session, result);
+					if (parsingErrors[i] != null) {
+						throw parsingErrors[i];
+					}
+					prismObject = updateLoadedObject(object, parsedObjects[i], type, options, partialValueHolder, session, result);
 				} catch (Throwable t) {
 					if (!partialValueHolder.isEmpty()) {
 						prismObject = partialValueHolder.getValue();
@@ -434,7 +479,7 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
 
-            QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+            QueryEngine2 engine = createQueryEngine();
             RQuery rQuery = engine.interpret(query, type, options, false, session);
 
             if (cases) {
@@ -482,9 +527,15 @@ public class ObjectRetriever {
     		String oid, Collection<SelectorOptions<GetOperationOptions>> options,
 			Holder<PrismObject<T>> partialValueHolder,
 			Session session, OperationResult operationResult) throws SchemaException {
+		return updateLoadedObject(result, parseFullObject(result, type, oid), type, options, partialValueHolder, session,
+				operationResult);
+	}
 
+	// does not touch the session, so it can be called from any thread
+	private <T extends ObjectType> PrismObject<T> parseFullObject(GetObjectResult result, Class<T> type, String oid)
+			throws SchemaException {
 		byte[] fullObject = result.getFullObject();
-		String xml = RUtil.getXmlFromByteArray(fullObject, getConfiguration().isUseZip());
+		String xml = FullObjectCodec.decode(fullObject);
         PrismObject<T> prismObject;
         try {
             // "Postel mode": be tolerant what you read. We need this to tolerate (custom) schema changes
@@ -504,7 +555,14 @@ public class ObjectRetriever {
             		type.getSimpleName(), oid, e.getClass().getName(), e.getMessage(), xml, e);
             throw e;
         }
-        attachDiagDataIfRequested(prismObject, fullObject, options);
+        return prismObject;
+	}
+
+	private <T extends ObjectType> PrismObject<T> updateLoadedObject(GetObjectResult result, PrismObject<T> prismObject,
+			Class<T> type, Collection<SelectorOptions<GetOperationOptions>> options,
+			Holder<PrismObject<T>> partialValueHolder,
+			Session session, OperationResult operationResult) throws SchemaException {
+        attachDiagDataIfRequested(prismObject, result.getFullObject(), options);
         if (FocusType.class.isAssignableFrom(prismObject.getCompileTimeClass())) {
             if (SelectorOptions.hasToLoadPath(FocusType.F_JPEG_PHOTO, options)) {
                 //todo improve, use user.hasPhoto flag and take options into account [lazyman]
@@ -687,7 +745,7 @@ public class ObjectRetriever {
         try {
             session = baseHelper.beginReadOnlyTransaction();
             RQuery rQuery;
-			QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+			QueryEngine2 engine = createQueryEngine();
 			rQuery = engine.interpret(query, type, options, false, session);
 
             ScrollableResults results = rQuery.scroll(ScrollMode.FORWARD_ONLY);
@@ -742,22 +800,19 @@ public class ObjectRetriever {
         try {
             ObjectQuery pagedQuery = query != null ? query.clone() : new ObjectQuery();
 
-            int offset;
-            int remaining;
-            final int batchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
-
             ObjectPaging paging = pagedQuery.getPaging();
 
-            if (paging == null) {
-                paging = ObjectPaging.createPaging(0, 0);        // counts will be filled-in later
-                pagedQuery.setPaging(paging);
-                offset = 0;
-                remaining = repositoryService.countObjects(type, query, options, result);
-            } else {
-                offset = paging.getOffset() != null ? paging.getOffset() : 0;
-                remaining = paging.getMaxSize() != null ? paging.getMaxSize() : repositoryService.countObjects(type, query, options, result) - offset;
+            if (paging == null || !paging.hasOrdering() && !paging.hasGrouping()) {
+                // The order is not prescribed, so we can use OID ordering and (much cheaper) keyset pagination.
+                searchObjectsIterativeByOid(type, pagedQuery, paging != null ? paging.getOffset() : null,
+                        paging != null ? paging.getMaxSize() : null, handler, options, result);
+                return;
             }
 
+            final int batchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
+            int offset = paging.getOffset() != null ? paging.getOffset() : 0;
+            int remaining = paging.getMaxSize() != null ? paging.getMaxSize() : repositoryService.countObjects(type, query, options, result) - offset;
+
 main:       while (remaining > 0) {
                 paging.setOffset(offset);
                 paging.setMaxSize(remaining < batchSize ? remaining : batchSize);
@@ -813,35 +868,119 @@ main:       while (remaining > 0) {
         try {
             ObjectQuery pagedQuery = query != null ? query.clone() : new ObjectQuery();
 
-            String lastOid = "";
-            final int batchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
-
             if (pagedQuery.getPaging() != null) {
                 throw new IllegalArgumentException("Externally specified paging is not supported on strictly sequential iterative search.");
             }
 
-            ObjectPagingAfterOid paging = new ObjectPagingAfterOid();
-            pagedQuery.setPaging(paging);
-main:       for (;;) {
-                paging.setOidGreaterThan(lastOid);
-                paging.setMaxSize(batchSize);
+            searchObjectsIterativeByOid(type, pagedQuery, null, null, handler, options, result);
+        } finally {
+            if (result.isUnknown()) {
+                result.computeStatus();
+            }
+        }
+    }
+
+    /**
+     * Keyset pagination: objects are fetched ordered by OID, each page starting after the last OID of the previous one.
+     * So the database never has to skip already processed rows and the whole iteration takes linear time.
+     *
+     * If prefetching is enabled, the next page is fetched in a background thread while the handler processes
+     * the current one. (Objects in the next page can be therefore a bit older than the handler expects;
+     * this is the same as with the single-transaction iteration.)
+     *
+     * @param offset Number of objects to be skipped at the beginning (applies to the first page only).
+     * @param maxSize Maximum number of objects to be returned, null means no limit.
+     */
+    private <T extends ObjectType> void searchObjectsIterativeByOid(Class<T> type, ObjectQuery query, Integer offset,
+            Integer maxSize, ResultHandler<T> handler, Collection<SelectorOptions<GetOperationOptions>> options,
+            OperationResult result) throws SchemaException {
 
-                List<PrismObject<T>> objects = repositoryService.searchObjects(type, pagedQuery, options, result);
+        final int batchSize = getConfiguration().getIterativeSearchByPagingBatchSize();
+        final boolean prefetch = getConfiguration().isIterativeSearchByPagingPrefetch();
+
+        int remaining = maxSize != null ? maxSize : Integer.MAX_VALUE;
+        if (remaining <= 0) {
+            return;
+        }
+        int pageSize = Math.min(remaining, batchSize);
+        List<PrismObject<T>> objects = searchPageAfterOid(type, query, offset, "", pageSize, options, result);
+        Future<List<PrismObject<T>>> nextPage = null;
+        try {
+            while (!objects.isEmpty()) {
+                remaining -= objects.size();
+                // a short page means there was nothing more at the time of the search
+                boolean hasMore = remaining > 0 && objects.size() == pageSize;
+                String lastOid = objects.get(objects.size() - 1).getOid();
+                pageSize = Math.min(remaining, batchSize);
+
+                OperationResult prefetchResult = null;
+                if (hasMore && prefetch) {
+                    prefetchResult = new OperationResult(OPERATION_PREFETCH_PAGE);
+                    nextPage = submitPrefetch(type, query, lastOid, pageSize, options, prefetchResult);
+                }
 
                 for (PrismObject<T> object : objects) {
-                    lastOid = object.getOid();
                     if (!handler.handle(object, result)) {
-                        break main;
+                        return;
                     }
                 }
 
-                if (objects.size() == 0) {
-                    break;
+                if (!hasMore) {
+                    return;
+                } else if (nextPage != null) {
+                    objects = getPrefetchedPage(nextPage);
+                    nextPage = null;
+                    result.addSubresult(prefetchResult);
+                } else {
+                    objects = searchPageAfterOid(type, query, null, lastOid, pageSize, options, result);
                 }
             }
         } finally {
-            if (result.isUnknown()) {
-                result.computeStatus();
+            if (nextPage != null) {
+                nextPage.cancel(false);         // the handler has stopped the iteration (or failed)
+            }
+        }
+    }
+
+    private <T extends ObjectType> List<PrismObject<T>> searchPageAfterOid(Class<T> type, ObjectQuery query,
+            Integer offset, String lastOid, int maxSize, Collection<SelectorOptions<GetOperationOptions>> options,
+            OperationResult result) throws SchemaException {
+        ObjectQuery pageQuery = query.clone();
+        ObjectPagingAfterOid paging = new ObjectPagingAfterOid();
+        paging.setOffset(offset);
+        paging.setOidGreaterThan(lastOid);
+        paging.setMaxSize(maxSize);
+        pageQuery.setPaging(paging);
+        return repositoryService.searchObjects(type, pageQuery, options, result);
+    }
+
+    // the prefetch result is used by the background thread only; the caller can touch it after getting the page
+    private <T extends ObjectType> Future<List<PrismObject<T>>> submitPrefetch(Class<T> type, ObjectQuery query,
+            String lastOid, int maxSize, Collection<SelectorOptions<GetOperationOptions>> options, OperationResult prefetchResult) {
+        try {
+            return prefetchExecutor.submit(() -> searchPageAfterOid(type, query, null, lastOid, maxSize, options, prefetchResult));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Couldn't prefetch next page (shutting down?), it will be fetched synchronously: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private <T extends ObjectType> List<PrismObject<T>> getPrefetchedPage(Future<List<PrismObject<T>>> future) throws SchemaException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for the next page of objects", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SchemaException) {
+                throw (SchemaException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new SystemException("Couldn't fetch the next page of objects: " + cause.getMessage(), cause);
             }
         }
     }
@@ -886,7 +1025,7 @@ main:       for (;;) {
 			final org.hibernate.Query query;
 			final boolean isMidpointQuery = request.getImplementationLevelQuery() == null;
 			if (isMidpointQuery) {
-				QueryEngine2 engine = new QueryEngine2(getConfiguration(), prismContext);
+				QueryEngine2 engine = createQueryEngine();
 				RQueryImpl rQuery = (RQueryImpl) engine.interpret(request.getQuery(), request.getType(), null, false, session);
 				query = rQuery.getQuery();
 				implementationLevelQuery = query.getQueryString();
@@ -33,6 +33,7 @@ import com.evolveum.midpoint.repo.sql.data.RepositoryContext;
 import com.evolveum.midpoint.repo.sql.data.common.RObject;
 import com.evolveum.midpoint.repo.sql.util.ClassMapper;
 import com.evolveum.midpoint.repo.sql.util.DtoTranslationException;
+import com.evolveum.midpoint.repo.sql.util.FullObjectCodec;
 import com.evolveum.midpoint.repo.sql.util.IdGeneratorResult;
 import com.evolveum.midpoint.repo.sql.util.PrismIdentifierGenerator;
 import com.evolveum.midpoint.repo.sql.util.RUtil;
@@ -139,6 +140,7 @@ public class ObjectUpdater {
                 oid = nonOverwriteAddObjectAttempt(object, rObject, originalOid, session, closureContext);
             }
             session.getTransaction().commit();
+            closureManager.onTransactionCommitted(closureContext);
 
             LOGGER.trace("Saved object '{}' with oid '{}'", object.getCompileTimeClass().getSimpleName(), oid);
 
@@ -273,10 +275,11 @@ public class ObjectUpdater {
             savedObject.removeContainer(AccessCertificationCampaignType.F_CASE);
         }
 
-        xml = prismContext.serializeObjectToString(savedObject, PrismContext.LANG_XML);
-        byte[] fullObject = RUtil.getByteArrayFromXml(xml, getConfiguration().isUseZip());
+        FullObjectCodec codec = getConfiguration().getFullObjectCodec();
+        String serialized = prismContext.serializeObjectToString(savedObject, codec.getLanguage());
+        byte[] fullObject = codec.encode(serialized);
 
-        LOGGER.trace("Storing full object\n{}", xml);
+        LOGGER.trace("Storing full object\n{}", serialized);
 
         object.setFullObject(fullObject);
 
@@ -357,6 +360,7 @@ public class ObjectUpdater {
             }
 
             session.getTransaction().commit();
+            closureManager.onTransactionCommitted(closureContext);
         } catch (ObjectNotFoundException ex) {
             baseHelper.rollbackTransaction(session, ex, result, true);
             throw ex;
@@ -486,6 +490,7 @@ public class ObjectUpdater {
             LOGGER.trace("Before commit...");
             session.getTransaction().commit();
             LOGGER.trace("Committed!");
+            closureManager.onTransactionCommitted(closureContext);
         } catch (ObjectNotFoundException ex) {
             baseHelper.rollbackTransaction(session, ex, result, true);
             throw ex;
@@ -19,12 +19,10 @@ import com.evolveum.midpoint.prism.PrismObject;
 import com.evolveum.midpoint.prism.PrismReferenceValue;
 import com.evolveum.midpoint.prism.delta.ItemDelta;
 import com.evolveum.midpoint.prism.delta.ReferenceDelta;
-import com.evolveum.midpoint.prism.query.ObjectQuery;
-import com.evolveum.midpoint.repo.api.RepositoryService;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
+import com.evolveum.midpoint.repo.sql.TransactionIsolation;
 import com.evolveum.midpoint.repo.sql.data.common.ROrgClosure;
 import com.evolveum.midpoint.repo.sql.data.common.other.RObjectType;
-import com.evolveum.midpoint.schema.ResultHandler;
 import com.evolveum.midpoint.schema.result.OperationResult;
 import com.evolveum.midpoint.schema.result.OperationResultStatus;
 import com.evolveum.midpoint.util.QNameUtil;
@@ -45,14 +43,16 @@ import org.hibernate.query.NativeQuery;
 import org.hibernate.type.IntegerType;
 import org.hibernate.type.StringType;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * This class and its subclasses provides org. closure table handling.
@@ -78,10 +78,6 @@ public class OrgClosureManager {
 
     private static final Trace LOGGER = TraceManager.getTrace(OrgClosureManager.class);
 
-    @Autowired
-	@Qualifier("repositoryService")
-    private RepositoryService repositoryService;
-
 	@Autowired
 	private BaseHelper baseHelper;
 
@@ -89,10 +85,14 @@ public class OrgClosureManager {
     private static final boolean COUNT_CLOSURE_RECORDS = false;
     static final String CLOSURE_TABLE_NAME = "m_org_closure";
     public static final String TEMP_DELTA_TABLE_NAME_FOR_ORACLE = "m_org_closure_temp_delta";
+    private static final int REBUILD_BATCH_SIZE = 1000;
 
     // only for single-thread performance testing
     long lastOperationDuration;
 
+    // null if the in-memory index is not used
+    private volatile OrgHierarchyIndex hierarchyIndex;
+
     //region Public interface
     /**
      * Main method called from SQL repository service to update the closure table during an operation.
@@ -127,6 +127,10 @@ public class OrgClosureManager {
 
         List<ReferenceDelta> deltas = filterParentRefDeltas(modifications);
 
+        if (!isNoChange(deltas, originalObject, operation)) {
+            lockClosureTableIfDeferred(closureContext, session);
+        }
+
         switch (operation) {
             case ADD:
                 handleAdd(oid, deltas, closureContext, session);
@@ -138,6 +142,13 @@ public class OrgClosureManager {
                 handleModify(oid, deltas, originalObject, closureContext, session);
         }
 
+        if (hierarchyIndex != null && closureContext != null) {
+            // applied to the index only after the transaction is committed
+            closureContext.oid = oid;
+            closureContext.operation = operation;
+            closureContext.parentOids = getParentOidsAfterOperation(deltas, originalObject, operation);
+        }
+
         long duration = System.currentTimeMillis() - time;
         LOGGER.debug("################# Org. closure update finished in {} ms.", duration);
         lastOperationDuration = duration;
@@ -180,12 +191,16 @@ public class OrgClosureManager {
     }
 
     private Context onBeginTransaction(Session session) {
+        Context ctx = new Context();
         // table locking
         if (isH2() || isOracle() || isSQLServer()) {
-            lockClosureTable(session);
+            if (isLockingDeferrable()) {
+                ctx.lockDeferred = true;
+            } else {
+                lockClosureTable(session);
+            }
         }
         // other
-        Context ctx = new Context();
         if (isH2()) {
             ctx.temporaryTableName = generateDeltaTempTableName();
             String createTableQueryText = "create temporary table " + ctx.temporaryTableName + " (\n" +
@@ -202,6 +217,21 @@ public class OrgClosureManager {
         return ctx;
     }
 
+    /**
+     * Called after the transaction in which the closure was updated is committed.
+     */
+    public void onTransactionCommitted(Context closureContext) {
+        OrgHierarchyIndex index = hierarchyIndex;
+        if (index == null || closureContext == null || closureContext.operation == null) {
+            return;
+        }
+        if (closureContext.operation == Operation.DELETE) {
+            index.removeOrg(closureContext.oid);
+        } else {
+            index.setOrg(closureContext.oid, closureContext.parentOids);
+        }
+    }
+
     // may cause implicit commit!!! (in H2)
     public void cleanUpAfterOperation(Context closureContext, Session session) {
         if (closureContext == null) {
@@ -240,7 +270,9 @@ public class OrgClosureManager {
         boolean check, rebuild;
         switch (repoConfiguration.getOrgClosureStartupAction()) {
             case NONE:
-                return;
+                check = false;
+                rebuild = false;
+                break;
             case CHECK:
                 check = true;
                 rebuild = false;
@@ -256,13 +288,27 @@ public class OrgClosureManager {
             default:
                 throw new IllegalArgumentException("Invalid value: " + repoConfiguration.getOrgClosureStartupAction());
         }
-        checkAndOrRebuild(check, rebuild, repoConfiguration.isStopOnOrgClosureStartupFailure(), true, result);
+        if (check || rebuild) {
+            checkAndOrRebuild(check, rebuild, repoConfiguration.isStopOnOrgClosureStartupFailure(), true, result);
+        }
+
+        if (repoConfiguration.isOrgClosureInMemoryIndex()) {
+            hierarchyIndex = new OrgHierarchyIndex();
+            loadHierarchyIndex();
+        }
     }
 
     public boolean isEnabled() {
         return !baseHelper.getConfiguration().isIgnoreOrgClosure();
     }
 
+    /**
+     * Returns the in-memory copy of the org hierarchy; or null if it is not maintained.
+     */
+    public OrgHierarchyIndex getHierarchyIndex() {
+        return hierarchyIndex;
+    }
+
     /**
      * Does a consistency check (either quick or thorough one) and rebuilds the closure table if necessary.
      *
@@ -289,6 +335,7 @@ public class OrgClosureManager {
             if (rebuild || (check && !quickCheckOnly)) {
                 // thorough check requires the temporary table as well
                 context = onBeginTransaction(session);
+                lockClosureTableIfDeferred(context, session);
             }
 
             if (quickCheckOnly) {
@@ -340,6 +387,26 @@ public class OrgClosureManager {
             cleanUpAfterOperation(context, session);     // commits in case of H2!
             session.close();
         }
+        if (rebuilt && hierarchyIndex != null) {
+            loadHierarchyIndex();
+        }
+    }
+
+    private void loadHierarchyIndex() {
+        long start = System.currentTimeMillis();
+        Session session = baseHelper.getSessionFactory().openSession();
+        try {
+            session.getTransaction().begin();
+            List<String> orgOids = getAllOrgOids(session);
+            Map<String, Set<String>> parentOids = getAllOrgParentOids(session);
+            session.getTransaction().rollback();
+
+            hierarchyIndex.rebuild(orgOids, parentOids);
+            LOGGER.info("Org hierarchy index with {} organizations loaded in {} ms", orgOids.size(),
+                    System.currentTimeMillis() - start);
+        } finally {
+            session.close();
+        }
     }
 
     //endregion
@@ -367,25 +434,18 @@ public class OrgClosureManager {
         deleteQuery.executeUpdate();
         LOGGER.trace("Closure table content deleted");
 
-        final int orgsTotal = repositoryService.countObjects(OrgType.class, new ObjectQuery(), null, result);
-        final MutableInt orgsProcessed = new MutableInt(0);
-
-        ResultHandler<OrgType> handler = new ResultHandler<OrgType>() {
-            @Override
-            public boolean handle(PrismObject<OrgType> object, OperationResult parentResult) {
-                LOGGER.trace("Processing {}", object);
-                handleAdd(object.getOid(), getParentOidsFromObject(object), context, session);
-                orgsProcessed.add(1);
-                int currentState = orgsProcessed.intValue();
-                if (currentState % 100 == 0) {
-                    LOGGER.info("{} organizations processed (out of {})", currentState, orgsTotal);
-                }
-                return true;
-            }
-        };
-        repositoryService.searchObjectsIterative(OrgType.class, new ObjectQuery(), handler, null, false, result);
+        List<String> orgOids = getAllOrgOids(session);
+        Map<String, Set<String>> parentOids = getAllOrgParentOids(session);
+        LOGGER.info("{} organizations read", orgOids.size());
+
+        long start = System.currentTimeMillis();
+        Map<String, Map<String, Integer>> closure = computeClosure(orgOids, parentOids);
+        LOGGER.info("Org closure computed in {} ms", System.currentTimeMillis() - start);
 
-        LOGGER.info("Org closure table was successfully recomputed (not committed yet); all {} organizations processed", orgsTotal);
+        start = System.currentTimeMillis();
+        int rows = insertClosureRows(closure, session);
+        LOGGER.info("Org closure table was successfully recomputed (not committed yet); all {} organizations processed, "
+                + "{} rows inserted in {} ms", orgOids.size(), rows, System.currentTimeMillis() - start);
 
         if (check) {
             LOGGER.info("Reading from recomputed org closure table");
@@ -401,6 +461,87 @@ public class OrgClosureManager {
         }
     }
 
+    /**
+     * Computes the closure in memory: for each org, the number of paths to each of its ancestors (including itself).
+     *
+     * Orgs are processed level by level, so parents are always computed before their children. Orgs on one level
+     * do not depend on each other, so they are computed in parallel.
+     */
+    static Map<String, Map<String, Integer>> computeClosure(Collection<String> orgOids,
+            Map<String, ? extends Collection<String>> parentOids) {
+        Set<String> existing = new HashSet<>(orgOids);
+        Map<String, List<String>> livingParents = new HashMap<>();
+        Map<String, List<String>> children = new HashMap<>();
+        Map<String, Integer> parentsToCompute = new HashMap<>();
+        for (String oid : existing) {
+            List<String> parents = new ArrayList<>();
+            for (String parent : parentOids.getOrDefault(oid, Collections.emptySet())) {
+                if (existing.contains(parent)) {
+                    parents.add(parent);
+                    children.computeIfAbsent(parent, k -> new ArrayList<>()).add(oid);
+                }
+            }
+            livingParents.put(oid, parents);
+            parentsToCompute.put(oid, parents.size());
+        }
+
+        Map<String, Map<String, Integer>> closure = new ConcurrentHashMap<>();
+        List<String> level = existing.stream()
+                .filter(oid -> livingParents.get(oid).isEmpty())
+                .collect(Collectors.toList());
+        while (!level.isEmpty()) {
+            level.parallelStream().forEach(oid -> {
+                Map<String, Integer> ancestors = new HashMap<>();
+                ancestors.put(oid, 1);
+                for (String parent : livingParents.get(oid)) {
+                    closure.get(parent).forEach((ancestor, paths) -> ancestors.merge(ancestor, paths, Integer::sum));
+                }
+                closure.put(oid, ancestors);
+            });
+            List<String> nextLevel = new ArrayList<>();
+            for (String oid : level) {
+                for (String child : children.getOrDefault(oid, Collections.emptyList())) {
+                    if (parentsToCompute.merge(child, -1, Integer::sum) == 0) {
+                        nextLevel.add(child);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        if (closure.size() < existing.size()) {
+            throw new IllegalStateException("Org closure couldn't be computed, because there is a cycle in org structure graph ("
+                    + (existing.size() - closure.size()) + " organizations involved)");
+        }
+        return closure;
+    }
+
+    private int insertClosureRows(Map<String, Map<String, Integer>> closure, Session session) {
+        MutableInt rows = new MutableInt(0);
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("insert into " + CLOSURE_TABLE_NAME
+                    + " (descendant_oid, ancestor_oid, val) values (?, ?, ?)")) {
+                int inBatch = 0;
+                for (Map.Entry<String, Map<String, Integer>> descendantEntry : closure.entrySet()) {
+                    for (Map.Entry<String, Integer> ancestorEntry : descendantEntry.getValue().entrySet()) {
+                        statement.setString(1, descendantEntry.getKey());
+                        statement.setString(2, ancestorEntry.getKey());
+                        statement.setInt(3, ancestorEntry.getValue());
+                        statement.addBatch();
+                        rows.increment();
+                        if (++inBatch == REBUILD_BATCH_SIZE) {
+                            statement.executeBatch();
+                            inBatch = 0;
+                        }
+                    }
+                }
+                if (inBatch > 0) {
+                    statement.executeBatch();
+                }
+            }
+        });
+        return rows.intValue();
+    }
+
     private void compareOrgClosureTables(List existingEntries, List recomputedEntries, boolean rebuild, OperationResult result) {
         Set<List> existing = convertEntries(existingEntries);
         Set<List> recomputed = convertEntries(recomputedEntries);
@@ -915,6 +1056,29 @@ public class OrgClosureManager {
 
     }
 
+    /**
+     * With READ_COMMITTED isolation each statement sees data committed before the statement started. So it is
+     * sufficient to lock the closure table just before the closure is read and updated, instead of at the beginning
+     * of the transaction. (With snapshot-based isolation levels the lock has to be obtained before the snapshot is
+     * taken, and in H2 the temporary table is created at the beginning of the transaction anyway.)
+     */
+    private boolean isLockingDeferrable() {
+        return !isH2() && baseHelper.getConfiguration().getTransactionIsolation() == TransactionIsolation.READ_COMMITTED;
+    }
+
+    private void lockClosureTableIfDeferred(Context context, Session session) {
+        if (context != null && context.lockDeferred) {
+            lockClosureTable(session);
+            context.lockDeferred = false;
+        }
+    }
+
+    // MODIFY that adds and deletes no parents (e.g. adds a parent that is already there) does not touch the closure
+    private boolean isNoChange(List<ReferenceDelta> deltas, PrismObject<? extends ObjectType> originalObject, Operation operation) {
+        return operation == Operation.MODIFY && (deltas.isEmpty() ||
+                getParentOidsToDelete(deltas, originalObject).isEmpty() && getParentOidsToAdd(deltas, originalObject).isEmpty());
+    }
+
     // returns table name
     private String computeDeltaTable(List<Edge> edges, Context context, Session session) {
 
@@ -1179,6 +1343,23 @@ public class OrgClosureManager {
         return oids;
     }
 
+    private Set<String> getParentOidsAfterOperation(List<ReferenceDelta> deltas, PrismObject<? extends ObjectType> originalObject,
+            Operation operation) {
+        switch (operation) {
+            case ADD:
+                return getParentOidsToAdd(deltas, null);
+            case MODIFY:
+                Set<String> oids = getParentOidsFromObject(originalObject);
+                if (!deltas.isEmpty()) {
+                    oids.removeAll(getParentOidsToDelete(deltas, originalObject));
+                    oids.addAll(getParentOidsToAdd(deltas, originalObject));
+                }
+                return oids;
+            default:
+                return null;
+        }
+    }
+
     private Set<String> getParentOidsFromObject(PrismObject<? extends ObjectType> originalObject) {
         Set<String> retval = new HashSet<>();
         if (originalObject != null) {
@@ -1217,6 +1398,22 @@ public class OrgClosureManager {
         return childrenQuery.list();
     }
 
+    private List<String> getAllOrgOids(Session session) {
+        return session.createQuery("select o.oid from ROrg o").list();
+    }
+
+    // parents of orgs (not necessarily existing ones)
+    private Map<String, Set<String>> getAllOrgParentOids(Session session) {
+        Query parentsQuery = session.createQuery("select parentRef.ownerOid, parentRef.targetOid from RObjectReference as parentRef" +
+                " join parentRef.owner as owner where parentRef.referenceType=0 and owner.objectTypeClass = :orgType");
+        parentsQuery.setParameter("orgType", RObjectType.ORG);
+        Map<String, Set<String>> rv = new HashMap<>();
+        for (Object[] edge : (List<Object[]>) parentsQuery.list()) {
+            rv.computeIfAbsent((String) edge[0], k -> new HashSet<>()).add((String) edge[1]);
+        }
+        return rv;
+    }
+
     private List<String> retainExistingOids(Collection<String> oids, Session session) {
         if (!oids.isEmpty()) {
             Query query = session.createQuery("select o.oid from RObject o where o.oid in (:oids)");
@@ -1324,6 +1521,11 @@ public class OrgClosureManager {
 
     public static class Context {
         String temporaryTableName;
+        boolean lockDeferred;               // the closure table is to be locked only when it is really going to be updated
+        // change of the hierarchy to be applied to the in-memory index after commit
+        String oid;
+        Operation operation;
+        Set<String> parentOids;
     }
     //endregion
 
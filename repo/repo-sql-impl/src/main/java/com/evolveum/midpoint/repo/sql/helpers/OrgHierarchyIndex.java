@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.repo.sql.helpers;
+
+import com.evolveum.midpoint.util.logging.Trace;
+import com.evolveum.midpoint.util.logging.TraceManager;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the org hierarchy, answering the same questions as the org closure table
+ * (is X a descendant of Y, what is the subtree of Y, what are the ancestors of X) without touching the database.
+ *
+ * Each org is given a compact int id. For each node we keep its parents and children (parentOrgRef edges) and
+ * the sorted array of its ancestors, including the node itself - i.e. the content of the closure table
+ * for the node as descendant. Org hierarchies are shallow, so the arrays are short; "is X a descendant of Y"
+ * is a binary search in the ancestors of X.
+ *
+ * Like the closure table, the index contains only existing orgs: an edge to a parent that does not exist
+ * (yet or any more) is remembered, but it does not count until the parent is added. So the answers are the same
+ * as the ones derived from M_ORG_CLOSURE.
+ *
+ * The index is updated by {@link OrgClosureManager} after a transaction that changed the hierarchy is committed.
+ * It knows nothing about changes made by other midPoint nodes, so it should be used only if the repository
+ * is not shared by a cluster.
+ */
+public class OrgHierarchyIndex {
+
+    private static final Trace LOGGER = TraceManager.getTrace(OrgHierarchyIndex.class);
+
+    private static final int[] EMPTY = new int[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> oids = new ArrayList<>();
+    private final BitSet existing = new BitSet();
+    private int[][] parents = new int[16][];
+    private int[][] children = new int[16][];
+    private int[][] ancestors = new int[16][];          // sorted, including the node itself (if it exists)
+
+    //region Queries
+
+    /**
+     * Returns true if any of lower objects is the upper org or its descendant.
+     * Only orgs can be lower objects here, just as in the closure table.
+     */
+    public boolean isAnySubordinate(String upperOrgOid, Collection<String> lowerObjectOids) {
+        lock.readLock().lock();
+        try {
+            Integer upper = getExistingId(upperOrgOid);
+            if (upper == null) {
+                return false;
+            }
+            for (String lowerOid : lowerObjectOids) {
+                Integer lower = getExistingId(lowerOid);
+                if (lower != null && Arrays.binarySearch(ancestors[lower], upper) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns OIDs of the org and all its descendant orgs, or null if there are more than maxSize of them.
+     * For an unknown org an empty set is returned.
+     */
+    public Set<String> getSubtree(String orgOid, int maxSize) {
+        lock.readLock().lock();
+        try {
+            Integer root = getExistingId(orgOid);
+            if (root == null) {
+                return Collections.emptySet();
+            }
+            BitSet visited = new BitSet();
+            Deque<Integer> toVisit = new ArrayDeque<>();
+            visited.set(root);
+            toVisit.add(root);
+            Set<String> rv = new HashSet<>();
+            while (!toVisit.isEmpty()) {
+                int node = toVisit.poll();
+                rv.add(oids.get(node));
+                if (rv.size() > maxSize) {
+                    return null;
+                }
+                for (int child : children[node]) {
+                    if (existing.get(child) && !visited.get(child)) {
+                        visited.set(child);
+                        toVisit.add(child);
+                    }
+                }
+            }
+            return rv;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns OIDs of all ancestors of the org (not including the org itself).
+     */
+    public Set<String> getAncestors(String orgOid) {
+        lock.readLock().lock();
+        try {
+            Integer node = getExistingId(orgOid);
+            if (node == null) {
+                return Collections.emptySet();
+            }
+            Set<String> rv = new HashSet<>();
+            for (int ancestor : ancestors[node]) {
+                if (ancestor != node) {
+                    rv.add(oids.get(ancestor));
+                }
+            }
+            return rv;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return existing.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //endregion
+
+    //region Updates
+
+    /**
+     * Replaces the whole content of the index.
+     *
+     * @param orgOids All existing orgs.
+     * @param parentOids Parent OIDs (from parentOrgRef) for orgs that have any.
+     */
+    public void rebuild(Collection<String> orgOids, Map<String, ? extends Collection<String>> parentOids) {
+        lock.writeLock().lock();
+        try {
+            ids.clear();
+            oids.clear();
+            existing.clear();
+            parents = new int[Math.max(16, orgOids.size())][];
+            children = new int[parents.length][];
+            ancestors = new int[parents.length][];
+            for (String oid : orgOids) {
+                existing.set(getOrCreateId(oid));
+            }
+            for (Map.Entry<String, ? extends Collection<String>> entry : parentOids.entrySet()) {
+                setParentsInternal(getOrCreateId(entry.getKey()), entry.getValue());
+            }
+            BitSet computed = new BitSet();
+            for (int node = 0; node < oids.size(); node++) {
+                computeAncestors(node, computed, new BitSet());
+            }
+            LOGGER.debug("Org hierarchy index rebuilt: {} orgs", existing.cardinality());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the org exists (was added or modified) and has given parents.
+     */
+    public void setOrg(String oid, Collection<String> parentOids) {
+        lock.writeLock().lock();
+        try {
+            int node = getOrCreateId(oid);
+            existing.set(node);
+            setParentsInternal(node, parentOids);
+            recomputeSubtree(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the org was deleted. Its children keep their (now dangling) edges to it, as their parentOrgRefs
+     * stay in the repository; they will count again if an org with the same OID is added.
+     */
+    public void removeOrg(String oid) {
+        lock.writeLock().lock();
+        try {
+            Integer node = ids.get(oid);
+            if (node == null) {
+                return;
+            }
+            existing.clear(node);
+            setParentsInternal(node, Collections.emptySet());
+            recomputeSubtree(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setParentsInternal(int node, Collection<String> parentOids) {
+        for (int parent : parents[node]) {
+            children[parent] = remove(children[parent], node);
+        }
+        int[] newParents = EMPTY;
+        for (String parentOid : parentOids) {
+            int parent = getOrCreateId(parentOid);
+            if (parent != node && indexOf(newParents, parent) < 0) {
+                newParents = add(newParents, parent);
+                children[parent] = add(children[parent], node);
+            }
+        }
+        parents[node] = newParents;
+    }
+
+    /**
+     * Recomputes ancestors of the node and all its descendants.
+     */
+    private void recomputeSubtree(int root) {
+        BitSet affected = new BitSet();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        affected.set(root);
+        toVisit.add(root);
+        while (!toVisit.isEmpty()) {
+            for (int child : children[toVisit.poll()]) {
+                if (!affected.get(child)) {
+                    affected.set(child);
+                    toVisit.add(child);
+                }
+            }
+        }
+        // nodes outside the affected set keep their (correct) ancestors
+        BitSet computed = new BitSet();
+        computed.set(0, oids.size());
+        computed.andNot(affected);
+        for (int node = affected.nextSetBit(0); node >= 0; node = affected.nextSetBit(node + 1)) {
+            computeAncestors(node, computed, new BitSet());
+        }
+    }
+
+    private void computeAncestors(int node, BitSet computed, BitSet inProgress) {
+        if (computed.get(node)) {
+            return;
+        }
+        if (!existing.get(node)) {
+            ancestors[node] = EMPTY;
+            computed.set(node);
+            return;
+        }
+        inProgress.set(node);
+        BitSet rv = new BitSet();
+        rv.set(node);
+        for (int parent : parents[node]) {
+            if (!existing.get(parent)) {
+                continue;
+            }
+            if (inProgress.get(parent)) {
+                // should not occur, as cycles are refused by the closure manager
+                LOGGER.warn("Cycle in org hierarchy detected at {} -> {}, ignoring the edge", oids.get(node), oids.get(parent));
+                continue;
+            }
+            computeAncestors(parent, computed, inProgress);
+            for (int ancestor : ancestors[parent]) {
+                rv.set(ancestor);
+            }
+        }
+        inProgress.clear(node);
+        ancestors[node] = rv.stream().toArray();
+        computed.set(node);
+    }
+
+    //endregion
+
+    //region Misc
+
+    private Integer getExistingId(String oid) {
+        Integer id = oid != null ? ids.get(oid) : null;
+        return id != null && existing.get(id) ? id : null;
+    }
+
+    private int getOrCreateId(String oid) {
+        Integer id = ids.get(oid);
+        if (id != null) {
+            return id;
+        }
+        int newId = oids.size();
+        if (newId == parents.length) {
+            int newLength = parents.length * 2;
+            parents = Arrays.copyOf(parents, newLength);
+            children = Arrays.copyOf(children, newLength);
+            ancestors = Arrays.copyOf(ancestors, newLength);
+        }
+        parents[newId] = EMPTY;
+        children[newId] = EMPTY;
+        ancestors[newId] = EMPTY;
+        oids.add(oid);
+        ids.put(oid, newId);
+        return newId;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] add(int[] array, int value) {
+        int[] rv = Arrays.copyOf(array, array.length + 1);
+        rv[array.length] = value;
+        return rv;
+    }
+
+    private static int[] remove(int[] array, int value) {
+        int i = indexOf(array, value);
+        if (i < 0) {
+            return array;
+        }
+        int[] rv = new int[array.length - 1];
+        System.arraycopy(array, 0, rv, 0, i);
+        System.arraycopy(array, i + 1, rv, i, array.length - i - 1);
+        return rv;
+    }
+
+    //endregion
+}
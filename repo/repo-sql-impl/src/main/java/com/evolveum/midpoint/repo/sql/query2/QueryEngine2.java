@@ -20,6 +20,7 @@ import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.PrismContext;
 import com.evolveum.midpoint.prism.query.ObjectQuery;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
+import com.evolveum.midpoint.repo.sql.helpers.OrgHierarchyIndex;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query.RQuery;
 import com.evolveum.midpoint.repo.sql.query2.hqm.RootHibernateQuery;
@@ -42,17 +43,23 @@ public class QueryEngine2 {
 
     private SqlRepositoryConfiguration repoConfiguration;
     private PrismContext prismContext;
+    private OrgHierarchyIndex orgHierarchyIndex;
 
     public QueryEngine2(SqlRepositoryConfiguration config, PrismContext prismContext) {
+        this(config, prismContext, null);
+    }
+
+    public QueryEngine2(SqlRepositoryConfiguration config, PrismContext prismContext, OrgHierarchyIndex orgHierarchyIndex) {
         this.repoConfiguration = config;
         this.prismContext = prismContext;
+        this.orgHierarchyIndex = orgHierarchyIndex;
     }
 
     public RQuery interpret(ObjectQuery query, Class<? extends Containerable> type,
             Collection<SelectorOptions<GetOperationOptions>> options,
             boolean countingObjects, Session session) throws QueryException {
 
-        QueryInterpreter2 interpreter = new QueryInterpreter2(repoConfiguration);
+        QueryInterpreter2 interpreter = new QueryInterpreter2(repoConfiguration, orgHierarchyIndex);
         RootHibernateQuery hibernateQuery = interpreter.interpret(query, type, options, prismContext, countingObjects, session);
         Query hqlQuery = hibernateQuery.getAsHqlQuery(session);
 
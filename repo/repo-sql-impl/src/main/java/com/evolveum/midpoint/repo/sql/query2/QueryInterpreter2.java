@@ -25,6 +25,7 @@ import com.evolveum.midpoint.prism.query.*;
 import com.evolveum.midpoint.repo.sql.ObjectPagingAfterOid;
 import com.evolveum.midpoint.repo.sql.SqlRepositoryConfiguration;
 import com.evolveum.midpoint.repo.sql.data.common.embedded.RPolyString;
+import com.evolveum.midpoint.repo.sql.helpers.OrgHierarchyIndex;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query2.definition.*;
 import com.evolveum.midpoint.repo.sql.query2.hqm.CountProjectionElement;
@@ -98,15 +99,28 @@ public class QueryInterpreter2 {
     }
 
     private SqlRepositoryConfiguration repoConfiguration;
+    private OrgHierarchyIndex orgHierarchyIndex;
 
     public QueryInterpreter2(SqlRepositoryConfiguration repoConfiguration) {
+        this(repoConfiguration, null);
+    }
+
+    public QueryInterpreter2(SqlRepositoryConfiguration repoConfiguration, OrgHierarchyIndex orgHierarchyIndex) {
         this.repoConfiguration = repoConfiguration;
+        this.orgHierarchyIndex = orgHierarchyIndex;
     }
 
     public SqlRepositoryConfiguration getRepoConfiguration() {
         return repoConfiguration;
     }
 
+    /**
+     * In-memory org hierarchy that can be used instead of the closure table; null if not available.
+     */
+    public OrgHierarchyIndex getOrgHierarchyIndex() {
+        return orgHierarchyIndex;
+    }
+
     public RootHibernateQuery interpret(ObjectQuery query, @NotNull Class<? extends Containerable> type,
 			Collection<SelectorOptions<GetOperationOptions>> options, @NotNull PrismContext prismContext,
 			boolean countingObjects, @NotNull Session session) throws QueryException {
@@ -317,10 +331,13 @@ public class QueryInterpreter2 {
 
     private void updatePagingAndSortingByOid(RootHibernateQuery hibernateQuery, ObjectPagingAfterOid paging) {
         String rootAlias = hibernateQuery.getPrimaryEntityAlias();
-        if (paging.getOrderBy() != null || paging.getDirection() != null || paging.getOffset() != null) {
-            throw new IllegalArgumentException("orderBy, direction nor offset is allowed on ObjectPagingAfterOid");
+        if (paging.getOrderBy() != null || paging.getDirection() != null) {
+            throw new IllegalArgumentException("Neither orderBy nor direction is allowed on ObjectPagingAfterOid");
         }
         hibernateQuery.addOrdering(rootAlias + ".oid", OrderDirection.ASCENDING);
+        if (paging.getOffset() != null) {
+            hibernateQuery.setFirstResult(paging.getOffset());
+        }
         if (paging.getMaxSize() != null) {
             hibernateQuery.setMaxResults(paging.getMaxSize());
         }
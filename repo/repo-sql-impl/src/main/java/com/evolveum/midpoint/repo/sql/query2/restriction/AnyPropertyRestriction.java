@@ -16,6 +16,8 @@
 
 package com.evolveum.midpoint.repo.sql.query2.restriction;
 
+import com.evolveum.midpoint.prism.PrismPropertyValue;
+import com.evolveum.midpoint.prism.query.EqualFilter;
 import com.evolveum.midpoint.prism.query.PropertyValueFilter;
 import com.evolveum.midpoint.repo.sql.data.common.any.RAnyConverter;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
@@ -26,6 +28,9 @@ import com.evolveum.midpoint.repo.sql.query2.hqm.condition.Condition;
 import com.evolveum.midpoint.util.logging.Trace;
 import com.evolveum.midpoint.util.logging.TraceManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author lazyman
  */
@@ -45,10 +50,26 @@ public class AnyPropertyRestriction extends PropertyRestriction {
 
         if (filter.getRightHandSidePath() != null) {
             return createPropertyVsPropertyCondition(propertyValuePath);
+        } else if (isMultiValuedEquality()) {
+            // e.g. looking up shadows by a set of identifiers: one join, values compared using 'in'
+            List<Object> values = new ArrayList<>();
+            for (Object val : filter.getValues()) {
+                if (!(val instanceof PrismPropertyValue)) {
+                    throw new QueryException("Non-property value in filter: " + filter + ": " + (val != null ? val.getClass() : null));
+                }
+                values.add(RAnyConverter.getAggregatedRepoObject(((PrismPropertyValue) val).getValue()));
+            }
+            Condition c = getContext().getHibernateQuery().createIn(propertyValuePath, values);
+            return addIsNotNullIfNecessary(c, propertyValuePath);
         } else {
             Object value = RAnyConverter.getAggregatedRepoObject(getValue(filter));
             Condition c = createPropertyVsConstantCondition(propertyValuePath, value, filter);
             return addIsNotNullIfNecessary(c, propertyValuePath);
         }
     }
+
+    private boolean isMultiValuedEquality() {
+        return filter instanceof EqualFilter && filter.getMatchingRule() == null
+                && filter.getValues() != null && filter.getValues().size() > 1;
+    }
 }
@@ -19,6 +19,7 @@ package com.evolveum.midpoint.repo.sql.query2.restriction;
 import com.evolveum.midpoint.prism.PrismConstants;
 import com.evolveum.midpoint.prism.query.OrgFilter;
 import com.evolveum.midpoint.repo.sql.data.common.other.RReferenceOwner;
+import com.evolveum.midpoint.repo.sql.helpers.OrgHierarchyIndex;
 import com.evolveum.midpoint.repo.sql.query.QueryException;
 import com.evolveum.midpoint.repo.sql.query2.InterpretationContext;
 import com.evolveum.midpoint.repo.sql.query2.definition.JpaEntityDefinition;
@@ -27,12 +28,19 @@ import com.evolveum.midpoint.repo.sql.query2.hqm.condition.Condition;
 import com.evolveum.midpoint.util.QNameUtil;
 
 import javax.xml.namespace.QName;
+import java.util.Set;
 
 /**
  * @author lazyman
  */
 public class OrgRestriction extends Restriction<OrgFilter> {
 
+    /**
+     * Subtrees up to this size are expanded using the in-memory org hierarchy (if available), i.e. without
+     * a join with the closure table. Larger ones would produce too long lists of parameters.
+     */
+    private static final int MAX_SUBTREE_SIZE_TO_EXPAND = 100;
+
     public OrgRestriction(InterpretationContext context, OrgFilter filter, JpaEntityDefinition baseEntityDefinition, Restriction parent) {
         super(context, filter, baseEntityDefinition, parent);
     }
@@ -54,7 +62,22 @@ public class OrgRestriction extends Restriction<OrgFilter> {
             throw new QueryException("No oid specified in organization reference " + filter.getOrgRef().debugDump());
         }
 
-        String orgOidParamName = hibernateQuery.addParameter("orgOid", filter.getOrgRef().getOid());
+        OrgHierarchyIndex orgHierarchyIndex = getContext().getInterpreter().getOrgHierarchyIndex();
+        Set<String> subtree = null;
+        if (orgHierarchyIndex != null) {
+            if (filter.getScope() == OrgFilter.Scope.ANCESTORS) {
+                Set<String> ancestors = orgHierarchyIndex.getAncestors(filter.getOrgRef().getOid());
+                return ancestors.isEmpty() ?
+                        hibernateQuery.createFalse() : hibernateQuery.createIn(getBaseHqlEntity().getHqlPath() + ".oid", ancestors);
+            } else if (filter.getScope() == OrgFilter.Scope.SUBTREE) {
+                subtree = orgHierarchyIndex.getSubtree(filter.getOrgRef().getOid(), MAX_SUBTREE_SIZE_TO_EXPAND);
+                if (subtree != null && subtree.isEmpty()) {
+                    return hibernateQuery.createFalse();
+                }
+            }
+        }
+
+        String orgOidParamName = subtree == null ? hibernateQuery.addParameter("orgOid", filter.getOrgRef().getOid()) : null;
         String relationParamName = "";
         QName relation = filter.getOrgRef().getRelation();
         if (doesRelationRestrictionExist(relation)) {
@@ -82,6 +105,12 @@ public class OrgRestriction extends Restriction<OrgFilter> {
                 break;
             case SUBTREE:
             default:
+                String targetOidsText;
+                if (subtree != null) {
+                    targetOidsText = ":" + hibernateQuery.addParameter("subtreeOids", subtree);
+                } else {
+                    targetOidsText = "select descendantOid from ROrgClosure where ancestorOid = :" + orgOidParamName;
+                }
                 oidQueryText =
                         "select ref.ownerOid " +
                             "from RObjectReference ref " +
@@ -89,8 +118,7 @@ public class OrgRestriction extends Restriction<OrgFilter> {
                             "ref.referenceType = " + RReferenceOwner.OBJECT_PARENT_ORG.ordinal()
                                 + (doesRelationRestrictionExist(relation) ?
 		                            " and ref.relation in (:" + relationParamName + ")" : "")
-                                + " and ref.targetOid in (" +
-                                    "select descendantOid from ROrgClosure where ancestorOid = :" + orgOidParamName + ")";
+                                + " and ref.targetOid in (" + targetOidsText + ")";
         }
         return hibernateQuery.createIn(getBaseHqlEntity().getHqlPath() + ".oid", oidQueryText);
     }
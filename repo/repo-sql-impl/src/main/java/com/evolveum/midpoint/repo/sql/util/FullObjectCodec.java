@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010-2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.evolveum.midpoint.repo.sql.util;
+
+import com.evolveum.midpoint.prism.PrismContext;
+import com.evolveum.midpoint.util.exception.SystemException;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes and decodes content of the fullObject column.
+ *
+ * There are two kinds of stored data:
+ *
+ * 1. Legacy data (without header): XML, either plain or gzipped. This is what midPoint has always written
+ *    and what is still written if no specific format is configured.
+ *
+ * 2. Data with header: [ENCODING_VERSION] [language] [compression] followed by the (possibly compressed)
+ *    serialized object. The first byte never clashes with legacy data, because gzip streams start with 0x1F
+ *    and XML documents cannot start with 0x01.
+ *
+ * Rows written in any format remain readable regardless of current configuration. They can be converted
+ * to the configured format by running the reindex task.
+ */
+public class FullObjectCodec {
+
+	private static final byte ENCODING_VERSION = 1;
+	private static final int HEADER_LENGTH = 3;
+
+	private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+
+	public enum Language {
+		XML((byte) 0, PrismContext.LANG_XML),
+		JSON((byte) 1, PrismContext.LANG_JSON);
+
+		private final byte code;
+		private final String prismLanguage;
+
+		Language(byte code, String prismLanguage) {
+			this.code = code;
+			this.prismLanguage = prismLanguage;
+		}
+
+		public String getPrismLanguage() {
+			return prismLanguage;
+		}
+
+		static Language fromCode(byte code) {
+			for (Language language : values()) {
+				if (language.code == code) {
+					return language;
+				}
+			}
+			throw new SystemException("Unknown language code in full object: " + code);
+		}
+
+		public static Language fromValue(String value) {
+			return valueOf(value.toUpperCase());
+		}
+	}
+
+	public enum Compression {
+		NONE((byte) 0),
+		GZIP((byte) 1),
+		/**
+		 * Deflate with the fastest compression level; considerably cheaper than gzip (default level) on CPU,
+		 * at the cost of slightly larger data.
+		 */
+		FAST((byte) 2);
+
+		private final byte code;
+
+		Compression(byte code) {
+			this.code = code;
+		}
+
+		static Compression fromCode(byte code) {
+			for (Compression compression : values()) {
+				if (compression.code == code) {
+					return compression;
+				}
+			}
+			throw new SystemException("Unknown compression code in full object: " + code);
+		}
+
+		public static Compression fromValue(String value) {
+			return valueOf(value.toUpperCase());
+		}
+	}
+
+	/**
+	 * Language to use for writing; null means legacy format (XML without header).
+	 */
+	private final Language language;
+	private final Compression compression;
+
+	/**
+	 * Creates codec that writes data in legacy format (XML, gzipped if useZip is true).
+	 */
+	public static FullObjectCodec legacy(boolean useZip) {
+		return new FullObjectCodec(null, useZip ? Compression.GZIP : Compression.NONE);
+	}
+
+	public FullObjectCodec(Language language, @NotNull Compression compression) {
+		this.language = language;
+		this.compression = compression;
+	}
+
+	/**
+	 * Prism language in which objects should be serialized before calling {@link #encode(String)}.
+	 */
+	public String getLanguage() {
+		return language != null ? language.getPrismLanguage() : PrismContext.LANG_XML;
+	}
+
+	public byte[] encode(String serialized) {
+		if (serialized == null) {
+			return null;
+		}
+		if (language == null) {
+			return RUtil.getByteArrayFromXml(serialized, compression == Compression.GZIP);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(serialized.length() / 2 + HEADER_LENGTH);
+			out.write(ENCODING_VERSION);
+			out.write(language.code);
+			out.write(compression.code);
+			try (OutputStream compressed = createCompressingStream(out)) {
+				compressed.write(serialized.getBytes(StandardCharsets.UTF_8));
+			}
+			return out.toByteArray();
+		} catch (IOException ex) {
+			throw new SystemException("Couldn't save full object, reason: " + ex.getMessage(), ex);
+		}
+	}
+
+	private OutputStream createCompressingStream(ByteArrayOutputStream out) throws IOException {
+		switch (compression) {
+			case NONE: return out;
+			case GZIP: return new GZIPOutputStream(out);
+			case FAST: return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED));
+			default: throw new AssertionError(compression);
+		}
+	}
+
+	/**
+	 * Decodes data in any supported format (legacy or with header) into a string that can be given to
+	 * the prism parser. The language is detected by the parser itself.
+	 */
+	public static String decode(byte[] array) {
+		if (array == null) {
+			return null;
+		}
+		if (array.length == 0 || array[0] != ENCODING_VERSION) {
+			return RUtil.getXmlFromByteArray(array, (array.length > 0 && array[0] == GZIP_MAGIC_FIRST_BYTE));
+		}
+		if (array.length < HEADER_LENGTH) {
+			throw new SystemException("Couldn't read data from full object column: header is incomplete");
+		}
+		Language.fromCode(array[1]);            // just to check
+		Compression compression = Compression.fromCode(array[2]);
+		InputStream in = new ByteArrayInputStream(array, HEADER_LENGTH, array.length - HEADER_LENGTH);
+		try {
+			switch (compression) {
+				case GZIP: in = new GZIPInputStream(in); break;
+				case FAST: in = new InflaterInputStream(in); break;
+			}
+			return new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new SystemException("Couldn't read data from full object column, reason: " + ex.getMessage(), ex);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "FullObjectCodec{" + (language != null ? language : "legacy") + ", " + compression + "}";
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.security.enforcer.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.evolveum.midpoint.security.api.Authorization;
+import com.evolveum.midpoint.security.api.AuthorizationConstants;
+
+/**
+ * Authorizations of a principal, indexed by action URL. For a given action, only authorizations that
+ * list that action (or the "all" action) are returned, in their original order. So the evaluation does not have
+ * to go through all authorizations of the principal for each operation.
+ *
+ * The index is built from a particular collection of authorizations and it is valid as long as the collection
+ * contains the same authorization objects; see {@link #isCompiledFrom(Collection)}.
+ */
+class CompiledAuthorizations {
+
+	private final Collection<Authorization> source;
+	private final List<Authorization> all;
+	private final List<Authorization> forAnyAction;					// authorizations with the "all" action URL
+	private final Map<String, List<Authorization>> byAction = new HashMap<>();
+
+	CompiledAuthorizations(Collection<Authorization> source) {
+		this.source = source;
+		this.all = new ArrayList<>(source);
+		List<Authorization> forAnyAction = new ArrayList<>();
+		for (Authorization autz : all) {
+			if (autz.getAction().contains(AuthorizationConstants.AUTZ_ALL_URL)) {
+				forAnyAction.add(autz);
+				byAction.values().forEach(list -> list.add(autz));
+			}
+			for (String action : autz.getAction()) {
+				if (!AuthorizationConstants.AUTZ_ALL_URL.equals(action) && !byAction.containsKey(action)) {
+					// the list for a new action starts with all authorizations for any action that were seen so far
+					byAction.put(action, new ArrayList<>(forAnyAction));
+				}
+			}
+			for (String action : autz.getAction()) {
+				List<Authorization> list = byAction.get(action);
+				if (list != null && (list.isEmpty() || list.get(list.size() - 1) != autz)) {
+					list.add(autz);
+				}
+			}
+		}
+		this.forAnyAction = forAnyAction;
+	}
+
+	/**
+	 * Returns true if the authorizations were compiled from the given collection and it was not changed since then.
+	 */
+	boolean isCompiledFrom(Collection<Authorization> authorities) {
+		if (authorities != source || authorities.size() != all.size()) {
+			return false;
+		}
+		Iterator<Authorization> iterator = authorities.iterator();
+		for (Authorization autz : all) {
+			if (iterator.next() != autz) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	List<Authorization> getAll() {
+		return Collections.unmodifiableList(all);
+	}
+
+	/**
+	 * Returns authorizations that are applicable to the given action URL, in their original order.
+	 */
+	List<Authorization> getForAction(String operationUrl) {
+		List<Authorization> list = byAction.get(operationUrl);
+		return Collections.unmodifiableList(list != null ? list : forAnyAction);
+	}
+}
@@ -17,7 +17,9 @@ package com.evolveum.midpoint.security.enforcer.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import javax.xml.namespace.QName;
@@ -30,6 +32,8 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import com.google.common.cache.CacheBuilder;
+
 import com.evolveum.midpoint.prism.Containerable;
 import com.evolveum.midpoint.prism.Item;
 import com.evolveum.midpoint.prism.PrismContainer;
@@ -132,6 +136,20 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 	@Qualifier("securityContextManager")
 	private SecurityContextManager securityContextManager;
 
+	/**
+	 * Authorizations of principals, compiled for quick lookup by action. Principals are weakly referenced and compared
+	 * by identity, so a principal that is re-created (e.g. after a change of its roles) gets its authorizations compiled
+	 * again. Lookups do not lock, as this is consulted by each authorization check in every thread.
+	 */
+	private final Map<MidPointPrincipal, CompiledAuthorizations> compiledAuthorizationsCache =
+			CacheBuilder.newBuilder().weakKeys().<MidPointPrincipal, CompiledAuthorizations>build().asMap();
+
+	/**
+	 * Results of org relation checks made during the current evaluation (e.g. during one isAuthorized call).
+	 * An object is often checked against the same org by many authorizations.
+	 */
+	private static final ThreadLocal<Map<String, Boolean>> ORG_RELATION_RESULTS = new ThreadLocal<>();
+
 	@Override
 	public <O extends ObjectType, T extends ObjectType> boolean isAuthorized(String operationUrl, AuthorizationPhaseType phase,
 			AuthorizationParameters<O,T> params, OwnerResolver ownerResolver, Task task, OperationResult result)
@@ -144,14 +162,19 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 			AuthorizationParameters<O,T> params, OwnerResolver ownerResolver, 
 			Consumer<Authorization> applicableAutzConsumer, Task task, OperationResult result)
 			throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException, CommunicationException, ConfigurationException, SecurityViolationException {
-		if (phase == null) {
-			AccessDecision requestPhaseDecision = isAuthorizedPhase(midPointPrincipal, operationUrl, AuthorizationPhaseType.REQUEST, params, ownerResolver, applicableAutzConsumer, task, result);
-			if (!requestPhaseDecision.equals(AccessDecision.ALLOW)) {
-				return requestPhaseDecision;
+		boolean orgRelationResultsOwner = startOrgRelationResults();
+		try {
+			if (phase == null) {
+				AccessDecision requestPhaseDecision = isAuthorizedPhase(midPointPrincipal, operationUrl, AuthorizationPhaseType.REQUEST, params, ownerResolver, applicableAutzConsumer, task, result);
+				if (!requestPhaseDecision.equals(AccessDecision.ALLOW)) {
+					return requestPhaseDecision;
+				}
+				return isAuthorizedPhase(midPointPrincipal, operationUrl, AuthorizationPhaseType.EXECUTION, params, ownerResolver, applicableAutzConsumer, task, result);
+			} else {
+				return isAuthorizedPhase(midPointPrincipal, operationUrl, phase, params, ownerResolver, applicableAutzConsumer, task, result);
 			}
-			return isAuthorizedPhase(midPointPrincipal, operationUrl, AuthorizationPhaseType.EXECUTION, params, ownerResolver, applicableAutzConsumer, task, result);
-		} else {
-			return isAuthorizedPhase(midPointPrincipal, operationUrl, phase, params, ownerResolver, applicableAutzConsumer, task, result);
+		} finally {
+			finishOrgRelationResults(orgRelationResultsOwner);
 		}
 	}
 
@@ -173,7 +196,7 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 				getUsername(midPointPrincipal), operationUrl, phase, params.shortDump());
 		}
 		final AutzItemPaths allowedItems = new AutzItemPaths();
-		Collection<Authorization> authorities = getAuthorities(midPointPrincipal);
+		Collection<Authorization> authorities = getAuthorities(midPointPrincipal, operationUrl);
 		if (authorities != null) {
 			for (GrantedAuthority authority: authorities) {
 				if (authority instanceof Authorization) {
@@ -755,20 +778,76 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 			return true;
 		}
 		if (specOrgRelation.getScope() == null) {
-			return repositoryService.isDescendant(object, subjectParentOrgRef.getOid());
+			return isDescendant(object, subjectParentOrgRef.getOid());
 		}
 		switch (specOrgRelation.getScope()) {
 			case ALL_DESCENDANTS:
-				return repositoryService.isDescendant(object, subjectParentOrgRef.getOid());
+				return isDescendant(object, subjectParentOrgRef.getOid());
 			case DIRECT_DESCENDANTS:
 				return hasParentOrgRef(object, subjectParentOrgRef.getOid());
 			case ALL_ANCESTORS:
-				return repositoryService.isAncestor(object, subjectParentOrgRef.getOid());
+				return isAncestor(object, subjectParentOrgRef.getOid());
 			default:
 				throw new UnsupportedOperationException("Unknown orgRelation scope "+specOrgRelation.getScope());
 		}
 	}
 
+	private <O extends ObjectType> boolean isDescendant(PrismObject<O> object, String orgOid) throws SchemaException {
+		// the repository decides using parentOrgRefs of the object (as it is in memory), so they are the key here
+		StringBuilder key = new StringBuilder("descendant:").append(orgOid);
+		for (ObjectReferenceType parentOrgRef : object.asObjectable().getParentOrgRef()) {
+			key.append(':').append(parentOrgRef.getOid());
+		}
+		Boolean known = getOrgRelationResult(key.toString());
+		if (known != null) {
+			return known;
+		}
+		boolean descendant = repositoryService.isDescendant(object, orgOid);
+		putOrgRelationResult(key.toString(), descendant);
+		return descendant;
+	}
+
+	private <O extends ObjectType> boolean isAncestor(PrismObject<O> object, String orgOid) throws SchemaException {
+		String key = object.getOid() != null ? "ancestor:" + object.getOid() + ":" + orgOid : null;
+		Boolean known = getOrgRelationResult(key);
+		if (known != null) {
+			return known;
+		}
+		boolean ancestor = repositoryService.isAncestor(object, orgOid);
+		putOrgRelationResult(key, ancestor);
+		return ancestor;
+	}
+
+	private Boolean getOrgRelationResult(String key) {
+		Map<String, Boolean> results = ORG_RELATION_RESULTS.get();
+		return results != null && key != null ? results.get(key) : null;
+	}
+
+	private void putOrgRelationResult(String key, boolean value) {
+		Map<String, Boolean> results = ORG_RELATION_RESULTS.get();
+		if (results != null && key != null) {
+			results.put(key, value);
+		}
+	}
+
+	/**
+	 * Starts collecting org relation results, unless they are already being collected by an outer evaluation.
+	 * Returns true if the caller is responsible for finishing the collection.
+	 */
+	private boolean startOrgRelationResults() {
+		if (ORG_RELATION_RESULTS.get() != null) {
+			return false;
+		}
+		ORG_RELATION_RESULTS.set(new HashMap<>());
+		return true;
+	}
+
+	private void finishOrgRelationResults(boolean owner) {
+		if (owner) {
+			ORG_RELATION_RESULTS.remove();
+		}
+	}
+
 	private <O extends ObjectType> boolean hasParentOrgRef(PrismObject<O> object, String oid) {
 		List<ObjectReferenceType> objParentOrgRefs = object.asObjectable().getParentOrgRef();
 		for (ObjectReferenceType objParentOrgRef: objParentOrgRefs) {
@@ -942,6 +1021,27 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 		}
 	}
 
+	/**
+	 * Returns authorizations that can be applicable to the given action (i.e. they list it or the "all" action),
+	 * in their original order.
+	 */
+	private Collection<Authorization> getAuthorities(MidPointPrincipal principal, String operationUrl) {
+		return getCompiledAuthorizations(principal).getForAction(operationUrl);
+	}
+
+	private CompiledAuthorizations getCompiledAuthorizations(MidPointPrincipal principal) {
+		Collection<Authorization> authorities = getAuthorities(principal);
+		if (principal == null) {
+			return new CompiledAuthorizations(authorities);
+		}
+		CompiledAuthorizations compiled = compiledAuthorizationsCache.get(principal);
+		if (compiled == null || !compiled.isCompiledFrom(authorities)) {
+			compiled = new CompiledAuthorizations(authorities);
+			compiledAuthorizationsCache.put(principal, compiled);
+		}
+		return compiled;
+	}
+
 	@Override
 	public <O extends ObjectType> ObjectSecurityConstraints compileSecurityConstraints(PrismObject<O> object, OwnerResolver ownerResolver, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException, CommunicationException, ConfigurationException, SecurityViolationException {
 		MidPointPrincipal principal = getMidPointPrincipal();
@@ -954,24 +1054,29 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 		ObjectSecurityConstraintsImpl objectSecurityConstraints = new ObjectSecurityConstraintsImpl();
 		Collection<Authorization> authorities = getAuthorities(principal);
 		if (authorities != null) {
-			for (Authorization autz: authorities) {
-				String autzHumanReadableDesc = autz.getHumanReadableDesc();
-				LOGGER.trace("  Evaluating {}", autzHumanReadableDesc);
+			boolean orgRelationResultsOwner = startOrgRelationResults();
+			try {
+				for (Authorization autz: authorities) {
+					String autzHumanReadableDesc = autz.getHumanReadableDesc();
+					LOGGER.trace("  Evaluating {}", autzHumanReadableDesc);
 
-				// skip action applicability evaluation. We are interested in all actions
+					// skip action applicability evaluation. We are interested in all actions
 
-				// object
-				if (isApplicable(autz.getObject(), object, principal, ownerResolver, "object", autzHumanReadableDesc, task, result)) {
-					LOGGER.trace("    {} applicable for object {} (continuing evaluation)", autzHumanReadableDesc, object);
-				} else {
-					LOGGER.trace("    {} not applicable for object {}, none of the object specifications match (breaking evaluation)",
-							autzHumanReadableDesc, object);
-					continue;
-				}
+					// object
+					if (isApplicable(autz.getObject(), object, principal, ownerResolver, "object", autzHumanReadableDesc, task, result)) {
+						LOGGER.trace("    {} applicable for object {} (continuing evaluation)", autzHumanReadableDesc, object);
+					} else {
+						LOGGER.trace("    {} not applicable for object {}, none of the object specifications match (breaking evaluation)",
+								autzHumanReadableDesc, object);
+						continue;
+					}
 
-				// skip target applicability evaluation. We do not have a target here
+					// skip target applicability evaluation. We do not have a target here
 
-				objectSecurityConstraints.applyAuthorization(autz);
+					objectSecurityConstraints.applyAuthorization(autz);
+				}
+			} finally {
+				finishOrgRelationResults(orgRelationResultsOwner);
 			}
 		}
 
@@ -1056,7 +1161,7 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 			AuthorizationPhaseType phase, boolean includeNullPhase,
 			Class<T> objectType, PrismObject<O> object, boolean includeSpecial, ObjectFilter origFilter, String limitAuthorizationAction, String desc, Task task, OperationResult result) throws SchemaException, ObjectNotFoundException, ExpressionEvaluationException, CommunicationException, ConfigurationException, SecurityViolationException {
 
-		Collection<Authorization> authorities = getAuthorities(principal);
+		Collection<Authorization> authorities = getAuthorities(principal, operationUrl);
 
 		ObjectFilter securityFilterAllow = null;
 		ObjectFilter securityFilterDeny = null;
@@ -1545,7 +1650,7 @@ public class SecurityEnforcerImpl implements SecurityEnforcer {
 
 		ItemSecurityConstraintsImpl itemConstraints = new ItemSecurityConstraintsImpl();
 
-		for(Authorization autz: getAuthorities(midPointPrincipal)) {
+		for(Authorization autz: getAuthorities(midPointPrincipal, operationUrl)) {
 			String autzHumanReadableDesc = autz.getHumanReadableDesc();
 			LOGGER.trace("  Evaluating {}", autzHumanReadableDesc);
 
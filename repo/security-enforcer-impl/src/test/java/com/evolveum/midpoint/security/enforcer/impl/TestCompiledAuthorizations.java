@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018 Evolveum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.midpoint.security.enforcer.impl;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.evolveum.midpoint.security.api.Authorization;
+import com.evolveum.midpoint.security.api.AuthorizationConstants;
+
+/**
+ * Tests the pre-filtering of authorizations by action.
+ */
+public class TestCompiledAuthorizations {
+
+	private static final String ACTION_READ = "http://example.com/authorization#read";
+	private static final String ACTION_MODIFY = "http://example.com/authorization#modify";
+	private static final String ACTION_ADD = "http://example.com/authorization#add";
+	private static final String ACTION_DELETE = "http://example.com/authorization#delete";
+
+	@Test
+	public void test100ForAction() {
+		Authorization read = authorization("read", ACTION_READ);
+		Authorization all = authorization("all", AuthorizationConstants.AUTZ_ALL_URL);
+		Authorization readModify = authorization("readModify", ACTION_READ, ACTION_MODIFY);
+		Authorization add = authorization("add", ACTION_ADD);
+
+		// WHEN
+		CompiledAuthorizations compiled = new CompiledAuthorizations(Arrays.asList(read, all, readModify, add));
+
+		// THEN
+		assertEquals("Wrong authorizations for read", Arrays.asList(read, all, readModify), compiled.getForAction(ACTION_READ));
+		assertEquals("Wrong authorizations for modify", Arrays.asList(all, readModify), compiled.getForAction(ACTION_MODIFY));
+		assertEquals("Wrong authorizations for add", Arrays.asList(all, add), compiled.getForAction(ACTION_ADD));
+		assertEquals("Wrong authorizations for an action not listed", Collections.singletonList(all),
+				compiled.getForAction(ACTION_DELETE));
+		assertEquals("Wrong all authorizations", Arrays.asList(read, all, readModify, add), compiled.getAll());
+	}
+
+	/**
+	 * An authorization listing both the "all" action and a specific one must be returned only once, and the original
+	 * order must be kept.
+	 */
+	@Test
+	public void test110AllActionTogetherWithSpecific() {
+		Authorization modify1 = authorization("modify1", ACTION_MODIFY);
+		Authorization allModify = authorization("allModify", AuthorizationConstants.AUTZ_ALL_URL, ACTION_MODIFY);
+		Authorization modify2 = authorization("modify2", ACTION_MODIFY);
+		Authorization read = authorization("read", ACTION_READ);
+
+		// WHEN
+		CompiledAuthorizations compiled = new CompiledAuthorizations(Arrays.asList(modify1, allModify, modify2, read));
+
+		// THEN
+		assertEquals("Wrong authorizations for modify", Arrays.asList(modify1, allModify, modify2),
+				compiled.getForAction(ACTION_MODIFY));
+		assertEquals("Wrong authorizations for read", Arrays.asList(allModify, read), compiled.getForAction(ACTION_READ));
+		assertEquals("Wrong authorizations for an action not listed", Collections.singletonList(allModify),
+				compiled.getForAction(ACTION_DELETE));
+	}
+
+	@Test
+	public void test120NoAuthorizations() {
+		CompiledAuthorizations compiled = new CompiledAuthorizations(new ArrayList<>());
+
+		assertTrue("Unexpected authorizations", compiled.getForAction(ACTION_READ).isEmpty());
+		assertTrue("Unexpected authorizations", compiled.getAll().isEmpty());
+	}
+
+	/**
+	 * Compiled authorizations are valid only for the very collection they were compiled from, as long as it
+	 * is not changed.
+	 */
+	@Test
+	public void test200IsCompiledFrom() {
+		List<Authorization> authorizations = new ArrayList<>();
+		authorizations.add(authorization("read", ACTION_READ));
+		CompiledAuthorizations compiled = new CompiledAuthorizations(authorizations);
+
+		assertTrue("Not compiled from the source collection", compiled.isCompiledFrom(authorizations));
+		assertFalse("Compiled from a copy of the source collection",
+				compiled.isCompiledFrom(new ArrayList<>(authorizations)));
+
+		// WHEN
+		authorizations.add(authorization("modify", ACTION_MODIFY));
+
+		// THEN
+		assertFalse("Compiled from a changed collection", compiled.isCompiledFrom(authorizations));
+
+		// WHEN
+		authorizations.set(1, authorization("add", ACTION_ADD));
+		compiled = new CompiledAuthorizations(authorizations);
+		authorizations.set(1, authorization("delete", ACTION_DELETE));
+
+		// THEN
+		assertFalse("Compiled from a collection with a replaced authorization", compiled.isCompiledFrom(authorizations));
+	}
+
+	private Authorization authorization(String name, String... actions) {
+		Authorization authorization = mock(Authorization.class);
+		when(authorization.getAction()).thenReturn(Arrays.asList(actions));
+		when(authorization.toString()).thenReturn("Authorization(" + name + ")");
+		return authorization;
+	}
+}
@@ -177,6 +177,7 @@ public class TaskManagerQuartzImpl implements TaskManager, BeanFactoryAware {
 
     @Autowired private MidpointConfiguration midpointConfiguration;
 	@Autowired private RepositoryService repositoryService;
+	@Autowired @Qualifier("cacheRepositoryService") private RepositoryService cacheRepositoryService;
 	@Autowired private LightweightIdentifierGenerator lightweightIdentifierGenerator;
 	@Autowired private PrismContext prismContext;
 	
@@ -1509,6 +1510,10 @@ public class TaskManagerQuartzImpl implements TaskManager, BeanFactoryAware {
         return repositoryService;
     }
 
+    public RepositoryService getCacheRepositoryService() {
+        return cacheRepositoryService;
+    }
+
     public void setConfiguration(TaskManagerConfiguration configuration) {
         this.configuration = configuration;
     }
@@ -2913,8 +2913,9 @@ public class TaskQuartzImpl implements Task {
 
 	@Override
 	public void recordMappingOperation(String objectOid, String objectName, String objectTypeName, String mappingName,
-			long duration) {
-		environmentalPerformanceInformation.recordMappingOperation(objectOid, objectName, objectTypeName, mappingName, duration);
+			long duration, int cacheHits, int cacheMisses) {
+		environmentalPerformanceInformation.recordMappingOperation(objectOid, objectName, objectTypeName, mappingName, duration,
+				cacheHits, cacheMisses);
 	}
 
 	@Override
@@ -302,6 +302,9 @@ public class ClusterManager {
                 SecurityUtil.setRemoteHostAddressHeaders(config.asObjectable());
 
 				getRepositoryService().applyFullTextSearchConfiguration(config.asObjectable().getFullTextSearch());
+				// the configuration may have been changed on another node; this also flushes the node-wide cache
+				taskManager.getCacheRepositoryService().applyCachingConfiguration(
+						SystemConfigurationTypeUtil.getCachingConfiguration(config.asObjectable()));
                 SystemConfigurationTypeUtil.applyOperationResultHandling(config.asObjectable());
             } else {
                 if (LOGGER.isTraceEnabled()) {